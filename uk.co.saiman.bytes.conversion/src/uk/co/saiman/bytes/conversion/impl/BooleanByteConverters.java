@@ -27,16 +27,21 @@
  */
 package uk.co.saiman.bytes.conversion.impl;
 
-import static uk.co.saiman.bytes.conversion.ByteConverter.byteConverter;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+import static uk.co.saiman.bytes.ByteBuffers.getBits;
+import static uk.co.saiman.bytes.ByteBuffers.putBits;
 import static uk.co.saiman.reflection.Types.getErasedType;
 import static uk.co.saiman.reflection.Types.unwrapPrimitive;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.AnnotatedType;
+import java.nio.ByteBuffer;
 
 import org.osgi.service.component.annotations.Component;
 
-import uk.co.saiman.bytes.BitArray;
 import uk.co.saiman.bytes.conversion.ByteConversionAnnotations;
 import uk.co.saiman.bytes.conversion.ByteConverter;
 import uk.co.saiman.bytes.conversion.ByteConverterProvider;
@@ -45,6 +50,26 @@ import uk.co.saiman.bytes.conversion.Size;
 
 @Component
 public class BooleanByteConverters implements ByteConverterProvider {
+  private static final MethodHandle READ;
+  private static final MethodHandle WRITE;
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      READ = lookup
+          .findStatic(
+              BooleanByteConverters.class,
+              "read",
+              methodType(boolean.class, ByteBuffer.class, int.class, int.class));
+      WRITE = lookup
+          .findStatic(
+              BooleanByteConverters.class,
+              "write",
+              methodType(void.class, ByteBuffer.class, int.class, int.class, boolean.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   @Override
   public ByteConverter<?> getConverter(
       AnnotatedType type,
@@ -55,15 +80,30 @@ public class BooleanByteConverters implements ByteConverterProvider {
     int size = annotations.get(Size.class).map(Size::value).orElse(1);
 
     if (boolean.class == unwrapPrimitive(erasedType)) {
-      return byteConverter(
-          boolean.class,
-          b -> new BitArray(size).with(0, size, b),
-          b -> b.stream().limit(size).reduce((h, t) -> h || t).orElse(false));
+      return new BufferByteConverter<Boolean>(
+          size,
+          insertArguments(READ, 2, size),
+          insertArguments(WRITE, 2, size));
     }
 
     return null;
   }
 
+  /*
+   * A value is written to every bit of the field, and read as true if any bit
+   * is set.
+   */
+
+  @SuppressWarnings("unused")
+  private static boolean read(ByteBuffer buffer, int offset, int size) {
+    return getBits(buffer, offset, size) != 0;
+  }
+
+  @SuppressWarnings("unused")
+  private static void write(ByteBuffer buffer, int offset, int size, boolean value) {
+    putBits(buffer, offset, size, value ? -1 : 0);
+  }
+
   @Override
   public boolean supportsAnnotation(Class<? extends Annotation> annotationType) {
     return annotationType == Size.class;
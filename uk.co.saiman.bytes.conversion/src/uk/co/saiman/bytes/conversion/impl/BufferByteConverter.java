@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.bytes.conversion.
+ *
+ * uk.co.saiman.bytes.conversion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.bytes.conversion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.bytes.conversion.impl;
+
+import static java.lang.invoke.MethodHandles.explicitCastArguments;
+import static java.lang.invoke.MethodHandles.filterArguments;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+import static uk.co.saiman.bytes.BitArray.fromByteArray;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import uk.co.saiman.bytes.BitArray;
+import uk.co.saiman.bytes.conversion.ByteConversionException;
+import uk.co.saiman.bytes.conversion.ByteConverter;
+import uk.co.saiman.reflection.Types;
+
+/**
+ * A converter for values of a fixed bit length, compiled into method handles
+ * which read and write a value at a given bit offset within a
+ * {@link ByteBuffer}. Composite converters such as {@link DTOByteConverter} can
+ * chain together the handles of their components once, then convert directly
+ * to and from bytes without allocating intermediate {@link BitArray bit
+ * arrays}.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <T> the type of the object to be converted
+ */
+final class BufferByteConverter<T> implements ByteConverter<T> {
+  private static final MethodHandle OFFSET;
+  static {
+    try {
+      OFFSET = MethodHandles
+          .lookup()
+          .findStatic(
+              BufferByteConverter.class,
+              "offset",
+              methodType(int.class, int.class, int.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private final int bitLength;
+  private final MethodHandle reader;
+  private final MethodHandle writer;
+
+  private final MethodHandle objectReader;
+  private final MethodHandle objectWriter;
+
+  /**
+   * @param bitLength the number of bits occupied by a value
+   * @param reader    a handle of type {@code (ByteBuffer, int)V}, reading a
+   *                  value from the given bit offset
+   * @param writer    a handle of type {@code (ByteBuffer, int, V)void}, writing
+   *                  a value at the given bit offset
+   */
+  BufferByteConverter(int bitLength, MethodHandle reader, MethodHandle writer) {
+    this.bitLength = bitLength;
+    this.reader = reader;
+    this.writer = writer;
+
+    this.objectReader = reader.asType(methodType(Object.class, ByteBuffer.class, int.class));
+    this.objectWriter = writer
+        .asType(methodType(void.class, ByteBuffer.class, int.class, Object.class));
+  }
+
+  /**
+   * Find the buffer converter which a converter currently delegates to, if any.
+   * 
+   * @param converter a converter
+   * @return the buffer converter, or null if the given converter cannot be
+   *         compiled
+   */
+  static BufferByteConverter<?> of(ByteConverter<?> converter) {
+    if (converter instanceof CompositeByteConverter<?>) {
+      converter = ((CompositeByteConverter<?>) converter).getConverter();
+    }
+    if (converter instanceof DTOByteConverter<?>) {
+      converter = ((DTOByteConverter<?>) converter).getCompiledConverter();
+    }
+    return converter instanceof BufferByteConverter<?>
+        ? (BufferByteConverter<?>) converter
+        : null;
+  }
+
+  @SuppressWarnings("unused")
+  private static int offset(int base, int offset) {
+    return base + offset;
+  }
+
+  private static MethodHandle withOffset(MethodHandle handle, int offset) {
+    return offset == 0 ? handle : filterArguments(handle, 1, insertArguments(OFFSET, 1, offset));
+  }
+
+  private static MethodHandle castReturn(MethodHandle handle, Class<?> type) {
+    Class<?> primitive = Types.unwrapPrimitive(type);
+    if (primitive != type && primitive.isPrimitive()) {
+      handle = explicitCastArguments(handle, handle.type().changeReturnType(primitive));
+    }
+    return explicitCastArguments(handle, handle.type().changeReturnType(type));
+  }
+
+  int getBitLength() {
+    return bitLength;
+  }
+
+  /**
+   * @param type   the type of the value to read
+   * @param offset the bit offset to add to the offset given to the handle
+   * @return a handle of type {@code (ByteBuffer, int)type}
+   */
+  MethodHandle getReader(Class<?> type, int offset) {
+    return withOffset(castReturn(reader, type), offset);
+  }
+
+  /**
+   * @param type   the type of the value to write
+   * @param offset the bit offset to add to the offset given to the handle
+   * @return a handle of type {@code (ByteBuffer, int, type)void}
+   */
+  MethodHandle getWriter(Class<?> type, int offset) {
+    MethodType writerType = writer.type().changeParameterType(2, type);
+    return withOffset(explicitCastArguments(writer, writerType), offset);
+  }
+
+  private int getByteLength() {
+    return (bitLength + Byte.SIZE - 1) / Byte.SIZE;
+  }
+
+  @Override
+  public BitArray toBits(T object) {
+    return fromByteArray(toBytes(object)).resize(bitLength);
+  }
+
+  @Override
+  public byte[] toBytes(T object) {
+    ByteBuffer buffer = ByteBuffer.allocate(getByteLength());
+    try {
+      objectWriter.invokeExact(buffer, 0, (Object) object);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new ByteConversionException("Cannot convert " + object, e);
+    }
+    return buffer.array();
+  }
+
+  @Override
+  public T toObject(BitArray bits) {
+    return toObject(bits.toByteArray());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public T toObject(byte[] bytes) {
+    if (bytes.length < getByteLength()) {
+      bytes = Arrays.copyOf(bytes, getByteLength());
+    }
+    try {
+      return (T) (Object) objectReader.invokeExact(ByteBuffer.wrap(bytes), 0);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new ByteConversionException("Cannot convert " + Arrays.toString(bytes), e);
+    }
+  }
+}
@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import org.osgi.framework.ServiceReference;
@@ -55,17 +56,30 @@ public class ByteConverterServiceImpl implements ByteConverterService {
   private final Map<AnnotatedTypeToken<?>, CompositeByteConverter<?>> typedByteConverters = Collections
       .synchronizedMap(new HashMap<>());
 
+  /*
+   * Incremented whenever the available providers change, so that converters
+   * which cache the outcome of resolving against the providers know to resolve
+   * again.
+   */
+  private final AtomicInteger revision = new AtomicInteger();
+
   @Reference(policy = DYNAMIC, policyOption = GREEDY, cardinality = MULTIPLE)
   void addConverter(
       ServiceReference<ByteConverterProvider> reference,
       ByteConverterProvider converter) {
     byteConverterProviders.put(reference, converter);
+    revision.incrementAndGet();
   }
 
   void removeConverter(
       ServiceReference<ByteConverterProvider> reference,
       ByteConverterProvider converter) {
     byteConverterProviders.remove(reference, converter);
+    revision.incrementAndGet();
+  }
+
+  int getRevision() {
+    return revision.get();
   }
 
   public Stream<ByteConverterProvider> getProviders() {
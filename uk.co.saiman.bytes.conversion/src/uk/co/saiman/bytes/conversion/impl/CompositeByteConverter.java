@@ -46,7 +46,8 @@ import uk.co.saiman.reflection.token.AnnotatedTypeToken;
 /**
  * This byte converter implementation is simply a dynamic wrapper which always
  * fetches and delegates to the most appropriate converter which is available
- * from the {@link ByteConverterServiceImpl service}.
+ * from the {@link ByteConverterServiceImpl service}. The selected converter is
+ * cached until the providers available to the service change.
  * 
  * @author Elias N Vasylenko
  *
@@ -59,6 +60,9 @@ public class CompositeByteConverter<T> implements ByteConverter<T> {
 
   private final Map<ByteConverterProvider, ByteConverter<T>> components;
 
+  private volatile ByteConverter<T> converter;
+  private volatile int revision;
+
   CompositeByteConverter(ByteConverterServiceImpl service, AnnotatedTypeToken<T> type) {
     this.service = service;
     this.type = type;
@@ -72,16 +76,43 @@ public class CompositeByteConverter<T> implements ByteConverter<T> {
     return getConverter().toObject(bits);
   }
 
+  @Override
+  public T toObject(byte[] bytes) {
+    return getConverter().toObject(bytes);
+  }
+
   @Override
   public BitArray toBits(T object) {
     return getConverter().toBits(object);
   }
 
+  @Override
+  public byte[] toBytes(T object) {
+    return getConverter().toBytes(object);
+  }
+
   private Stream<ByteConverterProvider> getProviders() {
     return service.getProviders();
   }
 
-  private ByteConverter<T> getConverter() {
+  ByteConverter<T> getConverter() {
+    int revision = service.getRevision();
+    if (this.revision == revision) {
+      ByteConverter<T> converter = this.converter;
+      if (converter != null) {
+        return converter;
+      }
+    }
+
+    synchronized (components) {
+      ByteConverter<T> converter = findConverter();
+      this.converter = converter;
+      this.revision = revision;
+      return converter;
+    }
+  }
+
+  private ByteConverter<T> findConverter() {
     List<ByteConverterProvider> providers = getProviders().collect(toList());
 
     components.keySet().retainAll(providers);
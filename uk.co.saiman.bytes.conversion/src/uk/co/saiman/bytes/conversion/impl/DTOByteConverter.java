@@ -27,15 +27,26 @@
  */
 package uk.co.saiman.bytes.conversion.impl;
 
-import static uk.co.saiman.collection.StreamUtilities.throwingMerger;
+import static java.lang.invoke.MethodHandles.collectArguments;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.filterArguments;
+import static java.lang.invoke.MethodHandles.foldArguments;
+import static java.lang.invoke.MethodHandles.identity;
+import static java.lang.invoke.MethodHandles.publicLookup;
+import static java.lang.invoke.MethodType.methodType;
 import static uk.co.saiman.reflection.token.AnnotatedTypeToken.forType;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.IntSupplier;
 import java.util.stream.Stream;
 
 import uk.co.saiman.bytes.BitArray;
@@ -54,17 +65,27 @@ import uk.co.saiman.reflection.token.AnnotatedTypeToken;
  * Amber, as this will provide better safety and also allow us to infer more
  * information about layout without needing e.g. Offset to be specified for
  * every field.
+ * <p>
+ * When the converter for every field has a fixed bit length, the layout of the
+ * DTO is compiled once into a single {@link BufferByteConverter}, chaining the
+ * field accessors with the readers and writers of the field converters.
+ * Otherwise conversion falls back to splicing together the bits of each field.
  * 
  * @author Elias N Vasylenko
  *
  * @param <T> the type of the DTO
  */
 public class DTOByteConverter<T> implements ByteConverter<T> {
+  private static final Lookup LOOKUP = publicLookup();
+
   private static class FieldConverter {
     private final Field field;
     private final ByteConverter<Object> byteConverter;
     private final int offset;
 
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+
     @SuppressWarnings("unchecked")
     public FieldConverter(ByteConverterService converterService, Field field) {
       this.field = field;
@@ -75,13 +96,30 @@ public class DTOByteConverter<T> implements ByteConverter<T> {
           .ofNullable(field.getAnnotation(Offset.class))
           .map(Offset::value)
           .orElse(0);
+
+      try {
+        this.getter = LOOKUP
+            .unreflectGetter(field)
+            .asType(methodType(field.getType(), Object.class));
+      } catch (IllegalAccessException e) {
+        throw new ByteConversionException("Cannot read from DTO field", e);
+      }
+      try {
+        this.setter = LOOKUP
+            .unreflectSetter(field)
+            .asType(methodType(void.class, Object.class, field.getType()));
+      } catch (IllegalAccessException e) {
+        throw new ByteConversionException("Cannot write to DTO field", e);
+      }
     }
 
     public void put(Object object, BitArray bits) {
       Object value = byteConverter.toObject(bits.slice(offset, bits.length()));
       try {
-        field.set(object, value);
-      } catch (IllegalArgumentException | IllegalAccessException e) {
+        setter.invoke(object, value);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
         throw new ByteConversionException("Cannot write to DTO field", e);
       }
     }
@@ -89,75 +127,209 @@ public class DTOByteConverter<T> implements ByteConverter<T> {
     public BitArray get(Object object, BitArray bits) {
       Object value;
       try {
-        value = field.get(object);
-      } catch (IllegalArgumentException | IllegalAccessException e) {
+        value = getter.invoke(object);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
         throw new ByteConversionException("Cannot read from DTO field", e);
       }
 
       return bits.splice(offset, byteConverter.toBits(value));
     }
+
+    /*
+     * (Object, ByteBuffer, int)void
+     */
+    MethodHandle compileReader(BufferByteConverter<?> converter) {
+      return collectArguments(setter, 1, converter.getReader(field.getType(), offset));
+    }
+
+    /*
+     * (ByteBuffer, int, Object)void
+     */
+    MethodHandle compileWriter(BufferByteConverter<?> converter) {
+      return filterArguments(converter.getWriter(field.getType(), offset), 2, getter);
+    }
+  }
+
+  private static class Compilation<T> {
+    private final int revision;
+    private final BufferByteConverter<T> converter;
+
+    Compilation(int revision, BufferByteConverter<T> converter) {
+      this.revision = revision;
+      this.converter = converter;
+    }
   }
 
-  private final Constructor<?> constructor;
+  private final MethodHandle constructor;
 
-  private final Map<Field, FieldConverter> fieldConverters;
+  private final List<FieldConverter> fieldConverters;
 
   private final int byteCount;
 
+  private final IntSupplier revision;
+  private volatile Compilation<T> compilation;
+
   DTOByteConverter(
       AnnotatedTypeToken<T> type,
       ByteConversionAnnotations annotations,
       ByteConverterService converterService) {
     Class<?> rawType = Types.getErasedType(type.getType());
 
+    MethodHandle constructor;
     try {
-      this.constructor = rawType.getDeclaredConstructor();
-    } catch (NoSuchMethodException | SecurityException e) {
-      throw new ByteConversionException("Cannot instantiate DTO", e);
+      constructor = LOOKUP
+          .unreflectConstructor(rawType.getDeclaredConstructor())
+          .asType(methodType(Object.class));
+    } catch (NoSuchMethodException | SecurityException | IllegalAccessException e) {
+      constructor = null;
     }
+    this.constructor = constructor;
 
-    this.fieldConverters = new HashMap<>();
+    this.fieldConverters = new ArrayList<>();
     for (Field field : rawType.getFields()) {
-      fieldConverters.put(field, new FieldConverter(converterService, field));
+      if (!Modifier.isStatic(field.getModifiers())) {
+        fieldConverters.add(new FieldConverter(converterService, field));
+      }
     }
 
     byteCount = annotations.get(Bytes.class).map(Bytes::value).orElse(-1);
+
+    /*
+     * The layout is recompiled if the providers available to the service
+     * change, as the converters selected for each field may differ.
+     */
+    this.revision = converterService instanceof ByteConverterServiceImpl
+        ? ((ByteConverterServiceImpl) converterService)::getRevision
+        : () -> 0;
   }
 
   public Stream<Field> getFields() {
-    return fieldConverters.keySet().stream();
+    return fieldConverters.stream().map(c -> c.field);
   }
 
-  public FieldConverter getFieldConverter(Field field) {
-    return fieldConverters.get(field);
+  /**
+   * @return a converter compiled from the layout of the DTO, or null if any
+   *         field converter does not have a fixed bit length
+   */
+  BufferByteConverter<T> getCompiledConverter() {
+    int revision = this.revision.getAsInt();
+    Compilation<T> compilation = this.compilation;
+    if (compilation == null || compilation.revision != revision) {
+      compilation = new Compilation<>(revision, compile());
+      this.compilation = compilation;
+    }
+    return compilation.converter;
   }
 
-  @SuppressWarnings("unchecked")
-  @Override
-  public T toObject(BitArray bitSet) {
-    T object;
-    try {
-      object = (T) constructor.newInstance();
-    } catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-        | InvocationTargetException e) {
-      throw new ByteConversionException("Cannot instantiate DTO", e);
+  private BufferByteConverter<T> compile() {
+    if (constructor == null) {
+      return null;
     }
 
-    getFields().map(this::getFieldConverter).forEach(c -> c.put(object, bitSet));
+    int extent = 0;
+    List<MethodHandle> readers = new ArrayList<>(fieldConverters.size());
+    List<MethodHandle> writers = new ArrayList<>(fieldConverters.size());
+    for (FieldConverter fieldConverter : fieldConverters) {
+      BufferByteConverter<?> converter = BufferByteConverter.of(fieldConverter.byteConverter);
+      if (converter == null) {
+        return null;
+      }
 
+      extent = Math.max(extent, fieldConverter.offset + converter.getBitLength());
+      readers.add(fieldConverter.compileReader(converter));
+      writers.add(fieldConverter.compileWriter(converter));
+    }
+
+    int bitLength = byteCount > 0 ? byteCount * Byte.SIZE : extent;
+    if (extent > bitLength) {
+      return null;
+    }
+
+    MethodHandle populate = sequence(
+        readers,
+        methodType(void.class, Object.class, ByteBuffer.class, int.class));
+    MethodHandle reader = foldArguments(
+        dropArguments(identity(Object.class), 1, ByteBuffer.class, int.class),
+        populate);
+    reader = foldArguments(reader, constructor);
+
+    MethodHandle writer = sequence(
+        writers,
+        methodType(void.class, ByteBuffer.class, int.class, Object.class));
+
+    return new BufferByteConverter<>(bitLength, reader, writer);
+  }
+
+  private static MethodHandle sequence(List<MethodHandle> handles, MethodType type) {
+    MethodHandle sequence = MethodHandles.empty(type);
+    for (MethodHandle handle : handles) {
+      sequence = foldArguments(handle, sequence);
+    }
+    return sequence;
+  }
+
+  @Override
+  public T toObject(BitArray bits) {
+    BufferByteConverter<T> compiled = getCompiledConverter();
+    if (compiled != null) {
+      return compiled.toObject(bits);
+    }
+
+    T object = instantiate();
+    fieldConverters.forEach(c -> c.put(object, bits));
     return object;
   }
 
+  @Override
+  public T toObject(byte[] bytes) {
+    BufferByteConverter<T> compiled = getCompiledConverter();
+    if (compiled != null) {
+      return compiled.toObject(bytes);
+    }
+    return ByteConverter.super.toObject(bytes);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T instantiate() {
+    if (constructor == null) {
+      throw new ByteConversionException("Cannot instantiate DTO");
+    }
+    try {
+      return (T) (Object) constructor.invokeExact();
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new ByteConversionException("Cannot instantiate DTO", e);
+    }
+  }
+
   @Override
   public BitArray toBits(T object) {
-    BitArray bitSet = getFields()
-        .map(this::getFieldConverter)
-        .reduce(new BitArray(0), (b, c) -> c.get(object, b), throwingMerger());
+    BufferByteConverter<T> compiled = getCompiledConverter();
+    if (compiled != null) {
+      return compiled.toBits(object);
+    }
+
+    BitArray bits = new BitArray(0);
+    for (FieldConverter fieldConverter : fieldConverters) {
+      bits = fieldConverter.get(object, bits);
+    }
 
     if (byteCount > 0) {
-      bitSet.resize(byteCount * Byte.SIZE);
+      bits = bits.resize(byteCount * Byte.SIZE);
     }
 
-    return bitSet;
+    return bits;
+  }
+
+  @Override
+  public byte[] toBytes(T object) {
+    BufferByteConverter<T> compiled = getCompiledConverter();
+    if (compiled != null) {
+      return compiled.toBytes(object);
+    }
+    return ByteConverter.super.toBytes(object);
   }
-}
\ No newline at end of file
+}
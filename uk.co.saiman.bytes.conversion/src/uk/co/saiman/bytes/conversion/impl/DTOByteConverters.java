@@ -68,7 +68,18 @@ public class DTOByteConverters implements ByteConverterProvider {
     if (!annotations.get(DTO.class).isPresent())
       return null;
 
-    return (DTOByteConverter<?>) typeConverters
-        .computeIfAbsent(type, t -> new DTOByteConverter<>(forType(t), annotations, converters));
+    /*
+     * Not computeIfAbsent, as creating the converter for a DTO may recursively
+     * create converters for any DTOs nested within it.
+     */
+    DTOByteConverter<?> converter = typeConverters.get(type);
+    if (converter == null) {
+      converter = new DTOByteConverter<>(forType(type), annotations, converters);
+      DTOByteConverter<?> existing = typeConverters.putIfAbsent(type, converter);
+      if (existing != null) {
+        converter = existing;
+      }
+    }
+    return converter;
   }
 }
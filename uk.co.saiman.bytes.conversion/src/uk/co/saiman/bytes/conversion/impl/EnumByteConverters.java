@@ -27,16 +27,21 @@
  */
 package uk.co.saiman.bytes.conversion.impl;
 
-import static uk.co.saiman.bytes.BitArray.fromNumber;
+import static java.lang.invoke.MethodHandles.arrayElementGetter;
+import static java.lang.invoke.MethodHandles.explicitCastArguments;
+import static java.lang.invoke.MethodHandles.filterArguments;
+import static java.lang.invoke.MethodHandles.filterReturnValue;
+import static java.lang.invoke.MethodType.methodType;
 import static uk.co.saiman.bytes.Endianness.BIG_ENDIAN;
 import static uk.co.saiman.reflection.Types.getErasedType;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.AnnotatedType;
 
 import org.osgi.service.component.annotations.Component;
 
-import uk.co.saiman.bytes.BitArray;
 import uk.co.saiman.bytes.Endianness;
 import uk.co.saiman.bytes.conversion.ByteConversionAnnotations;
 import uk.co.saiman.bytes.conversion.ByteConverter;
@@ -47,6 +52,15 @@ import uk.co.saiman.bytes.conversion.Size;
 
 @Component
 public class EnumByteConverters implements ByteConverterProvider {
+  private static final MethodHandle ORDINAL;
+  static {
+    try {
+      ORDINAL = MethodHandles.lookup().findVirtual(Enum.class, "ordinal", methodType(int.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public ByteConverter<?> getConverter(
@@ -60,31 +74,25 @@ public class EnumByteConverters implements ByteConverterProvider {
       int size = annotations.get(Size.class).map(Size::value).orElse(32);
       Endianness endianness = annotations.get(Order.class).map(Order::value).orElse(BIG_ENDIAN);
 
-      return new EnumBitConverter<>(enumType, size, endianness);
+      return getConverter(enumType, size, endianness);
     }
     return null;
   }
 
-  class EnumBitConverter<T extends Enum<?>> implements ByteConverter<T> {
-    private final Class<T> type;
-    private final int size;
-    private final Endianness endianness;
+  private <T extends Enum<?>> ByteConverter<T> getConverter(
+      Class<T> type,
+      int size,
+      Endianness endianness) {
+    MethodHandle reader = IntegerByteConverters.getReader(size, endianness);
+    reader = explicitCastArguments(reader, reader.type().changeReturnType(int.class));
+    reader = filterReturnValue(
+        reader,
+        arrayElementGetter(type.arrayType()).bindTo(type.getEnumConstants()));
 
-    public EnumBitConverter(Class<T> type, int size, Endianness endianness) {
-      this.type = type;
-      this.size = size;
-      this.endianness = endianness;
-    }
+    MethodHandle writer = IntegerByteConverters.getWriter(size, endianness);
+    writer = filterArguments(writer, 2, ORDINAL.asType(methodType(long.class, type)));
 
-    @Override
-    public T toObject(BitArray bits) {
-      return type.getEnumConstants()[(int) bits.toNumber(size, endianness)];
-    }
-
-    @Override
-    public BitArray toBits(T object) {
-      return fromNumber(object.ordinal(), size, endianness);
-    }
+    return new BufferByteConverter<>(size, reader, writer);
   }
 
   @Override
@@ -27,16 +27,21 @@
  */
 package uk.co.saiman.bytes.conversion.impl;
 
-import static uk.co.saiman.bytes.BitArray.fromNumber;
+import static java.lang.invoke.MethodHandles.explicitCastArguments;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+import static uk.co.saiman.bytes.ByteBuffers.getBits;
+import static uk.co.saiman.bytes.ByteBuffers.putBits;
 import static uk.co.saiman.bytes.Endianness.BIG_ENDIAN;
-import static uk.co.saiman.bytes.conversion.ByteConverter.byteConverter;
 import static uk.co.saiman.reflection.Types.getErasedType;
 import static uk.co.saiman.reflection.Types.unwrapPrimitive;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.AnnotatedType;
+import java.nio.ByteBuffer;
 import java.util.Optional;
-import java.util.function.Function;
 
 import org.osgi.service.component.annotations.Component;
 
@@ -50,6 +55,38 @@ import uk.co.saiman.bytes.conversion.Size;
 
 @Component
 public class IntegerByteConverters implements ByteConverterProvider {
+  private static final MethodHandle READ_BIG_ENDIAN;
+  private static final MethodHandle READ_LITTLE_ENDIAN;
+  private static final MethodHandle WRITE_BIG_ENDIAN;
+  private static final MethodHandle WRITE_LITTLE_ENDIAN;
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      READ_BIG_ENDIAN = lookup
+          .findStatic(
+              IntegerByteConverters.class,
+              "readBigEndian",
+              methodType(long.class, ByteBuffer.class, int.class, int.class));
+      READ_LITTLE_ENDIAN = lookup
+          .findStatic(
+              IntegerByteConverters.class,
+              "readLittleEndian",
+              methodType(long.class, ByteBuffer.class, int.class, int.class));
+      WRITE_BIG_ENDIAN = lookup
+          .findStatic(
+              IntegerByteConverters.class,
+              "writeBigEndian",
+              methodType(void.class, ByteBuffer.class, int.class, int.class, long.class));
+      WRITE_LITTLE_ENDIAN = lookup
+          .findStatic(
+              IntegerByteConverters.class,
+              "writeLittleEndian",
+              methodType(void.class, ByteBuffer.class, int.class, int.class, long.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   @Override
   public ByteConverter<?> getConverter(
       AnnotatedType type,
@@ -62,46 +99,88 @@ public class IntegerByteConverters implements ByteConverterProvider {
 
     int bits;
     Class<? extends Number> primitive;
-    Function<Number, Number> asNumber;
 
     if (byte.class == unwrapPrimitive(erasedType)) {
       bits = size.orElse(Byte.SIZE);
       primitive = byte.class;
-      asNumber = Number::byteValue;
 
     } else if (short.class == unwrapPrimitive(erasedType)) {
       bits = size.orElse(Short.SIZE);
       primitive = short.class;
-      asNumber = Number::shortValue;
 
     } else if (int.class == unwrapPrimitive(erasedType)) {
       bits = size.orElse(Integer.SIZE);
       primitive = int.class;
-      asNumber = Number::intValue;
 
     } else if (long.class == unwrapPrimitive(erasedType)) {
       bits = size.orElse(Long.SIZE);
       primitive = long.class;
-      asNumber = Number::longValue;
 
     } else {
       return null;
-
     }
 
-    return getConverter(primitive, asNumber, bits, endianness);
+    return getConverter(primitive, bits, endianness);
   }
 
-  @SuppressWarnings("unchecked")
   public <T extends Number> ByteConverter<T> getConverter(
       Class<T> primitive,
-      Function<? super Number, ? extends Number> asNumber,
       int bits,
       Endianness endianness) {
-    return byteConverter(
-        primitive,
-        b -> fromNumber(b.longValue(), bits, endianness),
-        a -> (T) asNumber.apply(a.toNumber(bits, endianness)));
+    MethodHandle reader = getReader(bits, endianness);
+    reader = explicitCastArguments(reader, reader.type().changeReturnType(primitive));
+
+    MethodHandle writer = getWriter(bits, endianness);
+    writer = explicitCastArguments(writer, writer.type().changeParameterType(2, primitive));
+
+    return new BufferByteConverter<>(bits, reader, writer);
+  }
+
+  /**
+   * @return a handle of type {@code (ByteBuffer, int)long} reading a number of
+   *         the given size from the given bit offset
+   */
+  static MethodHandle getReader(int bits, Endianness endianness) {
+    return insertArguments(
+        endianness == BIG_ENDIAN ? READ_BIG_ENDIAN : READ_LITTLE_ENDIAN,
+        2,
+        bits);
+  }
+
+  /**
+   * @return a handle of type {@code (ByteBuffer, int, long)void} writing a
+   *         number of the given size at the given bit offset
+   */
+  static MethodHandle getWriter(int bits, Endianness endianness) {
+    return insertArguments(
+        endianness == BIG_ENDIAN ? WRITE_BIG_ENDIAN : WRITE_LITTLE_ENDIAN,
+        2,
+        bits);
+  }
+
+  /*
+   * Big endian values are sign extended, and little endian values are bit
+   * reversed and zero extended, consistent with BitArray#toNumber.
+   */
+
+  @SuppressWarnings("unused")
+  private static long readBigEndian(ByteBuffer buffer, int offset, int size) {
+    return getBits(buffer, offset, size) << (Long.SIZE - size) >> (Long.SIZE - size);
+  }
+
+  @SuppressWarnings("unused")
+  private static long readLittleEndian(ByteBuffer buffer, int offset, int size) {
+    return Long.reverse(getBits(buffer, offset, size)) >>> (Long.SIZE - size);
+  }
+
+  @SuppressWarnings("unused")
+  private static void writeBigEndian(ByteBuffer buffer, int offset, int size, long value) {
+    putBits(buffer, offset, size, value);
+  }
+
+  @SuppressWarnings("unused")
+  private static void writeLittleEndian(ByteBuffer buffer, int offset, int size, long value) {
+    putBits(buffer, offset, size, Long.reverse(value) >>> (Long.SIZE - size));
   }
 
   @Override
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.bytes.conversion.
+ *
+ * uk.co.saiman.bytes.conversion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.bytes.conversion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.bytes.conversion.impl;
+
+import static uk.co.saiman.bytes.conversion.impl.DTOByteConverterTest.converterService;
+
+import uk.co.saiman.bytes.conversion.ByteConverter;
+import uk.co.saiman.bytes.conversion.ByteConverterService;
+import uk.co.saiman.bytes.conversion.impl.DTOByteConverterTest.Header;
+import uk.co.saiman.bytes.conversion.impl.DTOByteConverterTest.Identifier;
+import uk.co.saiman.bytes.conversion.impl.DTOByteConverterTest.Mixed;
+
+/**
+ * A benchmark of round trips through the converters for DTOs laid out like the
+ * Copley command header and variable identifier, and for a wider DTO with mixed
+ * field types.
+ * <p>
+ * Run from the test classpath with an optional argument for the number of
+ * round trips per DTO type.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class DTOByteConverterBenchmark {
+  public static void main(String... args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    ByteConverterService service = converterService();
+
+    ByteConverter<Header> header = service.getConverter(Header.class);
+    ByteConverter<Identifier> identifier = service.getConverter(Identifier.class);
+    ByteConverter<Mixed> mixed = service.getConverter(Mixed.class);
+
+    for (int round = 0; round < 5; round++) {
+      System.out
+          .printf(
+              "header %.0f ns, identifier %.0f ns, mixed %.0f ns per round trip%n",
+              roundTrip(header, new byte[] { 1, 2, 3, 4 }, iterations),
+              roundTrip(identifier, new byte[] { 0x7A, 0x0D }, iterations),
+              roundTrip(mixed, new byte[18], iterations));
+    }
+  }
+
+  private static <T> double roundTrip(ByteConverter<T> converter, byte[] bytes, int iterations) {
+    long start = System.nanoTime();
+    int check = 0;
+    for (int i = 0; i < iterations; i++) {
+      bytes[0] = (byte) i;
+      bytes = converter.toBytes(converter.toObject(bytes));
+      check += bytes[0];
+    }
+    if (check == 42) {
+      System.out.println();
+    }
+    return (System.nanoTime() - start) / (double) iterations;
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.bytes.conversion.
+ *
+ * uk.co.saiman.bytes.conversion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.bytes.conversion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.bytes.conversion.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.co.saiman.bytes.BitArray.fromNumber;
+import static uk.co.saiman.bytes.Endianness.BIG_ENDIAN;
+import static uk.co.saiman.bytes.Endianness.LITTLE_ENDIAN;
+import static uk.co.saiman.bytes.conversion.ByteConverter.byteConverter;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.ServiceReference;
+
+import uk.co.saiman.bytes.BitArray;
+import uk.co.saiman.bytes.conversion.ByteConversionAnnotations;
+import uk.co.saiman.bytes.conversion.ByteConverter;
+import uk.co.saiman.bytes.conversion.ByteConverterProvider;
+import uk.co.saiman.bytes.conversion.ByteConverterService;
+import uk.co.saiman.bytes.conversion.Bytes;
+import uk.co.saiman.bytes.conversion.ClassByteConverterProvider;
+import uk.co.saiman.bytes.conversion.DTO;
+import uk.co.saiman.bytes.conversion.Offset;
+import uk.co.saiman.bytes.conversion.Order;
+import uk.co.saiman.bytes.conversion.Size;
+
+public class DTOByteConverterTest {
+  @DTO
+  public static class Header {
+    @Offset(0)
+    public byte currentNode;
+    @Offset(8)
+    public byte checksum;
+    @Offset(16)
+    public byte messageSize;
+    @Offset(24)
+    public byte operation;
+  }
+
+  @DTO
+  public static class Identifier {
+    @Offset(0)
+    public byte variableID;
+    @Offset(12)
+    public boolean bank;
+    @Offset(13)
+    @Size(3)
+    public byte axis;
+  }
+
+  public enum Mode {
+    IDLE, HOMING, MOVING, FAULT
+  }
+
+  @DTO
+  @Bytes(18)
+  public static class Mixed {
+    @Offset(0)
+    @Order(LITTLE_ENDIAN)
+    public int little;
+    @Offset(32)
+    @Size(4)
+    public Mode mode;
+    @Offset(36)
+    @Size(12)
+    public short small;
+    @Offset(48)
+    public Header header;
+    @Offset(80)
+    public long wide;
+  }
+
+  public static class Custom {
+    public final int value;
+
+    public Custom(int value) {
+      this.value = value;
+    }
+  }
+
+  @DTO
+  public static class Uncompiled {
+    @Offset(0)
+    public Custom custom;
+    @Offset(16)
+    public byte value;
+  }
+
+  static class CustomByteConverters extends ClassByteConverterProvider<Custom> {
+    public CustomByteConverters() {
+      super(Custom.class);
+    }
+
+    @Override
+    public ByteConverter<Custom> getClassConverter(
+        AnnotatedType type,
+        ByteConversionAnnotations annotations,
+        ByteConverterService converters) {
+      return byteConverter(
+          Custom.class,
+          c -> fromNumber(c.value, 16),
+          b -> new Custom((int) b.toNumber(16)));
+    }
+
+    @Override
+    public boolean supportsAnnotation(Class<? extends Annotation> annotationType) {
+      return false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static ByteConverterServiceImpl converterService(ByteConverterProvider... providers) {
+    List<ServiceReference<ByteConverterProvider>> references = new ArrayList<>();
+    ByteConverterServiceImpl service = new ByteConverterServiceImpl();
+    for (ByteConverterProvider provider : providers) {
+      ServiceReference<ByteConverterProvider> reference = mock(ServiceReference.class);
+      references.add(reference);
+      when(reference.compareTo(any()))
+          .thenAnswer(
+              i -> Integer
+                  .compare(references.indexOf(reference), references.indexOf(i.getArgument(0))));
+      service.addConverter(reference, provider);
+    }
+    return service;
+  }
+
+  static ByteConverterServiceImpl converterService() {
+    return converterService(
+        new DTOByteConverters(),
+        new IntegerByteConverters(),
+        new BooleanByteConverters(),
+        new EnumByteConverters(),
+        new CustomByteConverters());
+  }
+
+  @Test
+  public void headerRoundTrip() {
+    CompositeByteConverter<Header> converter = converterService().getConverter(Header.class);
+
+    Header header = converter.toObject(new byte[] { 1, 2, 3, -4 });
+    assertEquals(1, header.currentNode);
+    assertEquals(2, header.checksum);
+    assertEquals(3, header.messageSize);
+    assertEquals(-4, header.operation);
+
+    assertArrayEquals(new byte[] { 1, 2, 3, -4 }, converter.toBytes(header));
+    assertNotNull(BufferByteConverter.of(converter));
+  }
+
+  @Test
+  public void identifierMatchesBitArrayLayout() {
+    CompositeByteConverter<Identifier> converter = converterService()
+        .getConverter(Identifier.class);
+
+    Identifier identifier = new Identifier();
+    identifier.variableID = 0x7A;
+    identifier.bank = true;
+    identifier.axis = 5;
+
+    BitArray expected = new BitArray(0)
+        .splice(0, fromNumber(0x7A, 8))
+        .splice(12, new BitArray(1).with(0, true))
+        .splice(13, fromNumber(5, 3));
+
+    assertEquals(expected, converter.toBits(identifier));
+    assertArrayEquals(expected.toByteArray(), converter.toBytes(identifier));
+
+    Identifier decoded = converter.toObject(expected.toByteArray());
+    assertEquals(0x7A, decoded.variableID);
+    assertTrue(decoded.bank);
+    assertEquals(-3, decoded.axis);
+  }
+
+  @Test
+  public void mixedMatchesBitArrayLayout() {
+    CompositeByteConverter<Mixed> converter = converterService().getConverter(Mixed.class);
+    assertNotNull(BufferByteConverter.of(converter));
+
+    Mixed mixed = new Mixed();
+    mixed.little = 0x12345678;
+    mixed.mode = Mode.MOVING;
+    mixed.small = -100;
+    mixed.header = new Header();
+    mixed.header.currentNode = 9;
+    mixed.header.operation = 10;
+    mixed.wide = Long.MIN_VALUE + 1;
+
+    BitArray expected = new BitArray(0)
+        .splice(0, fromNumber(0x12345678, 32, LITTLE_ENDIAN))
+        .splice(32, fromNumber(Mode.MOVING.ordinal(), 4))
+        .splice(36, fromNumber(-100, 12, BIG_ENDIAN))
+        .splice(48, fromNumber(9, 8))
+        .splice(72, fromNumber(10, 8))
+        .splice(80, fromNumber(Long.MIN_VALUE + 1, 64))
+        .resize(18 * Byte.SIZE);
+
+    assertArrayEquals(expected.toByteArray(), converter.toBytes(mixed));
+
+    Mixed decoded = converter.toObject(expected);
+    assertEquals(0x12345678, decoded.little);
+    assertEquals(Mode.MOVING, decoded.mode);
+    assertEquals(-100, decoded.small);
+    assertEquals(9, decoded.header.currentNode);
+    assertEquals(10, decoded.header.operation);
+    assertEquals(Long.MIN_VALUE + 1, decoded.wide);
+  }
+
+  @Test
+  public void shortInputIsZeroExtended() {
+    Header header = converterService().getConverter(Header.class).toObject(new byte[] { 1 });
+
+    assertEquals(1, header.currentNode);
+    assertEquals(0, header.operation);
+  }
+
+  @Test
+  public void variableLengthFieldFallsBackToBitArrays() {
+    CompositeByteConverter<Uncompiled> converter = converterService()
+        .getConverter(Uncompiled.class);
+    assertNull(BufferByteConverter.of(converter));
+
+    Uncompiled uncompiled = new Uncompiled();
+    uncompiled.custom = new Custom(0x1234);
+    uncompiled.value = 0x56;
+
+    byte[] bytes = converter.toBytes(uncompiled);
+    assertArrayEquals(new byte[] { 0x12, 0x34, 0x56 }, bytes);
+
+    Uncompiled decoded = converter.toObject(bytes);
+    assertEquals(0x1234, decoded.custom.value);
+    assertEquals(0x56, decoded.value);
+  }
+
+  @Test
+  public void compiledLayoutIsReplacedWhenProvidersChange() {
+    ByteConverterServiceImpl service = converterService();
+    CompositeByteConverter<Header> converter = service.getConverter(Header.class);
+    BufferByteConverter<?> compiled = BufferByteConverter.of(converter);
+
+    assertSame(compiled, BufferByteConverter.of(converter));
+
+    @SuppressWarnings("unchecked")
+    ServiceReference<ByteConverterProvider> reference = mock(ServiceReference.class);
+    when(reference.compareTo(any())).thenReturn(-1);
+    service.addConverter(reference, new IntegerByteConverters());
+
+    assertNotSame(compiled, BufferByteConverter.of(converter));
+    assertArrayEquals(
+        new byte[] { 1, 2, 3, 4 },
+        converter.toBytes(converter.toObject(new byte[] { 1, 2, 3, 4 })));
+  }
+}
@@ -80,4 +80,65 @@ public final class ByteBuffers {
 
     return new String(hexChars);
   }
+
+  /**
+   * Read a number of bits from the given buffer, starting from the given bit
+   * offset from the start of the buffer. Bits are counted from the most
+   * significant bit of each byte, consistent with the ordering of a
+   * {@link BitArray} converted from the same bytes. The position of the buffer
+   * is unaffected.
+   * 
+   * @param buffer the buffer to read from
+   * @param offset the bit offset from the start of the buffer
+   * @param size   the number of bits to read, up to 64
+   * @return the bits in the least significant positions of a long, zero
+   *         extended
+   */
+  public static long getBits(ByteBuffer buffer, int offset, int size) {
+    long value = 0;
+    int end = offset + size;
+
+    while (offset < end) {
+      int bit = offset & 7;
+      int count = Math.min(Byte.SIZE - bit, end - offset);
+      int shift = Byte.SIZE - bit - count;
+
+      int bits = ((buffer.get(offset >>> 3) & 0xFF) >>> shift) & ((1 << count) - 1);
+      value = (value << count) | bits;
+
+      offset += count;
+    }
+
+    return value;
+  }
+
+  /**
+   * Write a number of bits into the given buffer, starting from the given bit
+   * offset from the start of the buffer. Bits are counted from the most
+   * significant bit of each byte, consistent with the ordering of a
+   * {@link BitArray} converted from the same bytes. Bits outside of the written
+   * range are preserved, and the position of the buffer is unaffected.
+   * 
+   * @param buffer the buffer to write into
+   * @param offset the bit offset from the start of the buffer
+   * @param size   the number of bits to write, up to 64
+   * @param value  a long containing the bits to write in its least significant
+   *               positions
+   */
+  public static void putBits(ByteBuffer buffer, int offset, int size, long value) {
+    int end = offset + size;
+
+    while (offset < end) {
+      int index = offset >>> 3;
+      int bit = offset & 7;
+      int count = Math.min(Byte.SIZE - bit, end - offset);
+      int shift = Byte.SIZE - bit - count;
+
+      int mask = ((1 << count) - 1) << shift;
+      int bits = ((int) (value >>> (end - offset - count)) << shift) & mask;
+      buffer.put(index, (byte) ((buffer.get(index) & ~mask) | bits));
+
+      offset += count;
+    }
+  }
 }
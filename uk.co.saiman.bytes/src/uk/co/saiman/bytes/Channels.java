@@ -29,6 +29,7 @@ package uk.co.saiman.bytes;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 
@@ -47,4 +48,63 @@ public class Channels {
       to.write(buffer);
     }
   }
+
+  /**
+   * Wrap a channel such that small writes are gathered into a single direct
+   * buffer of the given size before being passed on, and writes at least as
+   * large as the buffer are passed straight through without copying.
+   * <p>
+   * Closing the returned channel writes out anything which remains in the buffer,
+   * but leaves the wrapped channel open.
+   * 
+   * @param to         the channel to write to
+   * @param bufferSize the size of the buffer in bytes
+   * @return a buffered channel over the given channel
+   */
+  public static WritableByteChannel buffer(WritableByteChannel to, int bufferSize) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+    return new WritableByteChannel() {
+      private boolean open = true;
+
+      @Override
+      public boolean isOpen() {
+        return open;
+      }
+
+      @Override
+      public int write(ByteBuffer from) throws IOException {
+        if (!open) {
+          throw new ClosedChannelException();
+        }
+        int size = from.remaining();
+        if (size > buffer.remaining()) {
+          drain();
+          if (size >= buffer.capacity()) {
+            while (from.hasRemaining()) {
+              to.write(from);
+            }
+            return size;
+          }
+        }
+        buffer.put(from);
+        return size;
+      }
+
+      private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          to.write(buffer);
+        }
+        buffer.clear();
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (open) {
+          open = false;
+          drain();
+        }
+      }
+    };
+  }
 }
@@ -26,5 +26,5 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 @org.osgi.annotation.bundle.Export
-@org.osgi.annotation.versioning.Version("1.0.0")
+@org.osgi.annotation.versioning.Version("1.1.0")
 package uk.co.saiman.bytes;
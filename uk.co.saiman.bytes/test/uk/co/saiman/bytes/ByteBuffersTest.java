@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.bytes.
+ *
+ * uk.co.saiman.bytes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.bytes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.bytes;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteBuffersTest {
+  @Test
+  public void getBitsMatchesBitArray() {
+    Random random = new Random(0);
+    byte[] bytes = new byte[16];
+    random.nextBytes(bytes);
+    BitArray bits = BitArray.fromByteArray(bytes);
+
+    for (int offset = 0; offset < 64; offset++) {
+      for (int size = 1; size <= 64; size++) {
+        long expected = bits.slice(offset, offset + size).toNumber(size);
+        long actual = ByteBuffers.getBits(ByteBuffer.wrap(bytes), offset, size);
+        assertEquals(expected, actual << (Long.SIZE - size) >> (Long.SIZE - size));
+      }
+    }
+  }
+
+  @Test
+  public void putBitsMatchesBitArray() {
+    Random random = new Random(0);
+
+    for (int offset = 0; offset < 64; offset++) {
+      for (int size = 1; size <= 64; size++) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        long value = random.nextLong();
+
+        BitArray expected = BitArray
+            .fromByteArray(bytes)
+            .splice(offset, BitArray.fromNumber(value, size));
+        ByteBuffers.putBits(ByteBuffer.wrap(bytes), offset, size, value);
+
+        assertArrayEquals(expected.toByteArray(), bytes);
+      }
+    }
+  }
+}
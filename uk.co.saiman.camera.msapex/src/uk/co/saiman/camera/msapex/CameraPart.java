@@ -45,12 +45,13 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Label;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Region;
-import javafx.scene.paint.Color;
 import uk.co.saiman.camera.CameraConnection;
 import uk.co.saiman.camera.CameraDevice;
+import uk.co.saiman.camera.CameraFrame;
 import uk.co.saiman.camera.CameraImage;
 import uk.co.saiman.camera.msapex.i18n.CameraProperties;
 import uk.co.saiman.observable.Disposable;
@@ -76,6 +77,8 @@ public class CameraPart {
   private Label noConnectionLabel;
 
   private Disposable imageStream;
+  private WritableImage image;
+  private int[] pixels;
 
   @Inject
   @LocalInstance
@@ -136,7 +139,11 @@ public class CameraPart {
 
       imageStream = connection
           .getImageStream()
-          .reduceBackpressure((a, b) -> b)
+          .map(CameraPart::retain)
+          .reduceBackpressure((a, b) -> {
+            release(a);
+            return b;
+          })
           .executeOn(Platform::runLater)
           .then(onObservation(o -> o.requestNext()))
           .then(forObservation(o -> m -> o.requestNext()))
@@ -145,22 +152,49 @@ public class CameraPart {
     }
   }
 
+  /*
+   * Frames are only valid until they are released, so we must retain them
+   * across the hop to the application thread.
+   */
+  private static CameraImage retain(CameraImage cameraImage) {
+    if (cameraImage instanceof CameraFrame)
+      ((CameraFrame) cameraImage).retain();
+    return cameraImage;
+  }
+
+  private static void release(CameraImage cameraImage) {
+    if (cameraImage instanceof CameraFrame)
+      ((CameraFrame) cameraImage).release();
+  }
+
+  /*
+   * Takes ownership of the given image, and writes it in bulk into the
+   * displayed image, which is only reallocated when the resolution changes.
+   */
   private synchronized void setImage(CameraImage cameraImage) {
-    WritableImage image = new WritableImage(cameraImage.getWidth(), cameraImage.getHeight());
-    for (int x = 0; x < cameraImage.getWidth(); x++) {
-      for (int y = 0; y < cameraImage.getHeight(); y++) {
-        image
-            .getPixelWriter()
-            .setColor(
-                x,
-                y,
-                new Color(
-                    cameraImage.getRed(x, y),
-                    cameraImage.getGreen(x, y),
-                    cameraImage.getBlue(x, y),
-                    1));
+    try {
+      int width = cameraImage.getWidth();
+      int height = cameraImage.getHeight();
+
+      int[] argb;
+      if (cameraImage instanceof CameraFrame) {
+        argb = ((CameraFrame) cameraImage).getPixels();
+      } else {
+        if (pixels == null || pixels.length != width * height)
+          pixels = new int[width * height];
+        cameraImage.getArgb(pixels, 0, width);
+        argb = pixels;
       }
+
+      if (image == null || (int) image.getWidth() != width || (int) image.getHeight() != height)
+        image = new WritableImage(width, height);
+
+      image
+          .getPixelWriter()
+          .setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+      cameraView.setImage(image);
+    } finally {
+      release(cameraImage);
     }
-    cameraView.setImage(image);
   }
 }
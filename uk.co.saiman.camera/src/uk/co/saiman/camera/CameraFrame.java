@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.camera.
+ *
+ * uk.co.saiman.camera is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.camera is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link CameraImage camera image} backed by a buffer of packed 32-bit ARGB
+ * pixels in row-major order, with no padding between rows.
+ * <p>
+ * Frames are {@link CameraFramePool#acquire(int, int) acquired} from a pool
+ * and are reference counted so that their buffers can be recycled. A newly
+ * acquired frame holds a single reference, owned by the caller. Consumers which
+ * hold on to a frame beyond the call which delivered it should
+ * {@link #retain() retain} it, and every reference should eventually be
+ * {@link #release() released}. A frame which is never released is simply left
+ * to the garbage collector, so failing to release is wasteful but safe.
+ *
+ * @author Elias N Vasylenko
+ */
+public final class CameraFrame implements CameraImage {
+  private final CameraFramePool pool;
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+  private final AtomicInteger references;
+
+  CameraFrame(CameraFramePool pool, int width, int height, int[] pixels) {
+    this.pool = pool;
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+    this.references = new AtomicInteger(1);
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * The backing buffer of the frame. The owner of a newly acquired frame may
+   * fill the buffer before publishing the frame, but after that it must be
+   * treated as read-only, and it must not be accessed at all after the last
+   * reference is released.
+   *
+   * @return the packed ARGB pixels of the frame
+   */
+  public int[] getPixels() {
+    return pixels;
+  }
+
+  private int getPixel(int x, int y) {
+    return pixels[y * width + x];
+  }
+
+  @Override
+  public double getRed(int x, int y) {
+    return ((getPixel(x, y) >> 16) & 0xFF) / (double) 0xFF;
+  }
+
+  @Override
+  public double getGreen(int x, int y) {
+    return ((getPixel(x, y) >> 8) & 0xFF) / (double) 0xFF;
+  }
+
+  @Override
+  public double getBlue(int x, int y) {
+    return (getPixel(x, y) & 0xFF) / (double) 0xFF;
+  }
+
+  @Override
+  public void getArgb(int[] buffer, int offset, int scanlineStride) {
+    if (scanlineStride == width) {
+      System.arraycopy(pixels, 0, buffer, offset, width * height);
+    } else {
+      for (int y = 0; y < height; y++) {
+        System.arraycopy(pixels, y * width, buffer, offset + y * scanlineStride, width);
+      }
+    }
+  }
+
+  /**
+   * Take an additional reference to the frame.
+   *
+   * @return the receiving frame
+   * @throws IllegalStateException if the frame has already been released
+   */
+  public CameraFrame retain() {
+    references.getAndUpdate(count -> {
+      if (count <= 0)
+        throw new IllegalStateException("Frame has already been released");
+      return count + 1;
+    });
+    return this;
+  }
+
+  /**
+   * Give up a reference to the frame. When the last reference is released the
+   * buffer is returned to the pool.
+   *
+   * @throws IllegalStateException if the frame has already been released
+   */
+  public void release() {
+    int count = references.decrementAndGet();
+    if (count == 0)
+      pool.recycle(pixels);
+    else if (count < 0)
+      throw new IllegalStateException("Frame has already been released");
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.camera.
+ *
+ * uk.co.saiman.camera is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.camera is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.camera;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of pixel buffers for {@link CameraFrame camera frames}, so that a
+ * steady stream of frames of the same resolution can be produced without
+ * allocating a new buffer for each one.
+ * <p>
+ * The pool is thread safe, and never blocks; if no buffer of the right size is
+ * free then a new one is allocated.
+ *
+ * @author Elias N Vasylenko
+ */
+public class CameraFramePool {
+  private static final int DEFAULT_CAPACITY = 4;
+
+  private final int capacity;
+  private final Deque<int[]> buffers;
+
+  /**
+   * Create a pool which holds on to a small number of free buffers.
+   */
+  public CameraFramePool() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity the maximum number of free buffers to hold on to
+   */
+  public CameraFramePool(int capacity) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+    this.capacity = capacity;
+    this.buffers = new ArrayDeque<>(capacity);
+  }
+
+  /**
+   * Acquire a frame of the given resolution. The contents of the frame's buffer
+   * are undefined, and should be filled by the caller before it is published.
+   *
+   * @param width  the width of the frame in pixels
+   * @param height the height of the frame in pixels
+   * @return a frame holding a single reference, owned by the caller
+   */
+  public CameraFrame acquire(int width, int height) {
+    int length = Math.multiplyExact(width, height);
+
+    int[] pixels = null;
+    synchronized (buffers) {
+      while (pixels == null && !buffers.isEmpty()) {
+        int[] buffer = buffers.pop();
+        /*
+         * Buffers of a stale resolution are dropped, since the resolution rarely
+         * changes and they would otherwise sit in the pool indefinitely.
+         */
+        if (buffer.length == length)
+          pixels = buffer;
+      }
+    }
+    if (pixels == null)
+      pixels = new int[length];
+
+    return new CameraFrame(this, width, height, pixels);
+  }
+
+  /**
+   * Acquire a frame and fill it with a copy of the given image.
+   *
+   * @param image the image to copy
+   * @return a frame holding a single reference, owned by the caller
+   */
+  public CameraFrame acquire(CameraImage image) {
+    CameraFrame frame = acquire(image.getWidth(), image.getHeight());
+    image.getArgb(frame.getPixels(), 0, frame.getWidth());
+    return frame;
+  }
+
+  void recycle(int[] pixels) {
+    synchronized (buffers) {
+      if (buffers.size() < capacity)
+        buffers.push(pixels);
+    }
+  }
+}
@@ -27,6 +27,12 @@
  */
 package uk.co.saiman.camera;
 
+/**
+ * A single image captured from a {@link CameraConnection camera connection}.
+ * Colour components are given in the range {@code [0, 1]}.
+ *
+ * @author Elias N Vasylenko
+ */
 public interface CameraImage {
   int getWidth();
 
@@ -37,4 +43,46 @@ public interface CameraImage {
   double getGreen(int x, int y);
 
   double getBlue(int x, int y);
+
+  /**
+   * Copy the whole image into the given buffer as opaque packed 32-bit ARGB
+   * pixels in row-major order, as understood by e.g. JavaFX's
+   * {@code PixelFormat.getIntArgbInstance()}.
+   * <p>
+   * The default implementation falls back to the per-pixel accessors.
+   * Implementations with a cheaper bulk path should override it.
+   *
+   * @param buffer         the buffer to write into
+   * @param offset         the index in the buffer of the top-left pixel
+   * @param scanlineStride the distance in the buffer between the start of
+   *                       consecutive rows
+   */
+  default void getArgb(int[] buffer, int offset, int scanlineStride) {
+    int width = getWidth();
+    int height = getHeight();
+    for (int y = 0; y < height; y++) {
+      int row = offset + y * scanlineStride;
+      for (int x = 0; x < width; x++) {
+        buffer[row + x] = argb(getRed(x, y), getGreen(x, y), getBlue(x, y));
+      }
+    }
+  }
+
+  /**
+   * @param red   the red component in the range {@code [0, 1]}
+   * @param green the green component in the range {@code [0, 1]}
+   * @param blue  the blue component in the range {@code [0, 1]}
+   * @return the given colour as an opaque packed 32-bit ARGB pixel
+   */
+  static int argb(double red, double green, double blue) {
+    return 0xFF000000 | (channel(red) << 16) | (channel(green) << 8) | channel(blue);
+  }
+
+  private static int channel(double value) {
+    if (value <= 0)
+      return 0;
+    if (value >= 1)
+      return 0xFF;
+    return (int) (value * 0xFF + 0.5);
+  }
 }
@@ -233,12 +233,7 @@ public class ChemicalComposition {
 
 	// merge with an existing molecule
 	public ChemicalComposition withMolecule(ChemicalComposition molecule) {
-		ChemicalComposition merged = this;
-
-		merged.withElements(molecule.getElementCounts());
-		merged.withIsotopes(molecule.getIsotopeCounts());
-
-		return merged;
+		return withElements(molecule.getElementCounts()).withIsotopes(molecule.getIsotopeCounts());
 	}
 
 	public ChemicalComposition withCharge(int charge) {
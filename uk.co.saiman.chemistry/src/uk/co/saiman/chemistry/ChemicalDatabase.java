@@ -33,5 +33,14 @@ package uk.co.saiman.chemistry;
  * @author Elias N Vasylenko
  */
 public interface ChemicalDatabase {
-	
+  /**
+   * Implementations which predate this method provide no way to look up their
+   * chemicals, so by default this returns the empty query.
+   * 
+   * @return a query over every chemical in the database, to be narrowed by the
+   *         methods of {@link ChemicalDatabaseQuery}
+   */
+  default ChemicalDatabaseQuery query() {
+    return EmptyChemicalDatabaseQuery.instance();
+  }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import uk.co.saiman.chemistry.ChemicalDatabaseService.ChemicalDatabaseConfiguration;
+
+/**
+ * Loads a chemical database from a local file into an
+ * {@link IndexedChemicalDatabase} and registers it as a service.
+ * <p>
+ * Parsing and indexing a large database takes seconds, so rather than holding
+ * up activation of the component and of everything which depends on it, the
+ * database is loaded on a background thread which is started on activation.
+ * A query made before the database is loaded waits for it.
+ * 
+ * @author Elias N Vasylenko
+ */
+@Designate(ocd = ChemicalDatabaseConfiguration.class, factory = true)
+@Component(
+    configurationPid = ChemicalDatabaseService.CONFIGURATION_PID,
+    configurationPolicy = REQUIRE,
+    service = ChemicalDatabase.class)
+public class ChemicalDatabaseService implements ChemicalDatabase {
+  @SuppressWarnings("javadoc")
+  @ObjectClassDefinition(
+      id = CONFIGURATION_PID,
+      name = "Chemical Database Configuration",
+      description = "A local chemical database, loaded into memory and indexed by mass")
+  public @interface ChemicalDatabaseConfiguration {
+    @AttributeDefinition(
+        name = "Location",
+        description = "The path of a file listing one chemical formula per line, each followed by tab separated names")
+    String location();
+  }
+
+  static final String CONFIGURATION_PID = "uk.co.saiman.chemistry.database";
+
+  private final Path location;
+  private final CompletableFuture<IndexedChemicalDatabase> database;
+
+  @Activate
+  public ChemicalDatabaseService(
+      ChemicalDatabaseConfiguration configuration,
+      @Reference PeriodicTable periodicTable) {
+    location = Paths.get(configuration.location());
+    database = CompletableFuture.supplyAsync(() -> load(location, periodicTable), runnable -> {
+      Thread loader = new Thread(runnable, "Chemical Database Loader");
+      loader.setDaemon(true);
+      loader.start();
+    });
+  }
+
+  private static IndexedChemicalDatabase load(Path location, PeriodicTable periodicTable) {
+    try (BufferedReader source = Files.newBufferedReader(location, UTF_8)) {
+      return IndexedChemicalDatabase.load(source, periodicTable);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If the database is still loading this waits until it has loaded.
+   * 
+   * @throws IllegalStateException if the database could not be loaded
+   */
+  @Override
+  public ChemicalDatabaseQuery query() {
+    try {
+      return database.join().query();
+    } catch (CompletionException e) {
+      throw new IllegalStateException(
+          "Failed to load chemical database from " + location,
+          e.getCause());
+    }
+  }
+}
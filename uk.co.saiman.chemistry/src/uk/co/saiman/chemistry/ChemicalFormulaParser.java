@@ -283,7 +283,7 @@ public class ChemicalFormulaParser {
 							"Unable to parse mass of unknown \"" + valueString + "\" in \"" + molecularFormula + "\".");
 				}
 				Element unknown = new Element(mass);
-				moleculeStack.peek().withElement(unknown);
+				moleculeStack.push(moleculeStack.pop().withElement(unknown));
 			} else if ('+' == currentChar || '-' == currentChar) {
 				if (index + 1 < molecularFormula.length()) {
 					// nothing should come after this
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry;
+
+import static java.lang.Math.max;
+import static java.util.Arrays.copyOf;
+import static uk.co.saiman.chemistry.Chemical.unknownChemical;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable in-memory chemical database indexed for lookup by mass.
+ * <p>
+ * Entries are held in primitive columns sorted by monoisotopic mass, so a mass
+ * range resolves by binary search, and each entry carries a bitset over atomic
+ * numbers so element filters reduce to masking. Compositions are only parsed
+ * into {@link Chemical chemicals} as they are found by a query.
+ * <p>
+ * The source format is one chemical per line, giving its formula followed by
+ * any number of tab separated names. Blank lines and lines beginning with
+ * <code>#</code> are ignored.
+ * 
+ * @author Elias N Vasylenko
+ */
+public final class IndexedChemicalDatabase implements ChemicalDatabase {
+  private static final char COMMENT = '#';
+  private static final char SEPARATOR = '\t';
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final ChemicalFormulaParser parser;
+
+  private final int size;
+  private final int elementWords;
+  private final int absentElement;
+  private final double[] masses;
+  private final long[] elements;
+  private final String[] lines;
+  private final int[] separators;
+
+  private IndexedChemicalDatabase(
+      ChemicalFormulaParser parser,
+      int size,
+      int elementWords,
+      int absentElement,
+      double[] masses,
+      long[] elements,
+      String[] lines,
+      int[] separators) {
+    this.parser = parser;
+    this.size = size;
+    this.elementWords = elementWords;
+    this.absentElement = absentElement;
+
+    this.masses = copyOf(masses, size);
+    Arrays.sort(this.masses);
+    int[] order = getSortOrder(masses, this.masses);
+
+    this.elements = new long[size * elementWords];
+    this.lines = new String[size];
+    this.separators = new int[size];
+    for (int i = 0; i < size; i++) {
+      int index = order[i];
+      System.arraycopy(elements, index * elementWords, this.elements, i * elementWords, elementWords);
+      this.lines[i] = lines[index];
+      this.separators[i] = separators[index];
+    }
+  }
+
+  /**
+   * Load a database from the given source.
+   * 
+   * @param source        the source, in the format described in the
+   *                      {@link IndexedChemicalDatabase class documentation}
+   * @param periodicTable the periodic table with which to interpret formulae
+   * @return a database containing each chemical in the source
+   * @throws IOException if the source cannot be read
+   */
+  public static IndexedChemicalDatabase load(BufferedReader source, PeriodicTable periodicTable)
+      throws IOException {
+    return new Loader(periodicTable).load(source);
+  }
+
+  @Override
+  public ChemicalDatabaseQuery query() {
+    return new IndexedChemicalDatabaseQuery(this, 0, size, new long[elementWords]);
+  }
+
+  /**
+   * @return the number of chemicals in the database
+   */
+  public int size() {
+    return size;
+  }
+
+  long[] getElementMask(ChemicalComposition composition) {
+    long[] mask = new long[elementWords];
+    for (Element element : composition.getElements()) {
+      setElement(mask, element);
+    }
+    for (Isotope isotope : composition.getIsotopes()) {
+      setElement(mask, isotope.getElement());
+    }
+    return mask;
+  }
+
+  private void setElement(long[] mask, Element element) {
+    int atomicNumber = element.getAtomicNumber();
+    if (atomicNumber < 0 || atomicNumber > absentElement) {
+      /*
+       * an element outside the periodic table can't be present in any entry, so
+       * set the bit reserved past the end of the table which no entry has
+       */
+      atomicNumber = absentElement;
+    }
+    mask[atomicNumber >>> 6] |= 1L << atomicNumber;
+  }
+
+  boolean containsElements(int index, long[] mask) {
+    int offset = index * elementWords;
+    for (int i = 0; i < elementWords; i++) {
+      if ((elements[offset + i] & mask[i]) != mask[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param mass      a mass in daltons
+   * @param inclusive whether an entry of exactly the given mass is included
+   * @return the index of the lightest entry not below the given mass
+   */
+  int getIndexAbove(double mass, boolean inclusive) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (masses[middle] < mass || (!inclusive && masses[middle] == mass)) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  Chemical getChemical(int index) {
+    String line = lines[index];
+    int separator = separators[index];
+
+    Chemical chemical = unknownChemical()
+        .withComposition(parser.parse(line.substring(0, separator).strip()));
+    if (separator < line.length()) {
+      chemical = chemical.withNames(line.substring(separator + 1).split(String.valueOf(SEPARATOR)));
+    }
+    return chemical;
+  }
+
+  /*
+   * Find where each entry lands in the sorted masses. Each entry goes to the
+   * first slot of its run of equal masses not already taken, so entries of equal
+   * mass keep their order from the source.
+   */
+  private static int[] getSortOrder(double[] masses, double[] sortedMasses) {
+    int size = sortedMasses.length;
+    int[] order = new int[size];
+    int[] taken = new int[size];
+    for (int i = 0; i < size; i++) {
+      int run = getFirstIndexOf(sortedMasses, masses[i]);
+      order[run + taken[run]++] = i;
+    }
+    return order;
+  }
+
+  private static int getFirstIndexOf(double[] sortedMasses, double mass) {
+    int low = 0;
+    int high = sortedMasses.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sortedMasses[middle] < mass) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /*
+   * Accumulates entries into primitive columns. Plain formulae of element
+   * symbols and counts are scanned directly into a mass and element bitset
+   * without building a composition, anything more involved falls back to the
+   * full formula parser.
+   */
+  private static class Loader {
+    private static final int SYMBOL_RADIX = 27;
+
+    private final ChemicalFormulaParser parser;
+    private final Element[] symbols;
+    private final double[] symbolMasses;
+    private final int elementWords;
+    private final int absentElement;
+
+    private int size;
+    private double[] masses;
+    private long[] elements;
+    private String[] lines;
+    private int[] separators;
+
+    Loader(PeriodicTable periodicTable) {
+      this.parser = new ChemicalFormulaParser(periodicTable);
+      this.symbols = new Element[26 * SYMBOL_RADIX];
+      this.symbolMasses = new double[symbols.length];
+
+      int maximumAtomicNumber = 0;
+      for (Element element : periodicTable.getElements()) {
+        maximumAtomicNumber = max(maximumAtomicNumber, element.getAtomicNumber());
+        int symbol = getSymbolIndex(element.getSymbol(), 0, element.getSymbol().length());
+        if (symbol >= 0) {
+          symbols[symbol] = element;
+          symbolMasses[symbol] = element.getMonoisotopicMass();
+        }
+      }
+      this.absentElement = maximumAtomicNumber + 1;
+      this.elementWords = (absentElement >>> 6) + 1;
+
+      masses = new double[INITIAL_CAPACITY];
+      elements = new long[INITIAL_CAPACITY * elementWords];
+      lines = new String[INITIAL_CAPACITY];
+      separators = new int[INITIAL_CAPACITY];
+    }
+
+    private static boolean isLowerCase(char character) {
+      return character >= 'a' && character <= 'z';
+    }
+
+    private static int getSymbolIndex(CharSequence string, int from, int to) {
+      int length = to - from;
+      if (length < 1 || length > 2) {
+        return -1;
+      }
+      char first = string.charAt(from);
+      if (first < 'A' || first > 'Z') {
+        return -1;
+      }
+      int index = (first - 'A') * SYMBOL_RADIX;
+      if (length == 2) {
+        char second = string.charAt(from + 1);
+        if (second < 'a' || second > 'z') {
+          return -1;
+        }
+        index += second - 'a' + 1;
+      }
+      return index;
+    }
+
+    IndexedChemicalDatabase load(BufferedReader source) throws IOException {
+      String line;
+      while ((line = source.readLine()) != null) {
+        if (line.isBlank() || line.charAt(0) == COMMENT) {
+          continue;
+        }
+
+        add(line);
+      }
+
+      return new IndexedChemicalDatabase(
+          parser,
+          size,
+          elementWords,
+          absentElement,
+          masses,
+          elements,
+          lines,
+          separators);
+    }
+
+    private void add(String line) {
+      if (size == masses.length) {
+        int capacity = size * 2;
+        masses = copyOf(masses, capacity);
+        elements = copyOf(elements, capacity * elementWords);
+        lines = copyOf(lines, capacity);
+        separators = copyOf(separators, capacity);
+      }
+
+      int separator = line.indexOf(SEPARATOR);
+      if (separator < 0) {
+        separator = line.length();
+      }
+
+      int offset = size * elementWords;
+      double mass = scan(line, separator, offset);
+      if (Double.isNaN(mass)) {
+        Arrays.fill(elements, offset, offset + elementWords, 0);
+        ChemicalComposition composition = parser.parse(line.substring(0, separator).strip());
+        for (Element element : composition.getElements()) {
+          setElement(offset, element);
+        }
+        for (Isotope isotope : composition.getIsotopes()) {
+          setElement(offset, isotope.getElement());
+        }
+        mass = composition.getMonoisotopicMass();
+      }
+
+      masses[size] = mass;
+      lines[size] = line;
+      separators[size] = separator;
+      size++;
+    }
+
+    private void setElement(int offset, Element element) {
+      int atomicNumber = element.getAtomicNumber();
+      elements[offset + (atomicNumber >>> 6)] |= 1L << atomicNumber;
+    }
+
+    /*
+     * Returns NaN for anything other than a plain sequence of known symbols
+     * and counts.
+     */
+    private double scan(String formula, int length, int offset) {
+      double mass = 0;
+      int position = 0;
+
+      if (length == 0) {
+        return Double.NaN;
+      }
+
+      while (position < length) {
+        int symbolStart = position++;
+        while (position < length && isLowerCase(formula.charAt(position))) {
+          position++;
+        }
+        int symbol = getSymbolIndex(formula, symbolStart, position);
+        if (symbol < 0 || symbols[symbol] == null) {
+          return Double.NaN;
+        }
+
+        int count = 0;
+        int countStart = position;
+        while (position < length) {
+          char digit = formula.charAt(position);
+          if (digit < '0' || digit > '9') {
+            break;
+          }
+          count = count * 10 + digit - '0';
+          position++;
+        }
+        if (position == countStart) {
+          count = 1;
+        }
+
+        mass += symbolMasses[symbol] * count;
+        if (count > 0) {
+          setElement(offset, symbols[symbol]);
+        }
+      }
+
+      return mass;
+    }
+  }
+}
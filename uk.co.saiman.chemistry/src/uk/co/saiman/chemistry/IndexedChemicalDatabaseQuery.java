@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static uk.co.saiman.measurement.Units.dalton;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.measure.Quantity;
+import javax.measure.quantity.Mass;
+
+import uk.co.saiman.mathematics.Interval;
+
+/**
+ * A query over an {@link IndexedChemicalDatabase}, narrowed to a contiguous
+ * range of the mass index and filtered by an element mask.
+ * 
+ * @author Elias N Vasylenko
+ */
+class IndexedChemicalDatabaseQuery implements ChemicalDatabaseQuery {
+  private final IndexedChemicalDatabase database;
+  private final int from;
+  private final int to;
+  private final long[] elementMask;
+
+  IndexedChemicalDatabaseQuery(
+      IndexedChemicalDatabase database,
+      int from,
+      int to,
+      long[] elementMask) {
+    this.database = database;
+    this.from = from;
+    this.to = to;
+    this.elementMask = elementMask;
+  }
+
+  private static double toDaltons(Quantity<Mass> mass) {
+    return mass.to(dalton().getUnit()).getValue().doubleValue();
+  }
+
+  @Override
+  public Set<Chemical> findChemicals() {
+    Set<Chemical> chemicals = new LinkedHashSet<>();
+    for (int i = from; i < to; i++) {
+      if (database.containsElements(i, elementMask)) {
+        chemicals.add(database.getChemical(i));
+      }
+    }
+    return chemicals;
+  }
+
+  @Override
+  public ChemicalDatabaseQuery withMass(Quantity<Mass> mass, double relativeErrorMargin) {
+    double daltons = toDaltons(mass);
+    double margin = Math.abs(daltons * relativeErrorMargin);
+    return withMassIndices(
+        database.getIndexAbove(daltons - margin, true),
+        database.getIndexAbove(daltons + margin, false));
+  }
+
+  @Override
+  public ChemicalDatabaseQuery withMass(Interval<Quantity<Mass>> massRange) {
+    int from = massRange.isLeftUnbounded()
+        ? 0
+        : database
+            .getIndexAbove(toDaltons(massRange.getLeftEndpoint()), massRange.isLeftClosed());
+    int to = massRange.isRightUnbounded()
+        ? database.size()
+        : database
+            .getIndexAbove(toDaltons(massRange.getRightEndpoint()), !massRange.isRightClosed());
+    return withMassIndices(from, to);
+  }
+
+  private ChemicalDatabaseQuery withMassIndices(int from, int to) {
+    from = max(this.from, from);
+    to = max(from, min(this.to, to));
+    return new IndexedChemicalDatabaseQuery(database, from, to, elementMask);
+  }
+
+  @Override
+  public ChemicalDatabaseQuery containingElements(ChemicalComposition composition) {
+    long[] mask = database.getElementMask(composition);
+    for (int i = 0; i < mask.length; i++) {
+      mask[i] |= elementMask[i];
+    }
+    return new IndexedChemicalDatabaseQuery(database, from, to, mask);
+  }
+}
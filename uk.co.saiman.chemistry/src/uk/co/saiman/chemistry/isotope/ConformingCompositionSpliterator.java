@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry.isotope;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import uk.co.saiman.chemistry.ChemicalComposition;
+import uk.co.saiman.chemistry.Element;
+import uk.co.saiman.chemistry.Isotope;
+import uk.co.saiman.mathematics.Interval;
+
+/**
+ * A bounded depth-first enumeration of the compositions which conform to a
+ * {@link MoleculeCompositionConstraint}.
+ * <p>
+ * Each constrained element, constrained isotope, and candidate unknown element
+ * is a term with a count. Terms are visited heaviest first, and at each depth
+ * the range of counts to try is narrowed to those for which the minimum and
+ * maximum achievable mass of the remaining terms can still land inside the mass
+ * constraints, so whole subtrees are discarded without being visited.
+ * <p>
+ * The search may be split by partitioning the range of counts of the shallowest
+ * undecided term, so a parallel stream will distribute it over a fork/join
+ * pool.
+ * 
+ * @author Elias N Vasylenko
+ */
+class ConformingCompositionSpliterator implements Spliterator<ChemicalComposition> {
+  private static class Term {
+    private final Element element;
+    private final Isotope isotope;
+    private final double monoisotopicMass;
+    private final double averageMass;
+    private final int minimum;
+    private final int maximum;
+    private final boolean unknown;
+
+    Term(Element element, Interval<Integer> count) {
+      this.element = element;
+      this.isotope = null;
+      this.monoisotopicMass = element.getMonoisotopicMass();
+      this.averageMass = element.getAverageMass();
+      this.minimum = getMinimumCount(count);
+      this.maximum = getMaximumCount(count);
+      this.unknown = false;
+    }
+
+    Term(Isotope isotope, Interval<Integer> count) {
+      this.element = null;
+      this.isotope = isotope;
+      this.monoisotopicMass = isotope.getMass();
+      this.averageMass = isotope.getMass();
+      this.minimum = getMinimumCount(count);
+      this.maximum = getMaximumCount(count);
+      this.unknown = false;
+    }
+
+    Term(Element element, int maximum) {
+      this.element = element;
+      this.isotope = null;
+      this.monoisotopicMass = element.getMonoisotopicMass();
+      this.averageMass = element.getAverageMass();
+      this.minimum = 0;
+      this.maximum = maximum;
+      this.unknown = true;
+    }
+  }
+
+  private final Interval<Double> monoisotopicMassConstraint;
+  private final Interval<Double> averageMassConstraint;
+  private final int unknownMinimum;
+  private final int unknownMaximum;
+
+  private final Term[] terms;
+  private final double[] minimumMonoisotopicRemainder;
+  private final double[] maximumMonoisotopicRemainder;
+  private final double[] minimumAverageRemainder;
+  private final double[] maximumAverageRemainder;
+  private final int[] unknownTermsRemainder;
+  private final int[] maximumCounts;
+
+  /*
+   * Search state. Frames below depth have a count assigned. When ascending, the
+   * frame at depth also has a count assigned and is the next to be
+   * incremented. The partial sums at index i cover terms 0 to i-1.
+   */
+  private final int[] counts;
+  private final int[] limits;
+  private final double[] monoisotopicMasses;
+  private final double[] averageMasses;
+  private final int[] unknownCounts;
+  private int root;
+  private int depth;
+  private boolean descending;
+
+  ConformingCompositionSpliterator(
+      Map<Element, Interval<Integer>> elementConstraints,
+      Map<Isotope, Interval<Integer>> isotopeConstraints,
+      Iterable<? extends Element> unknownElements,
+      Interval<Integer> unknownConstraint,
+      Interval<Double> monoisotopicMassConstraint,
+      Interval<Double> averageMassConstraint) {
+    this.monoisotopicMassConstraint = monoisotopicMassConstraint;
+    this.averageMassConstraint = averageMassConstraint;
+    this.unknownMinimum = getMinimumCount(unknownConstraint);
+    this.unknownMaximum = getMaximumCount(unknownConstraint);
+
+    List<Term> terms = new ArrayList<>();
+    elementConstraints.forEach((element, count) -> terms.add(new Term(element, count)));
+    isotopeConstraints.forEach((isotope, count) -> terms.add(new Term(isotope, count)));
+    if (unknownMaximum > 0) {
+      for (Element element : unknownElements) {
+        if (!elementConstraints.containsKey(element) && element.getMonoisotopicMass() > 0) {
+          terms.add(new Term(element, unknownMaximum));
+        }
+      }
+    }
+    terms.sort(Comparator.comparingDouble((Term t) -> t.monoisotopicMass).reversed());
+    this.terms = terms.toArray(new Term[terms.size()]);
+
+    int length = this.terms.length;
+    minimumMonoisotopicRemainder = new double[length + 1];
+    maximumMonoisotopicRemainder = new double[length + 1];
+    minimumAverageRemainder = new double[length + 1];
+    maximumAverageRemainder = new double[length + 1];
+    unknownTermsRemainder = new int[length + 1];
+    maximumCounts = new int[length];
+    for (int i = length - 1; i >= 0; i--) {
+      Term term = this.terms[i];
+      int maximum = maximumCounts[i] = getMaximumCount(term);
+      minimumMonoisotopicRemainder[i] = minimumMonoisotopicRemainder[i + 1]
+          + term.minimum * term.monoisotopicMass;
+      maximumMonoisotopicRemainder[i] = maximumMonoisotopicRemainder[i + 1]
+          + maximum * term.monoisotopicMass;
+      minimumAverageRemainder[i] = minimumAverageRemainder[i + 1]
+          + term.minimum * term.averageMass;
+      maximumAverageRemainder[i] = maximumAverageRemainder[i + 1] + maximum * term.averageMass;
+      unknownTermsRemainder[i] = unknownTermsRemainder[i + 1] + (term.unknown ? 1 : 0);
+    }
+
+    counts = new int[length];
+    limits = new int[length];
+    monoisotopicMasses = new double[length + 1];
+    averageMasses = new double[length + 1];
+    unknownCounts = new int[length + 1];
+
+    root = 0;
+    depth = 0;
+    descending = true;
+    if (length > 0 && !enter(0)) {
+      depth = -1;
+    }
+  }
+
+  private ConformingCompositionSpliterator(
+      ConformingCompositionSpliterator parent,
+      int from,
+      int to) {
+    monoisotopicMassConstraint = parent.monoisotopicMassConstraint;
+    averageMassConstraint = parent.averageMassConstraint;
+    unknownMinimum = parent.unknownMinimum;
+    unknownMaximum = parent.unknownMaximum;
+
+    terms = parent.terms;
+    minimumMonoisotopicRemainder = parent.minimumMonoisotopicRemainder;
+    maximumMonoisotopicRemainder = parent.maximumMonoisotopicRemainder;
+    minimumAverageRemainder = parent.minimumAverageRemainder;
+    maximumAverageRemainder = parent.maximumAverageRemainder;
+    unknownTermsRemainder = parent.unknownTermsRemainder;
+    maximumCounts = parent.maximumCounts;
+
+    counts = parent.counts.clone();
+    limits = parent.limits.clone();
+    monoisotopicMasses = parent.monoisotopicMasses.clone();
+    averageMasses = parent.averageMasses.clone();
+    unknownCounts = parent.unknownCounts.clone();
+
+    root = parent.root;
+    counts[root] = from;
+    limits[root] = to;
+    push(root);
+  }
+
+  private static int getMinimumCount(Interval<Integer> count) {
+    if (count.isLeftUnbounded()) {
+      return 0;
+    }
+    return max(0, count.isLeftClosed() ? count.getLeftEndpoint() : count.getLeftEndpoint() + 1);
+  }
+
+  private static int getMaximumCount(Interval<Integer> count) {
+    if (count.isRightUnbounded()) {
+      return Integer.MAX_VALUE;
+    }
+    return count.isRightClosed() ? count.getRightEndpoint() : count.getRightEndpoint() - 1;
+  }
+
+  /*
+   * The greatest count of a term allowed by its own constraint and the upper
+   * bound of the mass constraints alone.
+   */
+  private int getMaximumCount(Term term) {
+    int maximum = term.maximum;
+    if (!monoisotopicMassConstraint.isRightUnbounded() && term.monoisotopicMass > 0) {
+      maximum = min(
+          maximum,
+          (int) min(
+              Integer.MAX_VALUE - 1,
+              floor(monoisotopicMassConstraint.getRightEndpoint() / term.monoisotopicMass) + 1));
+    }
+    if (!averageMassConstraint.isRightUnbounded() && term.averageMass > 0) {
+      maximum = min(
+          maximum,
+          (int) min(
+              Integer.MAX_VALUE - 1,
+              floor(averageMassConstraint.getRightEndpoint() / term.averageMass) + 1));
+    }
+    if (maximum == Integer.MAX_VALUE) {
+      throw new IllegalStateException(
+          "Unbounded count for " + (term.element != null ? term.element : term.isotope)
+              + " with no upper mass constraint");
+    }
+    return maximum;
+  }
+
+  /*
+   * Narrow the count range of the term at the given depth to those which may
+   * still conform, given the partial sums of the terms above it. The range is
+   * conservative by one count at each end, conformance is decided exactly at
+   * the leaves.
+   */
+  private boolean enter(int depth) {
+    Term term = terms[depth];
+    double monoisotopicMass = monoisotopicMasses[depth];
+    double averageMass = averageMasses[depth];
+    int unknownCount = unknownCounts[depth];
+
+    if (monoisotopicMassConstraint
+        .isValueAbove(monoisotopicMass + minimumMonoisotopicRemainder[depth])
+        || monoisotopicMassConstraint
+            .isValueBelow(monoisotopicMass + maximumMonoisotopicRemainder[depth])
+        || averageMassConstraint.isValueAbove(averageMass + minimumAverageRemainder[depth])
+        || averageMassConstraint.isValueBelow(averageMass + maximumAverageRemainder[depth])
+        || unknownCount > unknownMaximum
+        || (unknownTermsRemainder[depth] == 0 && unknownCount < unknownMinimum)) {
+      return false;
+    }
+
+    long from = term.minimum;
+    long to = maximumCounts[depth];
+    if (term.unknown) {
+      to = min(to, unknownMaximum - unknownCount);
+    }
+
+    to = min(
+        to,
+        getMaximumCount(
+            monoisotopicMassConstraint,
+            monoisotopicMass + minimumMonoisotopicRemainder[depth + 1],
+            term.monoisotopicMass));
+    to = min(
+        to,
+        getMaximumCount(
+            averageMassConstraint,
+            averageMass + minimumAverageRemainder[depth + 1],
+            term.averageMass));
+    from = max(
+        from,
+        getMinimumCount(
+            monoisotopicMassConstraint,
+            monoisotopicMass + maximumMonoisotopicRemainder[depth + 1],
+            term.monoisotopicMass));
+    from = max(
+        from,
+        getMinimumCount(
+            averageMassConstraint,
+            averageMass + maximumAverageRemainder[depth + 1],
+            term.averageMass));
+
+    if (from > to) {
+      return false;
+    }
+
+    counts[depth] = (int) from;
+    limits[depth] = (int) to;
+    push(depth);
+    return true;
+  }
+
+  private static long getMaximumCount(Interval<Double> constraint, double mass, double termMass) {
+    if (constraint.isRightUnbounded() || termMass <= 0) {
+      return Long.MAX_VALUE;
+    }
+    return (long) floor((constraint.getRightEndpoint() - mass) / termMass) + 1;
+  }
+
+  private static long getMinimumCount(Interval<Double> constraint, double mass, double termMass) {
+    if (constraint.isLeftUnbounded() || termMass <= 0 || Double.isInfinite(mass)) {
+      return 0;
+    }
+    return (long) ceil((constraint.getLeftEndpoint() - mass) / termMass) - 1;
+  }
+
+  private void push(int depth) {
+    Term term = terms[depth];
+    int count = counts[depth];
+    monoisotopicMasses[depth + 1] = monoisotopicMasses[depth] + count * term.monoisotopicMass;
+    averageMasses[depth + 1] = averageMasses[depth] + count * term.averageMass;
+    unknownCounts[depth + 1] = unknownCounts[depth] + (term.unknown ? count : 0);
+    this.depth = depth + 1;
+    descending = true;
+  }
+
+  private ChemicalComposition conformingLeaf() {
+    if (unknownCounts[terms.length] < unknownMinimum
+        || unknownCounts[terms.length] > unknownMaximum) {
+      return null;
+    }
+
+    Map<Element, Integer> elements = new HashMap<>();
+    Map<Isotope, Integer> isotopes = new HashMap<>();
+    for (int i = 0; i < terms.length; i++) {
+      if (counts[i] > 0) {
+        if (terms[i].element != null) {
+          elements.put(terms[i].element, counts[i]);
+        } else {
+          isotopes.put(terms[i].isotope, counts[i]);
+        }
+      }
+    }
+    ChemicalComposition composition = ChemicalComposition
+        .nothing()
+        .withElements(elements)
+        .withIsotopes(isotopes);
+
+    if (!monoisotopicMassConstraint.contains(composition.getMonoisotopicMass())
+        || !averageMassConstraint.contains(composition.getAverageMass())) {
+      return null;
+    }
+    return composition;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super ChemicalComposition> action) {
+    while (depth >= root) {
+      if (descending) {
+        if (depth == terms.length) {
+          descending = false;
+          depth--;
+          ChemicalComposition composition = conformingLeaf();
+          if (composition != null) {
+            action.accept(composition);
+            return true;
+          }
+        } else if (!enter(depth)) {
+          descending = false;
+          depth--;
+        }
+      } else if (counts[depth] < limits[depth]) {
+        counts[depth]++;
+        push(depth);
+      } else {
+        depth--;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Spliterator<ChemicalComposition> trySplit() {
+    while (root < terms.length && (root < depth || (root == depth && !descending))) {
+      if (counts[root] < limits[root]) {
+        int from = counts[root] + 1 + (limits[root] - counts[root]) / 2;
+        ConformingCompositionSpliterator split = new ConformingCompositionSpliterator(
+            this,
+            from,
+            limits[root]);
+        limits[root] = from - 1;
+        return split;
+      }
+
+      /*
+       * The shallowest frame is fixed, so move the root down to the next
+       * frame, entering it first if the search hasn't reached it yet.
+       */
+      if (root + 1 == terms.length) {
+        return null;
+      }
+      if (depth == root + 1 && descending && !enter(root + 1)) {
+        descending = false;
+        depth = root;
+        return null;
+      }
+      if (depth == root) {
+        return null;
+      }
+      root++;
+    }
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    if (depth < root) {
+      return 0;
+    }
+    long size = 1;
+    for (int i = root; i < terms.length; i++) {
+      long range = (i == root && root < depth) ? limits[i] - counts[i] + 1
+          : maximumCounts[i] - terms[i].minimum + 1;
+      if (range > 1 && size > Long.MAX_VALUE / range) {
+        return Long.MAX_VALUE;
+      }
+      size *= max(range, 1);
+    }
+    return size;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+  }
+}
@@ -335,8 +335,11 @@ public class IsotopeDistribution {
   }
 
   /**
-   * Algorithm to calculate the actual distribution data. Implemented as a
-   * Markov tree (/Lattice in case of merging equivalent mass states).
+   * Algorithm to calculate the actual distribution data. The pattern of each
+   * element is raised to the number of atoms of that element by
+   * {@link IsotopePattern#power(int, double, double, int) exponentiation by
+   * squaring}, and the elements are then convolved together, pruning and
+   * merging states after each step.
    *
    * @param maxStates
    *          maximum number of states to consider (most probable first). zero
@@ -354,283 +357,108 @@ public class IsotopeDistribution {
       this.mergeDistance = mergeDistance;
     }
 
-    // keep old data in case of interrupt
-    TreeSet<MassAbundance> oldData = null;
-    if (data != null) {
-      oldData = new TreeSet<>(data);
-    }
-
     if (molecule.getElements().isEmpty() && molecule.getIsotopes().isEmpty()) {
       data = new TreeSet<>();
       return;
     }
 
-    dataHash = new HashSet<>();
     if (maxStates < 0) {
       maxStates = 0;
     }
+    boolean massNumbers = mergeDistance < 0;
+    double threshold = getPruningThreshold(minimumAbundance);
 
-    // general element data from molecule
     Map<Element, Integer> elementCounts = molecule.getElementCounts();
-    // specified isotope data from molecule
-    Map<Isotope, Integer> specificIsotopeCounts = molecule.getIsotopeCounts();
 
-    /*
-     * Implement algorithm as Markov trellis, current state set defined by
-     * 'dataApproximate'.
-     */
-    // check for elements with no meaningful isotope distribution (no naturally
-    // occurring isotopes)
-    for (Element element : elementCounts.keySet()) {
-      if (element.getIsotopes().size() == 0) {
-        throw new IsotopeDistributionException(
-            "No known isotopes for element: \"" + element.getName() + "\"");
-      }
-    }
-
-    // working variables for next state (sorted so pruning is quick as possible)
-    TreeSet<MassAbundance> nextState = new TreeSet<>();
-    MassAbundance nextMassAbundance;
-
-    // initial state
-    dataHash.add(new MassAbundance(0.0, 1.0));
-
-    // initial progress
-    long iteration = 0;
-    long iterations = 0;
+    IsotopePattern pattern = IsotopePattern.unit();
+    int elementsDone = 0;
     percentDone = 0;
-    double lastPercentDone = 0; // so we only report progress update every
-                                // percent
-
-    // while{for{ to iterate through trellis progression for each element
-    for (Element element : elementCounts.keySet()) {
-      for (int i = 0; i < elementCounts.get(element); i++) {
-        /*
-         * For progress monitoring - how long this is probably going to take.
-         */
-
-        if (maxStates > 0) {
-          long states = dataHash.size();
-
-          long furtherIterations = 0;
-          Iterator<Element> progressElementIterator = elementCounts.keySet().iterator();
-          Element nextElement;
-          boolean gotToHere = false; // some faffing around because we can't
-                                     // clone
-                                     // iterators
-          int startFrom = 0;
-          while (progressElementIterator.hasNext()) {
-            nextElement = progressElementIterator.next();
-            if (element == nextElement) {
-              gotToHere = true;
-              startFrom = i;
-            }
-            if (gotToHere) {
-              for (int s = startFrom; s < elementCounts.get(nextElement); s++) {
-                if (nextElement.isNaturallyOccurring()) {
-                  states *= nextElement.getNaturallyOccuringIsotopes().size();
-                } else {
-                  states *= nextElement.getIsotopes().size();
-                }
-
-                furtherIterations += states;
-                if (states > maxStates) {
-                  states = maxStates;
-                }
-              }
-              startFrom = 0;
-            }
-          }
-
-          for (Isotope isotope : specificIsotopeCounts.keySet()) {
-            for (int s = 0; s < specificIsotopeCounts.get(isotope); s++) {
-              iterations += states;
-            }
-          }
-
-          iterations = iteration + furtherIterations;
-
-          percentDone = 100d * iteration / iterations;
-          if (percentDone != lastPercentDone) {
-            lastPercentDone = percentDone;
-            fireActionEvent("progress");
-          }
-        } else {
-          percentDone = 50; // TODO calculate percent done in the case of
-                            // unbounded state set size
-        }
-
-        /*
-         * start actual calculations
-         */
-
-        nextState.clear();
-
-        TreeSet<Isotope> isotopes;
-        if (element.isNaturallyOccurring()) {
-          isotopes = element.getNaturallyOccuringIsotopes();
-        } else {
-          isotopes = element.getIsotopes();
-        }
-
-        for (Isotope isotope : isotopes) {
-          for (MassAbundance dataMassAbundance : dataHash) {
-            double mass;
-            if (mergeDistance >= 0) {
-              mass = dataMassAbundance.getMass() + isotope.getMass();
-            } else {
-              mass = dataMassAbundance.getMass() + isotope.getMassNumber();
-            }
-            double abundance;
-            if (element.isNaturallyOccurring()) {
-              abundance = dataMassAbundance.getAbundance() * isotope.getAbundance();
-            } else {
-              abundance = dataMassAbundance.getAbundance() / element.getIsotopes().size();
-            }
-            nextMassAbundance = new MassAbundance(mass, abundance);
-
-            // if too small to be resolvable to a double then don't bother...
-            if (nextMassAbundance.getAbundance() > 0) {
-              // add data to next state;
-              if (nextState.contains(nextMassAbundance)) {
-                MassAbundance existing = nextState.floor(nextMassAbundance);
-                double newAbundance = existing.getAbundance() + nextMassAbundance.getAbundance();
-                double newAbundanceVariance = existing.getAbundanceVariance()
-                    + nextMassAbundance.getAbundanceVariance();
-                double newMassVariance = (existing.getMassVariance() * existing.getAbundance()
-                    + nextMassAbundance.getMassVariance() * nextMassAbundance.getAbundance())
-                    / newAbundance;
-
-                nextState.remove(existing);
-                nextState.add(
-                    new MassAbundance(
-                        existing.getMass(),
-                        newAbundance,
-                        newMassVariance,
-                        newAbundanceVariance));
-              } else {
-                nextState.add(nextMassAbundance);
-              }
-            }
-
-            iteration++;
-
-            if (isCancelled()) {
-              data = oldData;
-              return;
-            }
-          }
-        }
-
-        /*
-         * merge masses closer than maximum resolvable resolution
-         */
-        mergeMassesWithinRange(mergeDistance, nextState);
-
-        /*
-         * next state set of Markov chain trellis and pruning and normalising
-         * (to reduce error)
-         */
-        dataHash.clear();
-        double highestProbability = 0;
-        if (maxStates == 0) {
-          for (MassAbundance dataMassAbundance : nextState) {
-            if (dataMassAbundance.getAbundance() > highestProbability) {
-              highestProbability = dataMassAbundance.getAbundance();
-            }
-          }
-
-          for (MassAbundance dataMassAbundance : nextState) {
-            dataHash.add(
-                dataMassAbundance
-                    .withAbundance(dataMassAbundance.getAbundance() / highestProbability));
-          }
-        } else {
-          Set<MassAbundance> abundanceSorted = new TreeSet<>(MassAbundance.abundanceComparator());
-          abundanceSorted.addAll(nextState);
-
-          highestProbability = abundanceSorted.iterator().next().getAbundance();
-
-          Iterator<MassAbundance> dataIterator = abundanceSorted.iterator();
-          int index = 0;
-          while (dataIterator.hasNext() && index++ < maxStates) {
-            MassAbundance dataMassAbundance = dataIterator.next();
-            dataHash.add(
-                dataMassAbundance
-                    .withAbundance(dataMassAbundance.getAbundance() / highestProbability));
-          }
-        }
-
-        nextState.clear();
+    for (Map.Entry<Element, Integer> elementCount : elementCounts.entrySet()) {
+      IsotopePattern elementPattern = IsotopePattern
+          .forElement(elementCount.getKey(), massNumbers)
+          .power(elementCount.getValue(), mergeDistance, threshold, maxStates);
+      pattern = pattern.convolve(elementPattern, mergeDistance, threshold, maxStates);
+
+      if (isCancelled()) {
+        return;
       }
+
+      percentDone = 100d * ++elementsDone / elementCounts.size();
+      fireActionEvent("progress");
     }
 
-    // while{for{ to iterate through trellis progression for specified isotopes
-    for (Isotope specificIsotope : specificIsotopeCounts.keySet()) {
-      for (int i = 0; i < specificIsotopeCounts.get(specificIsotope); i++) {
-        nextState.clear();
+    setPatternData(shiftBySpecifiedIsotopes(pattern, massNumbers), minimumAbundance);
+  }
 
-        for (MassAbundance dataMassAbundance : dataHash) {
-          nextMassAbundance = new MassAbundance();
+  /**
+   * Create an isotope distribution of aggregated isotopic variants, with one
+   * mass for each nominal mass at the mean mass of the variants which share it.
+   * The distribution is calculated by fast Fourier transform, and does not
+   * resolve fine structure, but is much faster than the exact calculation for
+   * large molecules.
+   *
+   * @param molecule
+   *          molecule to calculate for
+   * @param lowPrecision
+   *          use only mass numbers?
+   * @param minimumAbundance
+   *          minimum relative abundance to be considered
+   */
+  public void calculateAggregatedForMolecule(
+      ChemicalComposition molecule,
+      boolean lowPrecision,
+      double minimumAbundance) {
+    this.molecule = molecule;
+    cancelled = false;
+    mergeDistance = 1;
 
-          // are we using real mass?
-          if (mergeDistance >= 0) {
-            nextMassAbundance = nextMassAbundance
-                .withMass(dataMassAbundance.getMass() + specificIsotope.getMass());
-          } else {
-            nextMassAbundance = nextMassAbundance
-                .withMass(dataMassAbundance.getMass() + specificIsotope.getMassNumber());
-          }
-          nextMassAbundance = nextMassAbundance.withAbundance(dataMassAbundance.getAbundance());
-          // add data to next state;
-          if (nextState.contains(nextMassAbundance)) {
-            MassAbundance existing = nextState.floor(nextMassAbundance);
-            nextState.remove(existing);
-            nextState.add(
-                existing.withAbundance(
-                    existing.getAbundance() + nextMassAbundance.getAbundance()
-                        + dataMassAbundance.getAbundance()));
-          } else {
-            nextState.add(nextMassAbundance);
-          }
+    if (molecule.getElements().isEmpty() && molecule.getIsotopes().isEmpty()) {
+      data = new TreeSet<>();
+      return;
+    }
 
-          iteration++;
-          if (isCancelled()) {
-            data = oldData;
-            return;
-          }
-        }
+    IsotopePattern pattern = molecule.getElements().isEmpty()
+        ? IsotopePattern.unit()
+        : IsotopePattern
+            .aggregated(
+                molecule.getElementCounts(),
+                lowPrecision,
+                getPruningThreshold(minimumAbundance));
+    percentDone = 100;
 
-        /*
-         * don't need to merge masses closer than maximum resolvable resolution
-         * here, specific isotope shifts all states by same amount
-         */
+    setPatternData(shiftBySpecifiedIsotopes(pattern, lowPrecision), minimumAbundance);
+  }
 
-        /*
-         * next state set of Markov chain trellis. no pruning necessary as more
-         * states not added
-         */
+  /*
+   * Intermediate states are pruned three orders of magnitude below the minimum
+   * abundance requested of the result, so that the pruned states cannot
+   * meaningfully change it. The threshold is floored at the default pruning
+   * threshold, so a very small or zero minimum abundance never prunes less than
+   * the default and the intermediate patterns stay bounded.
+   */
+  private static double getPruningThreshold(double minimumAbundance) {
+    return Math.max(IsotopePattern.DEFAULT_PRUNING_THRESHOLD, minimumAbundance / 100 * 1e-3);
+  }
 
-        dataHash.clear();
-        dataHash.addAll(nextState);
-        nextState.clear();
-      }
+  private IsotopePattern shiftBySpecifiedIsotopes(IsotopePattern pattern, boolean massNumbers) {
+    /*
+     * specific isotopes shift all states by the same amount, so no merging or
+     * pruning is necessary
+     */
+    double shift = 0;
+    for (Map.Entry<Isotope, Integer> isotopeCount : molecule.getIsotopeCounts().entrySet()) {
+      Isotope isotope = isotopeCount.getKey();
+      shift += (massNumbers ? isotope.getMassNumber() : isotope.getMass())
+          * isotopeCount.getValue();
     }
+    return pattern.shifted(shift);
+  }
 
+  private void setPatternData(IsotopePattern pattern, double minimumAbundance) {
     /*
      * remove all peaks below a certain value
      */
-
-    Iterator<MassAbundance> dataIterator = dataHash.iterator();
-    while (dataIterator.hasNext()) {
-      if (dataIterator.next().getAbundance() < (minimumAbundance / 100)) {
-        dataIterator.remove();
-      }
-    }
-
-    // make data map sorted
-    data = new TreeSet<>();
-    data.addAll(dataHash);
+    data = new TreeSet<>(pattern.thresholded(minimumAbundance / 100).toMassAbundances());
 
     // notify of change
     dataChangedInternal(true);
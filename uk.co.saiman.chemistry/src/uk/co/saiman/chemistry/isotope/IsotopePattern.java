@@ -0,0 +1,637 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry.isotope;
+
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.hypot;
+import static java.lang.Math.max;
+import static java.lang.Math.pow;
+import static java.lang.Math.sin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.saiman.chemistry.Element;
+import uk.co.saiman.chemistry.Isotope;
+import uk.co.saiman.data.function.processing.FastFourierTransform;
+
+/**
+ * An isotope pattern held as primitive arrays of mass, abundance, and mass
+ * variance, sorted by mass. This is the calculation engine beneath
+ * {@link IsotopeDistribution}.
+ * <p>
+ * Patterns are combined by {@link #convolve(IsotopePattern, double, double, int)
+ * convolution}, and the pattern of many atoms of an element is found by
+ * {@link #power(int, double, double, int) exponentiation by squaring}, so the
+ * number of convolutions grows with the logarithm of the number of atoms. After
+ * each convolution peaks closer than the merge distance are merged, and peaks
+ * less abundant than the pruning threshold relative to the most abundant peak
+ * are discarded, which keeps the size of the pattern bounded for large
+ * molecules.
+ * <p>
+ * Alternatively, {@link #aggregated(Map, boolean, double)} calculates the
+ * pattern of aggregated isotopic variants on a grid of nominal mass by fast
+ * Fourier transform, giving one peak for each nominal mass at the mean mass of
+ * the variants which share it.
+ * <p>
+ * Patterns are immutable, and abundances are normalized such that the most
+ * abundant peak has an abundance of 1.
+ * 
+ * @author Elias N Vasylenko
+ */
+public final class IsotopePattern {
+  /**
+   * The default abundance, relative to the most abundant peak, below which
+   * peaks are discarded from intermediate patterns.
+   */
+  public static final double DEFAULT_PRUNING_THRESHOLD = 1e-9;
+
+  /*
+   * The distance within which masses are considered equal even when no merge
+   * distance is given, to absorb rounding differences between sums of the
+   * same isotopes taken in a different order.
+   */
+  private static final double MASS_TOLERANCE = 1e-6;
+
+  /*
+   * The largest nominal mass grid over which to calculate an aggregated
+   * pattern.
+   */
+  private static final int MAXIMUM_GRID_SIZE = 1 << 24;
+
+  private static final IsotopePattern UNIT = new IsotopePattern(
+      new double[] { 0 },
+      new double[] { 1 },
+      new double[] { 0 },
+      1);
+
+  private final double[] masses;
+  private final double[] abundances;
+  private final double[] massVariances;
+  private final int size;
+
+  private IsotopePattern(double[] masses, double[] abundances, double[] massVariances, int size) {
+    this.masses = masses;
+    this.abundances = abundances;
+    this.massVariances = massVariances;
+    this.size = size;
+  }
+
+  /**
+   * @return the pattern of nothing, a single peak of mass 0, which is the
+   *         identity of convolution
+   */
+  public static IsotopePattern unit() {
+    return UNIT;
+  }
+
+  /**
+   * The pattern of a single atom of the given element. If the element has no
+   * naturally occurring isotopes, each of its known isotopes is considered
+   * equally abundant.
+   * 
+   * @param element     the element
+   * @param massNumbers true to use the mass numbers of the isotopes rather
+   *                    than their masses
+   * @return the pattern of the element
+   * @throws IsotopeDistributionException if the element has no known isotopes
+   */
+  public static IsotopePattern forElement(Element element, boolean massNumbers) {
+    boolean naturallyOccurring = element.isNaturallyOccurring();
+    Collection<Isotope> isotopes = naturallyOccurring
+        ? element.getNaturallyOccuringIsotopes()
+        : element.getIsotopes();
+    if (isotopes.isEmpty()) {
+      throw new IsotopeDistributionException(
+          "No known isotopes for element: \"" + element.getName() + "\"");
+    }
+
+    int size = isotopes.size();
+    double[] masses = new double[size];
+    double[] abundances = new double[size];
+    int i = 0;
+    for (Isotope isotope : isotopes) {
+      masses[i] = massNumbers ? isotope.getMassNumber() : isotope.getMass();
+      abundances[i] = naturallyOccurring ? isotope.getAbundance() : 1d / size;
+      i++;
+    }
+
+    return fromUnsorted(masses, abundances, size).normalized();
+  }
+
+  /**
+   * Create a pattern from the given peaks, which need not be sorted, merging
+   * peaks of equal mass.
+   * 
+   * @param masses     the masses of the peaks
+   * @param abundances the abundances of the peaks
+   * @return a pattern of the given peaks
+   */
+  public static IsotopePattern of(double[] masses, double[] abundances) {
+    if (masses.length != abundances.length) {
+      throw new IllegalArgumentException(masses.length + " != " + abundances.length);
+    }
+    return fromUnsorted(masses.clone(), abundances.clone(), masses.length).normalized();
+  }
+
+  private static IsotopePattern fromUnsorted(double[] masses, double[] abundances, int size) {
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(masses[a], masses[b]));
+
+    Merger merger = new Merger(size, 0);
+    for (int i = 0; i < size; i++) {
+      merger.add(masses[order[i]], abundances[order[i]], 0);
+    }
+    return merger.finish();
+  }
+
+  /**
+   * @return the number of peaks in the pattern
+   */
+  public int size() {
+    return size;
+  }
+
+  public double getMass(int index) {
+    checkIndex(index);
+    return masses[index];
+  }
+
+  public double getAbundance(int index) {
+    checkIndex(index);
+    return abundances[index];
+  }
+
+  public double getMassVariance(int index) {
+    checkIndex(index);
+    return massVariances[index];
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+  }
+
+  /**
+   * @return the peaks of the pattern in order of mass
+   */
+  public List<MassAbundance> toMassAbundances() {
+    List<MassAbundance> massAbundances = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      massAbundances.add(new MassAbundance(masses[i], abundances[i], massVariances[i], 0));
+    }
+    return massAbundances;
+  }
+
+  /**
+   * @param mass the mass to add to each peak
+   * @return the pattern with every peak moved by the given mass
+   */
+  public IsotopePattern shifted(double mass) {
+    double[] masses = new double[size];
+    for (int i = 0; i < size; i++) {
+      masses[i] = this.masses[i] + mass;
+    }
+    return new IsotopePattern(masses, abundances, massVariances, size);
+  }
+
+  /**
+   * @param threshold the abundance relative to the most abundant peak below
+   *                  which peaks are discarded
+   * @return the pattern without peaks below the threshold
+   */
+  public IsotopePattern thresholded(double threshold) {
+    Merger merger = new Merger(size, 0);
+    double limit = threshold * maximumAbundance();
+    for (int i = 0; i < size; i++) {
+      if (abundances[i] >= limit) {
+        merger.add(masses[i], abundances[i], massVariances[i]);
+      }
+    }
+    return merger.finish();
+  }
+
+  /**
+   * @param maximumPeaks the maximum number of peaks to keep, or 0 for no limit
+   * @return the pattern with only the given number of most abundant peaks
+   */
+  public IsotopePattern limitedTo(int maximumPeaks) {
+    if (maximumPeaks <= 0 || size <= maximumPeaks) {
+      return this;
+    }
+
+    double[] sorted = Arrays.copyOf(abundances, size);
+    Arrays.sort(sorted);
+    double limit = sorted[size - maximumPeaks];
+
+    /*
+     * Keep every peak above the limit, and as many peaks equal to it as fit
+     */
+    int ties = maximumPeaks;
+    for (int i = size - maximumPeaks; i < size; i++) {
+      if (sorted[i] > limit) {
+        ties--;
+      }
+    }
+
+    Merger merger = new Merger(maximumPeaks, 0);
+    for (int i = 0; i < size; i++) {
+      if (abundances[i] > limit || (abundances[i] == limit && ties-- > 0)) {
+        merger.add(masses[i], abundances[i], massVariances[i]);
+      }
+    }
+    return merger.finish();
+  }
+
+  /**
+   * @return the pattern scaled such that the most abundant peak has an
+   *         abundance of 1
+   */
+  public IsotopePattern normalized() {
+    double maximum = maximumAbundance();
+    if (maximum == 1 || maximum == 0) {
+      return this;
+    }
+    double[] abundances = new double[size];
+    for (int i = 0; i < size; i++) {
+      abundances[i] = this.abundances[i] / maximum;
+    }
+    return new IsotopePattern(masses, abundances, massVariances, size);
+  }
+
+  private double maximumAbundance() {
+    double maximum = 0;
+    for (int i = 0; i < size; i++) {
+      maximum = max(maximum, abundances[i]);
+    }
+    return maximum;
+  }
+
+  /**
+   * Find the pattern of the combination of the molecules described by this
+   * pattern and the given pattern.
+   * 
+   * @param that          the pattern to combine with
+   * @param mergeDistance the distance within which peaks are merged into a
+   *                      single peak at their mean mass, or 0 to merge only
+   *                      equal masses
+   * @param threshold     the abundance relative to the most abundant peak
+   *                      below which peaks are discarded
+   * @param maximumPeaks  the maximum number of peaks to keep, or 0 for no limit
+   * @return the combined pattern
+   */
+  public IsotopePattern convolve(
+      IsotopePattern that,
+      double mergeDistance,
+      double threshold,
+      int maximumPeaks) {
+    /*
+     * Each peak of the shorter pattern shifts a copy of the longer pattern,
+     * giving a run of products which is already sorted by mass. The runs are
+     * merged through a heap, so the products come out in order of mass and
+     * close peaks can be merged in a single pass.
+     */
+    IsotopePattern runs = this.size <= that.size ? this : that;
+    IsotopePattern run = this.size <= that.size ? that : this;
+
+    double limit = threshold * runs.maximumAbundance() * run.maximumAbundance();
+
+    int[] heap = new int[runs.size];
+    int[] positions = new int[runs.size];
+    int heapSize = 0;
+    for (int r = 0; r < runs.size; r++) {
+      heap[heapSize++] = r;
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(heap, heapSize, i, positions, runs, run);
+    }
+
+    Merger merger = new Merger((int) Math.min((long) runs.size * run.size, 1 << 16), mergeDistance);
+    while (heapSize > 0) {
+      int r = heap[0];
+      int p = positions[r];
+
+      double abundance = runs.abundances[r] * run.abundances[p];
+      if (abundance >= limit) {
+        merger
+            .add(
+                runs.masses[r] + run.masses[p],
+                abundance,
+                runs.massVariances[r] + run.massVariances[p]);
+      }
+
+      if (++positions[r] == run.size) {
+        heap[0] = heap[--heapSize];
+      }
+      if (heapSize > 0) {
+        siftDown(heap, heapSize, 0, positions, runs, run);
+      }
+    }
+
+    return merger.finish().thresholded(threshold).limitedTo(maximumPeaks).normalized();
+  }
+
+  private static void siftDown(
+      int[] heap,
+      int heapSize,
+      int index,
+      int[] positions,
+      IsotopePattern runs,
+      IsotopePattern run) {
+    int r = heap[index];
+    double mass = runs.masses[r] + run.masses[positions[r]];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      double childMass = runs.masses[heap[child]] + run.masses[positions[heap[child]]];
+      if (child + 1 < heapSize) {
+        double rightMass = runs.masses[heap[child + 1]] + run.masses[positions[heap[child + 1]]];
+        if (rightMass < childMass) {
+          child++;
+          childMass = rightMass;
+        }
+      }
+      if (childMass >= mass) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = r;
+  }
+
+  /**
+   * Find the pattern of the given number of molecules described by this
+   * pattern, by exponentiation by squaring.
+   * 
+   * @param count         the number of molecules
+   * @param mergeDistance the distance within which peaks are merged into a
+   *                      single peak at their mean mass, or 0 to merge only
+   *                      equal masses
+   * @param threshold     the abundance relative to the most abundant peak
+   *                      below which peaks are discarded
+   * @param maximumPeaks  the maximum number of peaks to keep, or 0 for no limit
+   * @return the pattern of the given number of molecules
+   */
+  public IsotopePattern power(int count, double mergeDistance, double threshold, int maximumPeaks) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Negative count " + count);
+    }
+
+    IsotopePattern result = UNIT;
+    IsotopePattern square = this;
+    while (count > 0) {
+      if ((count & 1) != 0) {
+        result = result == UNIT
+            ? square
+            : result.convolve(square, mergeDistance, threshold, maximumPeaks);
+      }
+      count >>>= 1;
+      if (count > 0) {
+        square = square.convolve(square, mergeDistance, threshold, maximumPeaks);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Calculate the pattern of aggregated isotopic variants of the given
+   * elements by fast Fourier transform over a grid of nominal mass. The
+   * resulting pattern has at most one peak for each nominal mass, positioned at
+   * the mean mass of the isotopic variants which share that nominal mass, and
+   * so does not resolve fine structure.
+   * 
+   * @param elementCounts the number of atoms of each element
+   * @param massNumbers   true to use the mass numbers of the isotopes rather
+   *                      than their masses
+   * @param threshold     the abundance relative to the most abundant peak
+   *                      below which peaks are discarded
+   * @return the aggregated pattern
+   * @throws IsotopeDistributionException if an element has no known isotopes,
+   *                                      or the grid would be too large
+   */
+  public static IsotopePattern aggregated(
+      Map<Element, Integer> elementCounts,
+      boolean massNumbers,
+      double threshold) {
+    int elements = elementCounts.size();
+    IsotopePattern[] patterns = new IsotopePattern[elements];
+    int[] counts = new int[elements];
+    int[] lowestMassNumbers = new int[elements];
+
+    long span = 0;
+    int lowestMassNumber = 0;
+    int e = 0;
+    for (Map.Entry<Element, Integer> elementCount : elementCounts.entrySet()) {
+      if (elementCount.getValue() <= 0) {
+        throw new IllegalArgumentException("Non-positive count " + elementCount.getValue());
+      }
+      patterns[e] = forElement(elementCount.getKey(), true);
+      counts[e] = elementCount.getValue();
+      lowestMassNumbers[e] = (int) patterns[e].masses[0];
+      span += (long) counts[e]
+          * (int) (patterns[e].masses[patterns[e].size - 1] - patterns[e].masses[0]);
+      lowestMassNumber += counts[e] * lowestMassNumbers[e];
+      e++;
+    }
+    if (span + 1 > MAXIMUM_GRID_SIZE) {
+      throw new IsotopeDistributionException("Isotope distribution too wide: " + span);
+    }
+
+    FastFourierTransform transform = new FastFourierTransform(
+        FastFourierTransform.sizeFor((int) span + 1));
+    int gridSize = transform.getSize();
+
+    /*
+     * For each element, the transform of the abundances on the grid raised to
+     * the number of atoms, and the transform of the abundances weighted by the
+     * mass of each isotope.
+     */
+    double[][] powerReal = new double[elements][gridSize];
+    double[][] powerImaginary = new double[elements][gridSize];
+    double[][] weightedReal = new double[elements][gridSize];
+    double[][] weightedImaginary = new double[elements][gridSize];
+    e = 0;
+    for (Map.Entry<Element, Integer> elementCount : elementCounts.entrySet()) {
+      IsotopePattern massPattern = massNumbers
+          ? patterns[e]
+          : forElement(elementCount.getKey(), false);
+
+      /*
+       * Normalize each element to a total abundance of 1, so that raising it to
+       * a large power neither overflows nor underflows
+       */
+      double total = 0;
+      for (int i = 0; i < patterns[e].size; i++) {
+        total += patterns[e].abundances[i];
+      }
+      for (int i = 0; i < patterns[e].size; i++) {
+        int bin = (int) patterns[e].masses[i] - lowestMassNumbers[e];
+        double abundance = patterns[e].abundances[i] / total;
+        powerReal[e][bin] += abundance;
+        weightedReal[e][bin] += abundance * massPattern.masses[i];
+      }
+      transform.forward(powerReal[e], powerImaginary[e]);
+      transform.forward(weightedReal[e], weightedImaginary[e]);
+
+      /*
+       * The weighted transform takes every atom but one from the power
+       */
+      for (int k = 0; k < gridSize; k++) {
+        double magnitude = hypot(powerReal[e][k], powerImaginary[e][k]);
+        double phase = atan2(powerImaginary[e][k], powerReal[e][k]);
+
+        double partialMagnitude = counts[e] * pow(magnitude, counts[e] - 1);
+        double partialReal = partialMagnitude * cos(phase * (counts[e] - 1));
+        double partialImaginary = partialMagnitude * sin(phase * (counts[e] - 1));
+        double real = weightedReal[e][k];
+        weightedReal[e][k] = real * partialReal - weightedImaginary[e][k] * partialImaginary;
+        weightedImaginary[e][k] = real * partialImaginary + weightedImaginary[e][k] * partialReal;
+
+        double powerMagnitude = pow(magnitude, counts[e]);
+        powerReal[e][k] = powerMagnitude * cos(phase * counts[e]);
+        powerImaginary[e][k] = powerMagnitude * sin(phase * counts[e]);
+      }
+      e++;
+    }
+
+    /*
+     * The abundances are the product of the powers, and the mass-weighted
+     * abundances are, for each element, its weighted transform times the
+     * powers of the other elements.
+     */
+    double[] abundanceReal = new double[gridSize];
+    double[] abundanceImaginary = new double[gridSize];
+    double[] massReal = new double[gridSize];
+    double[] massImaginary = new double[gridSize];
+    for (int k = 0; k < gridSize; k++) {
+      double real = 1;
+      double imaginary = 0;
+      for (int f = 0; f < elements; f++) {
+        double product = real * powerReal[f][k] - imaginary * powerImaginary[f][k];
+        imaginary = real * powerImaginary[f][k] + imaginary * powerReal[f][k];
+        real = product;
+      }
+      abundanceReal[k] = real;
+      abundanceImaginary[k] = imaginary;
+
+      for (e = 0; e < elements; e++) {
+        real = weightedReal[e][k];
+        imaginary = weightedImaginary[e][k];
+        for (int f = 0; f < elements; f++) {
+          if (f != e) {
+            double product = real * powerReal[f][k] - imaginary * powerImaginary[f][k];
+            imaginary = real * powerImaginary[f][k] + imaginary * powerReal[f][k];
+            real = product;
+          }
+        }
+        massReal[k] += real;
+        massImaginary[k] += imaginary;
+      }
+    }
+    transform.inverse(abundanceReal, abundanceImaginary);
+    transform.inverse(massReal, massImaginary);
+
+    double maximum = 0;
+    for (int k = 0; k <= span; k++) {
+      maximum = max(maximum, abundanceReal[k]);
+    }
+
+    double limit = max(threshold, DEFAULT_PRUNING_THRESHOLD) * maximum;
+    Merger merger = new Merger((int) span + 1, 0);
+    for (int k = 0; k <= span; k++) {
+      if (abundanceReal[k] >= limit && abundanceReal[k] > 0) {
+        double mass = massNumbers ? lowestMassNumber + k : massReal[k] / abundanceReal[k];
+        merger.add(mass, abundanceReal[k], 0);
+      }
+    }
+    return merger.finish().normalized();
+  }
+
+  /*
+   * Accumulates peaks in order of mass into primitive arrays, merging each peak
+   * into the last when they are within the merge distance.
+   */
+  private static class Merger {
+    private final double mergeDistance;
+
+    private double[] masses;
+    private double[] abundances;
+    private double[] massVariances;
+    private int size;
+
+    Merger(int capacity, double mergeDistance) {
+      this.mergeDistance = max(mergeDistance, MASS_TOLERANCE);
+      this.masses = new double[max(capacity, 1)];
+      this.abundances = new double[masses.length];
+      this.massVariances = new double[masses.length];
+    }
+
+    void add(double mass, double abundance, double massVariance) {
+      if (size > 0 && mass - masses[size - 1] < mergeDistance) {
+        int last = size - 1;
+        double lastAbundance = abundances[last];
+        double mergedAbundance = lastAbundance + abundance;
+        double mergedMass = (masses[last] * lastAbundance + mass * abundance) / mergedAbundance;
+
+        double lastDifference = mergedMass - masses[last];
+        double difference = mass - mergedMass;
+        massVariances[last] = ((massVariances[last] + lastDifference * lastDifference)
+            * lastAbundance + (massVariance + difference * difference) * abundance)
+            / mergedAbundance;
+        masses[last] = mergedMass;
+        abundances[last] = mergedAbundance;
+      } else {
+        if (size == masses.length) {
+          int capacity = size * 2;
+          masses = Arrays.copyOf(masses, capacity);
+          abundances = Arrays.copyOf(abundances, capacity);
+          massVariances = Arrays.copyOf(massVariances, capacity);
+        }
+        masses[size] = mass;
+        abundances[size] = abundance;
+        massVariances[size] = massVariance;
+        size++;
+      }
+    }
+
+    IsotopePattern finish() {
+      return new IsotopePattern(masses, abundances, massVariances, size);
+    }
+  }
+}
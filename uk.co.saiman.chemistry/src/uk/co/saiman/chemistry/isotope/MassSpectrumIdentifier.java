@@ -86,7 +86,7 @@ public class MassSpectrumIdentifier {
 
 			// go through each possible molecule from this constraint
 
-			Iterator<ChemicalComposition> moleculeIterator = constraint.getConformingMolecules().iterator();
+			Iterator<ChemicalComposition> moleculeIterator = constraint.conformingMolecules().iterator();
 			IsotopeDistribution comparisonDistribution;
 
 			while (moleculeIterator.hasNext()) {
@@ -27,13 +27,13 @@
  */
 package uk.co.saiman.chemistry.isotope;
 
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Iterator;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toSet;
+
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import uk.co.saiman.chemistry.ChemicalComposition;
 import uk.co.saiman.chemistry.Element;
@@ -61,10 +61,6 @@ public class MoleculeCompositionConstraint {
   // elements
   private final PeriodicTable periodicTable;
 
-  // elements by reverse mass for speed -
-  // sort elements by those more likely to fail first
-  private SortedSet<Element> elementsHeaviestFirst;
-
   public MoleculeCompositionConstraint() {
     this.periodicTable = null; // cannot set unknown constraints with null
                                // periodicTable
@@ -119,164 +115,45 @@ public class MoleculeCompositionConstraint {
     unknownConstraint = Interval.bounded(0, 0);
     averageMassConstraint = Interval.unbounded();
     monoisotopicMassConstraint = Interval.unbounded();
-    elementsHeaviestFirst = new TreeSet<>(new Comparator<Element>() {
-      @Override
-      public int compare(Element first, Element second) {
-        if (first.getMonoisotopicMass() == second.getMonoisotopicMass()) {
-          return 0;
-        }
-        if (first.getMonoisotopicMass() > second.getMonoisotopicMass()) {
-          return 1;
-        }
-        return -1;
-      }
-    });
-    elementsHeaviestFirst.addAll(periodicTable.getElements());
   }
 
   public Set<ChemicalComposition> getConformingMolecules() {
-    if (averageMassConstraint.getRightEndpoint() != null
-        && averageMassConstraint.getRightEndpoint() == 0) {
-      averageMassConstraint = Interval.unbounded();
-    }
-    if (monoisotopicMassConstraint.getRightEndpoint() != null
-        && monoisotopicMassConstraint.getRightEndpoint() == 0) {
-      monoisotopicMassConstraint = Interval.unbounded();
-    }
-
-    ChemicalComposition molecule = ChemicalComposition.nothing();
-
-    Iterator<Element> elementIterator = elementConstraints.keySet().iterator();
-    Element element;
-    while (elementIterator.hasNext()) {
-      element = elementIterator.next();
-
-      int elementMinimum = 0;
-      Interval<Integer> elementInterval = elementConstraints.get(element);
-      if (!elementInterval.isLeftUnbounded()) {
-        elementMinimum = elementInterval.getLeftEndpoint();
-        if (!elementInterval.isLeftClosed()) {
-          elementMinimum++;
-        }
-
-        if (elementMinimum > 0) {
-          molecule.withElement(element, elementMinimum);
-          if (averageMassConstraint.isValueBelow(molecule.getAverageMass())) {
-            return new HashSet<>();
-          }
-          if (monoisotopicMassConstraint.isValueBelow(molecule.getMonoisotopicMass())) {
-            return new HashSet<>();
-          }
-        }
-      }
-    }
-
-    Iterator<Isotope> isotopeIterator = isotopeConstraints.keySet().iterator();
-    Isotope isotope;
-    while (isotopeIterator.hasNext()) {
-      isotope = isotopeIterator.next();
-
-      int isotopeMinimum = 0;
-      Interval<Integer> isotopeInterval = isotopeConstraints.get(isotope);
-      if (!isotopeInterval.isLeftUnbounded()) {
-        isotopeMinimum = isotopeInterval.getLeftEndpoint();
-        if (!isotopeInterval.isLeftClosed()) {
-          isotopeMinimum++;
-        }
-
-        if (isotopeMinimum > 0) {
-          molecule.withIsotope(isotope, isotopeMinimum);
-        }
-      }
-    }
-
-    return conformingMoleculeRecursion(molecule, 0, null, 0);
+    return conformingMolecules().collect(toSet());
   }
 
-  private Set<ChemicalComposition> conformingMoleculeRecursion(
-      ChemicalComposition molecule,
-      int unknown,
-      Element previousElement,
-      int previousIsotope) {
-    ChemicalComposition nextMolecule;
-
-    Set<ChemicalComposition> possibleMoleculesSet = new HashSet<>();
-
-    if (averageMassConstraint.isValueBelow(molecule.getAverageMass())) {
-      return possibleMoleculesSet;
-    }
-    if (monoisotopicMassConstraint.isValueBelow(molecule.getMonoisotopicMass())) {
-      return possibleMoleculesSet;
-    }
-
-    if (previousElement == null) {
-      previousElement = elementsHeaviestFirst.first();
-    }
-
-    if (unknown >= 0 && (!unknownConstraint.isValueBelow(unknown + 1))) {
-      Iterator<Element> elementIterator = elementsHeaviestFirst.tailSet(previousElement).iterator();
-      Element element;
-      while (elementIterator.hasNext()) {
-        element = elementIterator.next();
-        if (!elementConstraints.containsKey(element)) {
-          nextMolecule = molecule;
-          nextMolecule.withElement(element);
-          possibleMoleculesSet
-              .addAll(conformingMoleculeRecursion(nextMolecule, unknown + 1, element, 0));
-        }
-      }
-    }
-    if (unknown == -1 || unknownConstraint.contains(unknown)) {
-      if (previousIsotope == 0) {
-        Iterator<Element> elementIterator;
-        if (unknown == -1) {
-          elementIterator = ((SortedSet<Element>) elementConstraints.keySet())
-              .tailSet(previousElement)
-              .iterator();
-        } else {
-          elementIterator = ((SortedSet<Element>) elementConstraints.keySet()).iterator();
-        }
-        Element element;
-        while (elementIterator.hasNext()) {
-          element = elementIterator.next();
-          nextMolecule = molecule;
-          nextMolecule.withElement(element);
-          if (elementConstraints.get(element).contains(nextMolecule.elementCount(element))) {
-            possibleMoleculesSet.addAll(conformingMoleculeRecursion(nextMolecule, -1, element, 0));
-          }
-        }
-      }
-
-      Iterator<Isotope> isotopeIterator;
-      if (previousIsotope == 0) {
-        isotopeIterator = ((SortedSet<Isotope>) getIsotopeConstraints().keySet()).iterator();
-      } else {
-        isotopeIterator = ((SortedSet<Isotope>) getIsotopeConstraints().keySet())
-            .tailSet(previousElement.getIsotope(previousIsotope))
-            .iterator();
-      }
-      Isotope isotope;
-      while (isotopeIterator.hasNext()) {
-        isotope = isotopeIterator.next();
-        nextMolecule = molecule;
-        nextMolecule.withIsotope(isotope);
-        if (getIsotopeConstraints().get(isotope).contains(nextMolecule.isotopeCount(isotope))) {
-          possibleMoleculesSet
-              .addAll(
-                  conformingMoleculeRecursion(
-                      nextMolecule,
-                      -1,
-                      isotope.getElement(),
-                      isotope.getMassNumber()));
-        }
-      }
-    }
+  /**
+   * Enumerate the molecules which conform to this constraint. Elements are
+   * considered heaviest first and the search is pruned wherever the remaining
+   * elements can no longer reach the mass constraints, so molecules are
+   * produced lazily without materializing the whole space. The resulting stream
+   * may be made {@link Stream#parallel() parallel} to split the search over the
+   * common fork/join pool.
+   * 
+   * @return a stream of conforming molecules
+   * @throws IllegalStateException
+   *           if the count of some element is bounded by neither its own
+   *           constraint nor an upper mass constraint
+   */
+  public Stream<ChemicalComposition> conformingMolecules() {
+    Interval<Double> averageMassConstraint = unboundedIfZero(this.averageMassConstraint);
+    Interval<Double> monoisotopicMassConstraint = unboundedIfZero(this.monoisotopicMassConstraint);
+
+    return StreamSupport
+        .stream(
+            new ConformingCompositionSpliterator(
+                elementConstraints,
+                isotopeConstraints,
+                periodicTable == null ? emptySet() : periodicTable.getElements(),
+                getUnknownConstraint() == null ? Interval.bounded(0, 0) : unknownConstraint,
+                monoisotopicMassConstraint,
+                averageMassConstraint),
+            false);
+  }
 
-    if (averageMassConstraint.contains(molecule.getAverageMass())
-        && monoisotopicMassConstraint.contains(molecule.getMonoisotopicMass())) {
-      possibleMoleculesSet.add(molecule);
+  private static Interval<Double> unboundedIfZero(Interval<Double> massConstraint) {
+    if (massConstraint.getRightEndpoint() != null && massConstraint.getRightEndpoint() == 0) {
+      return Interval.unbounded();
     }
-
-    return possibleMoleculesSet;
+    return massConstraint;
   }
 }
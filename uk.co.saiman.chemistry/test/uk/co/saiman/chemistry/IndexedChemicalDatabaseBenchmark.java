@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry;
+
+import static uk.co.saiman.chemistry.IndexedChemicalDatabaseTest.TABLE;
+import static uk.co.saiman.chemistry.IndexedChemicalDatabaseTest.daltons;
+import static uk.co.saiman.chemistry.IndexedChemicalDatabaseTest.source;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.NITROGEN;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.annotation.Annotation;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.measure.Quantity;
+import javax.measure.quantity.Mass;
+
+import uk.co.saiman.chemistry.ChemicalDatabaseService.ChemicalDatabaseConfiguration;
+
+/**
+ * A benchmark of loading a synthetic {@link IndexedChemicalDatabase} and of
+ * querying it by mass and element, and of activating a
+ * {@link ChemicalDatabaseService} over the same entries in a file.
+ * <p>
+ * Run from the test classpath with an optional argument for the number of
+ * entries, which defaults to a million.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class IndexedChemicalDatabaseBenchmark {
+  public static void main(String... args) throws IOException {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    String source = source(entries, 0);
+    ChemicalComposition nitrogen = ChemicalComposition.nothing().withElement(NITROGEN);
+
+    int queries = 10_000;
+    List<Quantity<Mass>> masses = new ArrayList<>(queries);
+    for (int i = 0; i < queries; i++) {
+      masses.add(daltons(100 + i * 0.07));
+    }
+
+    for (int round = 0; round < 5; round++) {
+      System.gc();
+      long start = System.nanoTime();
+      IndexedChemicalDatabase database = IndexedChemicalDatabase
+          .load(new BufferedReader(new StringReader(source)), TABLE);
+      long loaded = System.nanoTime();
+
+      int found = 0;
+      for (Quantity<Mass> mass : masses) {
+        found += database
+            .query()
+            .withMass(mass, 2e-6)
+            .containingElements(nitrogen)
+            .findChemicals()
+            .size();
+      }
+      long queried = System.nanoTime();
+
+      System.out
+          .printf(
+              "%d entries loaded in %.1f ms, %d queries at 2 ppm in %.1f ms (%d found)%n",
+              database.size(),
+              (loaded - start) / 1e6,
+              queries,
+              (queried - loaded) / 1e6,
+              found);
+    }
+
+    Path file = Files.createTempFile("chemicals", ".txt");
+    try {
+      Files.writeString(file, source, UTF_8);
+      ChemicalDatabaseConfiguration configuration = new ChemicalDatabaseConfiguration() {
+        @Override
+        public Class<? extends Annotation> annotationType() {
+          return ChemicalDatabaseConfiguration.class;
+        }
+
+        @Override
+        public String location() {
+          return file.toString();
+        }
+      };
+
+      for (int round = 0; round < 5; round++) {
+        System.gc();
+        long start = System.nanoTime();
+        var service = new ChemicalDatabaseService(configuration, TABLE);
+        long activated = System.nanoTime();
+        service.query().withMass(masses.get(0), 2e-6).findChemicals();
+        long queried = System.nanoTime();
+
+        System.out
+            .printf(
+                "service activated in %.3f ms, first query answered after %.1f ms%n",
+                (activated - start) / 1e6,
+                (queried - start) / 1e6);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.CARBON;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.HYDROGEN;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.NITROGEN;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.OXYGEN;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.SULFUR;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.measure.Quantity;
+import javax.measure.quantity.Mass;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.mathematics.Interval;
+
+public class IndexedChemicalDatabaseTest {
+  static final PeriodicTable TABLE = new PeriodicTable(
+      "test",
+      List.of(HYDROGEN, CARBON, NITROGEN, OXYGEN, SULFUR));
+
+  private static List<String> formulas;
+  private static IndexedChemicalDatabase database;
+
+  /**
+   * Generate a synthetic source of random formulae with the given number of
+   * entries.
+   */
+  static String source(int entries, long seed) {
+    Random random = new Random(seed);
+    StringBuilder source = new StringBuilder("# synthetic\n\n");
+    for (int i = 0; i < entries; i++) {
+      source.append(formula(random)).append('\t').append("compound ").append(i).append('\n');
+    }
+    return source.toString();
+  }
+
+  static String formula(Random random) {
+    StringBuilder formula = new StringBuilder();
+    appendElement(formula, "C", random.nextInt(40));
+    appendElement(formula, "H", random.nextInt(80));
+    appendElement(formula, "N", random.nextInt(3) == 0 ? random.nextInt(6) : 0);
+    appendElement(formula, "O", random.nextInt(10));
+    appendElement(formula, "S", random.nextInt(6) == 0 ? random.nextInt(3) : 0);
+    if (formula.length() == 0) {
+      formula.append("H");
+    }
+    return formula.toString();
+  }
+
+  private static void appendElement(StringBuilder formula, String symbol, int count) {
+    if (count > 0) {
+      formula.append(symbol);
+      if (count > 1) {
+        formula.append(count);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static Quantity<Mass> daltons(double mass) {
+    Quantity<Mass> quantity = mock(Quantity.class);
+    when(quantity.to(any())).thenReturn(quantity);
+    when(quantity.getValue()).thenReturn(mass);
+    return quantity;
+  }
+
+  @BeforeAll
+  public static void loadDatabase() throws IOException {
+    String source = source(5000, 0) + "CH3(CH2)4CH3\thexane\n(13C)H4\tlabelled methane\n";
+    formulas = new ArrayList<>();
+    for (String line : source.split("\n")) {
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        formulas.add(line.substring(0, line.indexOf('\t')));
+      }
+    }
+    database = IndexedChemicalDatabase.load(new BufferedReader(new StringReader(source)), TABLE);
+  }
+
+  private static Set<String> expected(Predicate<ChemicalComposition> filter) {
+    ChemicalFormulaParser parser = new ChemicalFormulaParser(TABLE);
+    return formulas
+        .stream()
+        .map(parser::parse)
+        .filter(filter)
+        .map(ChemicalComposition::toString)
+        .collect(toSet());
+  }
+
+  private static Set<String> found(ChemicalDatabaseQuery query) {
+    return query
+        .findChemicals()
+        .stream()
+        .map(Chemical::composition)
+        .map(ChemicalComposition::toString)
+        .collect(toSet());
+  }
+
+  @Test
+  public void loadsEveryEntry() {
+    assertEquals(formulas.size(), database.size());
+    assertEquals(formulas.size(), database.query().findChemicals().size());
+  }
+
+  @Test
+  public void findChemicalsInMassInterval() {
+    Set<String> expected = expected(
+        c -> c.getMonoisotopicMass() >= 300 && c.getMonoisotopicMass() <= 310);
+
+    assertFalse(expected.isEmpty());
+    assertEquals(
+        expected,
+        found(database.query().withMass(Interval.bounded(daltons(300), daltons(310), (a, b) -> 0))));
+  }
+
+  @Test
+  public void findChemicalsWithinRelativeError() {
+    double mass = 86.10955;
+    Set<String> expected = expected(c -> Math.abs(c.getMonoisotopicMass() - mass) <= mass * 1e-5);
+
+    assertTrue(expected.contains(new ChemicalFormulaParser(TABLE).parse("C6H14").toString()));
+    assertEquals(expected, found(database.query().withMass(daltons(mass), 1e-5)));
+  }
+
+  @Test
+  public void findChemicalsContainingElements() {
+    ChemicalComposition sulfurAndNitrogen = ChemicalComposition
+        .nothing()
+        .withElement(SULFUR)
+        .withElement(NITROGEN);
+    Set<String> expected = expected(
+        c -> c.containsElementOrIsotopeOf(SULFUR)
+            && c.containsElementOrIsotopeOf(NITROGEN)
+            && c.getMonoisotopicMass() <= 400);
+
+    assertFalse(expected.isEmpty());
+    assertEquals(
+        expected,
+        found(
+            database
+                .query()
+                .containingElements(sulfurAndNitrogen)
+                .withMass(Interval.rightBounded(daltons(400), (a, b) -> 0))));
+  }
+
+  @Test
+  public void findNoChemicalsContainingElementOutsideTable() {
+    Element uranium = new Element()
+        .withAtomicNumber(92)
+        .withSymbol("U")
+        .withIsotope(238, 238.0507882, 1);
+
+    assertTrue(
+        database
+            .query()
+            .containingElements(ChemicalComposition.nothing().withElement(uranium))
+            .findChemicals()
+            .isEmpty());
+  }
+
+  @Test
+  public void findChemicalsWithSpecifiedIsotopes() {
+    Set<String> names = database
+        .query()
+        .withMass(daltons(13.0033548378 + 4 * 1.00782503207), 1e-6)
+        .findChemicals()
+        .stream()
+        .flatMap(Chemical::names)
+        .collect(toSet());
+
+    assertTrue(names.contains("labelled methane"));
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry.isotope;
+
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.composition;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import uk.co.saiman.chemistry.ChemicalComposition;
+import uk.co.saiman.chemistry.Element;
+
+/**
+ * A benchmark of the calculation of {@link IsotopeDistribution isotope
+ * distributions} for molecules from water to a large protein, in each mode of
+ * calculation.
+ * <p>
+ * Run from the test classpath with an optional argument for the minimum
+ * relative abundance, as a percentage, of the masses to calculate.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class IsotopeDistributionBenchmark {
+  private static final int[][] MOLECULES = {
+      { 0, 2, 0, 1, 0 },
+      { 6, 12, 0, 6, 0 },
+      { 50, 80, 14, 15, 1 },
+      { 254, 377, 65, 75, 6 },
+      { 500, 800, 140, 150, 5 } };
+
+  private static ChemicalComposition molecule(int[] counts) {
+    ChemicalComposition molecule = ChemicalComposition.nothing();
+    for (Map.Entry<Element, Integer> count : composition(
+        counts[0],
+        counts[1],
+        counts[2],
+        counts[3],
+        counts[4]).entrySet()) {
+      molecule = molecule.withElement(count.getKey(), count.getValue());
+    }
+    return molecule;
+  }
+
+  private static double time(ChemicalComposition molecule, Consumer<IsotopeDistribution> calculation) {
+    int repetitions = 0;
+    long start = System.nanoTime();
+    long elapsed;
+    do {
+      calculation.accept(new IsotopeDistribution());
+      repetitions++;
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < 200_000_000);
+    return elapsed / 1e6 / repetitions;
+  }
+
+  public static void main(String... args) {
+    double minimumAbundance = args.length > 0 ? Double.parseDouble(args[0]) : 0.01;
+
+    for (int round = 0; round < 2; round++) {
+      for (int[] counts : MOLECULES) {
+        ChemicalComposition molecule = molecule(counts);
+
+        double massNumbers = time(
+            molecule,
+            d -> d.calculateForMolecule(molecule, true, minimumAbundance));
+        double merged = time(
+            molecule,
+            d -> d.calculateForMolecule(molecule, 0.01, minimumAbundance));
+        double aggregated = time(
+            molecule,
+            d -> d.calculateAggregatedForMolecule(molecule, false, minimumAbundance));
+
+        System.out
+            .printf(
+                "%-20s mass numbers %9.3f ms, merged at 0.01 %9.3f ms, aggregated %9.3f ms%n",
+                molecule,
+                massNumbers,
+                merged,
+                aggregated);
+      }
+    }
+  }
+}
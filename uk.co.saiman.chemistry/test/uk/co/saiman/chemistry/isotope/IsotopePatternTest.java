@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry.isotope;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.chemistry.ChemicalComposition;
+import uk.co.saiman.chemistry.Element;
+
+public class IsotopePatternTest {
+  public static final Element HYDROGEN = new Element()
+      .withAtomicNumber(1)
+      .withSymbol("H")
+      .withIsotope(1, 1.00782503207, 0.999885)
+      .withIsotope(2, 2.0141017778, 0.000115);
+  public static final Element CARBON = new Element()
+      .withAtomicNumber(6)
+      .withSymbol("C")
+      .withIsotope(12, 12, 0.9893)
+      .withIsotope(13, 13.0033548378, 0.0107);
+  public static final Element NITROGEN = new Element()
+      .withAtomicNumber(7)
+      .withSymbol("N")
+      .withIsotope(14, 14.0030740048, 0.99636)
+      .withIsotope(15, 15.0001088982, 0.00364);
+  public static final Element OXYGEN = new Element()
+      .withAtomicNumber(8)
+      .withSymbol("O")
+      .withIsotope(16, 15.99491461956, 0.99757)
+      .withIsotope(17, 16.99913170, 0.00038)
+      .withIsotope(18, 17.9991610, 0.00205);
+  public static final Element SULFUR = new Element()
+      .withAtomicNumber(16)
+      .withSymbol("S")
+      .withIsotope(32, 31.97207100, 0.9499)
+      .withIsotope(33, 32.97145876, 0.0075)
+      .withIsotope(34, 33.96786690, 0.0425)
+      .withIsotope(36, 35.96708076, 0.0001);
+
+  static Map<Element, Integer> composition(int c, int h, int n, int o, int s) {
+    Map<Element, Integer> counts = new LinkedHashMap<>();
+    counts.put(CARBON, c);
+    counts.put(HYDROGEN, h);
+    counts.put(NITROGEN, n);
+    counts.put(OXYGEN, o);
+    counts.put(SULFUR, s);
+    counts.values().removeIf(count -> count == 0);
+    return counts;
+  }
+
+  @Test
+  public void waterMassNumbersTest() {
+    IsotopeDistribution distribution = new IsotopeDistribution();
+    distribution
+        .calculateForMolecule(
+            ChemicalComposition.nothing().withElement(HYDROGEN, 2).withElement(OXYGEN),
+            1e-4);
+
+    var peaks = distribution.getData().toArray(new MassAbundance[0]);
+    assertEquals(3, peaks.length);
+    assertEquals(18, peaks[0].getMass());
+    assertEquals(1, peaks[0].getAbundance(), 1e-12);
+
+    double h1 = 0.999885, h2 = 0.000115;
+    double o16 = 0.99757, o17 = 0.00038, o18 = 0.00205;
+    double m18 = h1 * h1 * o16;
+    assertEquals((2 * h1 * h2 * o16 + h1 * h1 * o17) / m18, peaks[1].getAbundance(), 1e-12);
+    assertEquals(
+        (h2 * h2 * o16 + 2 * h1 * h2 * o17 + h1 * h1 * o18) / m18,
+        peaks[2].getAbundance(),
+        1e-12);
+  }
+
+  @Test
+  public void powerMatchesRepeatedConvolutionTest() {
+    IsotopePattern carbon = IsotopePattern.forElement(CARBON, false);
+
+    IsotopePattern repeated = IsotopePattern.unit();
+    for (int i = 0; i < 37; i++) {
+      repeated = repeated.convolve(carbon, 0, 1e-12, 0);
+    }
+    IsotopePattern squared = carbon.power(37, 0, 1e-12, 0);
+
+    assertEquals(repeated.size(), squared.size());
+    for (int i = 0; i < squared.size(); i++) {
+      assertEquals(repeated.getMass(i), squared.getMass(i), 1e-9);
+      assertEquals(repeated.getAbundance(i), squared.getAbundance(i), 1e-9);
+    }
+  }
+
+  @Test
+  public void mergedPeaksAreSortedAndPrunedTest() {
+    IsotopePattern pattern = IsotopePattern.forElement(SULFUR, false).power(20, 0.1, 1e-6, 0);
+
+    for (int i = 0; i < pattern.size(); i++) {
+      assertTrue(pattern.getAbundance(i) >= 1e-6);
+      if (i > 0) {
+        assertTrue(pattern.getMass(i) - pattern.getMass(i - 1) >= 0.1);
+      }
+    }
+  }
+
+  @Test
+  public void aggregatedMatchesConvolutionTest() {
+    Map<Element, Integer> counts = composition(50, 80, 14, 15, 1);
+
+    /*
+     * Merging within less than a nominal mass, but more than the width of the
+     * fine structure, aggregates the variants of each nominal mass
+     */
+    IsotopePattern convolved = IsotopePattern.unit();
+    for (Map.Entry<Element, Integer> count : counts.entrySet()) {
+      convolved = convolved
+          .convolve(
+              IsotopePattern.forElement(count.getKey(), false).power(count.getValue(), 0.5, 1e-12, 0),
+              0.5,
+              1e-12,
+              0);
+    }
+    convolved = convolved.thresholded(1e-6);
+    IsotopePattern aggregated = IsotopePattern.aggregated(counts, false, 1e-6);
+
+    assertEquals(convolved.size(), aggregated.size());
+    for (int i = 0; i < aggregated.size(); i++) {
+      assertEquals(convolved.getMass(i), aggregated.getMass(i), 1e-6);
+      assertEquals(convolved.getAbundance(i), aggregated.getAbundance(i), 1e-6);
+    }
+  }
+}
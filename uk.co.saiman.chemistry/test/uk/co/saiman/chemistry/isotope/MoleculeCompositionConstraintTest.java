@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.chemistry.
+ *
+ * uk.co.saiman.chemistry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.chemistry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.chemistry.isotope;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.CARBON;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.HYDROGEN;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.NITROGEN;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.OXYGEN;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.SULFUR;
+import static uk.co.saiman.chemistry.isotope.IsotopePatternTest.composition;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.chemistry.ChemicalComposition;
+import uk.co.saiman.chemistry.PeriodicTable;
+import uk.co.saiman.mathematics.Interval;
+
+public class MoleculeCompositionConstraintTest {
+  private static final PeriodicTable TABLE = new PeriodicTable(
+      "test",
+      List.of(HYDROGEN, CARBON, NITROGEN, OXYGEN, SULFUR));
+
+  private static Set<ChemicalComposition> enumerate(
+      int c,
+      int h,
+      int n,
+      int o,
+      int s,
+      Interval<Double> monoisotopicMass,
+      Interval<Double> averageMass) {
+    Set<ChemicalComposition> molecules = new HashSet<>();
+    for (int ci = 0; ci <= c; ci++)
+      for (int hi = 0; hi <= h; hi++)
+        for (int ni = 0; ni <= n; ni++)
+          for (int oi = 0; oi <= o; oi++)
+            for (int si = 0; si <= s; si++) {
+              ChemicalComposition molecule = ChemicalComposition
+                  .nothing()
+                  .withElements(composition(ci, hi, ni, oi, si));
+              if (monoisotopicMass.contains(molecule.getMonoisotopicMass())
+                  && averageMass.contains(molecule.getAverageMass())) {
+                molecules.add(molecule);
+              }
+            }
+    return molecules;
+  }
+
+  private static MoleculeCompositionConstraint constraint() {
+    MoleculeCompositionConstraint constraint = new MoleculeCompositionConstraint(TABLE);
+    constraint.getElementConstraints().put(CARBON, Interval.bounded(0, 12));
+    constraint.getElementConstraints().put(HYDROGEN, Interval.bounded(0, 30));
+    constraint.getElementConstraints().put(NITROGEN, Interval.bounded(0, 4));
+    constraint.getElementConstraints().put(OXYGEN, Interval.bounded(0, 6));
+    return constraint;
+  }
+
+  @Test
+  public void conformingMoleculesMatchExhaustiveSearch() {
+    MoleculeCompositionConstraint constraint = constraint();
+    constraint.setMonoisotopicMassConstraint(Interval.bounded(150d, 151d));
+
+    Set<ChemicalComposition> expected = enumerate(
+        12,
+        30,
+        4,
+        6,
+        0,
+        Interval.bounded(150d, 151d),
+        Interval.unbounded());
+
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, constraint.conformingMolecules().collect(toSet()));
+  }
+
+  @Test
+  public void averageMassPrunesEnumeration() {
+    MoleculeCompositionConstraint constraint = constraint();
+    constraint.setAverageMassConstraint(Interval.bounded(100d, 104d));
+
+    Set<ChemicalComposition> expected = enumerate(
+        12,
+        30,
+        4,
+        6,
+        0,
+        Interval.unbounded(),
+        Interval.bounded(100d, 104d));
+
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, constraint.conformingMolecules().collect(toSet()));
+  }
+
+  @Test
+  public void parallelEnumerationMatchesSequential() {
+    MoleculeCompositionConstraint constraint = constraint();
+    constraint.setMonoisotopicMassConstraint(Interval.bounded(200d, 260d));
+
+    Set<ChemicalComposition> sequential = constraint.conformingMolecules().collect(toSet());
+    List<ChemicalComposition> parallel = constraint
+        .conformingMolecules()
+        .parallel()
+        .collect(toList());
+
+    assertFalse(sequential.isEmpty());
+    assertEquals(sequential.size(), parallel.size());
+    assertEquals(sequential, new HashSet<>(parallel));
+  }
+
+  @Test
+  public void unknownElementsAreDrawnFromPeriodicTable() {
+    MoleculeCompositionConstraint constraint = new MoleculeCompositionConstraint(TABLE);
+    constraint.getElementConstraints().put(CARBON, Interval.bounded(0, 6));
+    constraint.getElementConstraints().put(HYDROGEN, Interval.bounded(0, 14));
+    constraint.setUnknownConstraint(Interval.bounded(0, 1));
+    constraint.setMonoisotopicMassConstraint(Interval.bounded(60d, 80d));
+
+    Set<ChemicalComposition> expected = new HashSet<>();
+    for (ChemicalComposition molecule : enumerate(
+        6,
+        14,
+        1,
+        1,
+        1,
+        Interval.bounded(60d, 80d),
+        Interval.unbounded())) {
+      if (molecule.elementCount(NITROGEN) + molecule.elementCount(OXYGEN)
+          + molecule.elementCount(SULFUR) <= 1) {
+        expected.add(molecule);
+      }
+    }
+
+    assertEquals(expected, constraint.conformingMolecules().collect(toSet()));
+  }
+
+  @Test
+  public void unboundedCountWithoutMassLimitIsRejected() {
+    MoleculeCompositionConstraint constraint = new MoleculeCompositionConstraint(TABLE);
+    constraint.getElementConstraints().put(CARBON, Interval.leftBounded(0, Integer::compare));
+
+    assertThrows(IllegalStateException.class, () -> constraint.conformingMolecules());
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.copley.provider.
+ *
+ * uk.co.saiman.copley.provider is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.copley.provider is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.comms.copley.impl;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static uk.co.saiman.comms.copley.CopleyController.HEADER_SIZE;
+import static uk.co.saiman.comms.copley.ErrorCode.SUCCESS;
+import static uk.co.saiman.log.Log.Level.ERROR;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import uk.co.saiman.bytes.conversion.ByteConverter;
+import uk.co.saiman.comms.copley.CommandHeader;
+import uk.co.saiman.comms.copley.CopleyOperationID;
+import uk.co.saiman.comms.copley.ResponseHeader;
+import uk.co.saiman.messaging.DataBuffer;
+
+/**
+ * The queue of commands sent to the nodes of a controller.
+ * <p>
+ * Commands are written to the link as soon as they are submitted, up to a
+ * limit on the number awaiting a response, and the drive answers them strictly
+ * in the order they were sent. Each response is therefore matched with the
+ * oldest outstanding command. There is no dedicated reader; callers waiting
+ * on a response take turns to read whichever response arrives next, until
+ * their own has been delivered.
+ * <p>
+ * The Copley binary serial protocol only allows a single command to be in
+ * flight at a time, so by default each response is awaited before the next
+ * command is sent. Pipelining deeper than that is an opt-in configuration for
+ * links which are known to tolerate it. It is a risk even then, because once a
+ * response has timed out, a late response may be matched with a later command.
+ * 
+ * @author Elias N Vasylenko
+ */
+class CopleyCommandQueue {
+  static final int DEFAULT_PIPELINE_DEPTH = 1;
+
+  private static final int BUFFER_SIZE = 2048;
+  private static final long RESPONSE_TIMEOUT_SECONDS = 2;
+
+  private final CopleyControllerImpl comms;
+  private final int pipelineDepth;
+  private final Semaphore outstanding;
+
+  private final Object sendLock = new Object();
+  private final Object receiveLock = new Object();
+  private final Queue<CompletableFuture<byte[]>> pending = new ConcurrentLinkedQueue<>();
+  private volatile DataBuffer buffer;
+
+  public CopleyCommandQueue(CopleyControllerImpl comms, int pipelineDepth) {
+    if (pipelineDepth < 1) {
+      throw new IllegalArgumentException("Pipeline depth must be at least 1: " + pipelineDepth);
+    }
+    this.comms = comms;
+    this.pipelineDepth = pipelineDepth;
+    this.outstanding = new Semaphore(pipelineDepth, true);
+  }
+
+  public int getPipelineDepth() {
+    return pipelineDepth;
+  }
+
+  public byte[] execute(int nodeId, CopleyOperationID operation, byte[] output)
+      throws IOException {
+    return execute(nodeId, operation, List.of(output)).get(0);
+  }
+
+  /**
+   * Execute a batch of commands of the same operation against a node. The
+   * commands are sent together, as far as the pipeline depth allows, and the
+   * responses are returned in order.
+   * 
+   * @param nodeId
+   *          the node to address
+   * @param operation
+   *          the operation of each command
+   * @param outputs
+   *          the message of each command
+   * @return the response message of each command
+   * @throws IOException
+   *           if any of the commands failed, after all have completed
+   */
+  public List<byte[]> execute(int nodeId, CopleyOperationID operation, List<byte[]> outputs)
+      throws IOException {
+    List<byte[]> inputs = new ArrayList<>(outputs.size());
+    IOException failure = null;
+
+    for (int from = 0; from < outputs.size(); from += pipelineDepth) {
+      var chunk = outputs.subList(from, Math.min(from + pipelineDepth, outputs.size()));
+
+      outstanding.acquireUninterruptibly(chunk.size());
+      List<CompletableFuture<byte[]>> responses;
+      try {
+        responses = send(nodeId, operation, chunk);
+      } catch (Exception e) {
+        outstanding.release(chunk.size());
+        throw e;
+      }
+
+      for (var response : responses) {
+        try {
+          inputs.add(await(response));
+        } catch (IOException e) {
+          inputs.add(null);
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+    return inputs;
+  }
+
+  private List<CompletableFuture<byte[]>> send(
+      int nodeId,
+      CopleyOperationID operation,
+      List<byte[]> outputs) throws IOException {
+    ByteConverter<CommandHeader> headerConverter = comms
+        .getConverters()
+        .getConverter(CommandHeader.class);
+
+    int length = 0;
+    for (byte[] output : outputs) {
+      length += HEADER_SIZE + output.length;
+    }
+    ByteBuffer message = ByteBuffer.allocate(length);
+    for (byte[] output : outputs) {
+      message.put(headerConverter.toBytes(new CommandHeader(nodeId, operation, output)));
+      message.put(output);
+    }
+    message.flip();
+
+    List<CompletableFuture<byte[]>> responses = new ArrayList<>(outputs.size());
+    synchronized (sendLock) {
+      if (buffer == null) {
+        buffer = comms.getReceiver().openDataBuffer(BUFFER_SIZE);
+      }
+
+      comms.getSender().sendData(message);
+
+      for (int i = 0; i < outputs.size(); i++) {
+        var response = new CompletableFuture<byte[]>();
+        responses.add(response);
+        pending.add(response);
+      }
+    }
+    return responses;
+  }
+
+  private byte[] await(CompletableFuture<byte[]> response) throws IOException {
+    while (!response.isDone()) {
+      synchronized (receiveLock) {
+        if (!response.isDone()) {
+          receive();
+        }
+      }
+    }
+
+    try {
+      return response.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private void receive() {
+    try {
+      var buffer = this.buffer;
+      if (buffer == null) {
+        throw new ClosedChannelException();
+      }
+
+      ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+      buffer.readData(headerBuffer, SECONDS, RESPONSE_TIMEOUT_SECONDS);
+      var header = comms
+          .getConverters()
+          .getConverter(ResponseHeader.class)
+          .toObject(headerBuffer.array());
+
+      ByteBuffer messageBuffer = ByteBuffer.allocate(header.messageBytes());
+      buffer.readData(messageBuffer, SECONDS, RESPONSE_TIMEOUT_SECONDS);
+
+      var response = pending.poll();
+      if (response != null) {
+        outstanding.release();
+        if (header.errorCode() != SUCCESS) {
+          response.completeExceptionally(new CopleyErrorException(header.errorCode()));
+        } else {
+          response.complete(messageBuffer.array());
+        }
+      }
+    } catch (Exception e) {
+      /*
+       * Once a read fails we can no longer tell which response belongs to which
+       * command, so everything outstanding is failed and the stream starts
+       * afresh. The buffer may be left part way through a response, so it is
+       * discarded and a fresh one opened when the next command is sent.
+       */
+      comms.getLog().log(ERROR, "Failed to receive copley response", e);
+      synchronized (sendLock) {
+        closeBuffer();
+        failPending(e instanceof IOException ? (IOException) e : new IOException(e));
+      }
+    }
+  }
+
+  private void failPending(IOException cause) {
+    CompletableFuture<byte[]> response;
+    while ((response = pending.poll()) != null) {
+      outstanding.release();
+      response.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * Close the underlying receive buffer and fail any commands still awaiting a
+   * response. The queue remains usable, and the buffer is opened again when the
+   * next command is sent.
+   */
+  public void close() {
+    synchronized (sendLock) {
+      closeBuffer();
+      failPending(new ClosedChannelException());
+    }
+  }
+
+  private void closeBuffer() {
+    if (buffer != null) {
+      try {
+        buffer.close();
+      } catch (IOException e) {
+        comms.getLog().log(ERROR, "Failed to close copley response buffer", e);
+      }
+      buffer = null;
+    }
+  }
+}
@@ -30,6 +30,7 @@ package uk.co.saiman.comms.copley.impl;
 import static java.util.Collections.singletonList;
 import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
 import static uk.co.saiman.collection.StreamUtilities.upcastStream;
+import static uk.co.saiman.comms.copley.impl.CopleyCommandQueue.DEFAULT_PIPELINE_DEPTH;
 import static uk.co.saiman.comms.copley.ErrorCode.INVALID_NODE_ID;
 import static uk.co.saiman.comms.copley.impl.CopleyNodeImpl.NODE_ID_MASK;
 
@@ -47,6 +48,7 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
@@ -67,7 +69,10 @@ public class CopleyControllerImpl implements CopleyController {
 
   @SuppressWarnings("javadoc")
   @ObjectClassDefinition(name = "Copley Comms Configuration", description = "The configuration for the underlying serial comms for a Copley motor control")
-  public @interface CopleyControllerConfiguration {}
+  public @interface CopleyControllerConfiguration {
+    @AttributeDefinition(name = "Pipeline Depth", description = "The maximum number of commands which may be awaiting a response at once. The default of 1 awaits each response before sending the next command, as the Copley serial protocol requires, and greater depths are only for links known to support pipelining")
+    int pipelineDepth() default DEFAULT_PIPELINE_DEPTH;
+  }
 
   private final Log log;
 
@@ -76,6 +81,7 @@ public class CopleyControllerImpl implements CopleyController {
 
   private final DataSender sender;
   private final DataReceiver receiver;
+  private final CopleyCommandQueue commandQueue;
 
   private Map<CopleyNodeImpl, ServiceRegistration<CopleyNode>> nodes = new LinkedHashMap<>();
   private Map<CopleyAxis, ServiceRegistration<CopleyAxis>> axes = new LinkedHashMap<>();
@@ -83,16 +89,28 @@ public class CopleyControllerImpl implements CopleyController {
   @Activate
   public CopleyControllerImpl(
       BundleContext context,
+      CopleyControllerConfiguration configuration,
       @Reference ByteConverterService converters,
       @Reference(name = "command") DataSender sender,
       @Reference(name = "response") DataReceiver receiver,
       @Reference Log log)
       throws IOException {
+    this(context, configuration.pipelineDepth(), converters, sender, receiver, log);
+  }
+
+  public CopleyControllerImpl(
+      BundleContext context,
+      int pipelineDepth,
+      ByteConverterService converters,
+      DataSender sender,
+      DataReceiver receiver,
+      Log log) {
     this.context = context;
     this.converters = converters;
 
     this.sender = sender;
     this.receiver = receiver;
+    this.commandQueue = new CopleyCommandQueue(this, pipelineDepth);
 
     this.log = log;
   }
@@ -105,6 +123,10 @@ public class CopleyControllerImpl implements CopleyController {
     return receiver;
   }
 
+  CopleyCommandQueue getCommandQueue() {
+    return commandQueue;
+  }
+
   Log getLog() {
     return log;
   }
@@ -148,6 +170,8 @@ public class CopleyControllerImpl implements CopleyController {
     nodes.clear();
     axes.values().forEach(n -> n.unregister());
     axes.clear();
+
+    commandQueue.close();
   }
 
   protected void checkChannel() throws IOException {
@@ -27,32 +27,25 @@
  */
 package uk.co.saiman.comms.copley.impl;
 
-import static java.util.concurrent.TimeUnit.SECONDS;
-import static uk.co.saiman.comms.copley.CopleyController.HEADER_SIZE;
+import static java.lang.String.format;
 import static uk.co.saiman.comms.copley.CopleyOperationID.GET_VARIABLE;
 import static uk.co.saiman.comms.copley.CopleyOperationID.NO_OP;
 import static uk.co.saiman.comms.copley.CopleyVariableID.DRIVE_EVENT_STATUS;
 import static uk.co.saiman.comms.copley.ErrorCode.ILLEGAL_AXIS_NUMBER;
-import static uk.co.saiman.comms.copley.ErrorCode.SUCCESS;
 import static uk.co.saiman.comms.copley.VariableBank.ACTIVE;
-import static uk.co.saiman.log.Log.Level.INFO;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
 
 import uk.co.saiman.bytes.conversion.ByteConverter;
-import uk.co.saiman.comms.copley.CommandHeader;
 import uk.co.saiman.comms.copley.CopleyAxis;
 import uk.co.saiman.comms.copley.CopleyNode;
 import uk.co.saiman.comms.copley.CopleyOperationID;
 import uk.co.saiman.comms.copley.OperatingMode;
-import uk.co.saiman.comms.copley.ResponseHeader;
+import uk.co.saiman.comms.copley.Variable;
 import uk.co.saiman.comms.copley.VariableIdentifier;
-import uk.co.saiman.log.Log.Level;
-import uk.co.saiman.messaging.DataBuffer;
 
 public class CopleyNodeImpl implements CopleyNode {
   private static final int MAXIMUM_AXES = 8;
@@ -144,77 +137,48 @@ public class CopleyNodeImpl implements CopleyNode {
   }
 
   byte[] executeCopleyCommand(CopleyOperationID operation, byte[] output) throws IOException {
-    synchronized (comms) {
-      try (DataBuffer buffer = comms.getReceiver().openDataBuffer(2048)) {
-        sendCopleyCommand(operation, output);
-        return receiveCopleyCommand(buffer);
-      }
-    }
+    return comms.getCommandQueue().execute(nodeId, operation, output);
   }
 
-  private void sendCopleyCommand(CopleyOperationID operation, byte[] output) throws IOException {
-    try {
-      comms.getLog().log(INFO, "Sending copley command");
-
-      var header = new CommandHeader(nodeId, operation, output);
-      var headerBytes = comms.getConverters().getConverter(CommandHeader.class).toBytes(header);
-
-      header = comms.getConverters().getConverter(CommandHeader.class).toObject(headerBytes);
-
-      comms.getLog().log(INFO, "Sending copley command header " + header);
-
-      ByteBuffer message_buffer = ByteBuffer.allocate(headerBytes.length + output.length);
-
-      message_buffer.put(headerBytes);
-      message_buffer.put(output);
-
-      message_buffer.flip();
-
-      comms.getLog().log(INFO, "Sending copley command data " + message_buffer);
-
-      comms.getSender().sendData(message_buffer);
-    } catch (CopleyErrorException e) {
-      throw e;
-    } catch (Exception e) {
-      comms.getLog().log(Level.ERROR, "Failed to send copley command", e);
-      throw e;
-    }
+  List<byte[]> executeCopleyCommands(CopleyOperationID operation, List<byte[]> outputs)
+      throws IOException {
+    return comms.getCommandQueue().execute(nodeId, operation, outputs);
   }
 
-  private byte[] receiveCopleyCommand(DataBuffer buffer) throws IOException {
-    try {
-      comms.getLog().log(INFO, "Receiving copley response");
-
-      ByteBuffer message_buffer = ByteBuffer.allocate(HEADER_SIZE);
-      buffer.readData(message_buffer, SECONDS, 2);
-      message_buffer.flip();
-
-      var header = comms
-          .getConverters()
-          .getConverter(ResponseHeader.class)
-          .toObject(message_buffer.array());
-
-      comms.getLog().log(INFO, "Received copley response header " + header);
-
-      message_buffer = ByteBuffer.allocate(header.messageBytes());
-      buffer.readData(message_buffer, SECONDS, 2);
-      message_buffer.flip();
-
-      comms.getLog().log(INFO, "Received copley response data " + message_buffer);
+  @Override
+  public List<Object> getVariables(List<? extends Variable<?>> variables) {
+    List<Object> values = new ArrayList<>(variables.size());
+    List<VariableImpl<?>> batch = new ArrayList<>(variables.size());
+    List<Integer> batchIndices = new ArrayList<>(variables.size());
+    for (var variable : variables) {
+      if (variable instanceof VariableImpl<?>
+          && ((VariableImpl<?>) variable).getController() == this) {
+        batch.add((VariableImpl<?>) variable);
+        batchIndices.add(values.size());
+        values.add(null);
+      } else {
+        values.add(variable.get());
+      }
+    }
 
-      if (header.errorCode() != SUCCESS) {
-        throw new CopleyErrorException(header.errorCode());
+    if (!batch.isEmpty()) {
+      List<byte[]> outputs = new ArrayList<>(batch.size());
+      for (var variable : batch) {
+        outputs.add(variable.getIdentifierBytes());
       }
 
-      byte[] input = new byte[header.messageBytes()];
-      message_buffer.get(input);
+      List<byte[]> inputs;
+      try {
+        inputs = executeCopleyCommands(GET_VARIABLE, outputs);
+      } catch (Exception e) {
+        throw new CopleyVariableException(format("Failed to get variables %s", batch), e);
+      }
 
-      return input;
-    } catch (CopleyErrorException e) {
-      throw e;
-    } catch (Exception e) {
-      comms.getLog().log(Level.ERROR, "Failed to receive copley command", e);
-      throw e;
+      for (int i = 0; i < batch.size(); i++) {
+        values.set(batchIndices.get(i), batch.get(i).fromBytes(inputs.get(i)));
+      }
     }
+
+    return values;
   }
 }
@@ -83,16 +83,22 @@ class VariableImpl<U> implements Variable<U> {
     return bytes;
   }
 
+  byte[] getIdentifierBytes() {
+    VariableIdentifier variableID = new VariableIdentifier(id, axis, bank);
+
+    return controller.getConverter(VariableIdentifier.class).toBytes(variableID);
+  }
+
+  U fromBytes(byte[] inputBytes) {
+    return controller.getConverter(variableClass).toObject(inputBytes);
+  }
+
   @Override
   public U get() {
     try {
-      VariableIdentifier variableID = new VariableIdentifier(id, axis, bank);
+      byte[] inputBytes = controller.executeCopleyCommand(GET_VARIABLE, getIdentifierBytes());
 
-      byte[] outputBytes = controller.getConverter(VariableIdentifier.class).toBytes(variableID);
-
-      byte[] inputBytes = controller.executeCopleyCommand(GET_VARIABLE, outputBytes);
-
-      return controller.getConverter(variableClass).toObject(inputBytes);
+      return fromBytes(inputBytes);
     } catch (Exception e) {
       throw new CopleyVariableException(format("Failed to get variable %s", id), e);
     }
@@ -128,4 +134,9 @@ class VariableImpl<U> implements Variable<U> {
   public VariableBank getBank() {
     return bank;
   }
+
+  @Override
+  public String toString() {
+    return id + "(" + axis + ", " + bank + ")";
+  }
 }
@@ -27,6 +27,8 @@
  */
 package uk.co.saiman.comms.copley.simulation;
 
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
 import static uk.co.saiman.comms.copley.CopleyController.HEADER_SIZE;
 import static uk.co.saiman.comms.copley.CopleyController.WORD_SIZE;
@@ -45,12 +47,19 @@ import static uk.co.saiman.comms.copley.ErrorCode.ILLEGAL_OP_CODE;
 import static uk.co.saiman.comms.copley.ErrorCode.INVALID_NODE_ID;
 import static uk.co.saiman.comms.copley.impl.CopleyNodeImpl.NODE_ID_MASK;
 import static uk.co.saiman.log.Log.Level.ERROR;
+import static uk.co.saiman.measurement.Quantities.quantityFormat;
+import static uk.co.saiman.measurement.Units.second;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.measure.Quantity;
+import javax.measure.quantity.Time;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -106,6 +115,16 @@ public class CopleyHardwareSimulation {
         name = "Axis Count",
         description = "The number of axes supported by the drive")
     int axes() default 1;
+
+    @AttributeDefinition(
+        name = "Response Latency",
+        description = "The delay before each response is delivered, modelling transmission over the link, during which further commands may be received")
+    String responseLatency() default "0ms";
+
+    @AttributeDefinition(
+        name = "Command Processing Time",
+        description = "The time the drive spends processing each command before it can read the next")
+    String commandProcessingTime() default "0ms";
   }
 
   private final Log log;
@@ -120,6 +139,10 @@ public class CopleyHardwareSimulation {
   private final int nodes;
   private final int axes;
 
+  private final long responseLatencyNanos;
+  private final long commandProcessingNanos;
+  private final ScheduledExecutorService responseDelivery;
+
   private final Map<CopleyVariableID, SimulatedVariable> variables = new HashMap<>();
 
   private final ReferenceVariable<Int32> requestedPosition;
@@ -133,6 +156,26 @@ public class CopleyHardwareSimulation {
       @Reference ByteConverterService converters,
       @Reference(name = "response") DataSender response,
       @Reference(name = "command") DataReceiver command) throws IOException {
+    this(
+        log,
+        converters,
+        response,
+        command,
+        configuration.nodes(),
+        configuration.axes(),
+        quantityFormat().parse(configuration.responseLatency()).asType(Time.class),
+        quantityFormat().parse(configuration.commandProcessingTime()).asType(Time.class));
+  }
+
+  public CopleyHardwareSimulation(
+      Log log,
+      ByteConverterService converters,
+      DataSender response,
+      DataReceiver command,
+      int nodes,
+      int axes,
+      Quantity<Time> responseLatency,
+      Quantity<Time> commandProcessingTime) {
     /*
      * services
      */
@@ -144,10 +187,19 @@ public class CopleyHardwareSimulation {
     /*
      * configuration
      */
-    this.nodes = configuration.nodes();
-    this.axes = configuration.axes();
+    this.nodes = nodes;
+    this.axes = axes;
     this.variables.clear();
 
+    /*
+     * latency model
+     */
+    this.responseLatencyNanos = toNanos(responseLatency);
+    this.commandProcessingNanos = toNanos(commandProcessingTime);
+    this.responseDelivery = responseLatencyNanos > 0
+        ? newSingleThreadScheduledExecutor(r -> new Thread(r, "Copley Simulation Responses"))
+        : null;
+
     /*
      * variables
      */
@@ -186,9 +238,20 @@ public class CopleyHardwareSimulation {
     openObservation();
   }
 
+  private static long toNanos(Quantity<Time> time) {
+    long nanos = time.to(second().nano().getUnit()).getValue().longValue();
+    if (nanos < 0) {
+      throw new IllegalArgumentException("Simulated latency must not be negative: " + time);
+    }
+    return nanos;
+  }
+
   @Deactivate
-  void deactivate() throws IOException {
+  public void deactivate() throws IOException {
     closeObservation();
+    if (responseDelivery != null) {
+      responseDelivery.shutdownNow();
+    }
   }
 
   private synchronized void openObservation() {
@@ -232,6 +295,10 @@ public class CopleyHardwareSimulation {
     buffer.readData(message, TimeUnit.MILLISECONDS, Long.MAX_VALUE);
     message.flip();
 
+    if (commandProcessingNanos > 0) {
+      LockSupport.parkNanos(commandProcessingNanos);
+    }
+
     try {
       if (nodes != (commandHeader.currentNode & NODE_ID_MASK)) {
         throw new CopleyErrorException(INVALID_NODE_ID);
@@ -259,6 +326,14 @@ public class CopleyHardwareSimulation {
         if (variable.axis < 0 || variable.axis >= axes) {
           throw new CopleyErrorException(ILLEGAL_AXIS_NUMBER);
         } else {
+          if (id == TRAJECTORY_POSITION_COUNTS) {
+            /*
+             * Bring the interpolated position up to date first, so that the move
+             * to the new target starts now rather than from whenever the
+             * position was last read.
+             */
+            actualPosition.compute(variable.axis);
+          }
           getVariable(id).set(variable.axis, variable.bank(), value);
         }
         break;
@@ -309,7 +384,7 @@ public class CopleyHardwareSimulation {
         response.put(headerBytes);
         response.put(result);
         response.flip();
-        this.response.sendData(response);
+        sendResponse(response);
       } catch (Exception e) {
         log.log(ERROR, "Unable to send simulated hardware success response: " + e.getMessage(), e);
       }
@@ -322,7 +397,7 @@ public class CopleyHardwareSimulation {
         ByteBuffer response = ByteBuffer.allocate(headerBytes.length);
         response.put(headerBytes);
         response.flip();
-        this.response.sendData(response);
+        sendResponse(response);
       } catch (Exception e2) {
         e2.addSuppressed(e);
         log.log(ERROR, "Unable to send simulated hardware error response: " + e2.getMessage(), e2);
@@ -333,6 +408,24 @@ public class CopleyHardwareSimulation {
     }
   }
 
+  /*
+   * Responses are delivered in the order they were produced. They all share the
+   * same latency, so the single delivery thread never reorders them.
+   */
+  private void sendResponse(ByteBuffer response) throws IOException {
+    if (responseDelivery == null) {
+      this.response.sendData(response);
+    } else {
+      responseDelivery.schedule(() -> {
+        try {
+          this.response.sendData(response);
+        } catch (Exception e) {
+          log.log(ERROR, "Unable to deliver simulated hardware response: " + e.getMessage(), e);
+        }
+      }, responseLatencyNanos, NANOSECONDS);
+    }
+  }
+
   private SimulatedVariable getVariable(CopleyVariableID id) {
     if (!variables.containsKey(id))
       throw new IllegalArgumentException();
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.copley.provider.
+ *
+ * uk.co.saiman.copley.provider is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.copley.provider is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.comms.copley.impl;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.co.saiman.comms.copley.CopleyOperationID.GET_OPERATING_MODE;
+import static uk.co.saiman.comms.copley.ErrorCode.ILLEGAL_OP_CODE;
+import static uk.co.saiman.log.Log.discardingLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.bytes.conversion.ByteConverterService;
+import uk.co.saiman.comms.copley.ErrorCode;
+import uk.co.saiman.comms.copley.ResponseHeader;
+import uk.co.saiman.messaging.MessagePipe;
+
+public class CopleyCommandQueueTest {
+  private static final int NODE = 0;
+  private static final long RESPONSE_DELAY_MILLISECONDS = 20;
+
+  private ByteConverterService converters;
+  private MessagePipe responses;
+  private CopleyCommandQueue queue;
+
+  /*
+   * The responses to give to each message sent, in order. A message with no
+   * responses queued is never answered. Responses are sent a little later from
+   * another thread, so that the queue is already waiting for them as it would
+   * be on a serial link.
+   */
+  private final Queue<List<byte[]>> script = new ConcurrentLinkedQueue<>();
+  private final ExecutorService drive = newSingleThreadExecutor();
+
+  @BeforeEach
+  public void createQueue() throws Exception {
+    converters = CopleyPollingBenchmark.converterService();
+    var commands = new MessagePipe();
+    responses = new MessagePipe();
+
+    commands.receiveData().observe(command -> {
+      var answers = script.poll();
+      if (answers != null) {
+        drive.execute(() -> answer(answers));
+      }
+    });
+
+    var controller = new CopleyControllerImpl(
+        null,
+        4,
+        converters,
+        commands,
+        responses,
+        discardingLog());
+    queue = controller.getCommandQueue();
+  }
+
+  @AfterEach
+  public void closeQueue() {
+    queue.close();
+    drive.shutdownNow();
+  }
+
+  private void answer(List<byte[]> answers) {
+    try {
+      Thread.sleep(RESPONSE_DELAY_MILLISECONDS);
+      for (byte[] answer : answers) {
+        responses.sendData(ByteBuffer.wrap(answer));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private byte[] success(byte... message) {
+    return response(new ResponseHeader(message), message);
+  }
+
+  private byte[] error(ErrorCode code) {
+    return response(new ResponseHeader(code), new byte[0]);
+  }
+
+  private byte[] response(ResponseHeader header, byte[] message) {
+    return concat(converters.getConverter(ResponseHeader.class).toBytes(header), message);
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] bytes = new byte[first.length + second.length];
+    System.arraycopy(first, 0, bytes, 0, first.length);
+    System.arraycopy(second, 0, bytes, first.length, second.length);
+    return bytes;
+  }
+
+  private static List<byte[]> commands(int count) {
+    List<byte[]> commands = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      commands.add(new byte[0]);
+    }
+    return commands;
+  }
+
+  @Test
+  public void responsesAreMatchedToCommandsInOrder() throws IOException {
+    /*
+     * Six commands go out as two messages of the pipeline depth and the rest,
+     * and the drive answers the first in two parts.
+     */
+    script
+        .add(
+            List
+                .of(
+                    success((byte) 1, (byte) 0),
+                    success((byte) 2, (byte) 0),
+                    concat(success((byte) 3, (byte) 0), success((byte) 4, (byte) 0))));
+    script.add(List.of(concat(success((byte) 5, (byte) 0), success((byte) 6, (byte) 0))));
+
+    var results = queue.execute(NODE, GET_OPERATING_MODE, commands(6));
+
+    assertEquals(6, results.size());
+    for (int i = 0; i < 6; i++) {
+      assertArrayEquals(new byte[] { (byte) (i + 1), 0 }, results.get(i));
+    }
+  }
+
+  @Test
+  public void errorResponseFailsOnlyItsOwnCommand() throws IOException {
+    script
+        .add(
+            List.of(success((byte) 1, (byte) 0), error(ILLEGAL_OP_CODE), success((byte) 3, (byte) 0)));
+
+    var failure = assertThrows(
+        CopleyErrorException.class,
+        () -> queue.execute(NODE, GET_OPERATING_MODE, commands(3)));
+    assertEquals(ILLEGAL_OP_CODE, failure.getCode());
+    assertEquals(0, failure.getSuppressed().length);
+
+    script.add(List.of(success((byte) 4, (byte) 0)));
+    assertArrayEquals(new byte[] { 4, 0 }, queue.execute(NODE, GET_OPERATING_MODE, new byte[0]));
+  }
+
+  @Test
+  public void queueRecoversAfterTimeout() throws IOException {
+    assertThrows(
+        InterruptedByTimeoutException.class,
+        () -> queue.execute(NODE, GET_OPERATING_MODE, new byte[0]));
+
+    script.add(List.of(success((byte) 5, (byte) 0)));
+    assertArrayEquals(new byte[] { 5, 0 }, queue.execute(NODE, GET_OPERATING_MODE, new byte[0]));
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.copley.provider.
+ *
+ * uk.co.saiman.copley.provider is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.copley.provider is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.comms.copley.impl;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.co.saiman.comms.copley.CopleyVariableID.DRIVE_EVENT_STATUS;
+import static uk.co.saiman.log.Log.discardingLog;
+import static uk.co.saiman.measurement.Units.second;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.measure.quantity.Time;
+
+import org.osgi.framework.ServiceReference;
+
+import uk.co.saiman.bytes.conversion.ByteConverterProvider;
+import uk.co.saiman.bytes.conversion.ByteConverterService;
+import uk.co.saiman.bytes.conversion.impl.BooleanByteConverters;
+import uk.co.saiman.bytes.conversion.impl.ByteConverterServiceImpl;
+import uk.co.saiman.bytes.conversion.impl.DTOByteConverters;
+import uk.co.saiman.bytes.conversion.impl.EnumByteConverters;
+import uk.co.saiman.bytes.conversion.impl.IntegerByteConverters;
+import uk.co.saiman.comms.copley.CopleyAxis;
+import uk.co.saiman.comms.copley.simulation.CopleyHardwareSimulation;
+import uk.co.saiman.log.Log;
+import uk.co.saiman.measurement.scalar.Scalar;
+import uk.co.saiman.messaging.MessagePipe;
+
+/**
+ * A benchmark of axis polling throughput against the simulated hardware with a
+ * modelled link latency. Each axis is polled from its own thread, as the stage
+ * axes are, reading actual position, requested position and event status
+ * either one variable at a time or as a batch.
+ * <p>
+ * Run from the test classpath with optional arguments for the response latency
+ * and command processing time in microseconds, and the number of axes.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class CopleyPollingBenchmark {
+  private static final long MEASURE_MILLISECONDS = 3000;
+
+  public static void main(String... args) throws Exception {
+    long latency = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+    long processing = args.length > 1 ? Long.parseLong(args[1]) : 200;
+    int axes = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    Log log = discardingLog();
+    ByteConverterService converters = converterService();
+
+    var commands = new MessagePipe();
+    var responses = new MessagePipe();
+    var simulation = new CopleyHardwareSimulation(
+        log,
+        converters,
+        responses,
+        commands,
+        0,
+        axes,
+        new Scalar<Time>(second().micro(), latency),
+        new Scalar<Time>(second().micro(), processing));
+
+    try {
+      System.out
+          .printf(
+              "%d axes, %d us latency, %d us processing per command%n",
+              axes,
+              latency,
+              processing);
+      for (int depth : new int[] { 1, 4, 8 }) {
+        var controller = new CopleyControllerImpl(null, depth, converters, commands, responses, log);
+        var node = new CopleyNodeImpl(controller);
+
+        System.out
+            .printf(
+                "pipeline depth %d: %.1f polls/s one at a time, %.1f polls/s batched%n",
+                depth,
+                measure(node, false),
+                measure(node, true));
+
+        controller.getCommandQueue().close();
+      }
+    } finally {
+      simulation.deactivate();
+    }
+  }
+
+  private static double measure(CopleyNodeImpl node, boolean batched) throws Exception {
+    var running = new AtomicBoolean(true);
+    var polls = new AtomicLong();
+
+    List<Thread> threads = new ArrayList<>();
+    node.getAxes().forEach(axis -> threads.add(new Thread(() -> {
+      while (running.get()) {
+        poll(node, axis, batched);
+        polls.incrementAndGet();
+      }
+    })));
+
+    long start = System.nanoTime();
+    threads.forEach(Thread::start);
+    Thread.sleep(MEASURE_MILLISECONDS);
+    running.set(false);
+    for (var thread : threads) {
+      thread.join();
+    }
+    return polls.get() * 1e9 / (System.nanoTime() - start);
+  }
+
+  private static void poll(CopleyNodeImpl node, CopleyAxis axis, boolean batched) {
+    var variables = List
+        .of(axis.actualPosition(), axis.requestedPosition(), axis.variable(DRIVE_EVENT_STATUS));
+    if (batched) {
+      node.getVariables(variables);
+    } else {
+      variables.forEach(variable -> variable.get());
+    }
+  }
+
+  /*
+   * The converter service implementation is private to its bundle, and only
+   * accepts providers through its component reference method.
+   */
+  @SuppressWarnings("unchecked")
+  static ByteConverterService converterService() throws Exception {
+    var service = new ByteConverterServiceImpl();
+    Method addConverter = ByteConverterServiceImpl.class
+        .getDeclaredMethod("addConverter", ServiceReference.class, ByteConverterProvider.class);
+    addConverter.setAccessible(true);
+
+    List<ServiceReference<ByteConverterProvider>> references = new ArrayList<>();
+    for (var provider : List
+        .of(
+            new DTOByteConverters(),
+            new IntegerByteConverters(),
+            new BooleanByteConverters(),
+            new EnumByteConverters())) {
+      ServiceReference<ByteConverterProvider> reference = mock(ServiceReference.class);
+      references.add(reference);
+      when(reference.compareTo(any()))
+          .thenAnswer(
+              i -> Integer
+                  .compare(references.indexOf(reference), references.indexOf(i.getArgument(0))));
+      addConverter.invoke(service, reference, provider);
+    }
+    return service;
+  }
+}
@@ -27,6 +27,9 @@
  */
 package uk.co.saiman.comms.copley;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -44,4 +47,18 @@ public interface CopleyNode {
   default Optional<CopleyAxis> getAxis(int number) {
     return getAxes().filter(axis -> axis.getAxisNumber() == number).findAny();
   }
+
+  /**
+   * Read the values of several variables of axes on this node together.
+   * Implementations may issue the reads as a single batch of pipelined
+   * commands, so this should be preferred over reading each variable in turn
+   * when several values are needed at once.
+   * 
+   * @param variables
+   *          the variables to read
+   * @return the value of each variable, in the order given
+   */
+  default List<Object> getVariables(List<? extends Variable<?>> variables) {
+    return variables.stream().map(Variable::get).collect(toList());
+  }
 }
@@ -17,6 +17,7 @@ import uk.ac.ebi.jmzml.xml.io.MzMLUnmarshaller;
 import uk.co.saiman.data.format.MediaType;
 import uk.co.saiman.data.format.Payload;
 import uk.co.saiman.data.format.TextFormat;
+import uk.co.saiman.data.function.SparseSampledContinuousFunction;
 import uk.co.saiman.data.spectrum.Spectrum;
 
 public class MzMlSpectrumFormat implements TextFormat<Spectrum> {
@@ -98,16 +99,40 @@ public class MzMlSpectrumFormat implements TextFormat<Spectrum> {
     var domainUnits = spectrum.getTimeData().domain().getUnit();
     var rangeUnits = spectrum.getTimeData().range().getUnit();
 
+    var massData = spectrum.getMassData();
+    double[] massValues;
+    double[] intensityValues;
+    if (massData instanceof SparseSampledContinuousFunction<?, ?>) {
+      /*
+       * Event data such as that from a TDC is written as a list of its hits rather
+       * than as a profile, which keeps the cost in proportion to the number of
+       * hits. Processing which smooths the data produces a dense profile, which is
+       * written in full.
+       */
+      var sparseMassData = (SparseSampledContinuousFunction<?, ?>) massData;
+      int hits = sparseMassData.getNonZeroSampleCount();
+
+      massValues = new double[hits];
+      intensityValues = new double[hits];
+      for (int i = 0; i < hits; i++) {
+        massValues[i] = massData.domain().getSample(sparseMassData.getNonZeroSampleIndex(i));
+        intensityValues[i] = sparseMassData.getNonZeroSample(i);
+      }
+    } else {
+      massValues = massData.domain().toArray();
+      intensityValues = massData.range().toArray();
+    }
+
     var masses = new BinaryDataArray();
-    masses.set64BitFloatArrayAsBinaryData(spectrum.getMassData().range().toArray(), false, cv, new CVParam());
+    masses.set64BitFloatArrayAsBinaryData(massValues, false, cv, new CVParam());
 
-    var times = new BinaryDataArray();
-    times.set64BitFloatArrayAsBinaryData(spectrum.getMassData().domain().toArray(), false, cv, new CVParam());
+    var intensities = new BinaryDataArray();
+    intensities.set64BitFloatArrayAsBinaryData(intensityValues, false, cv, new CVParam());
 
     var mzmlSpectrum = new uk.ac.ebi.jmzml.model.mzml.Spectrum();
 
     mzmlSpectrum.getBinaryDataArrayList().getBinaryDataArray().add(masses);
-    mzmlSpectrum.getBinaryDataArrayList().getBinaryDataArray().add(times);
+    mzmlSpectrum.getBinaryDataArrayList().getBinaryDataArray().add(intensities);
 
     var marshaller = new MzMLMarshaller();
     return marshaller.marshall(mzmlSpectrum);
@@ -28,8 +28,6 @@
 package uk.co.saiman.data;
 
 import static java.util.Objects.requireNonNull;
-import static uk.co.saiman.bytes.Channels.transfer;
-import static uk.co.saiman.bytes.TransferBuffer.openBuffer;
 
 import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
@@ -106,14 +104,10 @@ public class SimpleData<T> implements Data<T> {
           throw new DataException("Failed to create data", e);
         }
         try {
-          var buffer = openBuffer();
-          try (var writeToBuffer = buffer.openWritableChannel(); var readFromBuffer = buffer.openReadableChannel()) {
-            format.save(writeToBuffer, new Payload<>(value));
-            /*
-             * Write to a buffer first so we don't nuke the resource if our save fails.
-             */
-            transfer(readFromBuffer, resource.write());
-          }
+          /*
+           * Replace rather than write so we don't nuke the resource if our save fails.
+           */
+          resource.replace(channel -> format.save(channel, new Payload<>(value)));
         } catch (IOException e) {
           var failed = new DataException("Failed to write data", e);
           try {
@@ -29,13 +29,19 @@ package uk.co.saiman.data.function;
 
 import static java.util.Objects.requireNonNull;
 
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
+import java.util.Optional;
 
 import javax.measure.Quantity;
 import javax.measure.Unit;
 
 /**
- * A mutable, array backed implementation of {@link SampledContinuousFunction}.
+ * An array backed implementation of {@link SampledContinuousFunction}. The
+ * samples of the function never change, so an index over its range may be
+ * built and retained. The index is only built once the function has been
+ * asked for it repeatedly, so that functions which are only resampled once,
+ * such as the successive updates of a live accumulation, are simply scanned.
  * 
  * @param <UD> the type of the units of measurement of values in the domain
  * @param <UR> the type of the units of measurement of values in the range
@@ -43,11 +49,21 @@ import javax.measure.Unit;
  */
 public class ArraySampledContinuousFunction<UD extends Quantity<UD>, UR extends Quantity<UR>>
     implements SampledContinuousFunction<UD, UR> {
+  /*
+   * Building the index costs about as much as one or two scans, so by the time
+   * it is built we have spent at least as much on scanning as the index costs,
+   * and we never pay much more than twice what we would have if we had known
+   * in advance how often the function would be resampled.
+   */
+  static final int INDEX_REQUESTS_BEFORE_BUILD = 2;
+
   private final SampledDomain<UD> domain;
   private final Unit<UR> rangeUnit;
 
   private final SampledRange<UR> range;
   private final double[] intensities;
+  private volatile SampledRangeIndex rangeIndex;
+  private volatile int indexRequests;
 
   /**
    * Instantiate with the given number of samples, values, and intensities. Arrays
@@ -59,15 +75,43 @@ public class ArraySampledContinuousFunction<UD extends Quantity<UD>, UR extends
    * @param intensities The Y values of the samples, in the codomain
    */
   public ArraySampledContinuousFunction(SampledDomain<UD> domain, Unit<UR> rangeUnit, double[] intensities) {
+    this(Arrays.copyOf(requireNonNull(intensities), domain.getDepth()), domain, rangeUnit);
+  }
+
+  private ArraySampledContinuousFunction(double[] intensities, SampledDomain<UD> domain, Unit<UR> rangeUnit) {
     this.domain = requireNonNull(domain);
     this.rangeUnit = requireNonNull(rangeUnit);
     /*
      * TODO sort values
      */
-    this.intensities = Arrays.copyOf(requireNonNull(intensities), domain.getDepth());
+    this.intensities = intensities;
     this.range = createDefaultRange();
   }
 
+  /**
+   * Instantiate over the given intensities without copying them. This avoids an
+   * allocation when the caller has just produced an array for the function
+   * which is not retained anywhere else.
+   * <p>
+   * The array is taken over by the function, and must not be modified after
+   * this call.
+   * 
+   * @param domain      the domain of the function
+   * @param rangeUnit   the units of measurement of values in the range
+   * @param intensities The Y values of the samples, in the codomain, of exactly
+   *                    the depth of the domain
+   * @return a function over the given array
+   */
+  public static <UD extends Quantity<UD>, UR extends Quantity<UR>> ArraySampledContinuousFunction<UD, UR> wrap(
+      SampledDomain<UD> domain,
+      Unit<UR> rangeUnit,
+      double[] intensities) {
+    if (intensities.length != domain.getDepth()) {
+      throw new IllegalArgumentException(intensities.length + " != " + domain.getDepth());
+    }
+    return new ArraySampledContinuousFunction<>(intensities, domain, rangeUnit);
+  }
+
   protected SampledRange<UR> createDefaultRange() {
     return new SampledRange<>(this) {
       @Override
@@ -85,6 +129,17 @@ public class ArraySampledContinuousFunction<UD extends Quantity<UD>, UR extends
         return intensities[index];
       }
 
+      @Override
+      public void copyInto(int index, double[] destination, int destinationIndex, int length) {
+        System.arraycopy(intensities, index, destination, destinationIndex, length);
+      }
+
+      @Override
+      public Optional<DoubleBuffer> asBuffer() {
+        return Optional.of(DoubleBuffer.wrap(intensities).asReadOnlyBuffer());
+      }
+
+      @Override
       public double[] toArray() {
         return intensities.clone();
       }
@@ -105,4 +160,22 @@ public class ArraySampledContinuousFunction<UD extends Quantity<UD>, UR extends
   public int getDepth() {
     return domain().getDepth();
   }
+
+  @Override
+  public Optional<SampledRangeIndex> rangeIndex() {
+    SampledRangeIndex rangeIndex = this.rangeIndex;
+    if (rangeIndex == null) {
+      /*
+       * Racing threads may miscount requests, or each build an index, but
+       * either way the result is only a little wasted effort
+       */
+      if (indexRequests < INDEX_REQUESTS_BEFORE_BUILD) {
+        indexRequests++;
+        return Optional.empty();
+      }
+      rangeIndex = SampledRangeIndex.over(range);
+      this.rangeIndex = rangeIndex;
+    }
+    return Optional.of(rangeIndex);
+  }
 }
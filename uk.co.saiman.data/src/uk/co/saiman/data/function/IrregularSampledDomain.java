@@ -29,6 +29,9 @@ package uk.co.saiman.data.function;
 
 import static java.util.Objects.requireNonNull;
 
+import java.nio.DoubleBuffer;
+import java.util.Optional;
+
 import javax.measure.Quantity;
 import javax.measure.Unit;
 
@@ -45,8 +48,24 @@ public class IrregularSampledDomain<U extends Quantity<U>> implements SampledDom
   private final double[] values;
 
   public IrregularSampledDomain(Unit<U> unit, double[] values) {
+    this(requireNonNull(values).clone(), unit);
+  }
+
+  private IrregularSampledDomain(double[] values, Unit<U> unit) {
     this.unit = requireNonNull(unit);
-    this.values = requireNonNull(values).clone();
+    this.values = values;
+  }
+
+  /**
+   * Instantiate over the given values without copying them. The array is taken
+   * over by the domain, and must not be modified after this call.
+   * 
+   * @param unit   the units of measurement of values in the domain
+   * @param values the sample positions, in increasing order
+   * @return a domain over the given array
+   */
+  public static <U extends Quantity<U>> IrregularSampledDomain<U> wrap(Unit<U> unit, double[] values) {
+    return new IrregularSampledDomain<>(requireNonNull(values), unit);
   }
 
   @Override
@@ -54,6 +73,16 @@ public class IrregularSampledDomain<U extends Quantity<U>> implements SampledDom
     return values[index];
   }
 
+  @Override
+  public void copyInto(int index, double[] destination, int destinationIndex, int length) {
+    System.arraycopy(values, index, destination, destinationIndex, length);
+  }
+
+  @Override
+  public Optional<DoubleBuffer> asBuffer() {
+    return Optional.of(DoubleBuffer.wrap(values).asReadOnlyBuffer());
+  }
+
   @Override
   public int getIndexBelow(double xValue) {
     int from = 0;
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function;
+
+import javax.measure.Quantity;
+
+/**
+ * A {@link SampledContinuousFunction} whose samples are stored in a buffer
+ * which is recycled once the function is no longer referenced, so that the
+ * samples may be overwritten by an unrelated function.
+ * <p>
+ * Functions are reference counted. A consumer which is handed a pooled
+ * function only borrows it for the duration of the call which delivered it,
+ * and a consumer which keeps it for longer, for example by passing it to
+ * another thread, must {@link #retain() retain} it before that call returns
+ * and {@link #release() release} it once it is done. The samples of a
+ * function must not be read after its last reference has been released.
+ * 
+ * @param <UD> the type of the units of measurement of values in the domain
+ * @param <UR> the type of the units of measurement of values in the range
+ * @author Elias N Vasylenko
+ */
+public interface PooledSampledContinuousFunction<UD extends Quantity<UD>, UR extends Quantity<UR>>
+    extends SampledContinuousFunction<UD, UR> {
+  /**
+   * Take an additional reference to the function, which must be balanced by a
+   * later call to {@link #release()}.
+   * 
+   * @return the receiving function
+   * @throws IllegalStateException if the function has already been recycled
+   */
+  PooledSampledContinuousFunction<UD, UR> retain();
+
+  /**
+   * Give up a reference to the function, recycling its buffer if it was the
+   * last.
+   * 
+   * @throws IllegalStateException if the function has already been recycled
+   */
+  void release();
+
+  /**
+   * Take an additional reference to the given function if it is pooled, or do
+   * nothing otherwise.
+   * 
+   * @param <T>      the type of the function
+   * @param function a function which may be pooled
+   * @return the given function
+   */
+  static <T extends SampledContinuousFunction<?, ?>> T retain(T function) {
+    if (function instanceof PooledSampledContinuousFunction<?, ?>) {
+      ((PooledSampledContinuousFunction<?, ?>) function).retain();
+    }
+    return function;
+  }
+
+  /**
+   * Release a reference to the given function if it is pooled, or do nothing
+   * otherwise.
+   * 
+   * @param function a function which may be pooled
+   */
+  static void release(SampledContinuousFunction<?, ?> function) {
+    if (function instanceof PooledSampledContinuousFunction<?, ?>) {
+      ((PooledSampledContinuousFunction<?, ?>) function).release();
+    }
+  }
+}
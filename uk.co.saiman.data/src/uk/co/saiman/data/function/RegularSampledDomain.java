@@ -60,6 +60,19 @@ public class RegularSampledDomain<U extends Quantity<U>> implements SampledDomai
     return index / getFrequency() + start;
   }
 
+  @Override
+  public void copyInto(int index, double[] destination, int destinationIndex, int length) {
+    if (index < 0 || length < 0 || index + length > getDepth())
+      throw new IndexOutOfBoundsException(index + length);
+    if (destinationIndex < 0 || destinationIndex + length > destination.length)
+      throw new IndexOutOfBoundsException(destinationIndex + length);
+
+    double frequency = getFrequency();
+    for (int i = 0; i < length; i++) {
+      destination[destinationIndex + i] = (index + i) / frequency + start;
+    }
+  }
+
   @Override
   public int getIndexBelow(double xValue) {
     return (int) (xValue * getFrequency());
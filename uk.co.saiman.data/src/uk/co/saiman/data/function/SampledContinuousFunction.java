@@ -27,6 +27,8 @@
  */
 package uk.co.saiman.data.function;
 
+import java.util.Optional;
+
 import javax.measure.Quantity;
 
 /**
@@ -53,6 +55,26 @@ public interface SampledContinuousFunction<UD extends Quantity<UD>, UR extends Q
    */
   int getDepth();
 
+  /**
+   * Find an index over the samples of the range, with which a
+   * {@link #resample(SampledDomain) resampling} can find the extremes of the
+   * range within each resolvable unit without visiting every sample.
+   * <p>
+   * Only functions whose samples never change should provide an index, and
+   * they should build it lazily and retain it, as building it visits every
+   * sample. Functions which reuse their storage, or which are otherwise
+   * modified in place, must not provide one. Since building an index costs
+   * more than a single scan, a function may also decline to provide one until
+   * it has been asked for it often enough for the index to pay for itself.
+   * 
+   * @return an index over the range of the function, or an empty optional if
+   *         the function does not support one or does not yet consider one
+   *         worth building
+   */
+  default Optional<SampledRangeIndex> rangeIndex() {
+    return Optional.empty();
+  }
+
   @Override
   default double sample(double xPosition) {
     xPosition = domain().getInterval().getConfined(xPosition);
@@ -108,6 +130,17 @@ public interface SampledContinuousFunction<UD extends Quantity<UD>, UR extends Q
       indexTo = getDepth() - 1;
     }
 
+    /*
+     * Where there are many samples to each resolvable unit, find the extremes of
+     * each unit through the index rather than visiting every sample
+     */
+    if (indexTo - indexFrom > resolvableSampleDomain.getDepth() * SampledRangeIndex.TILE_SIZE) {
+      Optional<SampledRangeIndex> rangeIndex = rangeIndex();
+      if (rangeIndex.isPresent()) {
+        return resample(resolvableSampleDomain, rangeIndex.get(), indexFrom, indexTo);
+      }
+    }
+
     indices[count++] = indexFrom;
 
     int resolvedUnit = 0;
@@ -212,9 +245,68 @@ public interface SampledContinuousFunction<UD extends Quantity<UD>, UR extends Q
     /*
      * Prepare linearisation
      */
-    return new ArraySampledContinuousFunction<>(
-        new IrregularSampledDomain<>(domain().getUnit(), values),
-        range().getUnit(),
-        intensities);
+    return ArraySampledContinuousFunction
+        .wrap(IrregularSampledDomain.wrap(domain().getUnit(), values), range().getUnit(), intensities);
+  }
+
+  private SampledContinuousFunction<UD, UR> resample(
+      SampledDomain<UD> resolvableSampleDomain,
+      SampledRangeIndex rangeIndex,
+      int indexFrom,
+      int indexTo) {
+    int resolvedUnits = resolvableSampleDomain.getDepth();
+    int[] indices = new int[resolvedUnits * 4 + 8];
+    int count = 0;
+
+    /*
+     * Take the first and last samples of each resolvable unit, and the minimum
+     * and maximum between them in the order they appear
+     */
+    int unitFrom = indexFrom;
+    for (int resolvedUnit = 1; resolvedUnit <= resolvedUnits && unitFrom <= indexTo; resolvedUnit++) {
+      int unitTo;
+      if (resolvedUnit == resolvedUnits) {
+        unitTo = indexTo + 1;
+      } else {
+        double unitToX = resolvableSampleDomain.getSample(resolvedUnit);
+        unitTo = domain().getIndexBelow(unitToX);
+        if (unitTo < 0 || domain().getSample(unitTo) < unitToX) {
+          unitTo++;
+        }
+        if (unitTo <= unitFrom) {
+          continue;
+        }
+        if (unitTo > indexTo) {
+          unitTo = indexTo + 1;
+        }
+      }
+
+      int minIndex = rangeIndex.getMinimumIndex(unitFrom, unitTo);
+      int maxIndex = rangeIndex.getMaximumIndex(unitFrom, unitTo);
+
+      count = appendIndex(indices, count, unitFrom);
+      count = appendIndex(indices, count, Math.min(minIndex, maxIndex));
+      count = appendIndex(indices, count, Math.max(minIndex, maxIndex));
+      count = appendIndex(indices, count, unitTo - 1);
+
+      unitFrom = unitTo;
+    }
+
+    double[] values = new double[count];
+    double[] intensities = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = domain().getSample(indices[i]);
+      intensities[i] = range().getSample(indices[i]);
+    }
+
+    return ArraySampledContinuousFunction
+        .wrap(IrregularSampledDomain.wrap(domain().getUnit(), values), range().getUnit(), intensities);
+  }
+
+  private static int appendIndex(int[] indices, int count, int index) {
+    if (count == 0 || indices[count - 1] != index) {
+      indices[count++] = index;
+    }
+    return count;
   }
 }
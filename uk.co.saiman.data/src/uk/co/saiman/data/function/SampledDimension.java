@@ -27,6 +27,9 @@
  */
 package uk.co.saiman.data.function;
 
+import java.nio.DoubleBuffer;
+import java.util.Optional;
+
 import javax.measure.Quantity;
 
 /**
@@ -52,12 +55,78 @@ public interface SampledDimension<U extends Quantity<U>> extends Dimension<U> {
    */
   double getSample(int index);
 
+  /**
+   * Copy a run of consecutive samples into the given array. Implementations
+   * backed by primitive storage should override this to avoid a virtual call
+   * per sample.
+   * 
+   * @param index            The index of the first sample to copy.
+   * @param destination      The array to copy into.
+   * @param destinationIndex The position in the array of the first sample.
+   * @param length           The number of samples to copy.
+   * @throws IndexOutOfBoundsException if either run falls outside its
+   *                                   array or dimension
+   */
+  default void copyInto(int index, double[] destination, int destinationIndex, int length) {
+    if (index < 0 || length < 0 || index + length > getDepth())
+      throw new IndexOutOfBoundsException(index + length);
+    if (destinationIndex < 0 || destinationIndex + length > destination.length)
+      throw new IndexOutOfBoundsException(destinationIndex + length);
+
+    for (int i = 0; i < length; i++) {
+      destination[destinationIndex + i] = getSample(index + i);
+    }
+  }
+
+  /**
+   * Copy a run of consecutive samples into the given buffer, at its current
+   * position, advancing the position past the copied samples.
+   * 
+   * @param index       The index of the first sample to copy.
+   * @param destination The buffer to copy into.
+   * @param length      The number of samples to copy.
+   */
+  default void copyInto(int index, DoubleBuffer destination, int length) {
+    if (length > destination.remaining())
+      throw new IndexOutOfBoundsException(length);
+
+    if (destination.hasArray()) {
+      copyInto(
+          index,
+          destination.array(),
+          destination.arrayOffset() + destination.position(),
+          length);
+      destination.position(destination.position() + length);
+    } else {
+      Optional<DoubleBuffer> view = asBuffer();
+      if (view.isPresent()) {
+        destination.put(view.get().position(index).limit(index + length));
+      } else {
+        for (int i = 0; i < length; i++) {
+          destination.put(getSample(index + i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Get a read-only view of the samples of this dimension, without copying
+   * them, if the implementation is backed by primitive storage.
+   * <p>
+   * The position of the returned buffer is 0 and the limit is the depth of the
+   * dimension. The buffer is only valid so long as the dimension itself is.
+   * 
+   * @return A read-only buffer over every sample, or an empty optional if no
+   *         such view is available.
+   */
+  default Optional<DoubleBuffer> asBuffer() {
+    return Optional.empty();
+  }
+
   default double[] toArray() {
     int depth = getDepth();
     double[] array = new double[depth];
-    for (int i = 0; i < depth; i++) {
-      array[i] = getSample(i);
-    }
+    copyInto(0, array, 0, depth);
     return array;
   }
 }
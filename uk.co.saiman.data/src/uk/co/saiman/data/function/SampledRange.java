@@ -108,6 +108,27 @@ public abstract class SampledRange<U extends Quantity<U>> implements Range<U>, S
     };
   }
 
+  /**
+   * Visit every sample in the range which may be non-zero, in ascending order of
+   * index. Samples which are not visited are exactly 0.
+   * <p>
+   * The default implementation visits every non-zero sample by index, but
+   * implementations with a sparse representation may override this to visit only
+   * the samples they store, at a cost proportional to the number of hits rather
+   * than to the depth.
+   * 
+   * @param action The action to perform for each sample.
+   */
+  public void forEachNonZeroSample(SampleConsumer action) {
+    int depth = getDepth();
+    for (int i = 0; i < depth; i++) {
+      double sample = getSample(i);
+      if (sample != 0) {
+        action.accept(i, sample);
+      }
+    }
+  }
+
   @Override
   public SampledRange<U> between(double startX, double endX) {
     if (getDepth() == 0) {
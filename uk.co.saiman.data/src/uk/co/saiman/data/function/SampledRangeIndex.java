@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.lang.Integer.numberOfTrailingZeros;
+import static java.lang.Math.min;
+
+/**
+ * A multi-resolution index over the samples of a {@link SampledRange}, giving
+ * the position of the minimum and maximum samples, and the mean of the
+ * samples, over any interval of indices in time logarithmic in the depth of
+ * the range.
+ * <p>
+ * The index is a pyramid of tiles. Each tile at the lowest level summarizes
+ * {@value #TILE_SIZE} consecutive samples, and each tile at a higher level
+ * summarizes {@value #TILE_SIZE} consecutive tiles of the level beneath. A
+ * query over an interval visits the samples and tiles which exactly cover it,
+ * of which there are at most {@code 2 * (TILE_SIZE - 1)} for each level.
+ * <p>
+ * The index refers back to the range it was built over to read the samples at
+ * the positions it records, so it is only valid for as long as the samples of
+ * that range do not change.
+ * 
+ * @author Elias N Vasylenko
+ */
+public final class SampledRangeIndex {
+  /**
+   * The number of samples summarized by each tile at the lowest level of the
+   * index, and the number of tiles summarized by each tile at the levels above.
+   */
+  public static final int TILE_SIZE = 4;
+  private static final int TILE_SHIFT = 2;
+
+  private static final int BUFFER_SIZE = 4096;
+
+  private final SampledRange<?> range;
+  private final int depth;
+
+  private final int[][] minimumIndices;
+  private final int[][] maximumIndices;
+  private final double[][] sums;
+
+  private SampledRangeIndex(SampledRange<?> range) {
+    this.range = range;
+    this.depth = range.getDepth();
+
+    int levels = 0;
+    for (long tiles = depth; tiles > 1; tiles = (tiles + TILE_SIZE - 1) >> TILE_SHIFT) {
+      levels++;
+    }
+    this.minimumIndices = new int[levels][];
+    this.maximumIndices = new int[levels][];
+    this.sums = new double[levels][];
+
+    if (levels > 0) {
+      indexSamples();
+      for (int level = 1; level < levels; level++) {
+        indexTiles(level);
+      }
+    }
+  }
+
+  /**
+   * Build an index over the given range. This reads every sample in the range
+   * once.
+   * 
+   * @param range the range to index
+   * @return an index over the current samples of the range
+   */
+  public static SampledRangeIndex over(SampledRange<?> range) {
+    return new SampledRangeIndex(range);
+  }
+
+  private void indexSamples() {
+    int tiles = (depth + TILE_SIZE - 1) >> TILE_SHIFT;
+    int[] minimums = minimumIndices[0] = new int[tiles];
+    int[] maximums = maximumIndices[0] = new int[tiles];
+    double[] sums = this.sums[0] = new double[tiles];
+
+    double[] buffer = new double[BUFFER_SIZE];
+    for (int offset = 0; offset < depth; offset += BUFFER_SIZE) {
+      int length = min(BUFFER_SIZE, depth - offset);
+      range.copyInto(offset, buffer, 0, length);
+
+      for (int start = 0; start < length; start += TILE_SIZE) {
+        int end = min(start + TILE_SIZE, length);
+
+        int minimum = start;
+        int maximum = start;
+        double sum = buffer[start];
+        for (int i = start + 1; i < end; i++) {
+          double sample = buffer[i];
+          if (sample < buffer[minimum]) {
+            minimum = i;
+          }
+          if (sample > buffer[maximum]) {
+            maximum = i;
+          }
+          sum += sample;
+        }
+
+        int tile = (offset + start) >> TILE_SHIFT;
+        minimums[tile] = offset + minimum;
+        maximums[tile] = offset + maximum;
+        sums[tile] = sum;
+      }
+    }
+  }
+
+  private void indexTiles(int level) {
+    int[] lowerMinimums = minimumIndices[level - 1];
+    int[] lowerMaximums = maximumIndices[level - 1];
+    double[] lowerSums = sums[level - 1];
+
+    int lowerTiles = lowerSums.length;
+    int tiles = (lowerTiles + TILE_SIZE - 1) >> TILE_SHIFT;
+    int[] minimums = minimumIndices[level] = new int[tiles];
+    int[] maximums = maximumIndices[level] = new int[tiles];
+    double[] sums = this.sums[level] = new double[tiles];
+
+    for (int tile = 0; tile < tiles; tile++) {
+      int start = tile << TILE_SHIFT;
+      int end = min(start + TILE_SIZE, lowerTiles);
+
+      int minimum = lowerMinimums[start];
+      int maximum = lowerMaximums[start];
+      double minimumSample = range.getSample(minimum);
+      double maximumSample = range.getSample(maximum);
+      double sum = lowerSums[start];
+      for (int i = start + 1; i < end; i++) {
+        double sample = range.getSample(lowerMinimums[i]);
+        if (sample < minimumSample) {
+          minimumSample = sample;
+          minimum = lowerMinimums[i];
+        }
+        sample = range.getSample(lowerMaximums[i]);
+        if (sample > maximumSample) {
+          maximumSample = sample;
+          maximum = lowerMaximums[i];
+        }
+        sum += lowerSums[i];
+      }
+
+      minimums[tile] = minimum;
+      maximums[tile] = maximum;
+      sums[tile] = sum;
+    }
+  }
+
+  /**
+   * @return the number of samples in the indexed range
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Find the index of the smallest sample in the given interval. If there are
+   * several, the first is returned.
+   * 
+   * @param fromIndex the index of the first sample in the interval, inclusive
+   * @param toIndex   the index of the last sample in the interval, exclusive
+   * @return the index of the smallest sample in the interval
+   */
+  public int getMinimumIndex(int fromIndex, int toIndex) {
+    return findExtremeIndex(fromIndex, toIndex, minimumIndices, false);
+  }
+
+  /**
+   * Find the index of the largest sample in the given interval. If there are
+   * several, the first is returned.
+   * 
+   * @param fromIndex the index of the first sample in the interval, inclusive
+   * @param toIndex   the index of the last sample in the interval, exclusive
+   * @return the index of the largest sample in the interval
+   */
+  public int getMaximumIndex(int fromIndex, int toIndex) {
+    return findExtremeIndex(fromIndex, toIndex, maximumIndices, true);
+  }
+
+  /**
+   * Find the mean of the samples in the given interval.
+   * 
+   * @param fromIndex the index of the first sample in the interval, inclusive
+   * @param toIndex   the index of the last sample in the interval, exclusive
+   * @return the mean of the samples in the interval
+   */
+  public double getMean(int fromIndex, int toIndex) {
+    checkInterval(fromIndex, toIndex);
+
+    double sum = 0;
+    int index = fromIndex;
+    while (index < toIndex) {
+      int level = getCoveringLevel(index, toIndex);
+      if (level < 0) {
+        sum += range.getSample(index++);
+      } else {
+        int shift = (level + 1) * TILE_SHIFT;
+        sum += sums[level][index >> shift];
+        index += 1 << shift;
+      }
+    }
+    return sum / (toIndex - fromIndex);
+  }
+
+  private int findExtremeIndex(int fromIndex, int toIndex, int[][] tiles, boolean maximum) {
+    checkInterval(fromIndex, toIndex);
+
+    int extreme = -1;
+    double extremeSample = 0;
+    int index = fromIndex;
+    while (index < toIndex) {
+      int level = getCoveringLevel(index, toIndex);
+      int candidate;
+      if (level < 0) {
+        candidate = index++;
+      } else {
+        int shift = (level + 1) * TILE_SHIFT;
+        candidate = tiles[level][index >> shift];
+        index += 1 << shift;
+      }
+
+      double sample = range.getSample(candidate);
+      if (extreme < 0 || (maximum ? sample > extremeSample : sample < extremeSample)) {
+        extreme = candidate;
+        extremeSample = sample;
+      }
+    }
+    return extreme;
+  }
+
+  /*
+   * The highest level with a tile which starts at the given index and ends
+   * before the given limit, or -1 if there is no such tile.
+   */
+  private int getCoveringLevel(int index, int toIndex) {
+    int aligned = numberOfTrailingZeros(index) / TILE_SHIFT;
+    int contained = (Integer.SIZE - 1 - numberOfLeadingZeros(toIndex - index)) / TILE_SHIFT;
+    return min(min(aligned, contained), sums.length) - 1;
+  }
+
+  private void checkInterval(int fromIndex, int toIndex) {
+    if (fromIndex < 0 || toIndex > depth || fromIndex >= toIndex) {
+      throw new ArrayIndexOutOfBoundsException(fromIndex < 0 ? fromIndex : toIndex);
+    }
+  }
+}
@@ -32,7 +32,6 @@ import static java.lang.Math.min;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Arrays;
-import java.util.function.Function;
 
 import javax.measure.Quantity;
 import javax.measure.Unit;
@@ -40,9 +39,17 @@ import javax.measure.Unit;
 import uk.co.saiman.mathematics.Interval;
 
 /**
- * A (currently) immutable implementation of {@link RegularSampledDomain} which
- * optimizes memory usage for sampled continua with mostly 0 sample values in
- * the codomain.
+ * A (currently) immutable implementation of {@link SampledContinuousFunction}
+ * which optimizes memory usage for sampled continua with mostly 0 sample values
+ * in the codomain.
+ * <p>
+ * Only the indices and intensities of non-zero samples are stored, in
+ * ascending order of index. They can be visited directly through
+ * {@link #getNonZeroSampleCount()}, {@link #getNonZeroSampleIndex(int)} and
+ * {@link #getNonZeroSample(int)}, or through
+ * {@link SampledRange#forEachNonZeroSample(SampleConsumer)}, so that consumers
+ * can process a function in time proportional to the number of hits rather
+ * than to the depth of the domain.
  * 
  * @param <UD>
  *          the type of the units of measurement of values in the domain
@@ -60,8 +67,11 @@ public class SparseSampledContinuousFunction<UD extends Quantity<UD>, UR extends
 
   /**
    * Instantiate based on the given significant sample indices and intensities.
-   * Samples at indices other than those given are assumed to be of intensity 0 in
-   * the codomain.
+   * Samples at indices other than those given are assumed to be of intensity 0
+   * in the codomain.
+   * <p>
+   * The indices need not be given in order, and intensities given for the same
+   * index more than once are summed.
    * 
    * @param domain
    *          the domain of the function
@@ -70,7 +80,7 @@ public class SparseSampledContinuousFunction<UD extends Quantity<UD>, UR extends
    * @param samples
    *          The number of non-zero samples
    * @param indices
-   *          The sequential indices of non-zero samples
+   *          The indices of non-zero samples
    * @param intensities
    *          The intensities at the given non-zero sample indices
    */
@@ -80,24 +90,36 @@ public class SparseSampledContinuousFunction<UD extends Quantity<UD>, UR extends
       int samples,
       int[] indices,
       double[] intensities) {
-    /*
-     * TODO sort the indices & intensities here
-     */
-    this.intensityIndices = Arrays.copyOf(requireNonNull(indices), samples);
-    this.intensities = Arrays.copyOf(requireNonNull(intensities), samples);
     this.domain = requireNonNull(domain);
-    this.range = createDefaultRange(i -> intensities[i], unitRange);
+
+    int[] intensityIndices = Arrays.copyOf(requireNonNull(indices), samples);
+    double[] sampleIntensities = Arrays.copyOf(requireNonNull(intensities), samples);
+
+    if (!isStrictlyAscending(intensityIndices)) {
+      samples = sortAndMerge(intensityIndices, sampleIntensities);
+      intensityIndices = Arrays.copyOf(intensityIndices, samples);
+      sampleIntensities = Arrays.copyOf(sampleIntensities, samples);
+    }
+    if (samples > 0
+        && (intensityIndices[0] < 0 || intensityIndices[samples - 1] >= domain.getDepth())) {
+      throw new IndexOutOfBoundsException(
+          "Sample indices must be within domain of depth " + domain.getDepth());
+    }
+
+    this.intensityIndices = intensityIndices;
+    this.intensities = sampleIntensities;
+    this.range = createDefaultRange(unitRange);
   }
 
   /**
-   * Create a memory efficient view of the given array, with the given frequency.
+   * Create a memory efficient copy of the given array, over the given domain.
    * 
    * @param domain
    *          the domain of the function
    * @param unitRange
    *          the units of measurement of values in the range
    * @param intensities
-   *          The intensities as a sequence of samples at the given frequency
+   *          The intensities as a sequence of samples over the domain
    */
   public SparseSampledContinuousFunction(
       SampledDomain<UD> domain,
@@ -123,14 +145,51 @@ public class SparseSampledContinuousFunction<UD extends Quantity<UD>, UR extends
       }
     }
 
-    this.domain = domain;
-    this.range = createDefaultRange(i -> intensities[i], unitRange);
+    this.domain = requireNonNull(domain);
+    this.range = createDefaultRange(unitRange);
+  }
+
+  private static boolean isStrictlyAscending(int[] indices) {
+    for (int i = 1; i < indices.length; i++) {
+      if (indices[i] <= indices[i - 1]) {
+        return false;
+      }
+    }
+    return true;
   }
 
-  protected SampledRange<UR> createDefaultRange(
-      Function<Integer, Double> intensityAtIndex,
-      Unit<UR> unitRange) {
-    requireNonNull(intensityAtIndex);
+  /*
+   * Sort the samples by index without boxing, by packing each index above its
+   * original position into a long, then merge duplicates. Returns the number of
+   * distinct indices.
+   */
+  private static int sortAndMerge(int[] indices, double[] intensities) {
+    int samples = indices.length;
+
+    long[] order = new long[samples];
+    for (int i = 0; i < samples; i++) {
+      order[i] = ((long) indices[i] << 32) | i;
+    }
+    Arrays.sort(order);
+
+    double[] unsortedIntensities = intensities.clone();
+    int count = 0;
+    for (int i = 0; i < samples; i++) {
+      int index = (int) (order[i] >> 32);
+      double intensity = unsortedIntensities[(int) order[i]];
+
+      if (count > 0 && indices[count - 1] == index) {
+        intensities[count - 1] += intensity;
+      } else {
+        indices[count] = index;
+        intensities[count] = intensity;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  protected SampledRange<UR> createDefaultRange(Unit<UR> unitRange) {
     requireNonNull(unitRange);
 
     return new SampledRange<UR>(this) {
@@ -146,60 +205,77 @@ public class SparseSampledContinuousFunction<UD extends Quantity<UD>, UR extends
 
       @Override
       public double getSample(int index) {
-        int indexIndex = getIndexIndex(index);
-        if (indexIndex < 0) {
-          return 0;
-        } else {
-          return intensityAtIndex.apply(index);
-        }
+        int indexIndex = Arrays.binarySearch(intensityIndices, index);
+        return indexIndex < 0 ? 0 : intensities[indexIndex];
       }
 
       @Override
-      public Interval<Double> getInterval() {
-        return super.getInterval();
+      public void copyInto(int index, double[] destination, int destinationIndex, int length) {
+        if (index < 0 || length < 0 || index + length > getDepth())
+          throw new IndexOutOfBoundsException(index + length);
+
+        Arrays.fill(destination, destinationIndex, destinationIndex + length, 0);
+
+        int indexIndex = Arrays.binarySearch(intensityIndices, index);
+        if (indexIndex < 0) {
+          indexIndex = -indexIndex - 1;
+        }
+        int end = index + length;
+        for (int i = indexIndex; i < intensityIndices.length && intensityIndices[i] < end; i++) {
+          destination[destinationIndex + intensityIndices[i] - index] = intensities[i];
+        }
       }
 
       @Override
-      public boolean equals(Object obj) {
-        return super.equals(obj);
+      public void forEachNonZeroSample(SampleConsumer action) {
+        for (int i = 0; i < intensityIndices.length; i++) {
+          action.accept(intensityIndices[i], intensities[i]);
+        }
       }
 
       @Override
-      public int hashCode() {
-        return super.hashCode();
-      }
+      public Interval<Double> getInterval() {
+        if (intensities.length == 0) {
+          return super.getInterval();
+        }
 
+        double minimum = intensities.length < getDepth() ? 0 : intensities[0];
+        double maximum = minimum;
+        for (double intensity : intensities) {
+          minimum = min(minimum, intensity);
+          maximum = max(maximum, intensity);
+        }
+        return Interval.bounded(minimum, maximum);
+      }
     };
   }
 
-  private int getIndexIndex(int index) {
-    int from = 0;
-    int to = intensityIndices.length - 1;
-
-    if (to < 0) {
-      return -1;
-    }
+  /**
+   * @return the number of samples which are stored explicitly, all others
+   *         being 0
+   */
+  public int getNonZeroSampleCount() {
+    return intensityIndices.length;
+  }
 
-    do {
-      if (intensityIndices[to] < index) {
-        return -1;
-      } else if (intensityIndices[to] == index) {
-        return to;
-      } else if (intensityIndices[from] > index) {
-        return -1;
-      } else if (intensityIndices[from] == index) {
-        return from;
-      } else {
-        int mid = (to + from) / 2;
-        if (intensityIndices[mid] > index) {
-          to = mid;
-        } else {
-          from = mid;
-        }
-      }
-    } while (to - from > 1);
+  /**
+   * @param n
+   *          the position of a stored sample, from 0 to
+   *          {@link #getNonZeroSampleCount()}
+   * @return the index in the domain of the nth stored sample
+   */
+  public int getNonZeroSampleIndex(int n) {
+    return intensityIndices[n];
+  }
 
-    return -1;
+  /**
+   * @param n
+   *          the position of a stored sample, from 0 to
+   *          {@link #getNonZeroSampleCount()}
+   * @return the intensity of the nth stored sample
+   */
+  public double getNonZeroSample(int n) {
+    return intensities[n];
   }
 
   @Override
@@ -137,7 +137,7 @@ public class RegularSampledContinuousFunctionFormat<UD extends Quantity<UD>, UR
     double[] intensities = new double[domain.getDepth()];
     buffer.asDoubleBuffer().get(intensities);
 
-    return new Payload<>(new ArraySampledContinuousFunction<>(domain, rangeUnit, intensities));
+    return new Payload<>(ArraySampledContinuousFunction.wrap(domain, rangeUnit, intensities));
   }
 
   @Override
@@ -160,10 +160,7 @@ public class RegularSampledContinuousFunctionFormat<UD extends Quantity<UD>, UR
     }
 
     ByteBuffer buffer = allocate(Double.BYTES * payload.data.getDepth());
-    for (int i = 0; i > payload.data.getDepth(); i++) {
-      buffer.putDouble(payload.data.range().getSample(i));
-    }
-    buffer.flip();
+    payload.data.range().copyInto(0, buffer.asDoubleBuffer(), payload.data.getDepth());
     while (buffer.hasRemaining()) {
       outputChannel.write(buffer);
     }
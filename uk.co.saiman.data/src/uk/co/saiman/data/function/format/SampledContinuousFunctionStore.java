@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.format;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import javax.measure.Quantity;
+import javax.measure.Unit;
+
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.data.function.SampledDomain;
+import uk.co.saiman.data.function.SampledRange;
+
+/**
+ * An append-only sequence of sampled continuous functions over a common
+ * {@link RegularSampledDomain domain}, as read and written by
+ * {@link SampledContinuousFunctionStoreFormat}.
+ * <p>
+ * Records are fixed size and stored back to back after a header, so a record
+ * is located by arithmetic alone and a new record is written without touching
+ * those before it. When the store is backed by a file the records are mapped
+ * into memory rather than read, in chunks of up to {@value #MAXIMUM_CHUNK_SIZE}
+ * bytes, so opening a store of many gigabytes costs nothing until records are
+ * actually visited, and pages which are no longer visited may be reclaimed by
+ * the operating system.
+ * <p>
+ * The functions returned by {@link #get(long)} are views over the mapped
+ * records, and {@link SampledRange#asBuffer()} and
+ * {@link SampledRange#copyInto(int, double[], int, int) copyInto} on their
+ * ranges read directly from the mapping.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <UD> the type of the units of measurement of values in the domain
+ * @param <UR> the type of the units of measurement of values in the range
+ */
+public class SampledContinuousFunctionStore<UD extends Quantity<UD>, UR extends Quantity<UR>>
+    implements AutoCloseable {
+  static final int MAGIC = 0x53534346;
+  static final int HEADER_SIZE = Integer.BYTES + Double.BYTES * 2 + Integer.BYTES;
+  static final int MAXIMUM_CHUNK_SIZE = 1 << 30;
+
+  private final RegularSampledDomain<UD> domain;
+  private final Unit<UR> rangeUnit;
+  private final int recordSize;
+  private final int recordsPerChunk;
+
+  private final FileChannel channel;
+  private final ByteBuffer appendBuffer;
+
+  private final List<ByteBuffer> chunks;
+  private long mappedCount;
+  private long count;
+
+  private SampledContinuousFunctionStore(
+      RegularSampledDomain<UD> domain,
+      Unit<UR> rangeUnit,
+      FileChannel channel,
+      long count) {
+    this.domain = requireNonNull(domain);
+    this.rangeUnit = requireNonNull(rangeUnit);
+    this.recordSize = recordSize(domain);
+    this.recordsPerChunk = Math.max(1, MAXIMUM_CHUNK_SIZE / Math.max(1, recordSize));
+
+    this.channel = channel;
+    this.appendBuffer = channel == null ? null : ByteBuffer.allocateDirect(recordSize);
+
+    this.chunks = new ArrayList<>();
+    this.count = count;
+  }
+
+  static int recordSize(RegularSampledDomain<?> domain) {
+    long recordSize = (long) Double.BYTES * domain.getDepth();
+    if (recordSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Record too large " + recordSize);
+    }
+    return (int) recordSize;
+  }
+
+  /**
+   * Map the records of a store which is already open for reading. The mapping
+   * remains valid after the channel is closed, but the store cannot be appended
+   * to.
+   * 
+   * @param channel   a channel over the store positioned after the header
+   * @param domain    the domain read from the header
+   * @param rangeUnit the units of measurement of values in the range
+   * @return a read-only store over the mapped records
+   * @throws IOException if the records could not be mapped
+   */
+  static <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunctionStore<UD, UR> map(
+      FileChannel channel,
+      RegularSampledDomain<UD> domain,
+      Unit<UR> rangeUnit) throws IOException {
+    var store = new SampledContinuousFunctionStore<>(domain, rangeUnit, null, 0);
+    store.count = store.countRecords(channel.size());
+    store.mapRecords(channel, store.count);
+    return store;
+  }
+
+  /**
+   * Wrap records which have already been read into memory, for channels which
+   * cannot be mapped.
+   * 
+   * @param records   the records, without the header
+   * @param domain    the domain read from the header
+   * @param rangeUnit the units of measurement of values in the range
+   * @return a read-only store over the given records
+   */
+  static <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunctionStore<UD, UR> wrap(
+      ByteBuffer records,
+      RegularSampledDomain<UD> domain,
+      Unit<UR> rangeUnit) {
+    var store = new SampledContinuousFunctionStore<>(domain, rangeUnit, null, 0);
+    store.count = store.recordSize == 0 ? 0 : records.remaining() / store.recordSize;
+    long chunkSize = (long) store.recordsPerChunk * store.recordSize;
+    for (long offset = 0; offset < store.count * store.recordSize; offset += chunkSize) {
+      int length = (int) Math.min(chunkSize, store.count * store.recordSize - offset);
+      store.chunks.add(records.duplicate().position((int) offset).limit((int) offset + length).slice());
+    }
+    store.mappedCount = store.count;
+    return store;
+  }
+
+  /**
+   * Open a store for appending, taking ownership of the channel. The header
+   * must already have been written or validated.
+   * 
+   * @param channel   a readable and writable channel over the store
+   * @param domain    the domain of the store
+   * @param rangeUnit the units of measurement of values in the range
+   * @return an appendable store over the channel
+   * @throws IOException if the size of the store could not be determined
+   */
+  static <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunctionStore<UD, UR> open(
+      FileChannel channel,
+      RegularSampledDomain<UD> domain,
+      Unit<UR> rangeUnit) throws IOException {
+    var store = new SampledContinuousFunctionStore<>(domain, rangeUnit, channel, 0);
+    store.count = store.countRecords(channel.size());
+    return store;
+  }
+
+  /*
+   * A partially written trailing record, e.g. after a crash mid append, is not
+   * counted and will be overwritten by the next append.
+   */
+  private long countRecords(long size) {
+    return recordSize == 0 ? 0 : Math.max(0, size - HEADER_SIZE) / recordSize;
+  }
+
+  private void mapRecords(FileChannel channel, long count) throws IOException {
+    while (mappedCount < count) {
+      int chunk = (int) (mappedCount / recordsPerChunk);
+      long chunkStart = (long) chunk * recordsPerChunk;
+      long chunkEnd = Math.min(chunkStart + recordsPerChunk, count);
+
+      ByteBuffer mapping = channel
+          .map(
+              READ_ONLY,
+              HEADER_SIZE + chunkStart * recordSize,
+              (chunkEnd - chunkStart) * recordSize);
+      if (chunk < chunks.size()) {
+        chunks.set(chunk, mapping);
+      } else {
+        chunks.add(mapping);
+      }
+      mappedCount = chunkEnd;
+    }
+  }
+
+  public RegularSampledDomain<UD> getDomain() {
+    return domain;
+  }
+
+  public Unit<UR> getRangeUnit() {
+    return rangeUnit;
+  }
+
+  /**
+   * @return the number of records in the store
+   */
+  public synchronized long size() {
+    return count;
+  }
+
+  /**
+   * @return true if records can be appended to the store
+   */
+  public boolean isAppendable() {
+    return channel != null;
+  }
+
+  /**
+   * Get a view of the record at the given index. The view reads from the store
+   * on demand and remains valid for as long as the store is reachable, even
+   * after it is closed.
+   * 
+   * @param index the index of the record
+   * @return a function over the record
+   * @throws IOException if the record could not be mapped
+   */
+  public SampledContinuousFunction<UD, UR> get(long index) throws IOException {
+    return new StoredFunction(getRecord(index));
+  }
+
+  private synchronized DoubleBuffer getRecord(long index) throws IOException {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException(Long.toString(index));
+    }
+    if (index >= mappedCount) {
+      mapRecords(channel, count);
+    }
+
+    int offset = (int) (index % recordsPerChunk) * recordSize;
+    return chunks
+        .get((int) (index / recordsPerChunk))
+        .duplicate()
+        .position(offset)
+        .limit(offset + recordSize)
+        .slice()
+        .asDoubleBuffer()
+        .asReadOnlyBuffer();
+  }
+
+  /**
+   * @return a stream of views over each record in the store, in order
+   */
+  public Stream<SampledContinuousFunction<UD, UR>> stream() {
+    return LongStream.range(0, size()).mapToObj(index -> {
+      try {
+        return get(index);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
+  /**
+   * Write a new record to the end of the store. Existing records are not
+   * rewritten.
+   * 
+   * @param function a function over the domain of the store
+   * @return the index of the new record
+   * @throws IOException if the record could not be written
+   */
+  public synchronized long append(SampledContinuousFunction<UD, UR> function) throws IOException {
+    if (channel == null) {
+      throw new IllegalStateException("Store is not open for appending");
+    }
+    if (function.getDepth() != domain.getDepth()) {
+      throw new IllegalArgumentException(function.getDepth() + " != " + domain.getDepth());
+    }
+
+    appendBuffer.clear();
+    function.range().copyInto(0, appendBuffer.asDoubleBuffer(), domain.getDepth());
+
+    long position = HEADER_SIZE + count * recordSize;
+    while (appendBuffer.hasRemaining()) {
+      position += channel.write(appendBuffer, position);
+    }
+    return count++;
+  }
+
+  /**
+   * Force any appended records down to the storage device.
+   * 
+   * @throws IOException if the records could not be written
+   */
+  public void flush() throws IOException {
+    if (channel != null) {
+      channel.force(false);
+    }
+  }
+
+  /**
+   * Write every record, without the header, to the given channel. Records are
+   * written straight from the mapping in chunk sized runs.
+   * 
+   * @param outputChannel the channel to write to
+   * @throws IOException if the records could not be written
+   */
+  synchronized void writeRecords(WritableByteChannel outputChannel) throws IOException {
+    if (mappedCount < count) {
+      mapRecords(channel, count);
+    }
+    for (ByteBuffer chunk : chunks) {
+      ByteBuffer records = chunk.duplicate().clear();
+      while (records.hasRemaining()) {
+        outputChannel.write(records);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  private class StoredFunction implements SampledContinuousFunction<UD, UR> {
+    private final DoubleBuffer samples;
+    private final SampledRange<UR> range;
+
+    StoredFunction(DoubleBuffer samples) {
+      this.samples = samples;
+      this.range = new SampledRange<>(this) {
+        @Override
+        public Unit<UR> getUnit() {
+          return rangeUnit;
+        }
+
+        @Override
+        public int getDepth() {
+          return domain.getDepth();
+        }
+
+        @Override
+        public double getSample(int index) {
+          return samples.get(index);
+        }
+
+        @Override
+        public void copyInto(int index, double[] destination, int destinationIndex, int length) {
+          samples.duplicate().position(index).get(destination, destinationIndex, length);
+        }
+
+        @Override
+        public Optional<DoubleBuffer> asBuffer() {
+          return Optional.of(samples.duplicate());
+        }
+      };
+    }
+
+    @Override
+    public SampledDomain<UD> domain() {
+      return domain;
+    }
+
+    @Override
+    public SampledRange<UR> range() {
+      return range;
+    }
+
+    @Override
+    public int getDepth() {
+      return domain.getDepth();
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.format;
+
+import static uk.co.saiman.data.function.format.SampledContinuousFunctionStore.HEADER_SIZE;
+import static uk.co.saiman.data.function.format.SampledContinuousFunctionStore.MAGIC;
+import static uk.co.saiman.data.format.MediaType.APPLICATION_TYPE;
+import static uk.co.saiman.data.format.RegistrationTree.VENDOR;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.stream.Stream;
+
+import javax.measure.Quantity;
+import javax.measure.Unit;
+
+import uk.co.saiman.data.format.DataFormat;
+import uk.co.saiman.data.format.MediaType;
+import uk.co.saiman.data.format.Payload;
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.resource.Resource;
+
+/**
+ * A format for a {@link SampledContinuousFunctionStore store} of many sampled
+ * continuous functions over a common regular domain, such as the spectra of a
+ * chemical map.
+ * <p>
+ * The layout is a magic number and the encoded domain, followed by the range
+ * of each function as a fixed size run of doubles. When loaded from a
+ * {@link FileChannel} the records are mapped rather than read, and a store may
+ * be {@link #open(Resource, RegularSampledDomain) opened} over a resource to
+ * append records in place.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <UD> the type of the units of measurement of values in the domain
+ * @param <UR> the type of the units of measurement of values in the range
+ */
+public class SampledContinuousFunctionStoreFormat<UD extends Quantity<UD>, UR extends Quantity<UR>>
+    implements DataFormat<SampledContinuousFunctionStore<UD, UR>> {
+  private static final String MASS_SPECTRUM_STORE_EXTENSION = "mss";
+
+  public static final int VERSION = 1;
+
+  public static final MediaType MEDIA_TYPE = new MediaType(
+      APPLICATION_TYPE,
+      "saiman.sampledfunctionstore.v" + VERSION,
+      VENDOR);
+
+  private final Unit<UD> domainUnit;
+  private final Unit<UR> rangeUnit;
+
+  public SampledContinuousFunctionStoreFormat(Unit<UD> domainUnit, Unit<UR> rangeUnit) {
+    this.domainUnit = domainUnit;
+    this.rangeUnit = rangeUnit;
+  }
+
+  @Override
+  public Stream<String> getExtensions() {
+    return Stream.of(MASS_SPECTRUM_STORE_EXTENSION);
+  }
+
+  @Override
+  public Stream<MediaType> getMediaTypes() {
+    return Stream.of(MEDIA_TYPE);
+  }
+
+  @Override
+  public Payload<SampledContinuousFunctionStore<UD, UR>> load(ReadableByteChannel inputChannel)
+      throws IOException {
+    RegularSampledDomain<UD> domain = readHeader(inputChannel);
+
+    if (inputChannel instanceof FileChannel
+        && ((FileChannel) inputChannel).position() == HEADER_SIZE) {
+      return new Payload<>(
+          SampledContinuousFunctionStore.map((FileChannel) inputChannel, domain, rangeUnit));
+    }
+
+    int recordSize = SampledContinuousFunctionStore.recordSize(domain);
+    ByteBuffer records = ByteBuffer.allocate(Math.max(recordSize, 1));
+    while (inputChannel.read(records) >= 0) {
+      if (!records.hasRemaining()) {
+        records = ByteBuffer.allocate(records.capacity() * 2).put(records.flip());
+      }
+    }
+    return new Payload<>(SampledContinuousFunctionStore.wrap(records.flip(), domain, rangeUnit));
+  }
+
+  @Override
+  public void save(
+      WritableByteChannel outputChannel,
+      Payload<? extends SampledContinuousFunctionStore<UD, UR>> payload) throws IOException {
+    writeHeader(outputChannel, payload.data.getDomain());
+    payload.data.writeRecords(outputChannel);
+  }
+
+  /**
+   * Open a store over the given resource for appending, creating it if it does
+   * not yet exist. The resource must be backed by a file, as is the case for
+   * the resources of a {@link uk.co.saiman.data.resource.PathLocation}.
+   * 
+   * @param resource the resource to open
+   * @param domain   the domain of the store, which must match the domain of an
+   *                 existing store
+   * @return a store which is open for appending, and which must be closed by the
+   *         caller
+   * @throws IOException if the resource could not be opened or does not contain
+   *                     a store over the given domain
+   */
+  public SampledContinuousFunctionStore<UD, UR> open(Resource resource, RegularSampledDomain<UD> domain)
+      throws IOException {
+    resource.create();
+    ByteChannel channel = resource.open();
+    try {
+      if (!(channel instanceof FileChannel)) {
+        throw new IOException("Cannot append to resource " + resource);
+      }
+      FileChannel fileChannel = (FileChannel) channel;
+
+      if (fileChannel.size() < HEADER_SIZE) {
+        fileChannel.truncate(0);
+        writeHeader(fileChannel, domain);
+      } else {
+        RegularSampledDomain<UD> existingDomain = readHeader(fileChannel);
+        if (existingDomain.getFrequency() != domain.getFrequency()
+            || existingDomain.getDepth() != domain.getDepth()
+            || !existingDomain
+                .getInterval()
+                .getLeftEndpoint()
+                .equals(domain.getInterval().getLeftEndpoint())) {
+          throw new IOException("Domain mismatch in resource " + resource);
+        }
+        domain = existingDomain;
+      }
+
+      return SampledContinuousFunctionStore.open(fileChannel, domain, rangeUnit);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private RegularSampledDomain<UD> readHeader(ReadableByteChannel inputChannel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+    while (buffer.hasRemaining()) {
+      if (inputChannel.read(buffer) < 0) {
+        throw new IOException("Unexpected end of store header");
+      }
+    }
+    if (buffer.flip().getInt() != MAGIC) {
+      throw new IOException("Not a sampled continuous function store");
+    }
+    return new RegularSampledDomainFormat<>(domainUnit).load(inputChannel).data;
+  }
+
+  private void writeHeader(WritableByteChannel outputChannel, RegularSampledDomain<UD> domain)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip();
+    while (buffer.hasRemaining()) {
+      outputChannel.write(buffer);
+    }
+    new RegularSampledDomainFormat<>(domainUnit).save(outputChannel, new Payload<>(domain));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.format;
+
+import static java.nio.ByteBuffer.allocate;
+import static uk.co.saiman.data.format.MediaType.APPLICATION_TYPE;
+import static uk.co.saiman.data.format.RegistrationTree.VENDOR;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.stream.Stream;
+
+import javax.measure.Quantity;
+import javax.measure.Unit;
+
+import uk.co.saiman.data.format.DataFormat;
+import uk.co.saiman.data.format.MediaType;
+import uk.co.saiman.data.format.Payload;
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.data.function.SampledDomain;
+import uk.co.saiman.data.function.SparseSampledContinuousFunction;
+
+/**
+ * A binary format for sampled continuous functions which stores only the
+ * non-zero samples, as a count followed by their indices and intensities.
+ * <p>
+ * {@link SparseSampledContinuousFunction Sparse} functions are written directly
+ * from their stored samples, so saving and loading costs time and space in
+ * proportion to the number of hits rather than the depth of the domain. Dense
+ * functions are accepted too, but must be scanned in full.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <UD> the type of the units of measurement of values in the domain
+ * @param <UR> the type of the units of measurement of values in the range
+ */
+public class SparseSampledContinuousFunctionFormat<UD extends Quantity<UD>, UR extends Quantity<UR>>
+    implements DataFormat<SampledContinuousFunction<UD, UR>> {
+  private static final String SPARSE_MASS_SPECTRUM_RANGE_EXTENSION = "mssr";
+  private static final String SPARSE_MASS_SPECTRUM_FUNCTION_EXTENSION = "mssf";
+  private static final int SAMPLE_BYTES = Integer.BYTES + Double.BYTES;
+
+  public static final int VERSION = 1;
+
+  public static final MediaType RANGE_MEDIA_TYPE = new MediaType(
+      APPLICATION_TYPE,
+      "saiman.sparsesampledrange.v" + VERSION,
+      VENDOR);
+  public static final MediaType FUNCTION_MEDIA_TYPE = new MediaType(
+      APPLICATION_TYPE,
+      "saiman.sparsesampledfunction.v" + VERSION,
+      VENDOR);
+
+  private final SampledDomain<UD> domain;
+  private final Unit<UR> rangeUnit;
+
+  protected SparseSampledContinuousFunctionFormat(SampledDomain<UD> domain, Unit<UR> rangeUnit) {
+    this.domain = domain;
+    this.rangeUnit = rangeUnit;
+  }
+
+  @Override
+  public Stream<String> getExtensions() {
+    return Stream.of(SPARSE_MASS_SPECTRUM_RANGE_EXTENSION);
+  }
+
+  @Override
+  public Stream<MediaType> getMediaTypes() {
+    return Stream.of(RANGE_MEDIA_TYPE);
+  }
+
+  /**
+   * @param domain    the domain of the function to format
+   * @param rangeUnit the type of the units of measurement of values in the range
+   * @return a sparse continuous function byte format over the given domain
+   */
+  public static <UD extends Quantity<UD>, UR extends Quantity<UR>> DataFormat<SampledContinuousFunction<UD, UR>> overDomain(
+      SampledDomain<UD> domain,
+      Unit<UR> rangeUnit) {
+    return new SparseSampledContinuousFunctionFormat<>(domain, rangeUnit);
+  }
+
+  /**
+   * @param domainUnit the type of the units of measurement of values in the
+   *                   domain
+   * @param rangeUnit  the type of the units of measurement of values in the range
+   * @return a sparse continuous function byte format which encodes the domain
+   *         start and domain frequency
+   */
+  public static <UD extends Quantity<UD>, UR extends Quantity<UR>> DataFormat<SampledContinuousFunction<UD, UR>> overEncodedDomain(
+      Unit<UD> domainUnit,
+      Unit<UR> rangeUnit) {
+    return new DataFormat<SampledContinuousFunction<UD, UR>>() {
+      @Override
+      public Stream<String> getExtensions() {
+        return Stream.of(SPARSE_MASS_SPECTRUM_FUNCTION_EXTENSION);
+      }
+
+      @Override
+      public Stream<MediaType> getMediaTypes() {
+        return Stream.of(FUNCTION_MEDIA_TYPE);
+      }
+
+      @Override
+      public Payload<SampledContinuousFunction<UD, UR>> load(ReadableByteChannel inputChannel) throws IOException {
+        RegularSampledDomain<UD> domain = new RegularSampledDomainFormat<>(domainUnit).load(inputChannel).data;
+        return new Payload<>(overDomain(domain, rangeUnit).load(inputChannel).data);
+      }
+
+      @Override
+      public void save(WritableByteChannel outputChannel, Payload<? extends SampledContinuousFunction<UD, UR>> payload)
+          throws IOException {
+        if (!(payload.data.domain() instanceof RegularSampledDomain<?>)) {
+          throw new IllegalArgumentException();
+        }
+        RegularSampledDomain<UD> domain = (RegularSampledDomain<UD>) payload.data.domain();
+        new RegularSampledDomainFormat<>(domainUnit).save(outputChannel, new Payload<>(domain));
+        overDomain(domain, rangeUnit).save(outputChannel, payload);
+      }
+    };
+  }
+
+  @Override
+  public Payload<SampledContinuousFunction<UD, UR>> load(ReadableByteChannel inputChannel) throws IOException {
+    ByteBuffer buffer = allocate(Integer.BYTES);
+    read(inputChannel, buffer);
+    int samples = buffer.getInt();
+
+    buffer = allocate(SAMPLE_BYTES * samples);
+    read(inputChannel, buffer);
+
+    int[] indices = new int[samples];
+    double[] intensities = new double[samples];
+    buffer.asIntBuffer().get(indices);
+    buffer.position(Integer.BYTES * samples);
+    buffer.asDoubleBuffer().get(intensities);
+
+    return new Payload<>(
+        new SparseSampledContinuousFunction<>(domain, rangeUnit, samples, indices, intensities));
+  }
+
+  @Override
+  public void save(WritableByteChannel outputChannel, Payload<? extends SampledContinuousFunction<UD, UR>> payload)
+      throws IOException {
+    if (payload.data.getDepth() != domain.getDepth()) {
+      throw new IllegalArgumentException(payload.data.getDepth() + " != " + domain.getDepth());
+    }
+
+    SparseSampledContinuousFunction<UD, UR> function;
+    if (payload.data instanceof SparseSampledContinuousFunction<?, ?>) {
+      function = (SparseSampledContinuousFunction<UD, UR>) payload.data;
+    } else {
+      function = new SparseSampledContinuousFunction<>(
+          domain,
+          rangeUnit,
+          payload.data.range().toArray());
+    }
+
+    int samples = function.getNonZeroSampleCount();
+    ByteBuffer buffer = allocate(Integer.BYTES + SAMPLE_BYTES * samples);
+    buffer.putInt(samples);
+    for (int i = 0; i < samples; i++) {
+      buffer.putInt(function.getNonZeroSampleIndex(i));
+    }
+    for (int i = 0; i < samples; i++) {
+      buffer.putDouble(function.getNonZeroSample(i));
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      outputChannel.write(buffer);
+    }
+  }
+
+  private static void read(ReadableByteChannel inputChannel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (inputChannel.read(buffer) < 0) {
+        throw new IOException("Unexpected end of sparse function data");
+      }
+    }
+    buffer.flip();
+  }
+}
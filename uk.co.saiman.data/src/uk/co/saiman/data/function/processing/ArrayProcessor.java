@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.processing;
+
+import java.util.Arrays;
+
+import javax.measure.Quantity;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+
+/**
+ * A {@link DataProcessor data processor} which operates solely on sample
+ * positions in the range of a function, as described by
+ * {@link DataProcessor#arrayProcessor(java.util.function.Function, int)}.
+ * <p>
+ * Array processors operate over caller-supplied buffers rather than allocating
+ * their own, so that a {@link ProcessingPipeline pipeline} of consecutive array
+ * processors can be run over a pair of scratch buffers with only a single copy
+ * of the input range and a single wrap of the output.
+ * 
+ * @author Elias N Vasylenko
+ */
+public interface ArrayProcessor extends DataProcessor {
+  /**
+   * Process the given range values into the given destination.
+   * <p>
+   * Each valid index into the produced samples must correspond to a valid index
+   * into the source samples at the processor offset, so the number of samples
+   * produced may be smaller, but never larger, than the number given.
+   * <p>
+   * The source buffer may be used as scratch space by the implementation, and
+   * its contents are undefined after the invocation.
+   * 
+   * @param source
+   *          the range values to process
+   * @param destination
+   *          the buffer to write the processed values into, at least as long as
+   *          the given length
+   * @param length
+   *          the number of values in the source buffer
+   * @return the number of values written into the destination buffer
+   */
+  int processArray(double[] source, double[] destination, int length);
+
+  @Override
+  default <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
+      SampledContinuousFunction<UD, UR> data) {
+    int depth = data.getDepth();
+    double[] source = data.range().toArray();
+    double[] destination = new double[depth];
+
+    int length = processArray(source, destination, depth);
+    Arrays.fill(destination, length, depth, 0);
+
+    return ArraySampledContinuousFunction.wrap(data.domain(), data.range().getUnit(), destination);
+  }
+}
@@ -28,17 +28,11 @@
 package uk.co.saiman.data.function.processing;
 
 import static java.util.Arrays.fill;
-import static uk.co.saiman.data.function.processing.DataProcessor.arrayProcessor;
 
-import javax.measure.Quantity;
-
-import uk.co.saiman.data.function.SampledContinuousFunction;
-
-public class BoxFilter implements DataProcessor {
+public class BoxFilter implements ArrayProcessor {
   public static final int NO_OP = 1;
 
   private final int width;
-  private final DataProcessor component;
 
   public BoxFilter() {
     this(NO_OP);
@@ -46,11 +40,6 @@ public class BoxFilter implements DataProcessor {
 
   public BoxFilter(int width) {
     this.width = width;
-    this.component = arrayProcessor(data -> {
-      data = data.clone();
-      applyInPlace(data, width);
-      return data;
-    }, width / 2);
   }
 
   public int getWidth() {
@@ -61,7 +50,25 @@ public class BoxFilter implements DataProcessor {
     return new BoxFilter(width);
   }
 
+  @Override
+  public int processArray(double[] source, double[] destination, int length) {
+    System.arraycopy(source, 0, destination, 0, length);
+    applyInPlace(destination, length, width);
+    return length;
+  }
+
   public static void applyInPlace(double[] data, int boxWidth) {
+    applyInPlace(data, data.length, boxWidth);
+  }
+
+  /**
+   * Apply the filter to the leading values of the given array.
+   * 
+   * @param data     the array to filter
+   * @param length   the number of values in the array to filter
+   * @param boxWidth the width of the filter
+   */
+  public static void applyInPlace(double[] data, int length, int boxWidth) {
     if (boxWidth <= 0)
       throw new IllegalArgumentException();
     if (boxWidth == 1)
@@ -75,18 +82,18 @@ public class BoxFilter implements DataProcessor {
     double runningTotal = data[0] * headWidth;
     for (int i = 0; i < tailWidth; i++) {
       int index = i;
-      if (index >= data.length)
-        index = data.length - 1;
+      if (index >= length)
+        index = length - 1;
       runningTotal += data[index];
     }
 
     data[0] = runningTotal / boxWidth;
 
-    for (int i = 1; i < data.length; i++) {
+    for (int i = 1; i < length; i++) {
       int headIndex = i % headWidth;
       int tailIndex = i + tailWidth;
-      if (tailIndex >= data.length)
-        tailIndex = data.length - 1;
+      if (tailIndex >= length)
+        tailIndex = length - 1;
 
       runningTotal += data[tailIndex] - headMemory[headIndex];
 
@@ -95,12 +102,6 @@ public class BoxFilter implements DataProcessor {
     }
   }
 
-  @Override
-  public <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
-      SampledContinuousFunction<UD, UR> data) {
-    return component.process(data);
-  }
-
   @Override
   public boolean equals(Object obj) {
     if (obj == this)
@@ -27,51 +27,83 @@
  */
 package uk.co.saiman.data.function.processing;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static uk.co.saiman.data.function.processing.Convolution.DomainModification.EXTENDING;
-import static uk.co.saiman.data.function.processing.DataProcessor.arrayProcessor;
+import static uk.co.saiman.data.function.processing.Convolution.Strategy.AUTOMATIC;
 
 import java.util.Arrays;
 import java.util.Objects;
 
-import javax.measure.Quantity;
-
-import uk.co.saiman.data.function.SampledContinuousFunction;
-
-public class Convolution implements DataProcessor {
+/**
+ * Convolution of the range of a function with a vector, where samples beyond
+ * either end of the data take the value of the nearest sample.
+ * <p>
+ * Two implementations are available. The direct implementation is O(N*K) in
+ * the data length and kernel length, but has a tight, branch-free inner loop
+ * with the edge handling split out, which the JIT is able to vectorize. The
+ * Fourier transform implementation performs an overlap-add convolution in
+ * O(N log K), which is substantially faster for wide kernels. By default the
+ * implementation is selected according to an estimate of the cost of each.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class Convolution implements ArrayProcessor {
   public enum DomainModification {
     EXTENDING, BOUNDED;
   }
 
+  public enum Strategy {
+    AUTOMATIC, DIRECT, FOURIER_TRANSFORM;
+  }
+
   public static final double[] NO_OP = new double[] { 1 };
 
+  /*
+   * Kernels with fewer non-zero values than this are always convolved directly.
+   */
+  private static final int MINIMUM_FOURIER_TRANSFORM_KERNEL = 48;
+  /*
+   * Rough relative cost of a single radix-2 butterfly compared to a single
+   * multiply-add in the direct loop, used to select a strategy. Calibrated
+   * against ConvolutionBenchmark.
+   */
+  private static final int BUTTERFLY_COST = 6;
+
   private final double[] vector;
   private final int offset;
   private final DomainModification domainModification;
-  private final DataProcessor component;
+  private final Strategy strategy;
 
   public Convolution() {
     this(NO_OP, 0, EXTENDING);
   }
 
   public Convolution(double[] vector, int offset, DomainModification domainModification) {
+    this(vector, offset, domainModification, AUTOMATIC);
+  }
+
+  public Convolution(
+      double[] vector,
+      int offset,
+      DomainModification domainModification,
+      Strategy strategy) {
     this.vector = vector;
     this.offset = offset;
     this.domainModification = domainModification;
-    this.component = domainModification == EXTENDING
-        ? arrayProcessor(data -> process(data, vector, offset), offset)
-        : arrayProcessor(data -> process(data, vector), offset);
+    this.strategy = strategy;
   }
 
   public Convolution withConvolutionVector(double[] vector) {
-    return new Convolution(vector, offset, domainModification);
+    return new Convolution(vector, offset, domainModification, strategy);
   }
 
   public Convolution withConvolutionVectorOffset(int offset) {
-    return new Convolution(vector, offset, domainModification);
+    return new Convolution(vector, offset, domainModification, strategy);
   }
 
   public Convolution withConvolutionVector(double[] vector, int offset) {
-    return new Convolution(vector, offset, domainModification);
+    return new Convolution(vector, offset, domainModification, strategy);
   }
 
   public double[] getConvolutionVector() {
@@ -83,53 +115,236 @@ public class Convolution implements DataProcessor {
   }
 
   public Convolution withDomainModification(DomainModification domainModification) {
-    return new Convolution(vector, offset, domainModification);
+    return new Convolution(vector, offset, domainModification, strategy);
   }
 
   public DomainModification getDomainModification() {
     return domainModification;
   }
 
+  public Convolution withStrategy(Strategy strategy) {
+    return new Convolution(vector, offset, domainModification, strategy);
+  }
+
+  public Strategy getStrategy() {
+    return strategy;
+  }
+
   @Override
-  public <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
-      SampledContinuousFunction<UD, UR> data) {
-    return component.process(data);
+  public int processArray(double[] source, double[] destination, int length) {
+    return domainModification == EXTENDING
+        ? processImpl(source, length, vector, offset, strategy, destination)
+        : processImpl(source, length, vector, -1, strategy, destination);
   }
 
   public static double[] process(double[] data, double[] convolutionVector) {
-    return processImpl(data, convolutionVector, -1);
+    return process(data, convolutionVector, AUTOMATIC);
+  }
+
+  public static double[] process(double[] data, double[] convolutionVector, Strategy strategy) {
+    return processImpl(data, convolutionVector, -1, strategy);
   }
 
   public static double[] process(double[] data, double[] convolutionVector, int offset) {
+    return process(data, convolutionVector, offset, AUTOMATIC);
+  }
+
+  public static double[] process(
+      double[] data,
+      double[] convolutionVector,
+      int offset,
+      Strategy strategy) {
     if (offset < 0 || offset >= convolutionVector.length)
       throw new IndexOutOfBoundsException();
-    return processImpl(data, convolutionVector, offset);
+    return processImpl(data, convolutionVector, offset, strategy);
   }
 
-  private static double[] processImpl(double[] data, double[] convolutionVector, int offset) {
+  private static double[] processImpl(
+      double[] data,
+      double[] convolutionVector,
+      int offset,
+      Strategy strategy) {
+    double[] convoluted = new double[outputSize(data.length, convolutionVector, offset)];
+    processImpl(data, data.length, convolutionVector, offset, strategy, convoluted);
+    return convoluted;
+  }
+
+  private static int outputSize(int length, double[] convolutionVector, int offset) {
     if (convolutionVector.length == 0)
       throw new IllegalArgumentException();
 
-    int size = data.length;
+    int size = length;
     if (offset < 0) {
       size += 1 - convolutionVector.length;
-      offset = 0;
       if (size < 0)
         throw new NegativeArraySizeException();
     }
+    return size;
+  }
+
+  private static int processImpl(
+      double[] data,
+      int length,
+      double[] convolutionVector,
+      int offset,
+      Strategy strategy,
+      double[] convoluted) {
+    int size = outputSize(length, convolutionVector, offset);
+    if (offset < 0) {
+      offset = 0;
+    }
+
+    Arrays.fill(convoluted, 0, size, 0);
+    if (size == 0) {
+      return size;
+    }
+
+    if (strategy == AUTOMATIC) {
+      strategy = selectStrategy(size, convolutionVector);
+    }
 
-    double[] convoluted = new double[size];
+    switch (strategy) {
+    case FOURIER_TRANSFORM:
+      processFourierTransform(data, length, convolutionVector, offset, convoluted, size);
+      break;
+    default:
+      processDirect(data, length, convolutionVector, offset, convoluted, size);
+      break;
+    }
+    return size;
+  }
+
+  private static Strategy selectStrategy(int size, double[] convolutionVector) {
+    int taps = 0;
+    for (double value : convolutionVector) {
+      if (value != 0) {
+        taps++;
+      }
+    }
+    if (taps < MINIMUM_FOURIER_TRANSFORM_KERNEL) {
+      return Strategy.DIRECT;
+    }
+
+    int transformSize = transformSize(convolutionVector.length);
+    int blockSize = transformSize - convolutionVector.length + 1;
+    long blocks = (size + convolutionVector.length - 1 + blockSize - 1) / blockSize;
+
+    long directCost = (long) size * taps;
+    long fourierTransformCost = blocks
+        * 2
+        * BUTTERFLY_COST
+        * transformSize
+        * Integer.numberOfTrailingZeros(transformSize);
+
+    return fourierTransformCost < directCost ? Strategy.FOURIER_TRANSFORM : Strategy.DIRECT;
+  }
+
+  private static void processDirect(
+      double[] data,
+      int length,
+      double[] convolutionVector,
+      int offset,
+      double[] convoluted,
+      int size) {
+    double first = data[0];
+    double last = data[length - 1];
 
     for (int i = 0; i < convolutionVector.length; i++) {
-      if (convolutionVector[i] != 0) {
-        for (int j = 0; j < size; j++) {
-          int dataIndex = j + i - offset;
-          dataIndex = dataIndex < 0 ? 0 : dataIndex >= data.length ? data.length - 1 : dataIndex;
-          convoluted[j] += data[dataIndex] * convolutionVector[i];
+      double weight = convolutionVector[i];
+      if (weight != 0) {
+        int shift = i - offset;
+
+        /*
+         * The range of output indices which read from within the data, with
+         * indices below reading the first sample and indices above reading the
+         * last.
+         */
+        int from = min(max(0, -shift), size);
+        int to = max(min(size, length - shift), from);
+
+        double firstWeighted = first * weight;
+        for (int j = 0; j < from; j++) {
+          convoluted[j] += firstWeighted;
+        }
+
+        for (int j = from; j < to; j++) {
+          convoluted[j] += data[j + shift] * weight;
+        }
+
+        double lastWeighted = last * weight;
+        for (int j = to; j < size; j++) {
+          convoluted[j] += lastWeighted;
         }
       }
     }
-    return convoluted;
+  }
+
+  private static int transformSize(int kernelLength) {
+    return FastFourierTransform.sizeFor(4 * kernelLength);
+  }
+
+  /*
+   * Overlap-add convolution. The data is first extended at each end by the
+   * first and last samples so that the result is simply the valid part of the
+   * correlation of the extended data with the kernel, which is a convolution
+   * with the reversed kernel.
+   */
+  private static void processFourierTransform(
+      double[] data,
+      int length,
+      double[] convolutionVector,
+      int offset,
+      double[] convoluted,
+      int size) {
+    int kernelLength = convolutionVector.length;
+    int extendedLength = size + kernelLength - 1;
+    double[] extended = new double[extendedLength];
+    for (int j = 0; j < extendedLength; j++) {
+      int dataIndex = j - offset;
+      extended[j] = data[dataIndex < 0 ? 0 : dataIndex >= length ? length - 1 : dataIndex];
+    }
+
+    FastFourierTransform transform = new FastFourierTransform(transformSize(kernelLength));
+    int transformSize = transform.getSize();
+    int blockSize = transformSize - kernelLength + 1;
+
+    double[] kernelReal = new double[transformSize];
+    double[] kernelImaginary = new double[transformSize];
+    for (int i = 0; i < kernelLength; i++) {
+      kernelReal[i] = convolutionVector[kernelLength - 1 - i];
+    }
+    transform.forward(kernelReal, kernelImaginary);
+
+    double[] blockReal = new double[transformSize];
+    double[] blockImaginary = new double[transformSize];
+
+    for (int blockStart = 0; blockStart < extendedLength; blockStart += blockSize) {
+      int blockLength = min(blockSize, extendedLength - blockStart);
+
+      System.arraycopy(extended, blockStart, blockReal, 0, blockLength);
+      Arrays.fill(blockReal, blockLength, transformSize, 0);
+      Arrays.fill(blockImaginary, 0);
+
+      transform.forward(blockReal, blockImaginary);
+      for (int k = 0; k < transformSize; k++) {
+        double real = blockReal[k] * kernelReal[k] - blockImaginary[k] * kernelImaginary[k];
+        double imaginary = blockReal[k] * kernelImaginary[k] + blockImaginary[k] * kernelReal[k];
+        blockReal[k] = real;
+        blockImaginary[k] = imaginary;
+      }
+      transform.inverse(blockReal, blockImaginary);
+
+      /*
+       * The full convolution of this block contributes to the output at the
+       * block position, less the kernel length to select the valid part.
+       */
+      int outputStart = blockStart - (kernelLength - 1);
+      int from = max(0, -outputStart);
+      int to = min(blockLength + kernelLength - 1, size - outputStart);
+      for (int k = from; k < to; k++) {
+        convoluted[outputStart + k] += blockReal[k];
+      }
+    }
   }
 
   @Override
@@ -144,11 +359,12 @@ public class Convolution implements DataProcessor {
     Convolution that = (Convolution) obj;
     return Arrays.equals(this.vector, that.vector)
         && this.offset == that.offset
-        && this.domainModification == that.domainModification;
+        && this.domainModification == that.domainModification
+        && this.strategy == that.strategy;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(vector, offset, domainModification);
+    return Objects.hash(Arrays.hashCode(vector), offset, domainModification, strategy);
   }
 }
@@ -27,11 +27,11 @@
  */
 package uk.co.saiman.data.function.processing;
 
+import java.util.Arrays;
 import java.util.function.Function;
 
 import javax.measure.Quantity;
 
-import uk.co.saiman.data.function.ArraySampledContinuousFunction;
 import uk.co.saiman.data.function.SampledContinuousFunction;
 
 /**
@@ -60,21 +60,21 @@ public interface DataProcessor {
    *          corresponding indices in the original array
    * @return a data processor implementing the given behaviour
    */
-  static DataProcessor arrayProcessor(
+  static ArrayProcessor arrayProcessor(
       Function<? super double[], ? extends double[]> process,
       int offset) {
-    return new DataProcessor() {
+    return new ArrayProcessor() {
       @Override
-      public <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
-          SampledContinuousFunction<UD, UR> data) {
-        double[] array = new double[data.getDepth()];
-        for (int i = 0; i < array.length; i++)
-          array[i] = data.range().getSample(i);
-
-        return new ArraySampledContinuousFunction<>(
-            data.domain(),
-            data.range().getUnit(),
-            process.apply(array));
+      public int processArray(double[] source, double[] destination, int length) {
+        double[] processed = process
+            .apply(length == source.length ? source : Arrays.copyOf(source, length));
+        /*
+         * Longer results are truncated to the input length, as when they are
+         * wrapped over the input domain.
+         */
+        int produced = Math.min(processed.length, length);
+        System.arraycopy(processed, 0, destination, 0, produced);
+        return produced;
       }
     };
   }
@@ -82,24 +82,20 @@ public interface DataProcessor {
   <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
       SampledContinuousFunction<UD, UR> data);
 
+  /**
+   * Compose this processor with another. The resulting processor is a
+   * {@link ProcessingPipeline pipeline}, so consecutive array processors in a
+   * chain of compositions are fused.
+   * 
+   * @param next
+   *          the processor to apply to the result of this processor
+   * @return a processor applying this processor and then the given processor
+   */
   default DataProcessor andThen(DataProcessor next) {
-    DataProcessor thisProcessor = this;
-    return new DataProcessor() {
-      @Override
-      public <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
-          SampledContinuousFunction<UD, UR> data) {
-        return next.process(thisProcessor.process(data));
-      }
-    };
+    return ProcessingPipeline.of(this, next);
   }
 
   static DataProcessor identity() {
-    return new DataProcessor() {
-      @Override
-      public <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
-          SampledContinuousFunction<UD, UR> data) {
-        return data;
-      }
-    };
+    return ProcessingPipeline.EMPTY;
   }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.processing;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+
+/**
+ * An in-place iterative radix-2 complex fast Fourier transform over separate
+ * real and imaginary arrays, with precomputed twiddle factors for a fixed
+ * transform size.
+ * <p>
+ * Instances hold no state other than the twiddle tables and may be shared
+ * between threads.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class FastFourierTransform {
+  private final int size;
+  private final int log2Size;
+  private final double[] cosTable;
+  private final double[] sinTable;
+
+  /**
+   * @param size the size of the transform, which must be a power of two
+   */
+  public FastFourierTransform(int size) {
+    if (size < 1 || Integer.bitCount(size) != 1)
+      throw new IllegalArgumentException("Transform size must be a power of two: " + size);
+
+    this.size = size;
+    this.log2Size = Integer.numberOfTrailingZeros(size);
+    this.cosTable = new double[size / 2];
+    this.sinTable = new double[size / 2];
+    for (int i = 0; i < size / 2; i++) {
+      cosTable[i] = cos(2 * PI * i / size);
+      sinTable[i] = sin(2 * PI * i / size);
+    }
+  }
+
+  /**
+   * @param minimumSize the minimum size of the transform
+   * @return the smallest power of two which is at least the given size
+   */
+  public static int sizeFor(int minimumSize) {
+    return minimumSize <= 1 ? 1 : Integer.highestOneBit(minimumSize - 1) << 1;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public void forward(double[] real, double[] imaginary) {
+    transform(real, imaginary, false);
+  }
+
+  /**
+   * The inverse transform, including the scaling by 1/size.
+   */
+  public void inverse(double[] real, double[] imaginary) {
+    transform(real, imaginary, true);
+
+    double scale = 1d / size;
+    for (int i = 0; i < size; i++) {
+      real[i] *= scale;
+      imaginary[i] *= scale;
+    }
+  }
+
+  private void transform(double[] real, double[] imaginary, boolean inverse) {
+    /*
+     * Bit reversal permutation
+     */
+    int shift = Integer.SIZE - log2Size;
+    for (int i = 1; i < size; i++) {
+      int j = Integer.reverse(i) >>> shift;
+      if (j > i) {
+        double temp = real[i];
+        real[i] = real[j];
+        real[j] = temp;
+        temp = imaginary[i];
+        imaginary[i] = imaginary[j];
+        imaginary[j] = temp;
+      }
+    }
+
+    /*
+     * Butterflies
+     */
+    double sign = inverse ? 1 : -1;
+    for (int span = 2; span <= size; span <<= 1) {
+      int half = span >>> 1;
+      int tableStep = size / span;
+      for (int i = 0; i < size; i += span) {
+        for (int j = 0, k = 0; j < half; j++, k += tableStep) {
+          double twiddleReal = cosTable[k];
+          double twiddleImaginary = sign * sinTable[k];
+
+          int l = i + j;
+          int m = l + half;
+
+          double productReal = real[m] * twiddleReal - imaginary[m] * twiddleImaginary;
+          double productImaginary = real[m] * twiddleImaginary + imaginary[m] * twiddleReal;
+
+          real[m] = real[l] - productReal;
+          imaginary[m] = imaginary[l] - productImaginary;
+          real[l] += productReal;
+          imaginary[l] += productImaginary;
+        }
+      }
+    }
+  }
+}
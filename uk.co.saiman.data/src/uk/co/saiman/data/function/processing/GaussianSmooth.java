@@ -30,17 +30,17 @@ package uk.co.saiman.data.function.processing;
 import static java.lang.Math.floor;
 import static java.lang.Math.sqrt;
 
-import javax.measure.Quantity;
-
-import uk.co.saiman.data.function.SampledContinuousFunction;
-
-public class GaussianSmooth implements DataProcessor {
+public class GaussianSmooth implements ArrayProcessor {
   public static final double DEFAULT_STANDARD_DEVIATION = 10;
 
   private static final int BOX_ITERATIONS = 5;
 
   private final double standardDeviation;
-  private final DataProcessor component;
+
+  private final int lowerBoxWidth;
+  private final int lowerIterations;
+  private final int higherBoxWidth;
+  private final int higherIterations;
 
   public GaussianSmooth() {
     this(DEFAULT_STANDARD_DEVIATION);
@@ -58,24 +58,25 @@ public class GaussianSmooth implements DataProcessor {
     double stdDevSquared12 = (getStandardDeviation() * getStandardDeviation()) * 12d;
     double idealBoxWidth = sqrt((stdDevSquared12 / BOX_ITERATIONS) + 1);
 
-    int lowerBoxWidth = (int) floor(idealBoxWidth / 2) * 2 - 1;
-    int lowerIterations = (int) ((BOX_ITERATIONS * (lowerBoxWidth * (lowerBoxWidth + 4) + 3)
+    lowerBoxWidth = (int) floor(idealBoxWidth / 2) * 2 - 1;
+    lowerIterations = (int) ((BOX_ITERATIONS * (lowerBoxWidth * (lowerBoxWidth + 4) + 3)
         - stdDevSquared12) / (4 * lowerBoxWidth + 4));
 
-    int higherBoxWidth = lowerBoxWidth + 2;
-    int higherIterations = BOX_ITERATIONS - lowerIterations;
+    higherBoxWidth = lowerBoxWidth + 2;
+    higherIterations = BOX_ITERATIONS - lowerIterations;
+  }
 
-    this.component = DataProcessor.arrayProcessor(data -> {
-      data = data.clone();
+  @Override
+  public int processArray(double[] source, double[] destination, int length) {
+    System.arraycopy(source, 0, destination, 0, length);
 
-      for (int i = 0; i < lowerIterations; i++)
-        BoxFilter.applyInPlace(data, lowerBoxWidth);
+    for (int i = 0; i < lowerIterations; i++)
+      BoxFilter.applyInPlace(destination, length, lowerBoxWidth);
 
-      for (int i = 0; i < higherIterations; i++)
-        BoxFilter.applyInPlace(data, higherBoxWidth);
+    for (int i = 0; i < higherIterations; i++)
+      BoxFilter.applyInPlace(destination, length, higherBoxWidth);
 
-      return data;
-    }, 0);
+    return length;
   }
 
   public double getStandardDeviation() {
@@ -86,12 +87,6 @@ public class GaussianSmooth implements DataProcessor {
     return new GaussianSmooth(standardDeviation);
   }
 
-  @Override
-  public <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
-      SampledContinuousFunction<UD, UR> data) {
-    return component.process(data);
-  }
-
   @Override
   public boolean equals(Object obj) {
     if (obj == this)
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.processing;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.measure.Quantity;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+
+/**
+ * A sequence of data processors applied one after another.
+ * <p>
+ * Consecutive {@link ArrayProcessor array processors} in the sequence are fused
+ * when the pipeline is run. The range of the input is copied once into a
+ * scratch buffer, each array processor then writes its result into the other
+ * of a pair of buffers in turn, and the final buffer is wrapped into a function
+ * without further copying. Processors which are not array processors are
+ * applied as normal between runs.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class ProcessingPipeline implements DataProcessor {
+  static final ProcessingPipeline EMPTY = new ProcessingPipeline(List.of());
+
+  private final List<DataProcessor> stages;
+
+  private ProcessingPipeline(List<DataProcessor> stages) {
+    this.stages = stages;
+  }
+
+  /**
+   * Compile a pipeline from the given processors. Nested pipelines are
+   * flattened into the result.
+   * 
+   * @param processors
+   *          the processors to apply, in order
+   * @return a processor applying each of the given processors in turn
+   */
+  public static DataProcessor of(Collection<? extends DataProcessor> processors) {
+    List<DataProcessor> stages = new ArrayList<>(processors.size());
+    for (DataProcessor processor : processors) {
+      if (processor instanceof ProcessingPipeline) {
+        stages.addAll(((ProcessingPipeline) processor).stages);
+      } else {
+        stages.add(processor);
+      }
+    }
+
+    switch (stages.size()) {
+    case 0:
+      return EMPTY;
+    case 1:
+      return stages.get(0);
+    default:
+      return new ProcessingPipeline(unmodifiableList(stages));
+    }
+  }
+
+  public static DataProcessor of(DataProcessor... processors) {
+    return of(Arrays.asList(processors));
+  }
+
+  public Stream<DataProcessor> stages() {
+    return stages.stream();
+  }
+
+  @Override
+  public <UD extends Quantity<UD>, UR extends Quantity<UR>> SampledContinuousFunction<UD, UR> process(
+      SampledContinuousFunction<UD, UR> data) {
+    int stage = 0;
+    while (stage < stages.size()) {
+      if (!(stages.get(stage) instanceof ArrayProcessor)) {
+        data = stages.get(stage++).process(data);
+        continue;
+      }
+
+      int depth = data.getDepth();
+      double[] source = new double[depth];
+      double[] destination = new double[depth];
+      data.range().copyInto(0, source, 0, depth);
+
+      do {
+        int length = ((ArrayProcessor) stages.get(stage++)).processArray(source, destination, depth);
+
+        /*
+         * Shortened results are padded with zeros, as they would be when wrapped
+         * into a function between stages.
+         */
+        Arrays.fill(destination, length, depth, 0);
+
+        double[] swap = source;
+        source = destination;
+        destination = swap;
+      } while (stage < stages.size() && stages.get(stage) instanceof ArrayProcessor);
+
+      data = ArraySampledContinuousFunction.wrap(data.domain(), data.range().getUnit(), source);
+    }
+    return data;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this)
+      return true;
+    if (!(obj instanceof ProcessingPipeline))
+      return false;
+
+    ProcessingPipeline that = (ProcessingPipeline) obj;
+    return this.stages.equals(that.stages);
+  }
+
+  @Override
+  public int hashCode() {
+    return stages.hashCode();
+  }
+}
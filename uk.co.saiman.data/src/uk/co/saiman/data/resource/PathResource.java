@@ -28,20 +28,28 @@
 package uk.co.saiman.data.resource;
 
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
 import java.io.IOException;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
 
 import uk.co.saiman.bytes.Channels;
+import uk.co.saiman.function.ThrowingConsumer;
 
 public class PathResource implements Resource {
+  private static final int REPLACE_BUFFER_SIZE = 1024 * 1024;
+  private static final String REPLACE_SUFFIX = ".tmp";
+
   private final Path path;
 
   public PathResource(Path path) {
@@ -93,6 +101,51 @@ public class PathResource implements Resource {
     return Files.newByteChannel(path, WRITE, TRUNCATE_EXISTING);
   }
 
+  /**
+   * Stream the content to a temporary file alongside the resource through a
+   * single large direct buffer, then move it over the resource. The content is
+   * forced to the storage device before the move, so after a failure or a crash
+   * the resource holds either its previous content or the new content in full.
+   * Where the file system supports POSIX attributes, the permissions of an
+   * existing resource are carried over to the temporary file, so the move does
+   * not change them.
+   */
+  @Override
+  public void replace(ThrowingConsumer<? super WritableByteChannel, IOException> content)
+      throws IOException {
+    Files.createDirectories(path.getParent());
+    Path temporary = Files.createTempFile(path.getParent(), "." + getName(), REPLACE_SUFFIX);
+    try {
+      copyPermissions(path, temporary);
+      try (var channel = FileChannel.open(temporary, WRITE)) {
+        try (var buffered = Channels.buffer(channel, REPLACE_BUFFER_SIZE)) {
+          content.accept(buffered);
+        }
+        channel.force(false);
+      }
+      try {
+        Files.move(temporary, path, ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, path, REPLACE_EXISTING);
+      }
+    } catch (IOException | RuntimeException | Error e) {
+      try {
+        Files.deleteIfExists(temporary);
+      } catch (IOException e1) {
+        e.addSuppressed(e1);
+      }
+      throw e;
+    }
+  }
+
+  private static void copyPermissions(Path from, Path to) throws IOException {
+    var fromView = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+    var toView = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+    if (fromView != null && toView != null && Files.exists(from)) {
+      toView.setPermissions(fromView.readAttributes().permissions());
+    }
+  }
+
   @Override
   public ByteChannel open() throws IOException {
     return Files.newByteChannel(path, READ, WRITE);
@@ -27,11 +27,16 @@
  */
 package uk.co.saiman.data.resource;
 
+import static uk.co.saiman.bytes.TransferBuffer.openBuffer;
+
 import java.io.IOException;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 
+import uk.co.saiman.bytes.Channels;
+import uk.co.saiman.function.ThrowingConsumer;
+
 /**
  * A resource should typically represent a single logical resource location,
  * such as a file path or a URL, which should be fully described by the
@@ -60,6 +65,35 @@ public interface Resource {
 
   WritableByteChannel write() throws IOException;
 
+  /**
+   * Replace the content of the resource with the bytes written by the given
+   * action. If the action fails the resource is not modified.
+   * <p>
+   * The default implementation gathers the content in memory before writing it
+   * to the resource. Implementations which can write to a temporary location
+   * and then move it into place should override this to stream the content.
+   * 
+   * @param content an action to write the new content to the given channel,
+   *                which should not be closed by the action
+   * @throws IOException if the content could not be written
+   */
+  default void replace(ThrowingConsumer<? super WritableByteChannel, IOException> content)
+      throws IOException {
+    var buffer = openBuffer();
+    var writeToBuffer = buffer.openWritableChannel();
+    try (var readFromBuffer = buffer.openReadableChannel()) {
+      try (writeToBuffer) {
+        content.accept(writeToBuffer);
+      }
+      /*
+       * The buffer only reports the end of its content once the writer is closed.
+       */
+      try (var writeToResource = write()) {
+        Channels.transfer(readFromBuffer, writeToResource);
+      }
+    }
+  }
+
   ByteChannel open() throws IOException;
 
   public boolean exists();
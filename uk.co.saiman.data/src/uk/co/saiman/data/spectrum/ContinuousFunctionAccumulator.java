@@ -27,18 +27,27 @@
  */
 package uk.co.saiman.data.spectrum;
 
+import static java.lang.Math.min;
+import static java.util.concurrent.CompletableFuture.runAsync;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.measure.Quantity;
 import javax.measure.Unit;
 import javax.measure.UnitConverter;
 
 import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.PooledSampledContinuousFunction;
 import uk.co.saiman.data.function.SampledContinuousFunction;
 import uk.co.saiman.data.function.SampledDomain;
+import uk.co.saiman.data.function.SampledRange;
+import uk.co.saiman.data.function.SparseSampledContinuousFunction;
 import uk.co.saiman.observable.ExclusiveObserver;
 import uk.co.saiman.observable.HotObservable;
 import uk.co.saiman.observable.LockException;
@@ -47,8 +56,23 @@ import uk.co.saiman.observable.Observation;
 
 /**
  * A continuous function to accumulate the sum of input continuous functions.
- * Accumulations made in rapid succession are batched so as to only lock for
- * writing sparingly and minimize update events.
+ * Accumulations made in rapid succession are batched so as to minimize update
+ * events.
+ * <p>
+ * Each batch may be split across a number of worker stripes, each of which
+ * sums its share of the batch into its own partial buffer. The partial buffers
+ * are only folded into a new immutable function once the previous one has
+ * been observed, or when the latest accumulation is requested, so the cost of
+ * folding is paid once per observed update rather than once per input. A
+ * reader which folds waits at most for the batch in progress.
+ * <p>
+ * {@link SparseSampledContinuousFunction Sparse} inputs are added directly from
+ * their stored samples, at a cost proportional to the number of hits rather than
+ * to the depth of the domain.
+ * <p>
+ * Inputs are summed on a separate thread from the one which delivers them, so
+ * {@link PooledSampledContinuousFunction pooled} inputs are retained as they
+ * are received and released once they have been summed.
  * 
  * @author Elias N Vasylenko
  *
@@ -60,14 +84,30 @@ import uk.co.saiman.observable.Observation;
 public class ContinuousFunctionAccumulator<UD extends Quantity<UD>, UR extends Quantity<UR>> {
   private final SampledDomain<UD> domain;
   private final Unit<UR> unitRange;
-  private double[] intensities;
+  private final double[][] partialIntensities;
+  private final double[][] stripeBuffers;
+  private final Executor stripeExecutor;
+  private final ExecutorService accumulationExecutor;
 
   private Throwable failure;
   private final CountDownLatch complete = new CountDownLatch(1);
-  private SampledContinuousFunction<UD, UR> lastFunction;
+
+  /*
+   * The partial buffers are guarded by the lock, which the accumulation thread
+   * holds for each batch and readers only take to fold unpublished changes.
+   */
+  private final Object lock = new Object();
+  private volatile boolean unpublished;
+  private volatile boolean unannounced;
+  private volatile boolean latestObserved;
+  private volatile SampledContinuousFunction<UD, UR> latestFunction;
   private final HotObservable<ContinuousFunctionAccumulator<UD, UR>> accumulation = new HotObservable<>();
 
   /**
+   * Create an accumulator which sums every input on a single thread.
+   * 
+   * @param source
+   *          the functions to accumulate
    * @param domain
    *          the domain of the accumulated function
    * @param unitRange
@@ -77,19 +117,79 @@ public class ContinuousFunctionAccumulator<UD extends Quantity<UD>, UR extends Q
       Observable<SampledContinuousFunction<UD, UR>> source,
       SampledDomain<UD> domain,
       Unit<UR> unitRange) {
+    this(source, domain, unitRange, 1);
+  }
+
+  /**
+   * Create an accumulator which splits each batch of inputs across the given
+   * number of stripes, summing each stripe into a separate partial buffer on
+   * the {@link ForkJoinPool#commonPool() common pool}.
+   * 
+   * @param source
+   *          the functions to accumulate
+   * @param domain
+   *          the domain of the accumulated function
+   * @param unitRange
+   *          the unit of the accumulation dimension
+   * @param parallelism
+   *          the number of partial buffers to accumulate into concurrently
+   */
+  public ContinuousFunctionAccumulator(
+      Observable<SampledContinuousFunction<UD, UR>> source,
+      SampledDomain<UD> domain,
+      Unit<UR> unitRange,
+      int parallelism) {
+    this(source, domain, unitRange, parallelism, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Create an accumulator which splits each batch of inputs across the given
+   * number of stripes, summing each stripe into a separate partial buffer.
+   * 
+   * @param source
+   *          the functions to accumulate
+   * @param domain
+   *          the domain of the accumulated function
+   * @param unitRange
+   *          the unit of the accumulation dimension
+   * @param parallelism
+   *          the number of partial buffers to accumulate into concurrently
+   * @param stripeExecutor
+   *          the executor on which to accumulate all but the first stripe of
+   *          each batch
+   */
+  public ContinuousFunctionAccumulator(
+      Observable<SampledContinuousFunction<UD, UR>> source,
+      SampledDomain<UD> domain,
+      Unit<UR> unitRange,
+      int parallelism,
+      Executor stripeExecutor) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+
     this.domain = domain;
     this.unitRange = unitRange;
-    this.intensities = new double[domain.getDepth()];
+    this.partialIntensities = new double[parallelism][domain.getDepth()];
+    this.stripeBuffers = new double[parallelism][domain.getDepth()];
+    this.stripeExecutor = stripeExecutor;
+    this.accumulationExecutor = newSingleThreadExecutor();
 
-    getLatestAccumulation();
+    this.latestFunction = ArraySampledContinuousFunction
+        .wrap(domain, unitRange, new double[domain.getDepth()]);
+    this.latestObserved = true;
 
     source
-        .executeOn(newSingleThreadExecutor())
+        .map(PooledSampledContinuousFunction::retain)
+        .executeOn(accumulationExecutor)
         .aggregateBackpressure()
         .observe(new ExclusiveObserver<>() {
           @Override
           public void onNext(List<SampledContinuousFunction<UD, UR>> message) {
-            aggregateArray(message);
+            try {
+              aggregateArray(message);
+            } finally {
+              message.forEach(PooledSampledContinuousFunction::release);
+            }
             getObservation().requestNext();
           }
 
@@ -110,30 +210,151 @@ public class ContinuousFunctionAccumulator<UD extends Quantity<UD>, UR extends Q
         });
   }
 
+  /**
+   * @return a sensible default for the parallelism of an accumulator, derived
+   *         from the number of available processors
+   */
+  public static int defaultParallelism() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
+
   private void complete() {
+    if (unpublished || unannounced) {
+      publish();
+    }
     complete.countDown();
+    accumulationExecutor.shutdown();
   }
 
   private void fail(Throwable t) {
     failure = t;
     complete.countDown();
+    accumulationExecutor.shutdown();
+  }
+
+  /*
+   * Only called on the accumulation thread. A reader may already have folded
+   * the latest changes, in which case they only need to be announced.
+   */
+  private void publish() {
+    synchronized (lock) {
+      fold();
+      unannounced = false;
+      latestObserved = false;
+    }
+    accumulation.next(this);
+  }
+
+  /*
+   * Only called while holding the lock.
+   */
+  private void fold() {
+    if (unpublished) {
+      latestFunction = ArraySampledContinuousFunction
+          .wrap(domain, unitRange, foldPartialIntensities());
+      unpublished = false;
+    }
   }
 
   private void aggregateArray(List<SampledContinuousFunction<UD, UR>> message) {
-    synchronized (intensities) {
-      for (SampledContinuousFunction<?, UR> c : message) {
-        UnitConverter converter = c.range().getUnit().getConverterTo(unitRange);
+    if (message.isEmpty())
+      return;
+
+    synchronized (lock) {
+      int stripeSize = (message.size() + partialIntensities.length - 1)
+          / partialIntensities.length;
+      int stripes = (message.size() + stripeSize - 1) / stripeSize;
+
+      CompletableFuture<?>[] stripeTasks = new CompletableFuture<?>[stripes - 1];
+      for (int s = 1; s < stripes; s++) {
+        var stripe = message.subList(s * stripeSize, min((s + 1) * stripeSize, message.size()));
+        var intensities = partialIntensities[s];
+        var buffer = stripeBuffers[s];
+        stripeTasks[s - 1] = runAsync(
+            () -> aggregateStripe(stripe, intensities, buffer),
+            stripeExecutor);
+      }
+      aggregateStripe(
+          message.subList(0, min(stripeSize, message.size())),
+          partialIntensities[0],
+          stripeBuffers[0]);
+      CompletableFuture.allOf(stripeTasks).join();
+
+      unpublished = true;
+    }
+    if (latestObserved) {
+      publish();
+    }
+  }
+
+  private void aggregateStripe(
+      List<SampledContinuousFunction<UD, UR>> stripe,
+      double[] intensities,
+      double[] buffer) {
+    int depth = intensities.length;
+
+    for (SampledContinuousFunction<?, UR> c : stripe) {
+      SampledRange<UR> range = c.range();
+      UnitConverter converter = range.getUnit().getConverterTo(unitRange);
+
+      /*
+       * A non-linear converter may not map 0 to 0, so the implicit samples of a
+       * sparse function only stay implicit under a linear one.
+       */
+      if (c instanceof SparseSampledContinuousFunction<?, ?> && converter.isLinear()) {
+        aggregateSparse(
+            (SparseSampledContinuousFunction<?, UR>) c,
+            intensities,
+            converter.convert(1));
+        continue;
+      }
+
+      range.copyInto(0, buffer, 0, depth);
 
-        for (int i = 0; i < domain.getDepth(); i++) {
-          intensities[i] += converter.convert(c.range().getSample(i));
+      if (converter.isLinear()) {
+        double scale = converter.convert(1);
+        if (scale == 1) {
+          for (int i = 0; i < depth; i++) {
+            intensities[i] += buffer[i];
+          }
+        } else {
+          for (int i = 0; i < depth; i++) {
+            intensities[i] += scale * buffer[i];
+          }
         }
+      } else {
+        for (int i = 0; i < depth; i++) {
+          intensities[i] += converter.convert(buffer[i]);
+        }
+      }
+    }
+  }
+
+  private void aggregateSparse(
+      SparseSampledContinuousFunction<?, UR> function,
+      double[] intensities,
+      double scale) {
+    int depth = intensities.length;
+    int samples = function.getNonZeroSampleCount();
+
+    for (int i = 0; i < samples; i++) {
+      int index = function.getNonZeroSampleIndex(i);
+      if (index >= depth) {
+        break;
       }
+      intensities[index] += scale * function.getNonZeroSample(i);
+    }
+  }
 
-      if (lastFunction != null) {
-        lastFunction = null;
-        accumulation.next(this);
+  private double[] foldPartialIntensities() {
+    double[] intensities = partialIntensities[0].clone();
+    for (int s = 1; s < partialIntensities.length; s++) {
+      double[] partial = partialIntensities[s];
+      for (int i = 0; i < intensities.length; i++) {
+        intensities[i] += partial[i];
       }
     }
+    return intensities;
   }
 
   public SampledDomain<UD> getDomain() {
@@ -148,13 +369,26 @@ public class ContinuousFunctionAccumulator<UD extends Quantity<UD>, UR extends Q
     return accumulation;
   }
 
+  /**
+   * Get the accumulation of every input summed so far. If inputs have been
+   * summed since the last accumulation was published, the partial buffers are
+   * folded on the calling thread, once any batch in progress is complete.
+   * 
+   * @return the latest accumulation
+   */
   public SampledContinuousFunction<UD, UR> getLatestAccumulation() {
-    synchronized (intensities) {
-      if (lastFunction == null) {
-        lastFunction = new ArraySampledContinuousFunction<>(domain, unitRange, intensities);
+    if (unpublished) {
+      synchronized (lock) {
+        if (unpublished) {
+          fold();
+          unannounced = true;
+        }
       }
-      return lastFunction;
     }
+
+    var latestFunction = this.latestFunction;
+    latestObserved = true;
+    return latestFunction;
   }
 
   public SampledContinuousFunction<UD, UR> getCompleteAccumulation() {
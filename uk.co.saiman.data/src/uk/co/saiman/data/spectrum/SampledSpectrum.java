@@ -27,13 +27,20 @@
  */
 package uk.co.saiman.data.spectrum;
 
+import java.nio.DoubleBuffer;
+import java.util.Optional;
+
+import javax.measure.Unit;
 import javax.measure.quantity.Dimensionless;
 import javax.measure.quantity.Mass;
 import javax.measure.quantity.Time;
 
-import uk.co.saiman.data.function.ArraySampledContinuousFunction;
 import uk.co.saiman.data.function.IrregularSampledDomain;
 import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.data.function.SampledDomain;
+import uk.co.saiman.data.function.SampledRange;
+import uk.co.saiman.data.function.SampledRangeIndex;
+import uk.co.saiman.data.function.SparseSampledContinuousFunction;
 import uk.co.saiman.data.function.processing.DataProcessor;
 
 public class SampledSpectrum implements Spectrum {
@@ -65,19 +72,112 @@ public class SampledSpectrum implements Spectrum {
   }
 
   protected SampledContinuousFunction<Mass, Dimensionless> processData() {
-    double[] massValues = new double[timeData.getDepth()];
-    double[] intensityValues = new double[timeData.getDepth()];
-    for (int i = 0; i < timeData.getDepth(); i++) {
-      massValues[i] = calibration.getMass(timeData.domain().getSample(i));
-      intensityValues[i] = timeData.range().getSample(i);
+    double[] massValues = timeData.domain().toArray();
+    for (int i = 0; i < massValues.length; i++) {
+      massValues[i] = calibration.getMass(massValues[i]);
+    }
+    SampledDomain<Mass> massDomain = IrregularSampledDomain
+        .wrap(calibration.getMassUnit(), massValues);
+
+    SampledContinuousFunction<Mass, Dimensionless> massFunction;
+    if (timeData instanceof SparseSampledContinuousFunction<?, ?>) {
+      massFunction = calibrateSparse(
+          (SparseSampledContinuousFunction<Time, Dimensionless>) timeData,
+          massDomain);
+    } else {
+      massFunction = new CalibratedFunction(massDomain, timeData);
     }
-    SampledContinuousFunction<Mass, Dimensionless> massFunction = new ArraySampledContinuousFunction<>(
-        new IrregularSampledDomain<>(calibration.getMassUnit(), massValues),
-        timeData.range().getUnit(),
-        intensityValues);
     return processing.process(massFunction);
   }
 
+  /*
+   * Sparse time data stays sparse over the calibrated domain, so consumers of
+   * unprocessed mass data can still visit only the hits.
+   */
+  private static SampledContinuousFunction<Mass, Dimensionless> calibrateSparse(
+      SparseSampledContinuousFunction<Time, Dimensionless> timeData,
+      SampledDomain<Mass> massDomain) {
+    int samples = timeData.getNonZeroSampleCount();
+    int[] indices = new int[samples];
+    double[] intensities = new double[samples];
+    for (int i = 0; i < samples; i++) {
+      indices[i] = timeData.getNonZeroSampleIndex(i);
+      intensities[i] = timeData.getNonZeroSample(i);
+    }
+    return new SparseSampledContinuousFunction<>(
+        massDomain,
+        timeData.range().getUnit(),
+        samples,
+        indices,
+        intensities);
+  }
+
+  /*
+   * A view of the time data over the calibrated domain, which shares the range
+   * of the time data rather than copying it. The processing pipeline makes its
+   * own copy of the range only if it needs one.
+   */
+  private static class CalibratedFunction
+      implements SampledContinuousFunction<Mass, Dimensionless> {
+    private final SampledDomain<Mass> domain;
+    private final SampledRange<Dimensionless> range;
+    private final SampledContinuousFunction<Time, Dimensionless> timeData;
+
+    public CalibratedFunction(
+        SampledDomain<Mass> domain,
+        SampledContinuousFunction<Time, Dimensionless> timeData) {
+      this.domain = domain;
+      this.timeData = timeData;
+      SampledRange<Dimensionless> timeRange = timeData.range();
+      this.range = new SampledRange<>(this) {
+        @Override
+        public Unit<Dimensionless> getUnit() {
+          return timeRange.getUnit();
+        }
+
+        @Override
+        public int getDepth() {
+          return timeRange.getDepth();
+        }
+
+        @Override
+        public double getSample(int index) {
+          return timeRange.getSample(index);
+        }
+
+        @Override
+        public void copyInto(int index, double[] destination, int destinationIndex, int length) {
+          timeRange.copyInto(index, destination, destinationIndex, length);
+        }
+
+        @Override
+        public Optional<DoubleBuffer> asBuffer() {
+          return timeRange.asBuffer();
+        }
+      };
+    }
+
+    @Override
+    public SampledDomain<Mass> domain() {
+      return domain;
+    }
+
+    @Override
+    public SampledRange<Dimensionless> range() {
+      return range;
+    }
+
+    @Override
+    public int getDepth() {
+      return domain.getDepth();
+    }
+
+    @Override
+    public Optional<SampledRangeIndex> rangeIndex() {
+      return timeData.rangeIndex();
+    }
+  }
+
   @Override
   public SpectrumCalibration getCalibration() {
     return calibration;
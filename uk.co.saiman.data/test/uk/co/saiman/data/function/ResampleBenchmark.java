@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function;
+
+import static uk.co.saiman.measurement.Units.count;
+import static uk.co.saiman.measurement.Units.second;
+
+import java.util.Random;
+
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+/**
+ * A benchmark of resampling a large function to a display resolution, both
+ * for a function which is only resampled once, as each update of a live
+ * accumulation is, and for a function which is resampled repeatedly, as a
+ * saved spectrum is when it is panned and zoomed.
+ * <p>
+ * Run from the test classpath with optional arguments for the depth of the
+ * function and the number of resolvable units to resample it to.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class ResampleBenchmark {
+  private static final int RUNS = 20;
+  private static final int WARM_UP = 5;
+
+  public static void main(String... args) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+    int units = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+    var domain = new RegularSampledDomain<>(second().getUnit(), depth, 1, 0);
+    var resolvableDomain = new RegularSampledDomain<>(
+        second().getUnit(),
+        units,
+        (double) units / depth,
+        0);
+    double[] intensities = new Random(0).doubles(depth).toArray();
+
+    System.out.printf("depth %d, %d resolvable units%n", depth, units);
+
+    double once = best(() -> {
+      var function = ArraySampledContinuousFunction
+          .wrap(domain, count().getUnit(), intensities);
+      return function.resample(resolvableDomain);
+    });
+    System.out.printf("resampled once:          %8.3f ms%n", once);
+
+    double build = best(() -> {
+      var function = ArraySampledContinuousFunction
+          .wrap(domain, count().getUnit(), intensities);
+      SampledRangeIndex.over(function.range());
+      return function;
+    });
+    System.out.printf("building an index:       %8.3f ms%n", build);
+
+    for (int resamples : new int[] { 2, 3, 5, 10, 100 }) {
+      double repeated = best(() -> {
+        var function = ArraySampledContinuousFunction
+            .wrap(domain, count().getUnit(), intensities);
+        SampledContinuousFunction<Time, Dimensionless> resampled = null;
+        for (int i = 0; i < resamples; i++) {
+          resampled = function.resample(resolvableDomain);
+        }
+        return resampled;
+      }) / resamples;
+      System.out.printf("resampled %3d times:     %8.3f ms each%n", resamples, repeated);
+    }
+  }
+
+  private interface Run {
+    SampledContinuousFunction<?, ?> run();
+  }
+
+  /*
+   * Best of several timed runs after a warm up, in milliseconds.
+   */
+  private static double best(Run run) {
+    double best = Double.MAX_VALUE;
+    double checksum = 0;
+    for (int i = 0; i < RUNS; i++) {
+      long start = System.nanoTime();
+      var result = run.run();
+      long time = System.nanoTime() - start;
+      checksum += result.getDepth();
+
+      if (i >= WARM_UP) {
+        best = Math.min(best, time / 1e6);
+      }
+    }
+    if (checksum == 0) {
+      throw new AssertionError();
+    }
+    return best;
+  }
+}
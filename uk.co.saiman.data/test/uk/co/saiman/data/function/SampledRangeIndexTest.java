@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Random;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+
+public class SampledRangeIndexTest {
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+
+  private ArraySampledContinuousFunction<Time, Dimensionless> randomFunction(int depth) {
+    Random random = new Random(depth);
+    double[] intensities = new double[depth];
+    for (int i = 0; i < depth; i++) {
+      intensities[i] = random.nextInt(100);
+    }
+    return new ArraySampledContinuousFunction<>(
+        new RegularSampledDomain<>(time, depth, 1, 0),
+        count,
+        intensities);
+  }
+
+  @Test
+  public void extremesMatchScanTest() {
+    var function = randomFunction(1000);
+    var range = function.range();
+    var index = SampledRangeIndex.over(range);
+
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      int from = random.nextInt(1000);
+      int to = from + 1 + random.nextInt(1000 - from);
+
+      int minimum = from;
+      int maximum = from;
+      double sum = 0;
+      for (int j = from; j < to; j++) {
+        if (range.getSample(j) < range.getSample(minimum)) {
+          minimum = j;
+        }
+        if (range.getSample(j) > range.getSample(maximum)) {
+          maximum = j;
+        }
+        sum += range.getSample(j);
+      }
+
+      assertEquals(minimum, index.getMinimumIndex(from, to));
+      assertEquals(maximum, index.getMaximumIndex(from, to));
+      assertEquals(sum / (to - from), index.getMean(from, to), 1e-9);
+    }
+  }
+
+  @Test
+  public void emptyIntervalTest() {
+    var index = SampledRangeIndex.over(randomFunction(10).range());
+
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> index.getMinimumIndex(5, 5));
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> index.getMaximumIndex(0, 11));
+  }
+
+  @Test
+  public void indexIsOnlyBuiltForRepeatedRequestsTest() {
+    var function = randomFunction(1000);
+
+    for (int i = 0; i < ArraySampledContinuousFunction.INDEX_REQUESTS_BEFORE_BUILD; i++) {
+      assertTrue(function.rangeIndex().isEmpty());
+    }
+    var index = function.rangeIndex().get();
+    assertSame(index, function.rangeIndex().get());
+  }
+
+  /*
+   * The first resamplings scan the function and later ones go through the
+   * index, and each must find the same extremes.
+   */
+  @Test
+  public void resampleKeepsExtremesTest() {
+    var function = randomFunction(100 * 1024);
+    var resolvableDomain = new RegularSampledDomain<>(time, 100, 1d / 1024, 0);
+
+    for (int i = 0; i <= ArraySampledContinuousFunction.INDEX_REQUESTS_BEFORE_BUILD; i++) {
+      assertResampledExtremes(function, function.resample(resolvableDomain));
+    }
+    assertTrue(function.rangeIndex().isPresent());
+  }
+
+  private void assertResampledExtremes(
+      SampledContinuousFunction<Time, Dimensionless> function,
+      SampledContinuousFunction<Time, Dimensionless> resampled) {
+    var range = function.range();
+
+    /*
+     * The resolvable domain ends at the start of its last unit
+     */
+    assertTrue(resampled.getDepth() <= 4 * 100);
+    for (int unit = 0; unit < 99; unit++) {
+      double minimum = Double.MAX_VALUE;
+      double maximum = -Double.MAX_VALUE;
+      for (int i = unit * 1024; i < (unit + 1) * 1024; i++) {
+        minimum = Math.min(minimum, range.getSample(i));
+        maximum = Math.max(maximum, range.getSample(i));
+      }
+
+      double resampledMinimum = Double.MAX_VALUE;
+      double resampledMaximum = -Double.MAX_VALUE;
+      for (int i = 0; i < resampled.getDepth(); i++) {
+        double x = resampled.domain().getSample(i);
+        if (x >= unit * 1024 && x < (unit + 1) * 1024) {
+          resampledMinimum = Math.min(resampledMinimum, resampled.range().getSample(i));
+          resampledMaximum = Math.max(resampledMaximum, resampled.range().getSample(i));
+        }
+      }
+
+      assertEquals(minimum, resampledMinimum);
+      assertEquals(maximum, resampledMaximum);
+    }
+  }
+}
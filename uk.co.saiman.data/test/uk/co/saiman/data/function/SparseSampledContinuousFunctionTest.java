@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+
+public class SparseSampledContinuousFunctionTest {
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+
+  private final RegularSampledDomain<Time> domain = new RegularSampledDomain<>(time, 10, 1, 0);
+
+  @Test
+  public void samplesAtStoredIndicesTest() {
+    var function = new SparseSampledContinuousFunction<>(
+        domain,
+        count,
+        3,
+        new int[] { 2, 5, 7 },
+        new double[] { 1, 2, 3 });
+
+    assertArrayEquals(
+        new double[] { 0, 0, 1, 0, 0, 2, 0, 3, 0, 0 },
+        function.range().toArray());
+    assertEquals(2, function.range().getSample(5));
+    assertEquals(0, function.range().getSample(6));
+  }
+
+  @Test
+  public void unorderedIndicesAreSortedAndMergedTest() {
+    var function = new SparseSampledContinuousFunction<>(
+        domain,
+        count,
+        4,
+        new int[] { 7, 2, 7, 0 },
+        new double[] { 1, 2, 3, 4 });
+
+    assertEquals(3, function.getNonZeroSampleCount());
+    assertEquals(0, function.getNonZeroSampleIndex(0));
+    assertEquals(2, function.getNonZeroSampleIndex(1));
+    assertEquals(7, function.getNonZeroSampleIndex(2));
+    assertEquals(4, function.getNonZeroSample(2));
+  }
+
+  @Test
+  public void denseConstructionTest() {
+    double[] intensities = new double[] { 0, 3, 0, 0, 5, 0, 0, 0, 0, 1 };
+    var function = new SparseSampledContinuousFunction<>(domain, count, intensities);
+
+    assertEquals(3, function.getNonZeroSampleCount());
+    assertArrayEquals(intensities, function.range().toArray());
+  }
+
+  @Test
+  public void copyIntoPartialRunTest() {
+    var function = new SparseSampledContinuousFunction<>(
+        domain,
+        count,
+        3,
+        new int[] { 2, 5, 7 },
+        new double[] { 1, 2, 3 });
+
+    double[] destination = new double[] { 9, 9, 9, 9, 9 };
+    function.range().copyInto(3, destination, 1, 4);
+
+    assertArrayEquals(new double[] { 9, 0, 0, 2, 0 }, destination);
+  }
+
+  @Test
+  public void visitsOnlyStoredSamplesTest() {
+    var function = new SparseSampledContinuousFunction<>(
+        domain,
+        count,
+        2,
+        new int[] { 1, 8 },
+        new double[] { 4, 6 });
+
+    List<Integer> indices = new ArrayList<>();
+    List<Double> samples = new ArrayList<>();
+    function.range().forEachNonZeroSample((index, sample) -> {
+      indices.add(index);
+      samples.add(sample);
+    });
+
+    assertEquals(List.of(1, 8), indices);
+    assertEquals(List.of(4d, 6d), samples);
+  }
+
+  @Test
+  public void indexOutsideDomainTest() {
+    assertThrows(
+        IndexOutOfBoundsException.class,
+        () -> new SparseSampledContinuousFunction<>(
+            domain,
+            count,
+            1,
+            new int[] { 10 },
+            new double[] { 1 }));
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.format;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.co.saiman.data.format.Payload;
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.resource.PathResource;
+
+public class SampledContinuousFunctionStoreFormatTest {
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+
+  private final RegularSampledDomain<Time> domain = new RegularSampledDomain<>(time, 4, 2, 1);
+  private final SampledContinuousFunctionStoreFormat<Time, Dimensionless> format = new SampledContinuousFunctionStoreFormat<>(
+      time,
+      count);
+
+  @TempDir
+  Path directory;
+
+  private ArraySampledContinuousFunction<Time, Dimensionless> function(double... samples) {
+    return new ArraySampledContinuousFunction<>(domain, count, samples);
+  }
+
+  @Test
+  public void appendAndReadBackTest() throws IOException {
+    var resource = new PathResource(directory.resolve("store.mss"));
+
+    try (var store = format.open(resource, domain)) {
+      assertEquals(0, store.append(function(1, 2, 3, 4)));
+      assertEquals(1, store.append(function(5, 6, 7, 8)));
+
+      assertArrayEquals(new double[] { 5, 6, 7, 8 }, store.get(1).range().toArray());
+      assertEquals(2, store.size());
+    }
+
+    try (var store = format.open(resource, domain)) {
+      store.append(function(9, 10, 11, 12));
+    }
+
+    try (ReadableByteChannel channel = resource.read()) {
+      var store = format.load(channel).data;
+
+      assertEquals(3, store.size());
+      assertEquals(domain.getDepth(), store.getDomain().getDepth());
+      assertEquals(domain.getFrequency(), store.getDomain().getFrequency());
+      assertArrayEquals(new double[] { 1, 2, 3, 4 }, store.get(0).range().toArray());
+      assertArrayEquals(new double[] { 9, 10, 11, 12 }, store.get(2).range().toArray());
+      assertEquals(7, store.get(1).range().asBuffer().get().get(2));
+    }
+  }
+
+  @Test
+  public void saveAndLoadTest() throws IOException {
+    var source = new PathResource(directory.resolve("source.mss"));
+    var destination = new PathResource(directory.resolve("destination.mss"));
+
+    try (var store = format.open(source, domain)) {
+      store.append(function(1, 2, 3, 4));
+      store.append(function(5, 6, 7, 8));
+
+      destination.create();
+      try (var channel = destination.write()) {
+        format.save(channel, new Payload<>(store));
+      }
+    }
+
+    try (ReadableByteChannel channel = destination.read()) {
+      var store = format.load(channel).data;
+
+      assertEquals(2, store.size());
+      assertArrayEquals(new double[] { 5, 6, 7, 8 }, store.get(1).range().toArray());
+      assertThrows(IllegalStateException.class, () -> store.append(function(0, 0, 0, 0)));
+    }
+  }
+
+  @Test
+  public void domainMismatchTest() throws IOException {
+    var resource = new PathResource(directory.resolve("store.mss"));
+    format.open(resource, domain).close();
+
+    assertThrows(
+        IOException.class,
+        () -> format.open(resource, new RegularSampledDomain<>(time, 5, 2, 1)));
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.processing;
+
+import static uk.co.saiman.data.function.processing.Convolution.Strategy.AUTOMATIC;
+import static uk.co.saiman.data.function.processing.Convolution.Strategy.DIRECT;
+import static uk.co.saiman.data.function.processing.Convolution.Strategy.FOURIER_TRANSFORM;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import uk.co.saiman.data.function.processing.Convolution.Strategy;
+
+/**
+ * A benchmark comparing the direct and Fourier transform convolution
+ * strategies over a range of kernel widths, to check the crossover estimated
+ * by automatic strategy selection.
+ * <p>
+ * Run from the test classpath with optional arguments for the data length and
+ * the kernel widths to compare.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class ConvolutionBenchmark {
+  public static void main(String... args) {
+    int length = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int[] widths = args.length > 1
+        ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+        : new int[] { 9, 33, 65, 129, 257, 1025 };
+
+    var random = new Random(0);
+    double[] data = random.doubles(length).toArray();
+
+    System.out.printf("data length %d%n", length);
+    for (int width : widths) {
+      double[] kernel = random.doubles(width).toArray();
+
+      double direct = time(data, kernel, DIRECT);
+      double fourierTransform = time(data, kernel, FOURIER_TRANSFORM);
+      double automatic = time(data, kernel, AUTOMATIC);
+
+      System.out
+          .printf(
+              "width %5d: direct %8.3f ms, fourier transform %8.3f ms, automatic %8.3f ms%n",
+              width,
+              direct,
+              fourierTransform,
+              automatic);
+    }
+  }
+
+  /*
+   * Best of several timed runs after a warm up, in milliseconds.
+   */
+  private static double time(double[] data, double[] kernel, Strategy strategy) {
+    double best = Double.MAX_VALUE;
+    double checksum = 0;
+    for (int run = 0; run < 20; run++) {
+      long start = System.nanoTime();
+      double[] result = Convolution.process(data, kernel, kernel.length / 2, strategy);
+      long time = System.nanoTime() - start;
+      checksum += result[result.length / 2];
+
+      if (run >= 5) {
+        best = Math.min(best, time / 1e6);
+      }
+    }
+    if (Double.isNaN(checksum)) {
+      throw new AssertionError();
+    }
+    return best;
+  }
+}
@@ -29,8 +29,14 @@ package uk.co.saiman.data.function.processing;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.co.saiman.data.function.processing.Convolution.Strategy.DIRECT;
+import static uk.co.saiman.data.function.processing.Convolution.Strategy.FOURIER_TRANSFORM;
+
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 public class ConvolutionTest {
   private static final double[] EMPTY = new double[] {};
@@ -61,4 +67,32 @@ public class ConvolutionTest {
     assertArrayEquals(new double[] { 291, 379 }, resultOffset1);
     assertArrayEquals(new double[] { 155, 291 }, resultOffset2);
   }
+
+  @Test
+  public void smallerDataThanConvolutionVectorFourierTransformTest() {
+    double[] resultOffset0 = Convolution.process(TWO, THREE, 0, FOURIER_TRANSFORM);
+    double[] resultOffset1 = Convolution.process(TWO, THREE, 1, FOURIER_TRANSFORM);
+    double[] resultOffset2 = Convolution.process(TWO, THREE, 2, FOURIER_TRANSFORM);
+
+    assertArrayEquals(new double[] { 379, 403 }, resultOffset0, 1e-9);
+    assertArrayEquals(new double[] { 291, 379 }, resultOffset1, 1e-9);
+    assertArrayEquals(new double[] { 155, 291 }, resultOffset2, 1e-9);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = { 3, 17, 64, 255, 2048 })
+  public void fourierTransformMatchesDirectTest(int width) {
+    Random random = new Random(width);
+    double[] data = random.doubles(5000).toArray();
+    double[] vector = random.doubles(width).toArray();
+
+    assertArrayEquals(
+        Convolution.process(data, vector, DIRECT),
+        Convolution.process(data, vector, FOURIER_TRANSFORM),
+        1e-9);
+    assertArrayEquals(
+        Convolution.process(data, vector, width / 2, DIRECT),
+        Convolution.process(data, vector, width / 2, FOURIER_TRANSFORM),
+        1e-9);
+  }
 }
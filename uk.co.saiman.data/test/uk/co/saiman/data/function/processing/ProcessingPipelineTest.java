@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.function.processing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static uk.co.saiman.data.function.processing.Convolution.DomainModification.BOUNDED;
+
+import java.util.Random;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+
+public class ProcessingPipelineTest {
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+
+  private SampledContinuousFunction<Time, Dimensionless> function(double[] intensities) {
+    return new ArraySampledContinuousFunction<>(
+        new RegularSampledDomain<>(time, intensities.length, 1, 0),
+        count,
+        intensities);
+  }
+
+  @Test
+  public void identityIsEmptyPipelineTest() {
+    var function = function(new double[] { 1, 2, 3 });
+
+    assertSame(function, DataProcessor.identity().process(function));
+    assertEquals(DataProcessor.identity(), ProcessingPipeline.of());
+  }
+
+  @Test
+  public void singleStagePipelineIsStageTest() {
+    var smooth = new GaussianSmooth(2);
+
+    assertSame(smooth, ProcessingPipeline.of(smooth));
+    assertSame(smooth, DataProcessor.identity().andThen(smooth));
+  }
+
+  @Test
+  public void nestedPipelinesAreFlattenedTest() {
+    var smooth = new GaussianSmooth(2);
+    var box = new BoxFilter(3);
+    var convolution = new Convolution(new double[] { 1, 2, 1 }, 1, BOUNDED);
+
+    assertEquals(
+        ProcessingPipeline.of(smooth, box, convolution),
+        smooth.andThen(box).andThen(convolution));
+    assertEquals(
+        ProcessingPipeline.of(smooth, box, convolution),
+        smooth.andThen(box.andThen(convolution)));
+  }
+
+  @Test
+  public void fusedPipelineMatchesSequentialStagesTest() {
+    double[] intensities = new Random(0).doubles(1000).toArray();
+    var function = function(intensities);
+
+    DataProcessor[] stages = new DataProcessor[] {
+        new GaussianSmooth(4),
+        new BoxFilter(5),
+        new Convolution(new double[] { 1, 2, 1 }, 1, BOUNDED),
+        DataProcessor.arrayProcessor(data -> {
+          for (int i = 0; i < data.length; i++)
+            data[i] *= 2;
+          return data;
+        }, 0) };
+
+    var sequential = function;
+    for (DataProcessor stage : stages) {
+      sequential = stage.process(sequential);
+    }
+    var fused = ProcessingPipeline.of(stages).process(function);
+
+    assertArrayEquals(sequential.range().toArray(), fused.range().toArray());
+    assertArrayEquals(intensities, function.range().toArray());
+  }
+
+  @Test
+  public void longerArrayProcessorResultIsTruncatedTest() {
+    var function = function(new double[] { 1, 2, 3 });
+
+    var processor = DataProcessor.arrayProcessor(data -> new double[] { 4, 5, 6, 7, 8 }, 0);
+
+    assertArrayEquals(new double[] { 4, 5, 6 }, processor.process(function).range().toArray());
+    assertArrayEquals(
+        new double[] { 4, 5, 6 },
+        ProcessingPipeline.of(new BoxFilter(1), processor).process(function).range().toArray());
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.resource;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PathResourceTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  public void replaceWritesNewContentTest() throws IOException {
+    var path = directory.resolve("resource.txt");
+    Files.writeString(path, "previous");
+    var resource = new PathResource(path);
+
+    resource.replace(channel -> channel.write(ByteBuffer.wrap("replacement".getBytes(UTF_8))));
+
+    assertEquals("replacement", Files.readString(path));
+    assertEquals(1, Files.list(directory).count());
+  }
+
+  @Test
+  public void replaceFailingMidWriteKeepsPreviousContentTest() throws IOException {
+    var path = directory.resolve("resource.txt");
+    Files.writeString(path, "previous");
+    var resource = new PathResource(path);
+
+    var failure = assertThrows(IOException.class, () -> resource.replace(channel -> {
+      channel.write(ByteBuffer.wrap("partial".getBytes(UTF_8)));
+      throw new IOException("failed mid-write");
+    }));
+
+    assertEquals("failed mid-write", failure.getMessage());
+    assertEquals("previous", Files.readString(path));
+    assertEquals(1, Files.list(directory).count());
+  }
+
+  @Test
+  public void replaceKeepsPermissionsTest() throws IOException {
+    var path = directory.resolve("resource.txt");
+    Files.writeString(path, "previous");
+    if (Files.getFileAttributeView(path, PosixFileAttributeView.class) == null) {
+      return;
+    }
+    var permissions = PosixFilePermissions.fromString("rw-r--r--");
+    Files.setPosixFilePermissions(path, permissions);
+    var resource = new PathResource(path);
+
+    resource.replace(channel -> channel.write(ByteBuffer.wrap("replacement".getBytes(UTF_8))));
+
+    assertEquals(permissions, Files.getPosixFilePermissions(path));
+  }
+}
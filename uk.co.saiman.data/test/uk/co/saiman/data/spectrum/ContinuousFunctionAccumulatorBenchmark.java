@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.spectrum;
+
+import static uk.co.saiman.measurement.Units.count;
+import static uk.co.saiman.measurement.Units.second;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.observable.HotObservable;
+
+/**
+ * A benchmark of accumulation throughput at different parallelisms, with a
+ * reader requesting the latest accumulation after every update as a chart
+ * would.
+ * <p>
+ * Run from the test classpath with optional arguments for the number of
+ * records, the record depth, and the parallelisms to compare.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class ContinuousFunctionAccumulatorBenchmark {
+  public static void main(String... args) {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    int depth = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+    int[] parallelisms = args.length > 2
+        ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+        : new int[] { 1, ContinuousFunctionAccumulator.defaultParallelism(), 4 };
+
+    var domain = new RegularSampledDomain<>(second().getUnit(), depth, 1, 0);
+    var random = new Random(0);
+    @SuppressWarnings("unchecked")
+    SampledContinuousFunction<Time, Dimensionless>[] inputs = new SampledContinuousFunction[16];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = new ArraySampledContinuousFunction<>(
+          domain,
+          count().getUnit(),
+          random.doubles(depth).toArray());
+    }
+
+    System.out
+        .printf(
+            "%d records of depth %d, %d processors%n",
+            records,
+            depth,
+            Runtime.getRuntime().availableProcessors());
+    for (int round = 0; round < 3; round++) {
+      for (int parallelism : parallelisms) {
+        var source = new HotObservable<SampledContinuousFunction<Time, Dimensionless>>();
+        var accumulator = new ContinuousFunctionAccumulator<>(
+            source,
+            domain,
+            count().getUnit(),
+            parallelism);
+        accumulator.accumulation().observe(a -> a.getLatestAccumulation());
+
+        long start = System.nanoTime();
+        for (int r = 0; r < records; r++) {
+          source.next(inputs[r % inputs.length]);
+        }
+        source.complete();
+        accumulator.getCompleteAccumulation();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out
+            .printf("parallelism %d: %.0f records/s%n", parallelism, records / seconds);
+      }
+    }
+  }
+}
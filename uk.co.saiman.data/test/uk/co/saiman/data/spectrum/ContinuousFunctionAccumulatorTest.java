@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.data.
+ *
+ * uk.co.saiman.data is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.data is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.data.spectrum;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static uk.co.saiman.measurement.Units.count;
+import static uk.co.saiman.measurement.Units.second;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.PooledSampledContinuousFunction;
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.data.function.SparseSampledContinuousFunction;
+import uk.co.saiman.observable.HotObservable;
+
+public class ContinuousFunctionAccumulatorTest {
+  private static final int DEPTH = 64;
+
+  private final RegularSampledDomain<Time> domain = new RegularSampledDomain<>(
+      second().getUnit(),
+      DEPTH,
+      1,
+      0);
+  private final ExecutorService stripeExecutor = newFixedThreadPool(4);
+
+  @AfterEach
+  public void shutdown() {
+    stripeExecutor.shutdown();
+  }
+
+  private ContinuousFunctionAccumulator<Time, Dimensionless> accumulator(
+      HotObservable<SampledContinuousFunction<Time, Dimensionless>> source) {
+    return new ContinuousFunctionAccumulator<>(source, domain, count().getUnit(), 4, stripeExecutor);
+  }
+
+  private SampledContinuousFunction<Time, Dimensionless> record(int seed) {
+    double[] intensities = new double[DEPTH];
+    for (int i = 0; i < DEPTH; i++) {
+      intensities[i] = (seed * 31 + i) % 7;
+    }
+    return new ArraySampledContinuousFunction<>(domain, count().getUnit(), intensities);
+  }
+
+  private static double[] ones() {
+    double[] ones = new double[DEPTH];
+    Arrays.fill(ones, 1);
+    return ones;
+  }
+
+  /*
+   * Signals once it has been summed and released by the accumulator.
+   */
+  private class ReleasedRecord extends ArraySampledContinuousFunction<Time, Dimensionless>
+      implements PooledSampledContinuousFunction<Time, Dimensionless> {
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    public ReleasedRecord() {
+      super(domain, count().getUnit(), ones());
+    }
+
+    @Override
+    public ReleasedRecord retain() {
+      return this;
+    }
+
+    @Override
+    public void release() {
+      released.countDown();
+    }
+  }
+
+  @Test
+  public void sumsEveryRecordTest() {
+    var source = new HotObservable<SampledContinuousFunction<Time, Dimensionless>>();
+    var accumulator = accumulator(source);
+
+    double[] expected = new double[DEPTH];
+    for (int r = 0; r < 5000; r++) {
+      var record = record(r);
+      for (int i = 0; i < DEPTH; i++) {
+        expected[i] += record.range().getSample(i);
+      }
+      source.next(record);
+    }
+    source.complete();
+
+    assertArrayEquals(expected, accumulator.getCompleteAccumulation().range().toArray());
+  }
+
+  @Test
+  public void sumsSparseRecordsTest() {
+    var source = new HotObservable<SampledContinuousFunction<Time, Dimensionless>>();
+    var accumulator = accumulator(source);
+
+    for (int r = 0; r < 1000; r++) {
+      source
+          .next(
+              new SparseSampledContinuousFunction<>(
+                  domain,
+                  count().getUnit(),
+                  2,
+                  new int[] { 3, 40 },
+                  new double[] { 1, 2 }));
+    }
+    source.complete();
+
+    var accumulation = accumulator.getCompleteAccumulation().range();
+    assertEquals(1000, accumulation.getSample(3));
+    assertEquals(2000, accumulation.getSample(40));
+    assertEquals(0, accumulation.getSample(4));
+  }
+
+  @Test
+  public void latestAccumulationIncludesUnpublishedRecordsTest() throws InterruptedException {
+    var source = new HotObservable<SampledContinuousFunction<Time, Dimensionless>>();
+    var accumulator = accumulator(source);
+
+    var announced = new CountDownLatch(1);
+    accumulator.accumulation().observe(a -> announced.countDown());
+    source.next(new ArraySampledContinuousFunction<>(domain, count().getUnit(), ones()));
+    announced.await();
+
+    /*
+     * The first accumulation has been announced but not observed, so the
+     * second record is summed without being published.
+     */
+    var record = new ReleasedRecord();
+    source.next(record);
+    record.released.await();
+
+    for (double sample : accumulator.getLatestAccumulation().range().toArray()) {
+      assertEquals(2, sample);
+    }
+    source.complete();
+  }
+
+  /*
+   * Every record adds one to every sample, so any published accumulation which
+   * was folded from a partially summed batch shows up as uneven samples.
+   */
+  @Test
+  public void concurrentReadersSeeWholeBatchesTest() throws InterruptedException {
+    var source = new HotObservable<SampledContinuousFunction<Time, Dimensionless>>();
+    var accumulator = accumulator(source);
+
+    double[] ones = new double[DEPTH];
+    Arrays.fill(ones, 1);
+    var record = new ArraySampledContinuousFunction<>(domain, count().getUnit(), ones);
+
+    var done = new AtomicBoolean();
+    var failure = new AtomicBoolean();
+    var reader = new Thread(() -> {
+      double last = 0;
+      while (!done.get()) {
+        double[] samples = accumulator.getLatestAccumulation().range().toArray();
+        for (double sample : samples) {
+          if (sample != samples[0]) {
+            failure.set(true);
+          }
+        }
+        if (samples[0] < last) {
+          failure.set(true);
+        }
+        last = samples[0];
+      }
+    });
+    reader.start();
+
+    int records = 20000;
+    for (int r = 0; r < records; r++) {
+      source.next(record);
+    }
+    source.complete();
+    var complete = accumulator.getCompleteAccumulation();
+
+    done.set(true);
+    reader.join();
+
+    assertFalse(failure.get(), "a reader observed a partially accumulated function");
+    for (double sample : complete.range().toArray()) {
+      assertEquals(records, sample);
+    }
+  }
+}
@@ -63,6 +63,11 @@ public class Conductor {
   private final Log log;
 
   private final java.util.concurrent.ExecutorService executor;
+  /*
+   * Guards changes to the procedure being conducted. Running instructions
+   * never take this lock, they only synchronize on the conditions and results
+   * they exchange with one another.
+   */
   private final ReentrantLock lock;
 
   private ConductorOutput output;
@@ -87,8 +87,8 @@ public class ConductorInstruction {
      * 
      * 
      */
-    this.outgoingConditions = new OutgoingConditions(conductor.lock(), path);
-    this.outgoingResults = new OutgoingResults(conductor.lock(), path);
+    this.outgoingConditions = new OutgoingConditions(path);
+    this.outgoingResults = new OutgoingResults(path);
     this.incomingDependencies = new IncomingDependencies(conductor, path);
   }
 
@@ -65,8 +65,8 @@ public class Execution {
 
   private Location location;
   private Future<?> executionThread;
-  private boolean valid = true;
-  private boolean completed = false;
+  private volatile boolean valid = true;
+  private volatile boolean completed = false;
 
   public Execution(
       ConductorOutput output,
@@ -111,84 +111,44 @@ public class Execution {
 
       @Override
       public <T> Resource<T> acquireResource(Class<T> source) {
-        conductor.lock().lock();
-        try {
-          var resource = environment.provideResource(source);
-          acquiredResource.accept(resource);
-          return resource;
-        } finally {
-          conductor.lock().unlock();
-        }
+        var resource = environment.provideResource(source);
+        acquiredResource.accept(resource);
+        return resource;
       }
 
       @Override
       public <T> Condition<T> acquireCondition(Class<T> source) {
-        conductor.lock().lock();
-        try {
-          return incomingDependencies.acquireCondition(source);
-        } finally {
-          conductor.lock().unlock();
-        }
+        return incomingDependencies.acquireCondition(source);
       }
 
       @Override
       public <T> Result<T> acquireResult(Class<T> source) {
-        conductor.lock().lock();
-        try {
-          return incomingDependencies.acquireResult(source);
-        } finally {
-          conductor.lock().unlock();
-        }
+        return incomingDependencies.acquireResult(source);
       }
 
       @Override
       public <T> Stream<Result<T>> acquireAdditionalResults(Class<T> source) {
-        conductor.lock().lock();
-        try {
-          return incomingDependencies.acquireAdditionalResults(source);
-        } finally {
-          conductor.lock().unlock();
-        }
+        return incomingDependencies.acquireAdditionalResults(source);
       }
 
       @Override
       public <U> void prepareCondition(Class<U> condition, Supplier<? extends U> resource) {
-        conductor.lock().lock();
-        try {
-          outgoingConditions.getOutgoingCondition(condition).ifPresent(o -> o.prepare(resource));
-        } finally {
-          conductor.lock().unlock();
-        }
+        outgoingConditions.getOutgoingCondition(condition).ifPresent(o -> o.prepare(resource));
       }
 
       @Override
       public <R> void observePartialResult(Class<R> observation, Supplier<? extends R> value) {
-        conductor.lock().lock();
-        try {
-          // TODO Auto-generated method stub
-        } finally {
-          conductor.lock().unlock();
-        }
+        // TODO Auto-generated method stub
       }
 
       @Override
       public void completeObservation(Class<?> observation) {
-        conductor.lock().lock();
-        try {
-          // TODO Auto-generated method stub
-        } finally {
-          conductor.lock().unlock();
-        }
+        // TODO Auto-generated method stub
       }
 
       @Override
       public <R> void setResultData(Class<R> observation, Data<R> data) {
-        conductor.lock().lock();
-        try {
-          // TODO Auto-generated method stub
-        } finally {
-          conductor.lock().unlock();
-        }
+        // TODO Auto-generated method stub
       }
 
       @Override
@@ -216,8 +176,6 @@ public class Execution {
 
   private void completeRun(Set<Resource<?>> acquiredResources) {
     try {
-      conductor.lock().lock();
-
       completed = true;
 
       outgoingConditions.terminate();
@@ -241,9 +199,6 @@ public class Execution {
     } catch (Exception e) {
       conductor.log().log(Level.ERROR, e);
       throw e;
-
-    } finally {
-      conductor.lock().unlock();
     }
   }
 
@@ -290,24 +245,15 @@ public class Execution {
   }
 
   private void prepareLocation() throws IOException {
-    try {
-      conductor.lock().lock();
-
-      location = conductor.storageConfiguration().locateStorage(path).location();
-      var procedureFormat = new JsonProcedureFormat(conductor.executorService(), environment, new JsonStateMapFormat());
-      var data = Data.locate(location, instruction.id().name(), procedureFormat);
-      data.set(instruction.extractMinimalProcedure());
-      data.save();
-
-    } finally {
-      conductor.lock().unlock();
-    }
+    location = conductor.storageConfiguration().locateStorage(path).location();
+    var procedureFormat = new JsonProcedureFormat(conductor.executorService(), environment, new JsonStateMapFormat());
+    var data = Data.locate(location, instruction.id().name(), procedureFormat);
+    data.set(instruction.extractMinimalProcedure());
+    data.save();
   }
 
   private void clearLocation() throws IOException {
     try {
-      conductor.lock().lock();
-
       var re = location.resources().flatMap(r -> {
         try {
           r.delete();
@@ -325,7 +271,6 @@ public class Execution {
 
     } finally {
       location = null;
-      conductor.lock().unlock();
     }
   }
 
@@ -39,6 +39,8 @@ class IncomingCondition<T> {
   private final OutgoingCondition<T> outgoing;
   private final java.util.concurrent.locks.Condition lockCondition;
   private IncomingDependencyState state;
+  private boolean awaiting;
+  private boolean detached;
 
   public IncomingCondition(
       OutgoingCondition<T> outgoing,
@@ -49,8 +51,9 @@ class IncomingCondition<T> {
   }
 
   public Condition<T> acquire() {
+    outgoing.lock().lock();
     try {
-      while (!outgoing.beginAcquire(this)) {
+      while (!detached && !outgoing.beginAcquire(this)) {
         if (state == IncomingDependencyState.DONE) {
           throw new ConductorException(
               format(
@@ -58,7 +61,19 @@ class IncomingCondition<T> {
                   outgoing.type(),
                   outgoing.path()));
         }
-        lockCondition.await();
+        awaiting = true;
+        try {
+          lockCondition.await();
+        } finally {
+          awaiting = false;
+        }
+      }
+      if (detached) {
+        throw new ConductorException(
+            format(
+                "Dependency to condition %s at %s was invalidated",
+                outgoing.type(),
+                outgoing.path()));
       }
       state = IncomingDependencyState.ACQUIRED;
     } catch (InterruptedException e) {
@@ -68,6 +83,8 @@ class IncomingCondition<T> {
               outgoing.type(),
               outgoing.path()),
           e);
+    } finally {
+      outgoing.lock().unlock();
     }
     return new Condition<T>() {
       @SuppressWarnings("unchecked")
@@ -113,18 +130,46 @@ class IncomingCondition<T> {
   }
 
   void invalidateIncoming() {
-    state = IncomingDependencyState.WAITING;
-    outgoing.invalidatedIncoming(this);
+    outgoing.lock().lock();
+    try {
+      state = IncomingDependencyState.WAITING;
+      outgoing.invalidatedIncoming(this);
+    } finally {
+      outgoing.lock().unlock();
+    }
   }
 
+  /*
+   * The outgoing condition forgets its consumers when it is invalidated, so a
+   * consumer which is waiting to acquire it would never be signalled again. It
+   * is woken to fail instead.
+   */
   void invalidatedOutgoing() {
     state = IncomingDependencyState.WAITING;
+    detached = true;
+    signal();
   }
 
   public void done() {
-    if (this.state != IncomingDependencyState.DONE) {
-      this.state = IncomingDependencyState.DONE;
-      this.lockCondition.signalAll();
+    outgoing.lock().lock();
+    try {
+      if (this.state != IncomingDependencyState.DONE) {
+        this.state = IncomingDependencyState.DONE;
+        this.lockCondition.signal();
+        outgoing.consumerDone();
+      }
+    } finally {
+      outgoing.lock().unlock();
+    }
+  }
+
+  boolean isAwaiting() {
+    return awaiting;
+  }
+
+  void signal() {
+    if (awaiting) {
+      lockCondition.signal();
     }
   }
 
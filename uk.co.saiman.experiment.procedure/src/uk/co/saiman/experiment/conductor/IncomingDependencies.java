@@ -45,12 +45,32 @@ public class IncomingDependencies {
     WAITING, ACQUIRED, DONE
   }
 
+  /*
+   * The dependencies are replaced as a whole on update, and read from running
+   * executions without taking any lock, so they are published together in a
+   * single immutable snapshot.
+   */
+  private static final class Dependencies {
+    private static final Dependencies NONE = new Dependencies(null, null, List.of());
+
+    private final IncomingCondition<?> condition;
+    private final IncomingResult<?> result;
+    private final List<IncomingResult<?>> additionalResults;
+
+    Dependencies(
+        IncomingCondition<?> condition,
+        IncomingResult<?> result,
+        List<IncomingResult<?>> additionalResults) {
+      this.condition = condition;
+      this.result = result;
+      this.additionalResults = List.copyOf(additionalResults);
+    }
+  }
+
   private final Conductor conductor;
   private final WorkspaceExperimentPath path;
 
-  private IncomingCondition<?> incomingCondition;
-  private IncomingResult<?> incomingResult;
-  private List<IncomingResult<?>> additionalIncomingResults;
+  private volatile Dependencies dependencies = Dependencies.NONE;
 
   public IncomingDependencies(Conductor conductor, WorkspaceExperimentPath path) {
     this.conductor = conductor;
@@ -61,7 +81,7 @@ public class IncomingDependencies {
     requireNonNull(instruction);
     requireNonNull(environment);
 
-    incomingCondition = instruction
+    IncomingCondition<?> incomingCondition = instruction
         .conditionRequirement()
         .flatMap(
             production -> output
@@ -69,7 +89,7 @@ public class IncomingDependencies {
                     WorkspaceExperimentPath.define(instruction.experimentId(), production.getExperimentPath()))
                 .map(dependency -> dependency.addConditionConsumer(production.getProduction(), path)))
         .orElse(null);
-    incomingResult = instruction
+    IncomingResult<?> incomingResult = instruction
         .resultRequirement()
         .flatMap(
             production -> output
@@ -77,7 +97,7 @@ public class IncomingDependencies {
                     WorkspaceExperimentPath.define(instruction.experimentId(), production.getExperimentPath()))
                 .map(dependency -> dependency.addResultConsumer(production.getProduction(), path)))
         .orElse(null);
-    additionalIncomingResults = instruction
+    List<IncomingResult<?>> additionalIncomingResults = instruction
         .additionalResultRequirements()
         .flatMap(
             production -> output
@@ -86,6 +106,8 @@ public class IncomingDependencies {
                 .map(dependency -> dependency.addResultConsumer(production.getProduction(), path))
                 .stream())
         .collect(toList());
+
+    dependencies = new Dependencies(incomingCondition, incomingResult, additionalIncomingResults);
   }
 
   protected Optional<ConductorInstruction> getParent(ConductorOutput output) {
@@ -98,6 +120,7 @@ public class IncomingDependencies {
 
   @SuppressWarnings("unchecked")
   public <T> Condition<T> acquireCondition(Class<T> source) {
+    var incomingCondition = dependencies.condition;
     if (incomingCondition == null || incomingCondition.type() != source) {
       throw new ConductorException("No condition dependency declared on " + source);
     }
@@ -106,6 +129,7 @@ public class IncomingDependencies {
 
   @SuppressWarnings("unchecked")
   public <T> Result<T> acquireResult(Class<T> source) {
+    var incomingResult = dependencies.result;
     if (incomingResult == null || incomingResult.type() != source) {
       throw new ConductorException("No result dependency declared on " + source);
     }
@@ -114,10 +138,8 @@ public class IncomingDependencies {
 
   @SuppressWarnings("unchecked")
   public <T> Stream<Result<T>> acquireAdditionalResults(Class<T> source) {
-    return Optional
-        .ofNullable(additionalIncomingResults)
+    return dependencies.additionalResults
         .stream()
-        .flatMap(List::stream)
         .filter(r -> r.type() == source)
         .map(r -> (IncomingResult<T>) r)
         .map(IncomingResult::acquire)
@@ -126,30 +148,28 @@ public class IncomingDependencies {
   }
 
   public void terminate() {
-    if (incomingCondition != null) {
-      incomingCondition.done();
+    var dependencies = this.dependencies;
+    if (dependencies.condition != null) {
+      dependencies.condition.done();
     }
-    if (incomingResult != null) {
-      incomingResult.done();
+    if (dependencies.result != null) {
+      dependencies.result.done();
     }
-    if (additionalIncomingResults != null) {
-      for (var resultDependency : additionalIncomingResults) {
-        resultDependency.done();
-      }
+    for (var resultDependency : dependencies.additionalResults) {
+      resultDependency.done();
     }
   }
 
   public void invalidate() {
-    if (incomingCondition != null) {
-      incomingCondition.invalidateIncoming();
+    var dependencies = this.dependencies;
+    if (dependencies.condition != null) {
+      dependencies.condition.invalidateIncoming();
     }
-    if (incomingResult != null) {
-      incomingResult.invalidateIncoming();
+    if (dependencies.result != null) {
+      dependencies.result.invalidateIncoming();
     }
-    if (additionalIncomingResults != null) {
-      for (var resultDependency : additionalIncomingResults) {
-        resultDependency.invalidateIncoming();
-      }
+    for (var resultDependency : dependencies.additionalResults) {
+      resultDependency.invalidateIncoming();
     }
   }
 }
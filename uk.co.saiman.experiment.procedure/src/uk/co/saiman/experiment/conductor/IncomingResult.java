@@ -41,6 +41,7 @@ class IncomingResult<T> {
   private final OutgoingResult<T> outgoing;
   private final java.util.concurrent.locks.Condition lockCondition;
   private IncomingDependencyState state;
+  private boolean awaiting;
 
   public IncomingResult(
       OutgoingResult<T> outgoing,
@@ -51,6 +52,7 @@ class IncomingResult<T> {
   }
 
   public Result<T> acquire() {
+    outgoing.lock().lock();
     try {
       while (!outgoing.beginAcquire(this)) {
         if (state == IncomingDependencyState.DONE) {
@@ -60,7 +62,12 @@ class IncomingResult<T> {
                   outgoing.type(),
                   outgoing.path()));
         }
-        lockCondition.await();
+        awaiting = true;
+        try {
+          lockCondition.await();
+        } finally {
+          awaiting = false;
+        }
       }
       state = IncomingDependencyState.ACQUIRED;
     } catch (InterruptedException e) {
@@ -69,6 +76,8 @@ class IncomingResult<T> {
               "Failed to acquire dependency to result %s at %s" + outgoing.type(),
               outgoing.path()),
           e);
+    } finally {
+      outgoing.lock().unlock();
     }
     return new Result<T>() {
       @SuppressWarnings("unchecked")
@@ -103,7 +112,12 @@ class IncomingResult<T> {
   }
 
   void invalidateIncoming() {
-    state = IncomingDependencyState.WAITING;
+    outgoing.lock().lock();
+    try {
+      state = IncomingDependencyState.WAITING;
+    } finally {
+      outgoing.lock().unlock();
+    }
   }
 
   void invalidatedOutgoing() {
@@ -115,8 +129,20 @@ class IncomingResult<T> {
   }
 
   public void done() {
-    this.state = IncomingDependencyState.DONE;
-    this.lockCondition.signalAll();
+    outgoing.lock().lock();
+    try {
+      this.state = IncomingDependencyState.DONE;
+      this.lockCondition.signal();
+      outgoing.consumerDone();
+    } finally {
+      outgoing.lock().unlock();
+    }
+  }
+
+  void signal() {
+    if (awaiting) {
+      lockCondition.signal();
+    }
   }
 
   public IncomingDependencyState getState() {
@@ -37,18 +37,26 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 import uk.co.saiman.experiment.conductor.IncomingDependencies.IncomingDependencyState;
 import uk.co.saiman.experiment.executor.Evaluation;
 import uk.co.saiman.experiment.workspace.WorkspaceExperimentPath;
 
+/*
+ * The state of a condition and of all of its consumers is guarded by the lock
+ * of the condition, so instructions which don't exchange the condition never
+ * contend with one another. Each consumer waits on its own lock condition, and
+ * is only signalled when it may be able to proceed.
+ */
 class OutgoingCondition<T> {
   private final OutgoingConditions conditions;
   private final Class<T> type;
   private final Evaluation evaluation;
 
-  private final java.util.concurrent.locks.Condition lockCondition;
+  private final Lock lock;
+  private final java.util.concurrent.locks.Condition consumersDone;
 
   private final HashMap<WorkspaceExperimentPath, IncomingCondition<T>> consumers = new LinkedHashMap<>();
   private final List<IncomingCondition<T>> acquiredConsumers = new ArrayList<>();
@@ -59,7 +67,8 @@ class OutgoingCondition<T> {
     this.type = type;
     this.evaluation = evaluation;
 
-    this.lockCondition = conditions.lock().newCondition();
+    this.lock = new ReentrantLock();
+    this.consumersDone = lock.newCondition();
   }
 
   public boolean beginAcquire(IncomingCondition<T> conditionDependency) {
@@ -70,15 +79,10 @@ class OutgoingCondition<T> {
     boolean acquire;
     switch (evaluation) {
     case ORDERED:
-      acquire = acquiredConsumers
-          .stream()
-          .allMatch(c -> c.getState() == IncomingDependencyState.DONE)
-          && nextConsumer() == conditionDependency;
+      acquire = !isAcquiredConsumerActive() && nextConsumer() == conditionDependency;
       break;
     case SERIAL:
-      acquire = acquiredConsumers
-          .stream()
-          .allMatch(c -> c.getState() == IncomingDependencyState.DONE);
+      acquire = !isAcquiredConsumerActive();
       break;
     default:
       acquire = true;
@@ -90,6 +94,10 @@ class OutgoingCondition<T> {
     return acquire;
   }
 
+  private boolean isAcquiredConsumerActive() {
+    return acquiredConsumers.stream().anyMatch(c -> c.getState() != IncomingDependencyState.DONE);
+  }
+
   private IncomingCondition<T> nextConsumer() {
     return consumers
         .values()
@@ -99,34 +107,75 @@ class OutgoingCondition<T> {
         .orElse(null);
   }
 
-  public void prepare(Supplier<? extends T> resource) {
-    this.resource = Objects.requireNonNull(resource);
+  private void signalEligibleConsumers() {
+    if (resource == null || (evaluation != PARALLEL && isAcquiredConsumerActive())) {
+      return;
+    }
+    switch (evaluation) {
+    case ORDERED:
+      var next = nextConsumer();
+      if (next != null) {
+        next.signal();
+      }
+      break;
+    case SERIAL:
+      consumers
+          .values()
+          .stream()
+          .filter(IncomingCondition::isAwaiting)
+          .findFirst()
+          .ifPresent(IncomingCondition::signal);
+      break;
+    default:
+      consumers.values().forEach(IncomingCondition::signal);
+      break;
+    }
+  }
+
+  void consumerDone() {
+    consumersDone.signal();
+    signalEligibleConsumers();
+  }
 
+  public void prepare(Supplier<? extends T> resource) {
+    lock.lock();
     try {
+      this.resource = Objects.requireNonNull(resource);
+      signalEligibleConsumers();
+
       while (consumers
           .values()
           .stream()
           .anyMatch(c -> c.getState() != IncomingDependencyState.DONE)) {
-        lockCondition.signalAll();
-        lockCondition.await();
+        consumersDone.await();
       }
     } catch (InterruptedException e) {
       throw new ConductorException("Cancelled preparation", e);
     } finally {
-      System.out.println("  ####### DONE PREPARE! " + consumers);
       resource = null;
+      lock.unlock();
     }
   }
 
   public IncomingCondition<T> addConsumer(WorkspaceExperimentPath path) {
-    System.out.println("   adding consumer! " + path);
-    return consumers.computeIfAbsent(path, p -> new IncomingCondition<>(this, lockCondition));
+    lock.lock();
+    try {
+      return consumers.computeIfAbsent(path, p -> new IncomingCondition<>(this, lock.newCondition()));
+    } finally {
+      lock.unlock();
+    }
   }
 
   public void invalidate() {
-    consumers.values().forEach(IncomingCondition::invalidatedOutgoing);
-    consumers.clear();
-    acquiredConsumers.clear();
+    lock.lock();
+    try {
+      consumers.values().forEach(IncomingCondition::invalidatedOutgoing);
+      consumers.clear();
+      acquiredConsumers.clear();
+      consumersDone.signal();
+    } finally {
+      lock.unlock();
+    }
   }
 
   public void invalidatedIncoming(IncomingCondition<T> incoming) {
@@ -137,11 +186,16 @@ class OutgoingCondition<T> {
   }
 
   public void terminate() {
-    consumers.values().forEach(IncomingCondition::done);
+    lock.lock();
+    try {
+      consumers.values().forEach(IncomingCondition::done);
+    } finally {
+      lock.unlock();
+    }
   }
 
   Lock lock() {
-    return conditions.lock();
+    return lock;
   }
 
   WorkspaceExperimentPath path() {
@@ -155,4 +209,4 @@ class OutgoingCondition<T> {
   T nextResource() {
     return resource.get();
   }
-}
\ No newline at end of file
+}
@@ -33,15 +33,21 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import uk.co.saiman.experiment.conductor.IncomingDependencies.IncomingDependencyState;
 import uk.co.saiman.experiment.workspace.WorkspaceExperimentPath;
 
+/*
+ * As with conditions, the state of a result and of all of its consumers is
+ * guarded by the lock of the result.
+ */
 class OutgoingResult<T> {
   private final OutgoingResults results;
   private final Class<T> type;
 
-  private final java.util.concurrent.locks.Condition lockCondition;
+  private final Lock lock;
+  private final java.util.concurrent.locks.Condition consumersDone;
 
   private final HashMap<WorkspaceExperimentPath, IncomingResult<T>> consumers = new LinkedHashMap<>();
   private final List<IncomingResult<T>> acquiredResults = new ArrayList<>();
@@ -51,7 +57,8 @@ class OutgoingResult<T> {
     this.results = results;
     this.type = type;
 
-    this.lockCondition = results.lock().newCondition();
+    this.lock = new ReentrantLock();
+    this.consumersDone = lock.newCondition();
   }
 
   public boolean beginAcquire(IncomingResult<T> resultDependency) {
@@ -62,42 +69,62 @@ class OutgoingResult<T> {
     return true;
   }
 
-  public void prepare(T resource) {
-    this.resource = Objects.requireNonNull(resource);
+  void consumerDone() {
+    consumersDone.signal();
+  }
 
+  public void prepare(T resource) {
+    lock.lock();
     try {
+      this.resource = Objects.requireNonNull(resource);
+      consumers.values().forEach(IncomingResult::signal);
+
       while (consumers
           .values()
           .stream()
           .anyMatch(c -> c.getState() != IncomingDependencyState.DONE)) {
-        lockCondition.signalAll();
-        lockCondition.await();
+        consumersDone.await();
       }
     } catch (InterruptedException e) {
       throw new ConductorException("Cancelled preparation", e);
     } finally {
-      System.out.println("  ####### DONE PREPARE! " + consumers);
       resource = null;
+      lock.unlock();
     }
   }
 
   public IncomingResult<T> addConsumer(WorkspaceExperimentPath path) {
-    System.out.println("   adding consumer! " + path);
-    return consumers.computeIfAbsent(path, p -> new IncomingResult<>(this, lockCondition));
+    lock.lock();
+    try {
+      return consumers.computeIfAbsent(path, p -> new IncomingResult<>(this, lock.newCondition()));
+    } finally {
+      lock.unlock();
+    }
   }
 
   public void invalidate() {
-    consumers.values().forEach(IncomingResult::invalidatedOutgoing);
-    consumers.clear();
-    acquiredResults.clear();
+    lock.lock();
+    try {
+      consumers.values().forEach(IncomingResult::invalidatedOutgoing);
+      consumers.clear();
+      acquiredResults.clear();
+      consumersDone.signal();
+    } finally {
+      lock.unlock();
+    }
   }
 
   public void terminate() {
-    consumers.values().forEach(IncomingResult::done);
+    lock.lock();
+    try {
+      consumers.values().forEach(IncomingResult::done);
+    } finally {
+      lock.unlock();
+    }
   }
 
   Lock lock() {
-    return results.lock();
+    return lock;
   }
 
   WorkspaceExperimentPath path() {
@@ -111,4 +138,4 @@ class OutgoingResult<T> {
   T resource() {
     return resource;
   }
-}
\ No newline at end of file
+}
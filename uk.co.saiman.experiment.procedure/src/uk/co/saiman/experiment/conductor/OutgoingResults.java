@@ -27,10 +27,9 @@
  */
 package uk.co.saiman.experiment.conductor;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.ConcurrentHashMap;
 
 import uk.co.saiman.experiment.environment.Environment;
 import uk.co.saiman.experiment.executor.Evaluation;
@@ -38,14 +37,12 @@ import uk.co.saiman.experiment.procedure.Instruction;
 import uk.co.saiman.experiment.workspace.WorkspaceExperimentPath;
 
 public class OutgoingResults {
-  private final Lock lock;
   private final WorkspaceExperimentPath path;
   private final Map<Class<?>, OutgoingResult<?>> resultPreparations;
 
-  public OutgoingResults(Lock lock, WorkspaceExperimentPath path) {
-    this.lock = lock;
+  public OutgoingResults(WorkspaceExperimentPath path) {
     this.path = path;
-    this.resultPreparations = new HashMap<>();
+    this.resultPreparations = new ConcurrentHashMap<>();
   }
 
   public void addOutgoingResult(Class<?> type, Evaluation evaluation) {}
@@ -56,10 +53,6 @@ public class OutgoingResults {
     return Optional.ofNullable(preparation);
   }
 
-  Lock lock() {
-    return lock;
-  }
-
   WorkspaceExperimentPath path() {
     return path;
   }
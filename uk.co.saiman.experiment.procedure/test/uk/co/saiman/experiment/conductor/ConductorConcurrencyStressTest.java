@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.experiment.conductor.
+ *
+ * uk.co.saiman.experiment.conductor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.experiment.conductor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.experiment.conductor;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.co.saiman.experiment.executor.Evaluation.ORDERED;
+import static uk.co.saiman.experiment.executor.Evaluation.PARALLEL;
+import static uk.co.saiman.experiment.executor.Evaluation.SERIAL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.experiment.declaration.ExperimentId;
+import uk.co.saiman.experiment.declaration.ExperimentPath;
+import uk.co.saiman.experiment.dependency.Condition;
+import uk.co.saiman.experiment.executor.Evaluation;
+import uk.co.saiman.experiment.workspace.WorkspaceExperimentPath;
+
+/**
+ * Runs hundreds of synthetic instructions at once, each either preparing a
+ * condition or consuming one, to check that the evaluation order of each
+ * condition holds and that independent conditions make progress regardless of
+ * one another.
+ */
+public class ConductorConcurrencyStressTest {
+  private static final int PRODUCERS = 120;
+  private static final int CONSUMERS_PER_PRODUCER = 3;
+  private static final Evaluation[] EVALUATIONS = { ORDERED, SERIAL, PARALLEL };
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void startExecutor() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void stopExecutor() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(10, SECONDS);
+  }
+
+  private static WorkspaceExperimentPath path(String name) {
+    return WorkspaceExperimentPath
+        .define(
+            ExperimentId.fromName("stress"),
+            ExperimentPath.toRoot().resolve(ExperimentId.fromName(name)));
+  }
+
+  private class Branch {
+    private final OutgoingCondition<Integer> outgoing;
+    private final List<IncomingCondition<Integer>> incoming = new ArrayList<>();
+    private final Evaluation evaluation;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maximumActive = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Integer> order = new ConcurrentLinkedQueue<>();
+
+    Branch(int index, Evaluation evaluation) {
+      WorkspaceExperimentPath producer = path("producer" + index);
+      this.evaluation = evaluation;
+      this.outgoing = new OutgoingCondition<>(new OutgoingConditions(producer), Integer.class, evaluation);
+      for (int i = 0; i < CONSUMERS_PER_PRODUCER; i++) {
+        incoming.add(outgoing.addConsumer(path("producer" + index + "consumer" + i)));
+      }
+    }
+
+    Future<?> produce(CountDownLatch start) {
+      return executor.submit(() -> {
+        start.await();
+        outgoing.prepare(() -> 42);
+        return null;
+      });
+    }
+
+    List<Future<?>> consume(CountDownLatch start) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < incoming.size(); i++) {
+        int consumer = i;
+        futures.add(executor.submit(() -> {
+          start.await();
+          try (Condition<Integer> condition = incoming.get(consumer).acquire()) {
+            int concurrent = active.incrementAndGet();
+            maximumActive.accumulateAndGet(concurrent, Math::max);
+            order.add(consumer);
+
+            assertEquals(42, (int) condition.value());
+            Thread.sleep(1);
+
+            active.decrementAndGet();
+          }
+          return null;
+        }));
+      }
+      return futures;
+    }
+
+    void verify() {
+      assertEquals(CONSUMERS_PER_PRODUCER, order.size());
+      if (evaluation != PARALLEL) {
+        assertEquals(1, maximumActive.get());
+      }
+      if (evaluation == ORDERED) {
+        assertEquals(List.of(0, 1, 2), new ArrayList<>(order));
+      }
+    }
+  }
+
+  @Test
+  public void manyConcurrentInstructionsComplete() throws Exception {
+    List<Branch> branches = new ArrayList<>();
+    for (int i = 0; i < PRODUCERS; i++) {
+      branches.add(new Branch(i, EVALUATIONS[i % EVALUATIONS.length]));
+    }
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (Branch branch : branches) {
+      futures.addAll(branch.consume(start));
+      futures.add(branch.produce(start));
+    }
+    start.countDown();
+
+    for (Future<?> future : futures) {
+      future.get(30, SECONDS);
+    }
+    for (Branch branch : branches) {
+      branch.verify();
+    }
+  }
+
+  @Test
+  public void stalledBranchDoesNotBlockOthers() throws Exception {
+    Branch stalled = new Branch(-1, SERIAL);
+    List<Branch> branches = new ArrayList<>();
+    for (int i = 0; i < PRODUCERS; i++) {
+      branches.add(new Branch(i, EVALUATIONS[i % EVALUATIONS.length]));
+    }
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> stalledConsumers = stalled.consume(start);
+    List<Future<?>> futures = new ArrayList<>();
+    for (Branch branch : branches) {
+      futures.addAll(branch.consume(start));
+      futures.add(branch.produce(start));
+    }
+    start.countDown();
+
+    for (Future<?> future : futures) {
+      future.get(30, SECONDS);
+    }
+    for (Future<?> future : stalledConsumers) {
+      assertFalse(future.isDone());
+    }
+
+    stalled.outgoing.terminate();
+    for (Future<?> future : stalledConsumers) {
+      var exception = assertThrows(
+          ExecutionException.class,
+          () -> future.get(30, SECONDS));
+      assertTrue(exception.getCause() instanceof ConductorException);
+    }
+  }
+
+  @Test
+  public void invalidationReleasesWaitingConsumers() throws Exception {
+    for (Evaluation evaluation : EVALUATIONS) {
+      Branch branch = new Branch(-1, evaluation);
+
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> consumers = branch.consume(start);
+      start.countDown();
+
+      awaitConsumers(branch);
+      branch.outgoing.invalidate();
+
+      for (Future<?> future : consumers) {
+        var exception = assertThrows(
+            ExecutionException.class,
+            () -> future.get(30, SECONDS));
+        assertTrue(exception.getCause() instanceof ConductorException);
+      }
+    }
+  }
+
+  private static void awaitConsumers(Branch branch) throws InterruptedException {
+    while (true) {
+      branch.outgoing.lock().lock();
+      try {
+        if (branch.incoming.stream().allMatch(IncomingCondition::isAwaiting)) {
+          return;
+        }
+      } finally {
+        branch.outgoing.lock().unlock();
+      }
+      Thread.sleep(1);
+    }
+  }
+}
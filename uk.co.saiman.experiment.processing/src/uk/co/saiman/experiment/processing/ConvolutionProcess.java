@@ -28,6 +28,7 @@
 package uk.co.saiman.experiment.processing;
 
 import static uk.co.saiman.data.function.processing.Convolution.DomainModification.EXTENDING;
+import static uk.co.saiman.data.function.processing.Convolution.Strategy.AUTOMATIC;
 import static uk.co.saiman.state.Accessor.doubleAccessor;
 import static uk.co.saiman.state.Accessor.intAccessor;
 import static uk.co.saiman.state.Accessor.stringAccessor;
@@ -38,6 +39,7 @@ import org.osgi.service.component.annotations.Component;
 
 import uk.co.saiman.data.function.processing.Convolution;
 import uk.co.saiman.data.function.processing.Convolution.DomainModification;
+import uk.co.saiman.data.function.processing.Convolution.Strategy;
 import uk.co.saiman.state.MapIndex;
 import uk.co.saiman.state.StateMap;
 
@@ -52,6 +54,9 @@ public class ConvolutionProcess implements ProcessingStrategy<Convolution> {
   private static final MapIndex<Convolution.DomainModification> DOMAIN_MODIFICATION = new MapIndex<>(
       "extend",
       stringAccessor().map(DomainModification::valueOf, Enum::name));
+  private static final MapIndex<Convolution.Strategy> STRATEGY = new MapIndex<>(
+      "strategy",
+      stringAccessor().map(Strategy::valueOf, Enum::name));
 
   @Override
   public Convolution createProcessor() {
@@ -63,7 +68,8 @@ public class ConvolutionProcess implements ProcessingStrategy<Convolution> {
     return new Convolution(
         state.getOptional(VECTOR).orElse(Convolution.NO_OP),
         state.getOptional(OFFSET).orElse(0),
-        state.getOptional(DOMAIN_MODIFICATION).orElse(EXTENDING));
+        state.getOptional(DOMAIN_MODIFICATION).orElse(EXTENDING),
+        state.getOptional(STRATEGY).orElse(AUTOMATIC));
   }
 
   @Override
@@ -72,7 +78,8 @@ public class ConvolutionProcess implements ProcessingStrategy<Convolution> {
         .empty()
         .with(VECTOR, processor.getConvolutionVector())
         .with(OFFSET, processor.getConvolutionVectorOffset())
-        .with(DOMAIN_MODIFICATION, processor.getDomainModification());
+        .with(DOMAIN_MODIFICATION, processor.getDomainModification())
+        .with(STRATEGY, processor.getStrategy());
   }
 
   @Override
@@ -30,7 +30,6 @@ package uk.co.saiman.experiment.processing;
 import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toList;
-import static uk.co.saiman.data.function.processing.DataProcessor.identity;
 import static uk.co.saiman.experiment.processing.ProcessingAccess.processingAccessor;
 
 import java.util.ArrayList;
@@ -41,6 +40,7 @@ import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 import uk.co.saiman.data.function.processing.DataProcessor;
+import uk.co.saiman.data.function.processing.ProcessingPipeline;
 import uk.co.saiman.experiment.variables.Variable;
 
 public class Processing {
@@ -75,7 +75,7 @@ public class Processing {
   }
 
   public DataProcessor getProcessor() {
-    return steps().reduce(identity(), DataProcessor::andThen);
+    return ProcessingPipeline.of(steps);
   }
 
   public Processing withStep(DataProcessor step) {
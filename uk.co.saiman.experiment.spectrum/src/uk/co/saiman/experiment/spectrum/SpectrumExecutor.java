@@ -94,7 +94,8 @@ public interface SpectrumExecutor extends Executor {
     ContinuousFunctionAccumulator<Time, Dimensionless> accumulator = new ContinuousFunctionAccumulator<>(
         device.acquisitionDataEvents(),
         device.getSampleDomain(),
-        device.getSampleIntensityUnit());
+        device.getSampleIntensityUnit(),
+        ContinuousFunctionAccumulator.defaultParallelism());
 
     context.log().log(Level.INFO, "attaching observer...");
     accumulator
@@ -106,6 +106,9 @@ public class AdqStandalone extends Application {
     if (acquisitionThread != null) {
       acquisitionThread.join();
     }
+    if (device != null) {
+      device.dispose();
+    }
     if (deviceManager != null) {
       deviceManager.close();
     }
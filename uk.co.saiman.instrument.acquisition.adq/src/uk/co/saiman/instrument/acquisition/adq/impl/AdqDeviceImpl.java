@@ -28,6 +28,8 @@
 package uk.co.saiman.instrument.acquisition.adq.impl;
 
 import static java.util.Objects.requireNonNull;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.COALESCE;
+import static uk.co.saiman.instrument.acquisition.AcquisitionPipeline.DEFAULT_CAPACITY;
 import static uk.co.saiman.instrument.acquisition.adq.AdqHardwareInterface.PCIE;
 import static uk.co.saiman.instrument.acquisition.adq.AdqHardwareInterface.USB;
 import static uk.co.saiman.instrument.acquisition.adq.AdqHardwareInterface.USB3;
@@ -54,6 +56,9 @@ import uk.co.saiman.data.function.SampledContinuousFunction;
 import uk.co.saiman.instrument.ControllerImpl;
 import uk.co.saiman.instrument.DeviceImpl;
 import uk.co.saiman.instrument.DeviceStatus;
+import uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy;
+import uk.co.saiman.instrument.acquisition.AcquisitionPipeline;
+import uk.co.saiman.instrument.acquisition.AcquisitionStatistics;
 import uk.co.saiman.instrument.acquisition.adq.AdqDevice;
 import uk.co.saiman.instrument.acquisition.adq.AdqDevice.AdqControl;
 import uk.co.saiman.instrument.acquisition.adq.AdqHardwareInterface;
@@ -96,6 +101,13 @@ public abstract class AdqDeviceImpl<T extends AdqControl> extends DeviceImpl<T>
 
   private final HotObservable<SampledContinuousFunction<Time, Dimensionless>> dataObservable = new HotObservable<>();
   private final HotObservable<SampledContinuousFunction<Time, Dimensionless>> acquisitionDataObservable = new HotObservable<>();
+  private final AcquisitionPipeline pipeline = new AcquisitionPipeline(
+      DEFAULT_CAPACITY,
+      COALESCE,
+      (data, group) -> {
+        dataObservable.next(data);
+        acquisitionDataObservable.next(data);
+      });
   private boolean acquiring = false;
 
   private final Log log;
@@ -175,8 +187,21 @@ public abstract class AdqDeviceImpl<T extends AdqControl> extends DeviceImpl<T>
   }
 
   protected void nextData(SampledContinuousFunction<Time, Dimensionless> data) {
-    dataObservable.next(data);
-    acquisitionDataObservable.next(data);
+    pipeline.offer(data);
+  }
+
+  /**
+   * Dispose of the device, closing its acquisition pipeline. Records already
+   * offered to the pipeline are still delivered to observers.
+   */
+  public void dispose() {
+    setDisposed();
+  }
+
+  @Override
+  protected void setDisposed() {
+    super.setDisposed();
+    pipeline.close();
   }
 
   @Override
@@ -194,6 +219,16 @@ public abstract class AdqDeviceImpl<T extends AdqControl> extends DeviceImpl<T>
     return acquisitionDataObservable;
   }
 
+  @Override
+  public AcquisitionOverflowPolicy getOverflowPolicy() {
+    return pipeline.getOverflowPolicy();
+  }
+
+  @Override
+  public AcquisitionStatistics getPipelineStatistics() {
+    return pipeline;
+  }
+
   @Override
   public int getAcquisitionCount() {
     return acquisitionCount;
@@ -379,6 +414,11 @@ public abstract class AdqDeviceImpl<T extends AdqControl> extends DeviceImpl<T>
       AdqDeviceImpl.this.setSampleDepth(depth);
     }
 
+    @Override
+    public void setOverflowPolicy(AcquisitionOverflowPolicy policy) {
+      pipeline.setOverflowPolicy(policy);
+    }
+
     @Override
     public void setTriggerMode(TriggerMode triggerMode) {
       AdqDeviceImpl.this.setTriggerMode(triggerMode);
@@ -409,6 +449,7 @@ public abstract class AdqDeviceImpl<T extends AdqControl> extends DeviceImpl<T>
             acquiring = true;
             startAcquisition(lib, controlUnit, deviceNumber);
           } finally {
+            pipeline.flush();
             acquisitionDataObservable.complete();
             acquiring = false;
             acquisitionDataObservable.start();
@@ -32,6 +32,9 @@ import static uk.co.saiman.log.Log.Level.INFO;
 import static uk.co.saiman.measurement.Units.count;
 import static uk.co.saiman.measurement.Units.second;
 
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
 import javax.measure.Unit;
@@ -41,9 +44,9 @@ import javax.measure.quantity.Time;
 import com.sun.jna.Memory;
 import com.sun.jna.Pointer;
 
-import uk.co.saiman.data.function.ArraySampledContinuousFunction;
 import uk.co.saiman.data.function.RegularSampledDomain;
 import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.instrument.acquisition.AcquisitionBufferPool;
 import uk.co.saiman.instrument.acquisition.AcquisitionException;
 import uk.co.saiman.instrument.acquisition.adq.ProductFamily;
 import uk.co.saiman.instrument.acquisition.adq.TransferMode;
@@ -74,8 +77,10 @@ public class MultiRecordAcquisition implements AdqAcquisition {
   private final ProductFamily productFamily;
 
   private final Pointer[] dataTarget;
+  private final ShortBuffer dataTargetSamples;
 
-  private final double[] spectrumData;
+  private final AcquisitionBufferPool bufferPool;
+  private final Consumer<double[]> accumulateRecords;
   private final Consumer<SampledContinuousFunction<Time, Dimensionless>> dataObservable;
 
   private final Log log;
@@ -122,8 +127,20 @@ public class MultiRecordAcquisition implements AdqAcquisition {
       Thread.sleep(20);
     } catch (InterruptedException e) {}
 
+    int recordBytes = recordsPerAverage * samplesPerRecord * Short.BYTES;
     this.dataTarget = new Pointer[8];
-    this.spectrumData = new double[sampleDepth];
+    for (int i = 0; i < numberOfChannels; i++) {
+      dataTarget[i] = new Memory(recordBytes);
+    }
+    this.dataTargetSamples = dataTarget[0]
+        .getByteBuffer(0, recordBytes)
+        .order(ByteOrder.nativeOrder())
+        .asShortBuffer();
+
+    this.bufferPool = new AcquisitionBufferPool(
+        new RegularSampledDomain<>(second().micro().getUnit(), sampleDepth, 1, 0),
+        count().getUnit());
+    this.accumulateRecords = this::accumulateRecords;
     this.dataObservable = device::nextData;
 
     check(lib.ADQ_MultiRecordSetup(controlUnit, deviceNumber, recordsPerAverage, samplesPerRecord));
@@ -141,13 +158,7 @@ public class MultiRecordAcquisition implements AdqAcquisition {
     int failureCounter = 0;
     int recordCounter = 0;
 
-    for (int i = 0; i < numberOfChannels; i++) {
-      dataTarget[i] = new Memory(recordsPerAverage * samplesPerRecord * Short.BYTES);
-    }
-
     while (recordCounter < numberOfAverages) {
-      log.log(INFO, "Record " + recordCounter);
-
       if (nextData()) {
         recordCounter++;
 
@@ -209,29 +220,22 @@ public class MultiRecordAcquisition implements AdqAcquisition {
                 samplesPerRecord,
                 TransferMode.NORMAL.toInt()));
 
-    var data = dataTarget[0];
+    var data = bufferPool.fillNextBuffer(accumulateRecords);
+    dataObservable.accept(data);
+    data.release();
+  }
 
-    for (int j = 0; j < sampleDepth; j++) {
-      spectrumData[j] = 0;
-    }
+  private void accumulateRecords(double[] samples) {
+    var data = dataTargetSamples;
+
+    Arrays.fill(samples, 0);
     for (int i = 0; i < recordsPerAverage; i++) {
-      int byteOffset = samplesPerRecord * i * Short.BYTES;
+      int offset = samplesPerRecord * i;
 
       for (int j = 0; j < sampleDepth; j++) {
-        int value = 0 | data.getShort(byteOffset);
-
-        spectrumData[j] += value;
-        // System.out.println(Integer.toBinaryString(value));
-        byteOffset += Short.BYTES;
+        samples[j] += data.get(offset + j);
       }
     }
-
-    dataObservable
-        .accept(
-            new ArraySampledContinuousFunction<>(
-                new RegularSampledDomain<>(second().micro().getUnit(), sampleDepth, 1, 0),
-                count().getUnit(),
-                spectrumData));
   }
 
   private boolean isReadyTransferStatus(AdqLib lib, Pointer controlUnit, int deviceNumber) {
@@ -33,6 +33,9 @@ import static uk.co.saiman.log.Log.Level.INFO;
 import static uk.co.saiman.measurement.Units.count;
 import static uk.co.saiman.measurement.Units.second;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.function.Consumer;
 
 import javax.measure.Unit;
@@ -42,9 +45,9 @@ import javax.measure.quantity.Time;
 import com.sun.jna.Memory;
 import com.sun.jna.Pointer;
 
-import uk.co.saiman.data.function.ArraySampledContinuousFunction;
 import uk.co.saiman.data.function.RegularSampledDomain;
 import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.instrument.acquisition.AcquisitionBufferPool;
 import uk.co.saiman.instrument.acquisition.AcquisitionException;
 import uk.co.saiman.instrument.acquisition.adq.Adq114DataFormat;
 import uk.co.saiman.instrument.acquisition.adq.ProductFamily;
@@ -92,9 +95,15 @@ public class WaveformAveragingStreamingAcquisition implements AdqAcquisition {
   private final ProductFamily productFamily;
 
   private final Pointer dataStream;
+  private final ByteBuffer dataStreamBytes;
+  private Pointer driverStream;
+  private ByteBuffer driverStreamBytes;
+  private final IntBuffer dataStreamSamples;
   private final Pointer[] dataTarget;
+  private final Memory buffersFilled;
 
-  private final double[] spectrumData;
+  private final AcquisitionBufferPool bufferPool;
+  private final Consumer<double[]> decodeSamples;
   private final Consumer<SampledContinuousFunction<Time, Dimensionless>> dataObservable;
 
   private final Log log;
@@ -166,9 +175,24 @@ public class WaveformAveragingStreamingAcquisition implements AdqAcquisition {
 
     lib.ADQ_WaveformAveragingStartReadout(controlUnit, deviceNumber);
 
+    /*
+     * All native scratch memory and the views over it are allocated once up front
+     * so that polling and readout can keep pace with the card without producing
+     * garbage per record.
+     */
     this.dataStream = new Memory(bufferSize);
+    this.dataStreamBytes = dataStream.getByteBuffer(0, bufferSize).order(ByteOrder.nativeOrder());
+    this.dataStreamSamples = dataStreamBytes.asIntBuffer();
     this.dataTarget = new Pointer[AdqDeviceImpl.MAX_CHANNEL_COUNT];
-    this.spectrumData = new double[sampleDepth];
+    for (int i = 0; i < numberOfChannels; i++) {
+      dataTarget[i] = new Memory(samplesPerRecord * Integer.BYTES);
+    }
+    this.buffersFilled = new Memory(Integer.BYTES);
+
+    this.bufferPool = new AcquisitionBufferPool(
+        new RegularSampledDomain<>(second().micro().getUnit(), sampleDepth, 1, 0),
+        count().getUnit());
+    this.decodeSamples = this::decodeSamples;
     this.dataObservable = device::nextData;
   }
 
@@ -234,13 +258,7 @@ public class WaveformAveragingStreamingAcquisition implements AdqAcquisition {
     int failureCounter = 0;
     int recordCounter = 0;
 
-    for (int i = 0; i < numberOfChannels; i++) {
-      dataTarget[i] = new Memory(samplesPerRecord * Integer.BYTES);
-    }
-
     while (recordCounter < numberOfAverages) {
-      log.log(INFO, "WFA Record " + recordCounter);
-
       if (nextData()) {
         recordCounter++;
 
@@ -300,10 +318,8 @@ public class WaveformAveragingStreamingAcquisition implements AdqAcquisition {
       throw new AcquisitionException("Failed to collect data from buffer: " + resultError);
     }
 
-    int bufferSize = samplesPerRecord * Integer.BYTES * numberOfChannels;
-    var sourceBuffer = lib.ADQ_GetPtrStream(controlUnit, deviceNumber).getByteBuffer(0, bufferSize);
-    var sinkBuffer = dataStream.getByteBuffer(0, bufferSize);
-    sinkBuffer.put(sourceBuffer);
+    dataStreamBytes.clear();
+    dataStreamBytes.put(driverStreamBytes());
 
     // Separate the raw streaming data of data_stream into the respective
     // channels
@@ -316,33 +332,45 @@ public class WaveformAveragingStreamingAcquisition implements AdqAcquisition {
             dataStream,
             dataTarget);
 
-    var data = dataStream;
+    var data = bufferPool.fillNextBuffer(decodeSamples);
+    dataObservable.accept(data);
+    data.release();
+  }
+
+  /*
+   * Decode straight out of the parsed stream into the pooled sample buffer. We
+   * read through an int view of the native memory rather than through the JNA
+   * pointer so that each sample is a plain buffer access instead of a native
+   * call.
+   */
+  private void decodeSamples(double[] samples) {
+    var data = dataStreamSamples;
     // var data = dataTarget[0];
 
-    int byteOffset = 0;
     for (int i = 0; i < sampleDepth; i++) {
-      int value = data.getInt(byteOffset);
-      spectrumData[i] = value;
-      // System.out.println(Integer.toBinaryString(value));
-      byteOffset += Integer.BYTES;
+      samples[i] = data.get(i);
     }
+  }
 
-    dataObservable
-        .accept(
-            new ArraySampledContinuousFunction<>(
-                new RegularSampledDomain<>(second().micro().getUnit(), sampleDepth, 1, 0),
-                count().getUnit(),
-                spectrumData));
+  /*
+   * The driver rotates through its transfer buffers, so the stream pointer is
+   * fetched for every page, and the view over it is only reused while the
+   * driver keeps handing back the same address.
+   */
+  private ByteBuffer driverStreamBytes() {
+    Pointer stream = lib.ADQ_GetPtrStream(controlUnit, deviceNumber);
+    if (!stream.equals(driverStream)) {
+      driverStream = stream;
+      driverStreamBytes = stream.getByteBuffer(0, dataStreamBytes.capacity());
+    } else {
+      driverStreamBytes.clear();
+    }
+    return driverStreamBytes;
   }
 
   private boolean isReadyTransferStatus(AdqLib lib, Pointer controlUnit, int deviceNumber) {
-    var buffersFilledPointer = new Memory(Integer.BYTES);
-    check(lib.ADQ_GetTransferBufferStatus(controlUnit, deviceNumber, buffersFilledPointer));
-    final int buffersFilled = buffersFilledPointer.getInt(0);
-
-    log.log(INFO, String.format("    Buffers currently filled: %3d", buffersFilled));
-
-    return buffersFilled > 0;
+    check(lib.ADQ_GetTransferBufferStatus(controlUnit, deviceNumber, buffersFilled));
+    return buffersFilled.getInt(0) > 0;
   }
 
   protected void check(int result) {
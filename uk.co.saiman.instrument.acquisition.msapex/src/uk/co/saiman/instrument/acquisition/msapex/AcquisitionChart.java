@@ -34,6 +34,9 @@ import javax.measure.quantity.Dimensionless;
 import javax.measure.quantity.Time;
 
 import javafx.scene.layout.BorderPane;
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.instrument.acquisition.AcquisitionBuffer;
 import uk.co.saiman.instrument.acquisition.AcquisitionDevice;
 import uk.co.saiman.instrument.msapex.DefaultDevicePresentation;
 import uk.co.saiman.instrument.msapex.device.DevicePresentationService;
@@ -49,6 +52,12 @@ public class AcquisitionChart extends BorderPane {
   private final ContinuousFunctionSeries<Time, Dimensionless> series;
   private volatile Disposable observation;
 
+  /*
+   * The most recent record not yet taken for rendering, retained so that it is
+   * not recycled before it is drawn.
+   */
+  private SampledContinuousFunction<Time, Dimensionless> latestData;
+
   public AcquisitionChart(AcquisitionDevice device) {
     this(device, new DefaultDevicePresentation(device));
   }
@@ -68,6 +77,7 @@ public class AcquisitionChart extends BorderPane {
         new QuantityAxis<>(new MetricTickUnits<>(second())),
         new QuantityAxis<>(new MetricTickUnits<>(count())).setPaddingApplied(true));
     chartController.setTitle(localizedLabel);
+    chartController.setCanvasRendering(true);
 
     this.series = chartController.addSeries();
 
@@ -76,7 +86,7 @@ public class AcquisitionChart extends BorderPane {
 
   public synchronized void open() {
     if (observation == null) {
-      observation = device.dataEvents().observe(series::setContinuousFunction);
+      observation = device.dataEvents().observe(this::setLatestData);
     }
   }
 
@@ -85,5 +95,31 @@ public class AcquisitionChart extends BorderPane {
       observation.cancel();
       observation = null;
     }
+    AcquisitionBuffer.release(latestData);
+    latestData = null;
+  }
+
+  private synchronized void setLatestData(SampledContinuousFunction<Time, Dimensionless> data) {
+    AcquisitionBuffer.release(latestData);
+    latestData = AcquisitionBuffer.retain(data);
+    series.setContinuousFunction(this::takeLatestData);
+  }
+
+  /*
+   * Called once per rendered frame at most, so only records which are actually
+   * drawn are copied out of the pool.
+   */
+  private synchronized SampledContinuousFunction<Time, Dimensionless> takeLatestData() {
+    var data = latestData;
+    latestData = null;
+    if (data instanceof AcquisitionBuffer) {
+      try {
+        return ArraySampledContinuousFunction
+            .wrap(data.domain(), data.range().getUnit(), data.range().toArray());
+      } finally {
+        AcquisitionBuffer.release(data);
+      }
+    }
+    return data;
   }
 }
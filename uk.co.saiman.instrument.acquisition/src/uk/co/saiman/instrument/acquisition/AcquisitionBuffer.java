@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.acquisition.
+ *
+ * uk.co.saiman.instrument.acquisition is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.acquisition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.acquisition;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import uk.co.saiman.data.function.PooledSampledContinuousFunction;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.data.function.SampledDomain;
+import uk.co.saiman.data.function.SampledRange;
+import uk.co.saiman.instrument.acquisition.AcquisitionBufferPool.ReleaseReference;
+
+/**
+ * A sampled continuous function backed by an array belonging to an
+ * {@link AcquisitionBufferPool}.
+ * <p>
+ * Buffers are reference counted. A buffer is handed out with a single
+ * reference owned by the caller, further references may be taken with
+ * {@link #retain()}, and once every reference has been {@link #release()
+ * released} the array is returned to the pool to be overwritten by a later
+ * acquisition. The content of a buffer must not be read after its last
+ * reference has been released.
+ * <p>
+ * A consumer which is handed a buffer only borrows it for the duration of the
+ * call. In particular a consumer which passes a buffer to another thread, for
+ * instance through an executor or a queue, must retain it before handing it
+ * over, as the caller may release its own reference as soon as the call
+ * returns. Observable operators which defer delivery do not do so on the
+ * consumer's behalf.
+ * 
+ * @author Elias N Vasylenko
+ */
+public final class AcquisitionBuffer implements PooledSampledContinuousFunction<Time, Dimensionless> {
+  private final AcquisitionBufferPool pool;
+  private final double[] intensities;
+  private final SampledRange<Dimensionless> range;
+  private final AtomicInteger references = new AtomicInteger();
+
+  private ReleaseReference reference;
+  private AcquisitionBuffer next;
+
+  AcquisitionBuffer(AcquisitionBufferPool pool, double[] intensities) {
+    this.pool = pool;
+    this.intensities = intensities;
+    this.range = new SampledRange<Dimensionless>(this) {
+      @Override
+      public double getSample(int index) {
+        return intensities[index];
+      }
+
+      @Override
+      public void copyInto(int index, double[] destination, int destinationIndex, int length) {
+        System.arraycopy(intensities, index, destination, destinationIndex, length);
+      }
+
+      @Override
+      public int getDepth() {
+        return intensities.length;
+      }
+
+      @Override
+      public Unit<Dimensionless> getUnit() {
+        return pool.getIntensityUnits();
+      }
+    };
+  }
+
+  @Override
+  public SampledDomain<Time> domain() {
+    return pool.getDomain();
+  }
+
+  @Override
+  public SampledRange<Dimensionless> range() {
+    return range;
+  }
+
+  @Override
+  public int getDepth() {
+    return intensities.length;
+  }
+
+  /**
+   * Take an additional reference to the buffer, which must be balanced by a
+   * later call to {@link #release()}.
+   * 
+   * @return the receiving buffer
+   * @throws IllegalStateException
+   *           if the buffer has already been returned to the pool
+   */
+  @Override
+  public AcquisitionBuffer retain() {
+    int count;
+    do {
+      count = references.get();
+      if (count <= 0) {
+        throw new IllegalStateException("Buffer has already been released");
+      }
+    } while (!references.compareAndSet(count, count + 1));
+    return this;
+  }
+
+  /**
+   * Release a reference to the buffer, returning it to the pool if it was the
+   * last.
+   * 
+   * @throws IllegalStateException
+   *           if the buffer has already been returned to the pool
+   */
+  @Override
+  public void release() {
+    int count;
+    do {
+      count = references.get();
+      if (count <= 0) {
+        throw new IllegalStateException("Buffer has already been released");
+      }
+    } while (!references.compareAndSet(count, count - 1));
+
+    if (count == 1) {
+      pool.recycle(this);
+    }
+  }
+
+  /**
+   * Take an additional reference to the given function if it is a pooled
+   * buffer, or do nothing otherwise.
+   * 
+   * @param <T>
+   *          the type of the function
+   * @param function
+   *          a function which may be an acquisition buffer
+   * @return the given function
+   */
+  public static <T extends SampledContinuousFunction<?, ?>> T retain(T function) {
+    if (function instanceof AcquisitionBuffer) {
+      ((AcquisitionBuffer) function).retain();
+    }
+    return function;
+  }
+
+  /**
+   * Release a reference to the given function if it is a pooled buffer, or do
+   * nothing otherwise.
+   * 
+   * @param function
+   *          a function which may be an acquisition buffer
+   */
+  public static void release(SampledContinuousFunction<?, ?> function) {
+    if (function instanceof AcquisitionBuffer) {
+      ((AcquisitionBuffer) function).release();
+    }
+  }
+
+  double[] intensities() {
+    return intensities;
+  }
+
+  void open() {
+    references.set(1);
+  }
+
+  ReleaseReference getReference() {
+    return reference;
+  }
+
+  void setReference(ReleaseReference reference) {
+    this.reference = reference;
+  }
+
+  AcquisitionBuffer getNext() {
+    return next;
+  }
+
+  void setNext(AcquisitionBuffer next) {
+    this.next = next;
+  }
+}
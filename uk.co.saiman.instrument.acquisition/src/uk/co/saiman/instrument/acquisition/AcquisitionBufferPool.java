@@ -29,67 +29,54 @@ package uk.co.saiman.instrument.acquisition;
 
 import static java.util.Objects.requireNonNull;
 
-import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import javax.measure.Unit;
 import javax.measure.quantity.Dimensionless;
 import javax.measure.quantity.Time;
 
-import uk.co.saiman.data.function.ContinuousFunction;
-import uk.co.saiman.data.function.SampledContinuousFunction;
 import uk.co.saiman.data.function.SampledDomain;
-import uk.co.saiman.data.function.SampledRange;
 
 /**
  * A continuous function factory backed internally by a shared pool of arrays to
  * avoid unnecessary memory allocation.
  * <p>
- * Previously allocated arrays are stored by soft reference such that they can
- * be GCd if and when necessary to free heap space, but otherwise will remain
- * available for immediate reuse as soon as the previous continuous function
- * they were used for becomes unreachable.
+ * Each {@link AcquisitionBuffer buffer} handed out by the pool is reference
+ * counted, and is returned to the pool as soon as the last reference is
+ * {@link AcquisitionBuffer#release() released}. Released buffers are kept on a
+ * free list, up to the configured number of spares, and taking a buffer from
+ * the free list or returning one to it is constant time and allocation free.
  * <p>
- * Due to the large default cache depth, this can appear to use a huge amount of
- * memory, but this is not really the case. Firstly the amount allocated will
- * never exceed the peak amount allocated without using the buffer, and secondly
- * almost all the allocated memory at any given time should be unreachable and
- * therefore available for collection if there is enough pressure on the GC.
+ * Consumers which do not know to release buffers are still supported. Every
+ * buffer is tracked by weak reference, and if it becomes unreachable without
+ * having been released its array is recovered for reuse. This fallback depends
+ * on the timing of the GC, so it is much less effective than explicit release.
  * <p>
- * TODO Different deployments are likely to have different GC behavior so it may
- * be wise at some point to provide a service with configurable cache depth and
- * trace logging.
+ * Buffers may be released from any thread, and the pool may be filled from
+ * several threads at once, for example to generate a batch of buffers in
+ * parallel.
  * 
  * @author Elias N Vasylenko
  */
 public class AcquisitionBufferPool {
   private static final int DEFAULT_CACHE_DEPTH = 512;
 
-  class IntensitiesReference {
-    private final SoftReference<double[]> reference;
-    private final double[] data;
+  static class ReleaseReference extends WeakReference<AcquisitionBuffer> {
+    private final double[] intensities;
 
-    public IntensitiesReference(double[] data, SoftReference<double[]> reference) {
-      this.data = data;
-      this.reference = reference;
-    }
-
-    public IntensitiesReference(double[] data) {
-      this(data, new SoftReference<>(data));
-    }
-  }
-
-  class ClearingReference extends WeakReference<ContinuousFunction<?, ?>> {
-    private boolean cleared;
-
-    public ClearingReference(ContinuousFunction<?, ?> referent) {
+    ReleaseReference(
+        AcquisitionBuffer referent,
+        double[] intensities,
+        ReferenceQueue<AcquisitionBuffer> queue) {
       super(referent, queue);
+      this.intensities = intensities;
     }
   }
 
@@ -97,8 +84,20 @@ public class AcquisitionBufferPool {
   private final Unit<Dimensionless> intensityUnits;
 
   private final int sparesToKeep;
-  private final ReferenceQueue<ContinuousFunction<?, ?>> queue = new ReferenceQueue<>();
-  private final Map<SoftReference<double[]>, ClearingReference> availableBuffers;
+  private final AtomicReference<AcquisitionBuffer> spares = new AtomicReference<>();
+  private final AtomicInteger spareCount = new AtomicInteger();
+
+  /*
+   * The reference objects must themselves stay reachable for as long as the
+   * buffers they track are outstanding, or they will never be enqueued.
+   */
+  private final ReferenceQueue<AcquisitionBuffer> queue = new ReferenceQueue<>();
+  private final Set<ReleaseReference> references = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong recovered = new AtomicLong();
+  private final AtomicInteger outstanding = new AtomicInteger();
 
   public AcquisitionBufferPool(SampledDomain<Time> domain, Unit<Dimensionless> intensityUnits) {
     this(domain, intensityUnits, DEFAULT_CACHE_DEPTH);
@@ -111,88 +110,144 @@ public class AcquisitionBufferPool {
     this.domain = requireNonNull(domain);
     this.intensityUnits = requireNonNull(intensityUnits);
     this.sparesToKeep = sparesToKeep;
-    this.availableBuffers = new HashMap<>();
   }
 
-  public SampledContinuousFunction<Time, Dimensionless> fillNextBuffer(
-      Consumer<double[]> fillBuffer) {
-    IntensitiesReference intensities = getAvailableBuffer();
-
-    fillBuffer.accept(intensities.data);
+  public SampledDomain<Time> getDomain() {
+    return domain;
+  }
 
-    SampledContinuousFunction<Time, Dimensionless> function = createContinuousFunction(
-        domain,
-        intensityUnits,
-        intensities.data);
+  public Unit<Dimensionless> getIntensityUnits() {
+    return intensityUnits;
+  }
 
-    availableBuffers.put(intensities.reference, new ClearingReference(function));
+  /**
+   * @return the number of buffers which were served from the free list
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
 
-    return function;
+  /**
+   * @return the number of buffers which had to be newly allocated
+   */
+  public long getMissCount() {
+    return misses.get();
   }
 
-  private static SampledContinuousFunction<Time, Dimensionless> createContinuousFunction(
-      SampledDomain<Time> domain,
-      Unit<Dimensionless> intensityUnits,
-      double[] intensities) {
-    return new SampledContinuousFunction<Time, Dimensionless>() {
-      @Override
-      public SampledDomain<Time> domain() {
-        return domain;
-      }
+  /**
+   * @return the number of buffers which were recovered after becoming
+   *         unreachable without being released
+   */
+  public long getRecoveredCount() {
+    return recovered.get();
+  }
 
-      @Override
-      public SampledRange<Dimensionless> range() {
-        return new SampledRange<Dimensionless>(this) {
-          @Override
-          public double getSample(int index) {
-            return intensities[index];
-          }
-
-          @Override
-          public int getDepth() {
-            return domain.getDepth();
-          }
-
-          @Override
-          public Unit<Dimensionless> getUnit() {
-            return intensityUnits;
-          }
-        };
-      }
+  /**
+   * @return the number of buffers which have been handed out and not yet
+   *         released or recovered
+   */
+  public int getOutstandingCount() {
+    return outstanding.get();
+  }
 
-      @Override
-      public int getDepth() {
-        return domain.getDepth();
-      }
-    };
+  /**
+   * @return the number of buffers currently available for reuse
+   */
+  public int getSpareCount() {
+    return spareCount.get();
   }
 
-  private IntensitiesReference getAvailableBuffer() {
-    Reference<? extends ContinuousFunction<?, ?>> reference;
-    while ((reference = queue.poll()) != null) {
-      ((ClearingReference) reference).cleared = true;
+  /**
+   * Take a buffer from the pool and fill it with samples. The caller owns the
+   * single initial reference to the returned buffer, and should
+   * {@link AcquisitionBuffer#release() release} it once it is done.
+   * 
+   * @param fillBuffer
+   *          an action to write samples into the buffer's array
+   * @return the filled buffer
+   */
+  public AcquisitionBuffer fillNextBuffer(Consumer<double[]> fillBuffer) {
+    recoverUnreachableBuffers();
+
+    AcquisitionBuffer buffer = takeSpare();
+    if (buffer == null) {
+      misses.incrementAndGet();
+      buffer = createBuffer(new double[domain.getDepth()]);
+    } else {
+      hits.incrementAndGet();
     }
+    outstanding.incrementAndGet();
+    buffer.open();
 
-    int sparesToKeep = this.sparesToKeep;
-    double[] intensities = null;
-    SoftReference<double[]> intensitiesReference = null;
+    fillBuffer.accept(buffer.intensities());
 
-    for (SoftReference<double[]> buffer : new ArrayList<>(availableBuffers.keySet())) {
-      if (availableBuffers.get(buffer).cleared) {
-        if (intensities == null) {
-          intensitiesReference = buffer;
-          intensities = buffer.get();
-        }
-        if (buffer.get() == null || sparesToKeep-- <= 0) {
-          availableBuffers.remove(buffer);
-        }
+    return buffer;
+  }
+
+  void recycle(AcquisitionBuffer buffer) {
+    outstanding.decrementAndGet();
+    putSpare(buffer);
+  }
+
+  private AcquisitionBuffer createBuffer(double[] intensities) {
+    AcquisitionBuffer buffer = new AcquisitionBuffer(this, intensities);
+    ReleaseReference reference = new ReleaseReference(buffer, intensities, queue);
+    buffer.setReference(reference);
+    references.add(reference);
+    return buffer;
+  }
+
+  private void discardBuffer(AcquisitionBuffer buffer) {
+    ReleaseReference reference = buffer.getReference();
+    references.remove(reference);
+    reference.clear();
+  }
+
+  private void recoverUnreachableBuffers() {
+    ReleaseReference reference;
+    while ((reference = (ReleaseReference) queue.poll()) != null) {
+      if (references.remove(reference)) {
+        recovered.incrementAndGet();
+        outstanding.decrementAndGet();
+        putSpare(createBuffer(reference.intensities));
       }
     }
+  }
 
-    if (intensities != null) {
-      return new IntensitiesReference(intensities, intensitiesReference);
+  /*
+   * Spares are kept on an intrusive Treiber stack. Pushes happen from whichever
+   * thread releases a buffer and never take a lock. Pops are serialized against
+   * one another, which rules out the ABA problem without needing a stamp, and
+   * since the pool is usually filled from a single thread the monitor is
+   * rarely contended.
+   */
+  private void putSpare(AcquisitionBuffer buffer) {
+    if (spareCount.incrementAndGet() > sparesToKeep) {
+      spareCount.decrementAndGet();
+      discardBuffer(buffer);
+      return;
     }
 
-    return new IntensitiesReference(new double[domain.getDepth()]);
+    AcquisitionBuffer head;
+    do {
+      head = spares.get();
+      buffer.setNext(head);
+    } while (!spares.compareAndSet(head, buffer));
+  }
+
+  private AcquisitionBuffer takeSpare() {
+    synchronized (spares) {
+      AcquisitionBuffer head;
+      do {
+        head = spares.get();
+        if (head == null) {
+          return null;
+        }
+      } while (!spares.compareAndSet(head, head.getNext()));
+
+      spareCount.decrementAndGet();
+      head.setNext(null);
+      return head;
+    }
   }
 }
@@ -64,4 +64,12 @@ public interface AcquisitionController extends Controller {
    * @param depth the sample depth for an acquired data array
    */
   void setSampleDepth(int depth);
+
+  /**
+   * Set the behavior of the device when data is produced faster than it can be
+   * consumed by observers.
+   * 
+   * @param policy the overflow policy for the device's acquisition pipeline
+   */
+  void setOverflowPolicy(AcquisitionOverflowPolicy policy);
 }
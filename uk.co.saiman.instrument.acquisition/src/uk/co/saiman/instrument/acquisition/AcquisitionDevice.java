@@ -72,6 +72,18 @@ public interface AcquisitionDevice extends Device {
    * instrument setup. In this case, the {@link #isAcquiring()} method will
    * indicate whether the event is related to an experiment if invoked by a
    * listener to a data event.
+   * <p>
+   * Data events may be {@link AcquisitionBuffer pooled buffers}, which are
+   * recycled as soon as every observer has returned. An observer which keeps a
+   * data event beyond the notification must
+   * {@link AcquisitionBuffer#retain(SampledContinuousFunction) retain} it until
+   * it is done, or take a copy. This includes any observer which hands events
+   * to another thread, and neither
+   * {@link Observable#executeOn(java.util.concurrent.Executor) executeOn} nor
+   * any of the backpressure operators retain events on its behalf, so an
+   * asynchronous observer must retain each event before it is queued, for
+   * example in a {@link Observable#map(java.util.function.Function) map} ahead
+   * of the hop, and release it once it has been consumed.
    * 
    * @return an observable interface for registering data event listeners
    */
@@ -83,11 +95,34 @@ public interface AcquisitionDevice extends Device {
    * This method operates as {@link #dataEvents()} except that the observation
    * does not begin until the next acquisition is in progress, and does not end
    * until that acquisition is complete.
+   * <p>
+   * Data events are subject to the same ownership rules as those of
+   * {@link #dataEvents()}, so an observer which consumes them asynchronously,
+   * for example to accumulate them on another thread, must retain each event
+   * before it is handed over and release it once it is done.
    * 
    * @return an observable interface for registering data event listeners
    */
   Observable<SampledContinuousFunction<Time, Dimensionless>> acquisitionDataEvents();
 
+  /**
+   * Get the behavior of the device when data is produced faster than the
+   * observers of {@link #dataEvents()} and {@link #acquisitionDataEvents()} can
+   * consume it.
+   * 
+   * @return the overflow policy of the device's acquisition pipeline
+   */
+  AcquisitionOverflowPolicy getOverflowPolicy();
+
+  /**
+   * Get counters describing the flow of data from the device to its observers,
+   * including how much has been dropped or coalesced under the
+   * {@link #getOverflowPolicy() overflow policy}.
+   * 
+   * @return the live statistics of the device's acquisition pipeline
+   */
+  AcquisitionStatistics getPipelineStatistics();
+
   /**
    * Get the total acquisition count for a single experiment.
    * 
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.acquisition.
+ *
+ * uk.co.saiman.instrument.acquisition is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.acquisition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.acquisition;
+
+/**
+ * The behavior of an {@link AcquisitionPipeline} when records are produced
+ * faster than they can be delivered and its buffer fills up.
+ * 
+ * @author Elias N Vasylenko
+ */
+public enum AcquisitionOverflowPolicy {
+  /**
+   * The producer waits for space to become available. No data is lost, but a
+   * slow consumer will eventually hold up the device.
+   */
+  BLOCK,
+
+  /**
+   * The oldest pending record is discarded to make room for the new one.
+   */
+  DROP_OLDEST,
+
+  /**
+   * The new record is summed into the most recent pending record, such that
+   * no intensity is lost but several records are delivered as one.
+   */
+  COALESCE
+}
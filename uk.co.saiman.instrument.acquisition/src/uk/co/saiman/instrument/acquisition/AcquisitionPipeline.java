@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.acquisition.
+ *
+ * uk.co.saiman.instrument.acquisition is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.acquisition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.acquisition;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.locks.LockSupport.park;
+import static java.util.concurrent.locks.LockSupport.unpark;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.BLOCK;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.data.function.SampledDomain;
+import uk.co.saiman.data.function.SparseSampledContinuousFunction;
+
+/**
+ * A stage between an acquisition device and the observers of its data, which
+ * decouples the pace of the hardware from the latency of its consumers.
+ * <p>
+ * Records are offered by a single producer thread into a bounded ring, and
+ * delivered to the sink by a dedicated pipeline thread. Records are never
+ * copied on their way through the ring. {@link AcquisitionBuffer Pooled
+ * buffers} are retained until they have been delivered, and any other record,
+ * such as a {@link SparseSampledContinuousFunction sparse} record from a
+ * time-to-digital converter, is passed by reference and so must not be
+ * modified once it has been offered. Each pooled record is released once the
+ * sink returns, so a sink which needs a record to outlive the call must
+ * {@link AcquisitionBuffer#retain() retain} it.
+ * <p>
+ * Records are only copied when they are coalesced under the
+ * {@link AcquisitionOverflowPolicy#COALESCE coalescing} policy, in which case
+ * the pending record is summed into a buffer from the pipeline's own pool.
+ * <p>
+ * The ring is a single-producer single-consumer queue, and neither side takes
+ * a lock to offer or to take a record. When the ring is full the behavior is
+ * determined by the {@link AcquisitionOverflowPolicy overflow policy}.
+ * <p>
+ * Each record is offered along with a group number, and records are only ever
+ * dropped or coalesced in favor of another record of the same group. This lets
+ * a device mark out records which must be delivered individually, for example
+ * because they are counted towards an experiment, by giving them distinct
+ * groups. If the policy cannot be applied for this reason then the producer
+ * blocks as if the policy were {@link AcquisitionOverflowPolicy#BLOCK}.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class AcquisitionPipeline implements AcquisitionStatistics, AutoCloseable {
+  public static final int DEFAULT_CAPACITY = 64;
+
+  /*
+   * The sequence of a slot whose record is being coalesced into by the
+   * producer.
+   */
+  private static final long CLAIMED = -1;
+  /*
+   * The sequence of a slot whose record is being taken by the pipeline thread.
+   */
+  private static final long TAKING = -2;
+
+  /*
+   * The sequence of the slot for position p is 2p while it is free to be
+   * written, 2p + 1 once the record for p is published, and 2(p + capacity)
+   * once that record has been taken by the pipeline thread or dropped by the
+   * producer. Every change of ownership of a record is a change of sequence,
+   * and those which may race are made by compare and set. A published record
+   * is only ever modified or read by the side which has claimed it.
+   */
+  private static class Slot {
+    private final AtomicLong sequence;
+    private SampledContinuousFunction<Time, Dimensionless> data;
+    private boolean owned;
+    private int group;
+
+    Slot(int index) {
+      sequence = new AtomicLong(2L * index);
+    }
+
+    boolean canCoalesce(SampledContinuousFunction<Time, Dimensionless> data, int group) {
+      return this.group == group
+          && this.data.domain() == data.domain()
+          && this.data.range().getUnit().equals(data.range().getUnit());
+    }
+  }
+
+  private final ObjIntConsumer<SampledContinuousFunction<Time, Dimensionless>> sink;
+  private volatile AcquisitionOverflowPolicy overflowPolicy;
+
+  private final Slot[] ring;
+
+  /*
+   * Producer state.
+   */
+  private volatile long tail;
+  private volatile Thread waitingProducer;
+  private AcquisitionBufferPool bufferPool;
+  private double[] scratch = new double[0];
+
+  /*
+   * Pipeline thread state. Positions before the head have been taken or
+   * dropped, and positions before completion have been delivered or passed
+   * over.
+   */
+  private volatile long head;
+  private volatile long completed;
+  private volatile long skipped;
+  private volatile boolean waitingConsumer;
+  private volatile boolean terminated;
+
+  private volatile boolean closed;
+
+  private final Object flushLock = new Object();
+  private volatile int flushWaiters;
+
+  private volatile long produced;
+  private volatile long dropped;
+  private volatile long coalesced;
+
+  private final Thread thread;
+
+  public AcquisitionPipeline(ObjIntConsumer<SampledContinuousFunction<Time, Dimensionless>> sink) {
+    this(DEFAULT_CAPACITY, BLOCK, sink);
+  }
+
+  public AcquisitionPipeline(
+      int capacity,
+      AcquisitionOverflowPolicy overflowPolicy,
+      ObjIntConsumer<SampledContinuousFunction<Time, Dimensionless>> sink) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Pipeline capacity must be positive: " + capacity);
+    }
+    this.sink = requireNonNull(sink);
+    this.overflowPolicy = requireNonNull(overflowPolicy);
+
+    this.ring = new Slot[capacity];
+    for (int i = 0; i < capacity; i++) {
+      ring[i] = new Slot(i);
+    }
+
+    this.thread = new Thread(this::deliver, "Acquisition Pipeline");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public int getCapacity() {
+    return ring.length;
+  }
+
+  public AcquisitionOverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(AcquisitionOverflowPolicy overflowPolicy) {
+    this.overflowPolicy = requireNonNull(overflowPolicy);
+  }
+
+  @Override
+  public long getProducedCount() {
+    return produced;
+  }
+
+  @Override
+  public long getDroppedCount() {
+    return dropped;
+  }
+
+  @Override
+  public long getCoalescedCount() {
+    return coalesced;
+  }
+
+  /*
+   * The counters are read without synchronization, so this is a snapshot which
+   * may be momentarily out of date.
+   */
+  @Override
+  public int getPendingCount() {
+    long skipped = this.skipped;
+    long head = this.head;
+    long pending = tail - head - (dropped - skipped);
+    return (int) Math.max(0, Math.min(pending, ring.length));
+  }
+
+  private Slot slot(long position) {
+    return ring[(int) (position % ring.length)];
+  }
+
+  /**
+   * Offer a record to the pipeline as a member of group 0.
+   * 
+   * @param data
+   *          the record to deliver
+   */
+  public void offer(SampledContinuousFunction<Time, Dimensionless> data) {
+    offer(data, 0);
+  }
+
+  /**
+   * Offer a record to the pipeline. A {@link AcquisitionBuffer pooled buffer}
+   * is retained until it has been delivered, so the caller remains free to
+   * release it. Any other record is delivered by reference, so the caller must
+   * not modify it after it has been offered.
+   * <p>
+   * This method must only be invoked from a single producer thread.
+   * 
+   * @param data
+   *          the record to deliver
+   * @param group
+   *          the group of the record, which is passed on to the sink
+   */
+  public void offer(SampledContinuousFunction<Time, Dimensionless> data, int group) {
+    if (closed) {
+      throw new AcquisitionException("Acquisition pipeline is closed");
+    }
+    produced++;
+
+    long position = tail;
+    Slot slot = slot(position);
+
+    while (slot.sequence.get() != 2 * position) {
+      switch (overflowPolicy) {
+      case DROP_OLDEST:
+        dropOldest(position, group);
+        break;
+
+      case COALESCE:
+        if (coalesceNewest(position, data, group)) {
+          coalesced++;
+          return;
+        }
+        break;
+
+      default:
+      }
+
+      awaitSpace(slot, position);
+    }
+
+    slot.data = AcquisitionBuffer.retain(data);
+    slot.owned = false;
+    slot.group = group;
+    slot.sequence.set(2 * position + 1);
+    tail = position + 1;
+
+    if (waitingConsumer) {
+      unpark(thread);
+    }
+  }
+
+  /*
+   * When the ring is full the oldest pending record is always at the position
+   * one capacity behind the tail, so it is never necessary to consult the
+   * pipeline thread's head.
+   */
+  private void dropOldest(long position, int group) {
+    long oldest = position - ring.length;
+    Slot oldestSlot = slot(oldest);
+    int nextGroup = ring.length > 1 ? slot(oldest + 1).group : group;
+
+    if (oldestSlot.group == nextGroup) {
+      var data = oldestSlot.data;
+      if (oldestSlot.sequence.compareAndSet(2 * oldest + 1, 2 * position)) {
+        dropped++;
+        AcquisitionBuffer.release(data);
+      }
+    }
+  }
+
+  private boolean coalesceNewest(
+      long position,
+      SampledContinuousFunction<Time, Dimensionless> data,
+      int group) {
+    long newest = position - 1;
+    Slot newestSlot = slot(newest);
+
+    if (!newestSlot.sequence.compareAndSet(2 * newest + 1, CLAIMED)) {
+      return false;
+    }
+    try {
+      if (!newestSlot.canCoalesce(data, group)) {
+        return false;
+      }
+
+      if (!newestSlot.owned) {
+        var previous = newestSlot.data;
+        newestSlot.data = copy(previous);
+        newestSlot.owned = true;
+        AcquisitionBuffer.release(previous);
+      }
+
+      double[] samples = ((AcquisitionBuffer) newestSlot.data).intensities();
+      if (data instanceof SparseSampledContinuousFunction<?, ?>) {
+        var sparse = (SparseSampledContinuousFunction<?, ?>) data;
+        int hits = sparse.getNonZeroSampleCount();
+        for (int i = 0; i < hits; i++) {
+          samples[sparse.getNonZeroSampleIndex(i)] += sparse.getNonZeroSample(i);
+        }
+      } else {
+        double[] addend = samples(data);
+        for (int i = 0; i < samples.length; i++) {
+          samples[i] += addend[i];
+        }
+      }
+      return true;
+    } finally {
+      newestSlot.sequence.set(2 * newest + 1);
+    }
+  }
+
+  private void awaitSpace(Slot slot, long position) {
+    waitingProducer = Thread.currentThread();
+    try {
+      while (slot.sequence.get() != 2 * position) {
+        if (closed) {
+          throw new AcquisitionException("Acquisition pipeline is closed");
+        }
+        park(this);
+        if (Thread.interrupted()) {
+          Thread.currentThread().interrupt();
+          throw new AcquisitionException("Interrupted waiting for acquisition pipeline");
+        }
+      }
+    } finally {
+      waitingProducer = null;
+    }
+  }
+
+  private AcquisitionBuffer copy(SampledContinuousFunction<Time, Dimensionless> data) {
+    SampledDomain<Time> domain = data.domain();
+    Unit<Dimensionless> unit = data.range().getUnit();
+    if (bufferPool == null
+        || bufferPool.getDomain() != domain
+        || !bufferPool.getIntensityUnits().equals(unit)) {
+      bufferPool = new AcquisitionBufferPool(domain, unit);
+    }
+    return bufferPool.fillNextBuffer(buffer -> data.range().copyInto(0, buffer, 0, buffer.length));
+  }
+
+  private double[] samples(SampledContinuousFunction<Time, Dimensionless> data) {
+    if (data instanceof AcquisitionBuffer) {
+      return ((AcquisitionBuffer) data).intensities();
+    }
+    int depth = data.getDepth();
+    if (scratch.length < depth) {
+      scratch = new double[depth];
+    }
+    data.range().copyInto(0, scratch, 0, depth);
+    return scratch;
+  }
+
+  /**
+   * Wait until every record offered so far has been delivered to the sink.
+   */
+  public void flush() {
+    long target = tail;
+    if (completed >= target) {
+      return;
+    }
+
+    synchronized (flushLock) {
+      flushWaiters++;
+      try {
+        while (completed < target && !terminated) {
+          flushLock.wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AcquisitionException("Interrupted waiting for acquisition pipeline", e);
+      } finally {
+        flushWaiters--;
+      }
+    }
+  }
+
+  /**
+   * Stop accepting records. Those already pending are still delivered.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    unpark(thread);
+    Thread producer = waitingProducer;
+    if (producer != null) {
+      unpark(producer);
+    }
+  }
+
+  private void deliver() {
+    try {
+      long position = 0;
+      while (true) {
+        Slot slot = slot(position);
+        long sequence = slot.sequence.get();
+
+        if (sequence == 2 * position + 1) {
+          if (!slot.sequence.compareAndSet(sequence, TAKING)) {
+            continue;
+          }
+          var data = slot.data;
+          int group = slot.group;
+          slot.data = null;
+          slot.sequence.set(2 * (position + ring.length));
+          head = position + 1;
+          Thread producer = waitingProducer;
+          if (producer != null) {
+            unpark(producer);
+          }
+
+          try {
+            sink.accept(data, group);
+          } catch (RuntimeException e) {
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+          } finally {
+            AcquisitionBuffer.release(data);
+          }
+          complete(++position);
+
+        } else if (sequence == CLAIMED) {
+          Thread.onSpinWait();
+
+        } else if (sequence >= 2 * (position + ring.length)) {
+          skipped++;
+          head = position + 1;
+          complete(++position);
+
+        } else if (!awaitRecord(slot, position)) {
+          return;
+        }
+      }
+    } finally {
+      terminated = true;
+      synchronized (flushLock) {
+        flushLock.notifyAll();
+      }
+    }
+  }
+
+  private void complete(long position) {
+    completed = position;
+    if (flushWaiters > 0) {
+      synchronized (flushLock) {
+        flushLock.notifyAll();
+      }
+    }
+  }
+
+  private boolean awaitRecord(Slot slot, long position) {
+    waitingConsumer = true;
+    try {
+      while (isEmpty(slot.sequence.get(), position)) {
+        if (closed) {
+          return !isEmpty(slot.sequence.get(), position);
+        }
+        park(this);
+        if (Thread.interrupted()) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      waitingConsumer = false;
+    }
+  }
+
+  private static boolean isEmpty(long sequence, long position) {
+    return sequence >= 0 && sequence <= 2 * position;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.acquisition.
+ *
+ * uk.co.saiman.instrument.acquisition is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.acquisition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.acquisition;
+
+/**
+ * Counters describing the flow of records through an acquisition device's
+ * {@link AcquisitionPipeline pipeline}.
+ * 
+ * @author Elias N Vasylenko
+ */
+public interface AcquisitionStatistics {
+  /**
+   * @return the number of records produced by the device
+   */
+  long getProducedCount();
+
+  /**
+   * @return the number of records discarded before they could be delivered
+   */
+  long getDroppedCount();
+
+  /**
+   * @return the number of records which were summed into an earlier pending
+   *         record rather than being delivered individually
+   */
+  long getCoalescedCount();
+
+  /**
+   * @return the number of records currently waiting to be delivered
+   */
+  int getPendingCount();
+}
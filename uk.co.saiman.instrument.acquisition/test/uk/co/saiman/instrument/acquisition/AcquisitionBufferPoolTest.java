@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.acquisition.
+ *
+ * uk.co.saiman.instrument.acquisition is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.acquisition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.acquisition;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.BLOCK;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.COALESCE;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.DROP_OLDEST;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+
+public class AcquisitionBufferPoolTest {
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+  private final AcquisitionBufferPool pool = new AcquisitionBufferPool(
+      new RegularSampledDomain<>(time, 4, 1, 0),
+      count);
+
+  private AcquisitionBuffer buffer(double value) {
+    return pool.fillNextBuffer(samples -> samples[0] = value);
+  }
+
+  @Test
+  public void releasedBufferIsReusedTest() {
+    var buffer = buffer(1);
+    assertEquals(1, pool.getOutstandingCount());
+
+    buffer.release();
+    assertEquals(0, pool.getOutstandingCount());
+    assertEquals(1, pool.getSpareCount());
+
+    assertSame(buffer, buffer(2));
+    assertEquals(1, pool.getHitCount());
+    assertEquals(1, pool.getMissCount());
+  }
+
+  @Test
+  public void retainedBufferIsNotRecycledUntilLastReleaseTest() {
+    var buffer = buffer(1);
+    assertSame(buffer, AcquisitionBuffer.retain(buffer));
+
+    buffer.release();
+    assertEquals(1, pool.getOutstandingCount());
+
+    buffer.release();
+    assertEquals(0, pool.getOutstandingCount());
+    assertThrows(IllegalStateException.class, buffer::release);
+    assertThrows(IllegalStateException.class, buffer::retain);
+  }
+
+  @Test
+  public void unreleasedBufferIsRecoveredTest() throws InterruptedException {
+    buffer(1);
+
+    for (int i = 0; i < 50 && pool.getSpareCount() == 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      buffer(2).release();
+    }
+
+    assertEquals(1, pool.getRecoveredCount());
+    assertEquals(0, pool.getOutstandingCount());
+  }
+
+  @Test
+  public void pipelineReleasesDeliveredBuffersTest() {
+    var pipeline = new AcquisitionPipeline(4, BLOCK, (data, group) -> {});
+
+    for (int i = 0; i < 1000; i++) {
+      var buffer = buffer(i);
+      pipeline.offer(buffer);
+      buffer.release();
+    }
+    pipeline.flush();
+    pipeline.close();
+
+    assertEquals(0, pool.getOutstandingCount());
+    assertTrue(pool.getMissCount() <= 6);
+  }
+
+  @Test
+  public void sinkMayRetainDeliveredBuffersTest() {
+    List<SampledContinuousFunction<Time, Dimensionless>> retained = new ArrayList<>();
+    var pipeline = new AcquisitionPipeline(
+        4,
+        BLOCK,
+        (data, group) -> retained.add(AcquisitionBuffer.retain(data)));
+
+    for (int i = 0; i < 10; i++) {
+      var buffer = buffer(i);
+      pipeline.offer(buffer);
+      buffer.release();
+    }
+    pipeline.flush();
+    pipeline.close();
+
+    assertEquals(10, pool.getOutstandingCount());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, retained.get(i).range().getSample(0));
+    }
+
+    retained.forEach(AcquisitionBuffer::release);
+    assertEquals(0, pool.getOutstandingCount());
+  }
+
+  @Test
+  public void pipelineReleasesDroppedAndCoalescedBuffersTest() throws InterruptedException {
+    for (var policy : List.of(DROP_OLDEST, COALESCE)) {
+      var taken = new CountDownLatch(1);
+      var unblock = new CountDownLatch(1);
+      var pipeline = new AcquisitionPipeline(2, policy, (data, group) -> {
+        taken.countDown();
+        try {
+          unblock.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      });
+
+      var first = buffer(0);
+      pipeline.offer(first);
+      first.release();
+      assertTrue(taken.await(5, TimeUnit.SECONDS));
+
+      for (int i = 1; i <= 8; i++) {
+        var buffer = buffer(i);
+        pipeline.offer(buffer);
+        buffer.release();
+      }
+      unblock.countDown();
+      pipeline.flush();
+      pipeline.close();
+
+      assertEquals(0, pool.getOutstandingCount(), policy.toString());
+    }
+  }
+
+  @Test
+  public void coalescingDoesNotModifyOfferedBuffersTest() throws InterruptedException {
+    var taken = new CountDownLatch(1);
+    var unblock = new CountDownLatch(1);
+    List<Double> delivered = new ArrayList<>();
+    var pipeline = new AcquisitionPipeline(1, COALESCE, (data, group) -> {
+      delivered.add(data.range().getSample(0));
+      taken.countDown();
+      try {
+        unblock.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+
+    pipeline.offer(buffer(0));
+    assertTrue(taken.await(5, TimeUnit.SECONDS));
+
+    var newest = buffer(1);
+    pipeline.offer(newest);
+    pipeline.offer(buffer(2));
+
+    unblock.countDown();
+    pipeline.flush();
+    pipeline.close();
+
+    assertEquals(List.of(0d, 3d), delivered);
+    assertArrayEquals(new double[] { 1, 0, 0, 0 }, newest.range().toArray());
+  }
+}
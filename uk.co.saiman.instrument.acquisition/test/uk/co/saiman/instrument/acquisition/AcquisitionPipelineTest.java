@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.acquisition.
+ *
+ * uk.co.saiman.instrument.acquisition is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.acquisition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.acquisition;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.BLOCK;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.COALESCE;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.DROP_OLDEST;
+import static uk.co.saiman.measurement.Units.count;
+import static uk.co.saiman.measurement.Units.second;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.data.function.SparseSampledContinuousFunction;
+import uk.co.saiman.data.spectrum.ContinuousFunctionAccumulator;
+import uk.co.saiman.observable.HotObservable;
+
+public class AcquisitionPipelineTest {
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+  private final RegularSampledDomain<Time> domain = new RegularSampledDomain<>(time, 4, 1, 0);
+
+  private final List<Double> delivered = new CopyOnWriteArrayList<>();
+  private final CountDownLatch firstTaken = new CountDownLatch(1);
+  private final CountDownLatch unblock = new CountDownLatch(1);
+
+  private SampledContinuousFunction<Time, Dimensionless> record(double value) {
+    return new ArraySampledContinuousFunction<>(domain, count, new double[] { value, 0, 0, 0 });
+  }
+
+  private SampledContinuousFunction<Time, Dimensionless> sparseRecord(double value) {
+    return new SparseSampledContinuousFunction<>(
+        domain,
+        count,
+        1,
+        new int[] { 0 },
+        new double[] { value });
+  }
+
+  /*
+   * Create a pipeline whose sink holds on to the first record it receives until
+   * the test unblocks it, so that the ring can be filled behind it.
+   */
+  private AcquisitionPipeline blockedPipeline(int capacity, AcquisitionOverflowPolicy policy) {
+    return new AcquisitionPipeline(capacity, policy, (data, group) -> {
+      delivered.add(data.range().getSample(0));
+      firstTaken.countDown();
+      try {
+        unblock.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+  }
+
+  private void fillBehindFirst(AcquisitionPipeline pipeline, int records)
+      throws InterruptedException {
+    pipeline.offer(record(0));
+    assertTrue(firstTaken.await(5, SECONDS));
+    for (int i = 1; i <= records; i++) {
+      pipeline.offer(record(i));
+    }
+  }
+
+  @Test
+  public void recordsAreDeliveredInOrderTest() {
+    var pipeline = new AcquisitionPipeline(
+        8,
+        BLOCK,
+        (data, group) -> delivered.add(data.range().getSample(0)));
+
+    for (int i = 0; i < 10_000; i++) {
+      pipeline.offer(record(i));
+    }
+    pipeline.flush();
+    pipeline.close();
+
+    assertEquals(10_000, delivered.size());
+    for (int i = 0; i < 10_000; i++) {
+      assertEquals(i, delivered.get(i));
+    }
+    assertEquals(10_000, pipeline.getProducedCount());
+    assertEquals(0, pipeline.getPendingCount());
+  }
+
+  @Test
+  public void blockingProducerWaitsForSinkTest() throws InterruptedException {
+    var pipeline = blockedPipeline(2, BLOCK);
+    fillBehindFirst(pipeline, 2);
+
+    var producer = new Thread(() -> pipeline.offer(record(3)));
+    producer.start();
+    producer.join(100);
+    assertTrue(producer.isAlive());
+    assertEquals(2, pipeline.getPendingCount());
+
+    unblock.countDown();
+    producer.join(5000);
+    pipeline.flush();
+
+    assertEquals(List.of(0d, 1d, 2d, 3d), delivered);
+  }
+
+  @Test
+  public void dropOldestKeepsNewestRecordsTest() throws InterruptedException {
+    var pipeline = blockedPipeline(2, DROP_OLDEST);
+    fillBehindFirst(pipeline, 4);
+
+    assertEquals(2, pipeline.getDroppedCount());
+    assertEquals(2, pipeline.getPendingCount());
+
+    unblock.countDown();
+    pipeline.flush();
+
+    assertEquals(List.of(0d, 3d, 4d), delivered);
+    assertEquals(0, pipeline.getPendingCount());
+  }
+
+  @Test
+  public void coalesceSumsIntoNewestRecordTest() throws InterruptedException {
+    var pipeline = blockedPipeline(2, COALESCE);
+    fillBehindFirst(pipeline, 4);
+
+    assertEquals(2, pipeline.getCoalescedCount());
+
+    unblock.countDown();
+    pipeline.flush();
+
+    assertEquals(List.of(0d, 1d, 2d + 3d + 4d), delivered);
+  }
+
+  @Test
+  public void sparseRecordsArePassedByReferenceTest() {
+    List<SampledContinuousFunction<Time, Dimensionless>> received = new CopyOnWriteArrayList<>();
+    var pipeline = new AcquisitionPipeline(8, BLOCK, (data, group) -> received.add(data));
+
+    var record = sparseRecord(1);
+    pipeline.offer(record);
+    pipeline.flush();
+    pipeline.close();
+
+    assertSame(record, received.get(0));
+  }
+
+  @Test
+  public void coalesceSumsSparseRecordsIntoNewestRecordTest() throws InterruptedException {
+    var pipeline = blockedPipeline(2, COALESCE);
+    pipeline.offer(sparseRecord(0));
+    assertTrue(firstTaken.await(5, SECONDS));
+    for (int i = 1; i <= 4; i++) {
+      pipeline.offer(sparseRecord(i));
+    }
+
+    assertEquals(2, pipeline.getCoalescedCount());
+
+    unblock.countDown();
+    pipeline.flush();
+
+    assertEquals(List.of(0d, 1d, 2d + 3d + 4d), delivered);
+  }
+
+  @Test
+  public void recordsAreNotCoalescedAcrossGroupsTest() throws InterruptedException {
+    var pipeline = blockedPipeline(1, COALESCE);
+    pipeline.offer(record(0), 0);
+    assertTrue(firstTaken.await(5, SECONDS));
+    pipeline.offer(record(1), 1);
+
+    var producer = new Thread(() -> pipeline.offer(record(2), 2));
+    producer.start();
+    producer.join(100);
+    assertTrue(producer.isAlive());
+
+    unblock.countDown();
+    producer.join(5000);
+    pipeline.flush();
+
+    assertEquals(List.of(0d, 1d, 2d), delivered);
+    assertEquals(0, pipeline.getCoalescedCount());
+  }
+
+  @Test
+  public void closeDeliversPendingRecordsTest() throws InterruptedException {
+    var pipeline = blockedPipeline(4, BLOCK);
+    fillBehindFirst(pipeline, 3);
+
+    pipeline.close();
+    assertThrows(AcquisitionException.class, () -> pipeline.offer(record(4)));
+
+    unblock.countDown();
+    pipeline.flush();
+
+    assertEquals(List.of(0d, 1d, 2d, 3d), delivered);
+  }
+
+  /*
+   * The accumulator sums records on its own thread, after the sink has returned
+   * and the pipeline has released its reference, so a pooled record must
+   * survive until it has been summed even though the producer is meanwhile
+   * filling recycled buffers.
+   */
+  @Test
+  public void pooledRecordsSurviveAsynchronousAccumulationTest() {
+    int depth = 256;
+    int records = 5000;
+    var domain = new RegularSampledDomain<>(second().getUnit(), depth, 1, 0);
+    var pool = new AcquisitionBufferPool(domain, count().getUnit());
+
+    var source = new HotObservable<SampledContinuousFunction<Time, Dimensionless>>();
+    var accumulator = new ContinuousFunctionAccumulator<>(source, domain, count().getUnit());
+    var pipeline = new AcquisitionPipeline(8, BLOCK, (data, group) -> source.next(data));
+
+    double[] expected = new double[depth];
+    for (int r = 0; r < records; r++) {
+      int record = r;
+      var buffer = pool.fillNextBuffer(samples -> {
+        for (int i = 0; i < depth; i++) {
+          samples[i] = (record * 31 + i) % 7;
+        }
+      });
+      for (int i = 0; i < depth; i++) {
+        expected[i] += buffer.range().getSample(i);
+      }
+      pipeline.offer(buffer);
+      buffer.release();
+    }
+    pipeline.flush();
+    pipeline.close();
+    source.complete();
+
+    assertArrayEquals(expected, accumulator.getCompleteAccumulation().range().toArray());
+    assertEquals(0, pool.getOutstandingCount());
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.stage.copley.
+ *
+ * uk.co.saiman.instrument.stage.copley is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.stage.copley is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.stage.copley;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.groupingBy;
+import static uk.co.saiman.comms.copley.CopleyVariableID.DRIVE_EVENT_STATUS;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.saiman.comms.copley.CopleyAxis;
+import uk.co.saiman.comms.copley.CopleyController;
+import uk.co.saiman.comms.copley.CopleyNode;
+import uk.co.saiman.comms.copley.EventStatusRegister;
+import uk.co.saiman.comms.copley.Int32;
+import uk.co.saiman.comms.copley.Variable;
+
+/**
+ * Monitors the state of every {@link CopleyLinearAxis} on one controller from
+ * a single thread.
+ * <p>
+ * Each axis is polled quickly while it is in motion or awaiting a requested
+ * location, and slowly otherwise. The variables of all axes on a node which
+ * are due at the same time are read together in one batch. A poll of an axis
+ * can be requested at any time, for instance straight after a motion request,
+ * rather than waiting for its next period.
+ * <p>
+ * Monitors are shared between the axes of a controller by the
+ * {@link CopleyAxisMonitorService}.
+ * 
+ * @author Elias N Vasylenko
+ */
+class CopleyAxisMonitor {
+  static final long ACTIVE_POLL_MILLISECONDS = 20;
+  static final long IDLE_POLL_MILLISECONDS = 500;
+
+  private final CopleyController comms;
+  private final Map<CopleyLinearAxis, Long> nextPolls = new LinkedHashMap<>();
+  private Thread polling;
+
+  CopleyAxisMonitor(CopleyController comms) {
+    this.comms = comms;
+  }
+
+  /**
+   * Begin monitoring an axis, starting the polling thread if it is not already
+   * running.
+   * 
+   * @param axis
+   *          the axis to monitor
+   */
+  synchronized void add(CopleyLinearAxis axis) {
+    nextPolls.put(axis, System.nanoTime());
+    if (polling == null) {
+      polling = new Thread(this::run, "Copley Axis Monitor");
+      polling.setDaemon(true);
+      polling.start();
+    } else {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Stop monitoring an axis. Once no axes remain the polling thread stops.
+   * 
+   * @param axis
+   *          the axis to stop monitoring
+   * @return true if no axes remain
+   */
+  synchronized boolean remove(CopleyLinearAxis axis) {
+    nextPolls.remove(axis);
+    if (nextPolls.isEmpty()) {
+      stop();
+      return true;
+    }
+    return false;
+  }
+
+  /*
+   * The polling thread is not interrupted, as it may be part way through a
+   * serial round trip which an interrupt would leave in an unknown state.
+   * Instead it notices it is no longer the polling thread once its current
+   * poll is finished, or as soon as it is woken if it is waiting.
+   */
+  synchronized void stop() {
+    nextPolls.clear();
+    polling = null;
+    notifyAll();
+  }
+
+  synchronized boolean isPolling() {
+    return polling != null;
+  }
+
+  /**
+   * Poll the given axis as soon as possible.
+   * 
+   * @param axis
+   *          the axis to poll
+   */
+  synchronized void requestPoll(CopleyLinearAxis axis) {
+    if (nextPolls.replace(axis, System.nanoTime()) != null) {
+      notifyAll();
+    }
+  }
+
+  private synchronized void schedule(CopleyLinearAxis axis, long from, boolean active) {
+    long interval = MILLISECONDS.toNanos(active ? ACTIVE_POLL_MILLISECONDS : IDLE_POLL_MILLISECONDS);
+    /*
+     * keep any earlier poll which was requested while this one was underway
+     */
+    nextPolls.computeIfPresent(axis, (a, next) -> Math.min(next, from + interval));
+  }
+
+  private void run() {
+    var thread = Thread.currentThread();
+    try {
+      for (;;) {
+        var axes = awaitPoll(thread);
+        if (axes == null) {
+          break;
+        }
+
+        var nodes = axes.stream().collect(groupingBy(CopleyLinearAxis::getNodeId));
+        for (var node : nodes.entrySet()) {
+          poll(node.getKey(), node.getValue());
+        }
+      }
+    } catch (InterruptedException e) {}
+  }
+
+  /*
+   * Wait until at least one axis is due to be polled, then mark the due axes
+   * as underway and return them.
+   */
+  private synchronized List<CopleyLinearAxis> awaitPoll(Thread thread)
+      throws InterruptedException {
+    List<CopleyLinearAxis> due = new ArrayList<>();
+    while (polling == thread) {
+      long now = System.nanoTime();
+      long wait = MILLISECONDS.toNanos(IDLE_POLL_MILLISECONDS);
+      for (var nextPoll : nextPolls.entrySet()) {
+        long remaining = nextPoll.getValue() - now;
+        if (remaining <= 0) {
+          due.add(nextPoll.getKey());
+          nextPoll.setValue(now + MILLISECONDS.toNanos(IDLE_POLL_MILLISECONDS));
+        } else {
+          wait = Math.min(wait, remaining);
+        }
+      }
+      if (!due.isEmpty()) {
+        return due;
+      }
+      NANOSECONDS.timedWait(this, wait);
+    }
+    return null;
+  }
+
+  private void poll(int nodeId, List<CopleyLinearAxis> axes) {
+    long start = System.nanoTime();
+
+    List<CopleyLinearAxis> polledAxes = new ArrayList<>(axes.size());
+    List<Long> requests = new ArrayList<>(axes.size());
+    List<Variable<?>> variables = new ArrayList<>(axes.size() * 3);
+    CopleyNode node;
+    try {
+      node = comms
+          .getNode(nodeId)
+          .orElseThrow(() -> new IllegalStateException(format("Cannot find node %s", nodeId)));
+
+      for (var axis : axes) {
+        try {
+          CopleyAxis copleyAxis = node
+              .getAxis(axis.getAxisNumber())
+              .orElseThrow(
+                  () -> new IllegalStateException(
+                      format("Cannot find axis %s at node %s", axis.getAxisNumber(), nodeId)));
+
+          requests.add(axis.getSentRequestCount());
+          variables.add(copleyAxis.actualPosition());
+          variables.add(copleyAxis.requestedPosition());
+          variables.add(copleyAxis.variable(DRIVE_EVENT_STATUS));
+          polledAxes.add(axis);
+        } catch (Exception e) {
+          fail(axis, start, e);
+        }
+      }
+    } catch (Exception e) {
+      axes.forEach(axis -> fail(axis, start, e));
+      return;
+    }
+
+    if (polledAxes.isEmpty()) {
+      return;
+    }
+
+    List<Object> values;
+    try {
+      values = node.getVariables(variables);
+    } catch (Exception e) {
+      polledAxes.forEach(axis -> fail(axis, start, e));
+      return;
+    }
+
+    for (int i = 0; i < polledAxes.size(); i++) {
+      var axis = polledAxes.get(i);
+      try {
+        var status = (EventStatusRegister) values.get(i * 3 + 2);
+        axis
+            .update(
+                requests.get(i),
+                (Int32) values.get(i * 3),
+                (Int32) values.get(i * 3 + 1),
+                status);
+        schedule(axis, start, status.motionActive || axis.isAwaitingLocation());
+      } catch (Exception e) {
+        fail(axis, start, e);
+      }
+    }
+  }
+
+  private void fail(CopleyLinearAxis axis, long start, Exception e) {
+    axis.fail(e);
+    schedule(axis, start, axis.isAwaitingLocation());
+  }
+}
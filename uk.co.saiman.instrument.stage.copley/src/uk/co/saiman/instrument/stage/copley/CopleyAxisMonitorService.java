@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.stage.copley.
+ *
+ * uk.co.saiman.instrument.stage.copley is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.stage.copley is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.stage.copley;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+
+import uk.co.saiman.comms.copley.CopleyController;
+
+/**
+ * Shares a {@link CopleyAxisMonitor} between every {@link CopleyLinearAxis} on
+ * the same controller, so that all of them are polled from a single thread. A
+ * monitor is created when the first axis on a controller registers, and its
+ * thread stops once the last axis is removed or the service is deactivated.
+ * 
+ * @author Elias N Vasylenko
+ */
+@Component(service = CopleyAxisMonitorService.class)
+public class CopleyAxisMonitorService {
+  private final Map<CopleyController, CopleyAxisMonitor> monitors = new IdentityHashMap<>();
+
+  /**
+   * Begin monitoring an axis, with the monitor of its controller.
+   * 
+   * @param axis
+   *          the axis to monitor
+   * @return the monitor the axis was registered with
+   */
+  synchronized CopleyAxisMonitor register(CopleyLinearAxis axis) {
+    var monitor = monitors.computeIfAbsent(axis.getController(), CopleyAxisMonitor::new);
+    monitor.add(axis);
+    return monitor;
+  }
+
+  /**
+   * Stop monitoring an axis. Once no axes remain on its controller the monitor
+   * is discarded.
+   * 
+   * @param axis
+   *          the axis to stop monitoring
+   */
+  synchronized void unregister(CopleyLinearAxis axis) {
+    var monitor = monitors.get(axis.getController());
+    if (monitor != null && monitor.remove(axis)) {
+      monitors.remove(axis.getController());
+    }
+  }
+
+  @Deactivate
+  synchronized void deactivate() {
+    monitors.values().forEach(CopleyAxisMonitor::stop);
+    monitors.clear();
+  }
+}
@@ -28,15 +28,11 @@
 package uk.co.saiman.instrument.stage.copley;
 
 import static java.lang.String.format;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
-import static uk.co.saiman.comms.copley.CopleyVariableID.DRIVE_EVENT_STATUS;
 import static uk.co.saiman.instrument.axis.AxisState.LOCATION_FAILED;
 import static uk.co.saiman.instrument.axis.AxisState.LOCATION_REACHED;
 import static uk.co.saiman.instrument.axis.AxisState.LOCATION_REQUESTED;
 import static uk.co.saiman.measurement.Units.metre;
-import static uk.co.saiman.observable.Observable.fixedRate;
-import static uk.co.saiman.observable.Observer.onFailure;
 
 import java.util.concurrent.TimeUnit;
 
@@ -54,6 +50,7 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import uk.co.saiman.comms.copley.CopleyAxis;
 import uk.co.saiman.comms.copley.CopleyController;
 import uk.co.saiman.comms.copley.CopleyException;
+import uk.co.saiman.comms.copley.CopleyNode;
 import uk.co.saiman.comms.copley.EventStatusRegister;
 import uk.co.saiman.comms.copley.Int32;
 import uk.co.saiman.instrument.DeviceImpl;
@@ -64,11 +61,9 @@ import uk.co.saiman.instrument.sample.SampleLocationUnknown;
 import uk.co.saiman.log.Log;
 import uk.co.saiman.log.Log.Level;
 import uk.co.saiman.measurement.scalar.Scalar;
-import uk.co.saiman.observable.Disposable;
 import uk.co.saiman.observable.ObservableProperty;
 import uk.co.saiman.observable.ObservablePropertyImpl;
 import uk.co.saiman.observable.ObservableValue;
-import uk.co.saiman.observable.OwnedMessage;
 
 @Designate(ocd = CopleyLinearAxis.CopleyLinearAxisConfiguration.class, factory = true)
 @Component(
@@ -105,18 +100,43 @@ public class CopleyLinearAxis extends DeviceImpl<AxisController<Length>>
   private final ObservableProperty<AxisState> axisState;
 
   private final Log log;
-  private Disposable polling;
+  private final CopleyAxisMonitorService monitors;
+  private CopleyAxisMonitor monitor;
+
+  /*
+   * Requests are serialized by their own lock rather than the axis, so that a
+   * request waiting on a serial round trip does not hold up the monitor
+   * delivering readings to this or any other axis.
+   */
+  private final Object requestLock = new Object();
+  private long requestCount;
+  private long sentRequestCount;
 
   @Activate
   public CopleyLinearAxis(
       @Reference(name = "comms") CopleyController comms,
       CopleyLinearAxisConfiguration configuration,
+      @Reference CopleyAxisMonitorService monitors,
       @Reference Log log) {
-    this(comms, configuration.node(), configuration.axis(), log);
+    this(comms, configuration.node(), configuration.axis(), monitors, log);
   }
 
+  /**
+   * Create an axis polled by a monitor of its own, rather than one shared with
+   * the other axes of its controller.
+   */
   public CopleyLinearAxis(CopleyController comms, int node, int axis, Log log) {
+    this(comms, node, axis, new CopleyAxisMonitorService(), log);
+  }
+
+  public CopleyLinearAxis(
+      CopleyController comms,
+      int node,
+      int axis,
+      CopleyAxisMonitorService monitors,
+      Log log) {
     this.log = log;
+    this.monitors = monitors;
 
     this.comms = comms;
     this.node = node;
@@ -135,92 +155,127 @@ public class CopleyLinearAxis extends DeviceImpl<AxisController<Length>>
   }
 
   protected synchronized void startPolling() {
-    polling = fixedRate(1000, 100, MILLISECONDS)
-        .weakReference(this)
-        .map(OwnedMessage::owner)
-        .then(onFailure(t -> log.log(Level.ERROR, t)))
-        .observe(CopleyLinearAxis::poll);
+    if (monitor == null) {
+      monitor = monitors.register(this);
+    }
   }
 
   @Deactivate
-  public void stopPolling() {
-    polling.cancel();
+  public synchronized void stopPolling() {
+    if (monitor != null) {
+      monitors.unregister(this);
+      monitor = null;
+    }
   }
 
-  protected synchronized void requestLocation(Quantity<Length> location) {
-    if (axisState.isValueEqual(LOCATION_REQUESTED)) {
-      throw new IllegalStateException("location already requested");
-    }
+  CopleyController getController() {
+    return comms;
+  }
 
-    axisState.set(LOCATION_REQUESTED);
+  int getNodeId() {
+    return node;
+  }
 
-    try {
-      var position = new Int32(getStepsFromLength(location));
-      getAxis().requestedPosition().set(position);
-    } catch (Exception e) {
-      setInaccessible();
-      axisState.set(LOCATION_FAILED);
-      log.log(Level.ERROR, "Failed to request axis position", e);
-      throw e;
+  int getAxisNumber() {
+    return axis;
+  }
+
+  protected void requestLocation(Quantity<Length> location) {
+    synchronized (requestLock) {
+      CopleyAxisMonitor monitor;
+      synchronized (this) {
+        if (axisState.isValueEqual(LOCATION_REQUESTED)) {
+          throw new IllegalStateException("location already requested");
+        }
+        axisState.set(LOCATION_REQUESTED);
+        requestCount++;
+        monitor = this.monitor;
+      }
+
+      try {
+        var position = new Int32(getStepsFromLength(location));
+        getAxis().requestedPosition().set(position);
+      } catch (Exception e) {
+        synchronized (this) {
+          setInaccessible();
+          axisState.set(LOCATION_FAILED);
+        }
+        log.log(Level.ERROR, "Failed to request axis position", e);
+        throw e;
+      } finally {
+        synchronized (this) {
+          sentRequestCount++;
+        }
+      }
+
+      if (monitor != null) {
+        monitor.requestPoll(this);
+      }
     }
   }
 
-  private CopleyAxis getAxis() {
+  private CopleyNode getNode() {
     return comms
-        .getAxis(this.node, this.axis)
+        .getNode(this.node)
+        .orElseThrow(() -> new IllegalStateException(format("Cannot find node %s", this.node)));
+  }
+
+  private CopleyAxis getAxis() {
+    return getAxis(getNode());
+  }
+
+  private CopleyAxis getAxis(CopleyNode node) {
+    return node
+        .getAxis(this.axis)
         .orElseThrow(
             () -> new IllegalStateException(
                 format("Cannot find axis %s at node %s", this.axis, this.node)));
   }
 
-  synchronized void poll() {
-    updateActualLocation();
-    updateRequestedLocation();
-    updateStatus();
+  /*
+   * The number of location requests which have been sent to the drive. The
+   * monitor notes this before it reads the drive, and a reading can only
+   * complete a request if every request made so far had already been sent by
+   * then. So neither a reading taken before the latest request was sent, nor
+   * one taken while it was being sent, can be mistaken for the motion having
+   * finished.
+   */
+  synchronized long getSentRequestCount() {
+    return sentRequestCount;
   }
 
-  void updateStatus() {
-    try {
-      var status = (EventStatusRegister) getAxis().variable(DRIVE_EVENT_STATUS).get();
-      if (status.driveFault) {
-        throw new CopleyException("Drive fault");
-      }
-      setAccessible();
-      if (!status.motionActive && axisState.isValueEqual(LOCATION_REQUESTED)) {
-        axisState.set(LOCATION_REACHED);
-      }
-    } catch (Exception e) {
-      setInaccessible();
-      axisState.set(LOCATION_FAILED);
-      actualPosition.setProblem(() -> new SampleLocationUnknown(e));
-      log.log(Level.ERROR, "Failed to determine axis position", e);
-    }
+  boolean isAwaitingLocation() {
+    return axisState.isValueEqual(LOCATION_REQUESTED);
   }
 
-  void updateActualLocation() {
-    try {
-      var position = getAxis().actualPosition().get();
-      setAccessible();
-      actualPosition.set(getLengthFromSteps(position.value));
-    } catch (Exception e) {
+  synchronized void update(
+      long sentRequestCount,
+      Int32 actual,
+      Int32 requested,
+      EventStatusRegister status) {
+    setAccessible();
+    actualPosition.set(getLengthFromSteps(actual.value));
+    requestedPosition.set(getLengthFromSteps(requested.value));
+
+    if (status.driveFault) {
+      var e = new CopleyException("Drive fault");
       setInaccessible();
       axisState.set(LOCATION_FAILED);
       actualPosition.setProblem(() -> new SampleLocationUnknown(e));
       log.log(Level.ERROR, "Failed to determine axis position", e);
+    } else if (!status.motionActive
+        && sentRequestCount == this.requestCount
+        && axisState.isValueEqual(LOCATION_REQUESTED)) {
+      axisState.set(LOCATION_REACHED);
     }
   }
 
-  void updateRequestedLocation() {
-    try {
-      var position = getAxis().requestedPosition().get();
-      setAccessible();
-      requestedPosition.set(getLengthFromSteps(position.value));
-    } catch (Exception e) {
-      setInaccessible();
-      axisState.set(LOCATION_FAILED);
-      requestedPosition.setProblem(() -> new SampleLocationUnknown(e));
-      log.log(Level.ERROR, "Failed to determine axis position", e);
-    }
+  synchronized void fail(Exception e) {
+    setInaccessible();
+    axisState.set(LOCATION_FAILED);
+    actualPosition.setProblem(() -> new SampleLocationUnknown(e));
+    requestedPosition.setProblem(() -> new SampleLocationUnknown(e));
+    log.log(Level.ERROR, "Failed to determine axis position", e);
   }
 
   public int getStepsFromLength(Quantity<Length> length) {
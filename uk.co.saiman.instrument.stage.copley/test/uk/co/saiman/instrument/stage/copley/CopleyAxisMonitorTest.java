@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.instrument.stage.copley.
+ *
+ * uk.co.saiman.instrument.stage.copley is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.instrument.stage.copley is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.instrument.stage.copley;
+
+import static java.time.Duration.ofSeconds;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.co.saiman.comms.copley.CopleyVariableID.DRIVE_EVENT_STATUS;
+import static uk.co.saiman.instrument.axis.AxisState.LOCATION_REACHED;
+import static uk.co.saiman.instrument.axis.AxisState.LOCATION_REQUESTED;
+import static uk.co.saiman.log.Log.discardingLog;
+import static uk.co.saiman.measurement.Units.metre;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.comms.copley.CopleyAxis;
+import uk.co.saiman.comms.copley.CopleyController;
+import uk.co.saiman.comms.copley.CopleyNode;
+import uk.co.saiman.comms.copley.EventStatusRegister;
+import uk.co.saiman.comms.copley.Int32;
+import uk.co.saiman.comms.copley.Variable;
+import uk.co.saiman.comms.copley.WritableVariable;
+import uk.co.saiman.measurement.scalar.Scalar;
+
+public class CopleyAxisMonitorTest {
+  private final CopleyAxisMonitorService monitors = new CopleyAxisMonitorService();
+  private final CopleyController controller = mock(CopleyController.class);
+  private final CopleyNode node = mock(CopleyNode.class);
+  private final CopleyAxis copleyAxis = mock(CopleyAxis.class);
+
+  @SuppressWarnings("unchecked")
+  private final WritableVariable<Int32> requestedPosition = mock(WritableVariable.class);
+
+  private final AtomicInteger polls = new AtomicInteger();
+  private final AtomicBoolean motionActive = new AtomicBoolean();
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void mockController() {
+    when(controller.getNode(0)).thenReturn(Optional.of(node));
+    when(node.getAxis(0)).thenReturn(Optional.of(copleyAxis));
+    when(copleyAxis.actualPosition()).thenReturn(mock(Variable.class));
+    when(copleyAxis.requestedPosition()).thenReturn(requestedPosition);
+    doReturn(mock(Variable.class)).when(copleyAxis).variable(DRIVE_EVENT_STATUS);
+
+    when(node.getVariables(any())).thenAnswer(invocation -> {
+      polls.incrementAndGet();
+      return List.of(new Int32(0), new Int32(0), status(motionActive.get()));
+    });
+  }
+
+  @AfterEach
+  public void deactivateMonitors() {
+    monitors.deactivate();
+  }
+
+  private static EventStatusRegister status(boolean motionActive) {
+    var status = new EventStatusRegister();
+    status.motionActive = motionActive;
+    return status;
+  }
+
+  private CopleyLinearAxis axis() {
+    return new CopleyLinearAxis(controller, 0, 0, monitors, discardingLog());
+  }
+
+  @Test
+  public void idleAxisIsPolledSlowly() throws InterruptedException {
+    axis();
+
+    Thread.sleep(CopleyAxisMonitor.IDLE_POLL_MILLISECONDS * 2 + 200);
+
+    int count = polls.get();
+    assertTrue(count >= 2 && count <= 4, "polls: " + count);
+  }
+
+  @Test
+  public void movingAxisIsPolledQuickly() throws InterruptedException {
+    motionActive.set(true);
+    axis();
+
+    Thread.sleep(CopleyAxisMonitor.IDLE_POLL_MILLISECONDS);
+
+    int expected = (int) (CopleyAxisMonitor.IDLE_POLL_MILLISECONDS
+        / CopleyAxisMonitor.ACTIVE_POLL_MILLISECONDS);
+    int count = polls.get();
+    assertTrue(count >= expected / 3, "polls: " + count);
+  }
+
+  @Test
+  public void requestedLocationIsPolledImmediately() throws InterruptedException {
+    var axis = axis();
+    Thread.sleep(CopleyAxisMonitor.IDLE_POLL_MILLISECONDS / 5);
+    int before = polls.get();
+
+    axis.requestLocation(new Scalar<>(metre().micro(), 100));
+    Thread.sleep(CopleyAxisMonitor.IDLE_POLL_MILLISECONDS / 5);
+
+    assertTrue(polls.get() > before);
+    assertEquals(LOCATION_REACHED, axis.axisState().get());
+  }
+
+  @Test
+  public void readingBeforeRequestWasSentDoesNotReachLocation() {
+    motionActive.set(true);
+    var axis = axis();
+    long staleRequests = axis.getSentRequestCount();
+
+    axis.requestLocation(new Scalar<>(metre().micro(), 100));
+
+    axis.update(staleRequests, new Int32(0), new Int32(100), status(false));
+    assertEquals(LOCATION_REQUESTED, axis.axisState().get());
+
+    axis.update(axis.getSentRequestCount(), new Int32(100), new Int32(100), status(false));
+    assertEquals(LOCATION_REACHED, axis.axisState().get());
+  }
+
+  @Test
+  public void readingWhileRequestIsSendingDoesNotReachLocationOrBlock() throws Exception {
+    motionActive.set(true);
+    var axis = axis();
+
+    var sending = new CountDownLatch(1);
+    var sent = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      sending.countDown();
+      sent.await(5, SECONDS);
+      return null;
+    }).when(requestedPosition).set(any());
+
+    var request = new Thread(() -> axis.requestLocation(new Scalar<>(metre().micro(), 100)));
+    request.start();
+    sending.await(5, SECONDS);
+
+    assertTimeoutPreemptively(
+        ofSeconds(1),
+        () -> axis.update(axis.getSentRequestCount(), new Int32(0), new Int32(0), status(false)));
+    assertEquals(LOCATION_REQUESTED, axis.axisState().get());
+
+    sent.countDown();
+    request.join();
+
+    axis.update(axis.getSentRequestCount(), new Int32(100), new Int32(100), status(false));
+    assertEquals(LOCATION_REACHED, axis.axisState().get());
+  }
+
+  @Test
+  public void stoppingDoesNotInterruptPollInProgress() throws Exception {
+    var polling = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var interrupted = new AtomicBoolean();
+    when(node.getVariables(any())).thenAnswer(invocation -> {
+      polling.countDown();
+      try {
+        release.await(5, SECONDS);
+      } catch (InterruptedException e) {
+        interrupted.set(true);
+      }
+      return List.of(new Int32(0), new Int32(0), status(false));
+    });
+
+    var axis = axis();
+    polling.await(5, SECONDS);
+    var monitor = monitors.register(axis); // the monitor already polling the axis
+    axis.stopPolling();
+
+    assertFalse(monitor.isPolling());
+    release.countDown();
+    Thread.sleep(50);
+    assertFalse(interrupted.get());
+  }
+}
@@ -129,22 +129,29 @@ class DataReceiverBuffer implements DataBuffer {
       var token = new Object();
       readQueue.offer(token);
 
-      timeout = MILLISECONDS.convert(timeout, timeUnit);
-      long startTime = System.currentTimeMillis();
-      do {
-        assertOpen();
-        long delay = timeout - System.currentTimeMillis() + startTime;
-        if (delay <= 0) {
-          throw new InterruptedByTimeoutException();
-        }
-        try {
-          wait(delay);
-        } catch (InterruptedException e) {
-          throw new InterruptedIOException();
-        }
-      } while (readQueue.element() != token || buffer.remaining() > this.buffer.position());
-
-      readQueue.poll();
+      /*
+       * The token must be given up however the wait ends, or a reader which
+       * times out would hold the head of the queue forever.
+       */
+      try {
+        timeout = MILLISECONDS.convert(timeout, timeUnit);
+        long startTime = System.currentTimeMillis();
+        do {
+          assertOpen();
+          long delay = timeout - System.currentTimeMillis() + startTime;
+          if (delay <= 0) {
+            throw new InterruptedByTimeoutException();
+          }
+          try {
+            wait(delay);
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        } while (readQueue.element() != token || buffer.remaining() > this.buffer.position());
+      } finally {
+        readQueue.remove(token);
+        notifyAll();
+      }
     }
 
     this.buffer.flip();
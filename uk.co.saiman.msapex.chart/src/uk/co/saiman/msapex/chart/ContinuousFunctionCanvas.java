@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.msapex.chart.
+ *
+ * uk.co.saiman.msapex.chart is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.msapex.chart is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.msapex.chart;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * A layer of a {@link ContinuousFunctionChart} which draws the
+ * {@link ContinuousFunctionSeries#renderEnvelope(Range, Range) envelopes} of
+ * its series directly onto a canvas, rather than having the chart build a path
+ * element and a data item in the scene graph for every point.
+ * <p>
+ * Display positions are calculated from the primitive envelope buffers into
+ * buffers owned by the layer, so drawing a frame allocates nothing once the
+ * buffers have grown to fit the largest envelope.
+ * 
+ * @author Elias N Vasylenko
+ */
+class ContinuousFunctionCanvas extends Canvas {
+  /*
+   * The default series colors of the modena stylesheet, in the order they are
+   * assigned to the series of a line chart.
+   */
+  private static final Color[] SERIES_COLORS = {
+      Color.web("#f3622d"),
+      Color.web("#fba71b"),
+      Color.web("#57b757"),
+      Color.web("#41a9c9"),
+      Color.web("#4258c9"),
+      Color.web("#9a42c8"),
+      Color.web("#c84164"),
+      Color.web("#888888") };
+  private static final double STROKE_WIDTH = 1;
+
+  private double[] xPositions = new double[0];
+  private double[] yPositions = new double[0];
+
+  /**
+   * Draw the envelopes last rendered by the given series.
+   * 
+   * @param series
+   *          the series to draw, in order of assigned color
+   * @param domain
+   *          the range of the domain axis
+   * @param domainOrigin
+   *          the display position of the lower bound of the domain axis
+   * @param range
+   *          the range of the range axis
+   * @param rangeOrigin
+   *          the display position of the lower bound of the range axis
+   */
+  public void draw(
+      Iterable<? extends ContinuousFunctionSeries<?, ?>> series,
+      Range<?> domain,
+      double domainOrigin,
+      Range<?> range,
+      double rangeOrigin) {
+    GraphicsContext context = getGraphicsContext2D();
+    context.clearRect(0, 0, getWidth(), getHeight());
+    context.setLineWidth(STROKE_WIDTH);
+
+    double domainLower = domain.lowerBound();
+    double domainScale = domain.interval() > 0 ? domain.pixelLength() / domain.interval() : 0;
+    double rangeLower = range.lowerBound();
+    double rangeScale = range.interval() > 0 ? range.pixelLength() / range.interval() : 0;
+
+    int color = 0;
+    for (ContinuousFunctionSeries<?, ?> s : series) {
+      int length = s.getEnvelopeLength();
+      double[] domainValues = s.getEnvelopeDomainValues();
+      double[] rangeValues = s.getEnvelopeRangeValues();
+
+      if (xPositions.length < length) {
+        xPositions = new double[length];
+        yPositions = new double[length];
+      }
+      for (int i = 0; i < length; i++) {
+        xPositions[i] = domainOrigin + (domainValues[i] - domainLower) * domainScale;
+        yPositions[i] = rangeOrigin + (rangeValues[i] - rangeLower) * rangeScale;
+      }
+
+      context.setStroke(SERIES_COLORS[color++ % SERIES_COLORS.length]);
+      context.strokePolyline(xPositions, yPositions, length);
+    }
+  }
+}
@@ -31,7 +31,7 @@ import static java.util.Arrays.asList;
 import static uk.co.saiman.mathematics.Interval.bounded;
 import static uk.co.saiman.mathematics.Interval.unbounded;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -66,6 +66,12 @@ public class ContinuousFunctionChart<X extends Quantity<X>, Y extends Quantity<Y
 
   private final Set<ContinuousFunctionSeries<X, Y>> series;
 
+  /*
+   * Canvas rendering
+   */
+  private final ContinuousFunctionCanvas canvas;
+  private boolean canvasRendering;
+
   private Interval<Double> zoom;
   private Interval<Double> domain;
   private Interval<Double> effectiveZoom;
@@ -96,7 +102,10 @@ public class ContinuousFunctionChart<X extends Quantity<X>, Y extends Quantity<Y
 
     createTimer();
 
-    series = new HashSet<>();
+    series = new LinkedHashSet<>();
+
+    canvas = new ContinuousFunctionCanvas();
+    canvas.setManaged(false);
 
     annotationLayer = new AnnotationLayer<>(getXAxis().unitProperty(), getYAxis().unitProperty());
     annotationLayer.setManaged(false);
@@ -149,11 +158,17 @@ public class ContinuousFunctionChart<X extends Quantity<X>, Y extends Quantity<Y
     ContinuousFunctionSeries<X, Y> continuousFunctionSeries = new ContinuousFunctionSeries<>();
 
     series.add(continuousFunctionSeries);
+    if (!canvasRendering) {
+      addChartSeries(continuousFunctionSeries);
+    }
+
+    return continuousFunctionSeries;
+  }
+
+  private void addChartSeries(ContinuousFunctionSeries<X, Y> continuousFunctionSeries) {
     getData().add(continuousFunctionSeries.getSeries());
     Node line = continuousFunctionSeries.getSeries().getNode().lookup(".chart-series-line");
     line.setStyle("-fx-stroke-width: 1.0px; -fx-effect: null;");
-
-    return continuousFunctionSeries;
   }
 
   public ContinuousFunctionSeries<X, Y> addSeries(ContinuousFunction<X, Y> function) {
@@ -168,6 +183,46 @@ public class ContinuousFunctionChart<X extends Quantity<X>, Y extends Quantity<Y
     }
   }
 
+  /**
+   * Choose whether the series of the chart are drawn onto a single canvas layer
+   * or built into the scene graph of the underlying line chart.
+   * <p>
+   * When drawn onto a canvas, each series is resampled into primitive buffers
+   * and drawn from there, so no data items or path elements are created for
+   * the points of the series. This is much cheaper for large or frequently
+   * updated functions, but the lines cannot be styled through CSS. Axes, zoom
+   * and annotations behave the same either way.
+   * 
+   * @param canvasRendering
+   *          true to draw the series onto a canvas, false to build them into
+   *          the scene graph
+   */
+  public void setCanvasRendering(boolean canvasRendering) {
+    if (this.canvasRendering == canvasRendering) {
+      return;
+    }
+    this.canvasRendering = canvasRendering;
+
+    if (canvasRendering) {
+      series.forEach(s -> getData().remove(s.getSeries()));
+      getPlotChildren().add(canvas);
+    } else {
+      getPlotChildren().remove(canvas);
+      series.forEach(this::addChartSeries);
+    }
+    series.forEach(ContinuousFunctionSeries::invalidateRender);
+
+    requestChartLayout();
+  }
+
+  /**
+   * @return true if the series of the chart are drawn onto a canvas layer,
+   *         false if they are built into the scene graph
+   */
+  public boolean isCanvasRendering() {
+    return canvasRendering;
+  }
+
   private void renderData() {
     boolean seriesChanged = series
         .stream()
@@ -404,7 +459,11 @@ public class ContinuousFunctionChart<X extends Quantity<X>, Y extends Quantity<Y
 
   @Override
   protected void layoutPlotChildren() {
-    series.stream().forEach(s -> s.render(getXAxis().getRange(), getYAxis().getRange()));
+    if (canvasRendering) {
+      layoutCanvas();
+    } else {
+      series.stream().forEach(s -> s.render(getXAxis().getRange(), getYAxis().getRange()));
+    }
 
     super.layoutPlotChildren();
 
@@ -415,6 +474,23 @@ public class ContinuousFunctionChart<X extends Quantity<X>, Y extends Quantity<Y
         .resizeRelocate(bounds.getMinX(), bounds.getMinY(), bounds.getWidth(), bounds.getHeight());
   }
 
+  private void layoutCanvas() {
+    Range<X> domain = getXAxis().getRange();
+    Range<Y> range = getYAxis().getRange();
+
+    series.forEach(s -> s.renderEnvelope(domain, range));
+
+    canvas.setWidth(getXAxis().getWidth());
+    canvas.setHeight(getYAxis().getHeight());
+    canvas
+        .draw(
+            series,
+            domain,
+            getXAxis().getDisplayPosition(domain.lowerBound()),
+            range,
+            getYAxis().getDisplayPosition(range.lowerBound()));
+  }
+
   private Bounds getMeasurementArea() {
     double xLower = getXAxis().getLowerBound();
     double xUpper = getXAxis().getUpperBound();
@@ -87,6 +87,13 @@ public class ContinuousFunctionSeries<X extends Quantity<X>, Y extends Quantity<
     }
   }
 
+  /*
+   * Envelope data
+   */
+  private double[] domainValues = new double[0];
+  private double[] rangeValues = new double[0];
+  private int envelopeLength;
+
   /*
    * Series data
    */
@@ -152,18 +159,65 @@ public class ContinuousFunctionSeries<X extends Quantity<X>, Y extends Quantity<
    *          the range to render into
    */
   public void render(Range<X> domain, Range<Y> range) {
+    if (!renderEnvelope(domain, range)) {
+      return;
+    }
+
+    ObservableList<Data<Number, Number>> data = series.getData();
+
+    if (data.size() > envelopeLength) {
+      data.remove(envelopeLength, data.size());
+    }
+
+    for (int i = 0; i < data.size(); i++) {
+      data.get(i).setXValue(domainValues[i]);
+      data.get(i).setYValue(rangeValues[i]);
+    }
+
+    int remainingData = envelopeLength - data.size();
+    if (remainingData > 0) {
+      List<Data<Number, Number>> dataTemp = new ArrayList<>(remainingData);
+
+      for (int i = data.size(); i < envelopeLength; i++) {
+        dataTemp.add(new Data<>(domainValues[i], rangeValues[i]));
+      }
+
+      data.addAll(dataTemp);
+    }
+  }
+
+  /**
+   * Render the {@link #setContinuousFunction(ContinuousFunction) latest set
+   * continuous function} into the {@link #getEnvelopeDomainValues() envelope
+   * buffers} for the given range and resolution, without updating the
+   * {@link #getSeries() series}.
+   * <p>
+   * The envelope is a resampling of the function with at most a few points to
+   * each pixel, which preserves the extremes of the function within each
+   * pixel. The buffers are reused between renders, so no allocation is made
+   * unless the envelope grows.
+   * 
+   * @param domain
+   *          the domain to render over
+   * @param range
+   *          the range to render into
+   * @return true if the envelope was rendered again, false if it was already
+   *         up to date
+   */
+  public boolean renderEnvelope(Range<X> domain, Range<Y> range) {
     ContinuousFunction<X, Y> lastPreparedContinuousFunction;
     synchronized (this) {
       lastPreparedContinuousFunction = this.lastPreparedContinuousFunction;
 
       if (lastPreparedContinuousFunction == null) {
-        series.setData(FXCollections.observableArrayList());
-        return;
+        lastRenderInformation = null;
+        envelopeLength = 0;
+        return true;
       }
 
       RenderInformation renderInformation = new RenderInformation(domain, range);
       if (lastRenderInformation != null && renderInformation.equals(lastRenderInformation)) {
-        return;
+        return false;
       }
       lastRenderInformation = renderInformation;
     }
@@ -172,31 +226,16 @@ public class ContinuousFunctionSeries<X extends Quantity<X>, Y extends Quantity<
         lastPreparedContinuousFunction,
         domain);
 
-    ObservableList<Data<Number, Number>> data = series.getData();
-
-    if (data.size() > sampledContinuousFunction.getDepth()) {
-      data.remove(sampledContinuousFunction.getDepth(), data.size());
-    }
-
-    for (int i = 0; i < data.size(); i++) {
-      data.get(i).setXValue(sampledContinuousFunction.domain().getSample(i));
-      data.get(i).setYValue(sampledContinuousFunction.range().getSample(i));
+    int depth = sampledContinuousFunction.getDepth();
+    if (domainValues.length < depth) {
+      domainValues = new double[depth];
+      rangeValues = new double[depth];
     }
+    sampledContinuousFunction.domain().copyInto(0, domainValues, 0, depth);
+    sampledContinuousFunction.range().copyInto(0, rangeValues, 0, depth);
+    envelopeLength = depth;
 
-    int remainingData = sampledContinuousFunction.getDepth() - data.size();
-    if (remainingData > 0) {
-      List<Data<Number, Number>> dataTemp = new ArrayList<>(remainingData);
-
-      for (int i = data.size(); i < sampledContinuousFunction.getDepth(); i++) {
-        dataTemp
-            .add(
-                new Data<>(
-                    sampledContinuousFunction.domain().getSample(i),
-                    sampledContinuousFunction.range().getSample(i)));
-      }
-
-      data.addAll(dataTemp);
-    }
+    return true;
   }
 
   private SampledContinuousFunction<X, ?> resampleLastRendered(
@@ -218,6 +257,39 @@ public class ContinuousFunctionSeries<X extends Quantity<X>, Y extends Quantity<
     return lastPreparedContinuousFunction;
   }
 
+  /*
+   * Force the next render to resample, for when the series has not been kept up
+   * to date with the envelope.
+   */
+  synchronized void invalidateRender() {
+    lastRenderInformation = null;
+  }
+
+  /**
+   * @return the number of points in the envelope last rendered
+   */
+  public int getEnvelopeLength() {
+    return envelopeLength;
+  }
+
+  /**
+   * @return the values in the domain of the points in the envelope last
+   *         rendered, valid up to the {@link #getEnvelopeLength() envelope
+   *         length}
+   */
+  public double[] getEnvelopeDomainValues() {
+    return domainValues;
+  }
+
+  /**
+   * @return the values in the range of the points in the envelope last
+   *         rendered, valid up to the {@link #getEnvelopeLength() envelope
+   *         length}
+   */
+  public double[] getEnvelopeRangeValues() {
+    return rangeValues;
+  }
+
   /**
    * @return The series providing a view of the continuous function
    */
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.msapex.chart.
+ *
+ * uk.co.saiman.msapex.chart is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.msapex.chart is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.msapex.chart;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.RegularSampledDomain;
+
+/**
+ * A headless frame-time benchmark comparing the series and canvas rendering
+ * paths of a {@link ContinuousFunctionChart}.
+ * <p>
+ * Each frame sets a new function on each of four live series, as an
+ * acquisition does, and renders them at the width of a typical chart. The
+ * series path is measured up to the update of its data items, as the scene
+ * graph cannot be laid out without a running toolkit, so it understates the
+ * true cost of that path. The canvas path is measured up to the recording of
+ * its drawing commands.
+ * <p>
+ * Run from the test classpath with optional arguments for the number of
+ * samples in each function and the number of frames to measure.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class ContinuousFunctionCanvasBenchmark {
+  private static final int SERIES = 4;
+  private static final double WIDTH = 1000;
+  private static final double HEIGHT = 600;
+
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+
+  private final int depth;
+  private final List<ArraySampledContinuousFunction<Time, Dimensionless>> functions;
+  private final Range<Time> domain;
+  private final Range<Dimensionless> range;
+
+  public ContinuousFunctionCanvasBenchmark(int depth) {
+    this.depth = depth;
+
+    Random random = new Random(0);
+    functions = new ArrayList<>();
+    for (int f = 0; f < SERIES * 2; f++) {
+      double[] intensities = new double[depth];
+      for (int i = 0; i < depth; i++) {
+        intensities[i] = random.nextGaussian();
+      }
+      functions
+          .add(
+              new ArraySampledContinuousFunction<>(
+                  new RegularSampledDomain<>(time, depth, 1, 0),
+                  count,
+                  intensities));
+    }
+
+    domain = new Range<>(0, depth, WIDTH, time, 0, 0, null);
+    range = new Range<>(-5, 5, -HEIGHT, count, 0, 0, null);
+  }
+
+  private List<ContinuousFunctionSeries<Time, Dimensionless>> createSeries() {
+    List<ContinuousFunctionSeries<Time, Dimensionless>> series = new ArrayList<>();
+    for (int s = 0; s < SERIES; s++) {
+      series.add(new ContinuousFunctionSeries<>());
+    }
+    return series;
+  }
+
+  /*
+   * Publish new copies of the functions, so that nothing cached by a function
+   * survives between frames.
+   */
+  private void update(List<ContinuousFunctionSeries<Time, Dimensionless>> series, int frame) {
+    for (int s = 0; s < SERIES; s++) {
+      var function = functions.get((frame + s) % functions.size());
+      series
+          .get(s)
+          .setContinuousFunction(
+              new ArraySampledContinuousFunction<>(
+                  function.domain(),
+                  function.range().getUnit(),
+                  function.range().toArray()));
+      series.get(s).prepare();
+    }
+  }
+
+  public double seriesFrameTime(int frames) {
+    var series = createSeries();
+
+    long time = 0;
+    for (int frame = 0; frame < frames; frame++) {
+      update(series, frame);
+
+      long start = System.nanoTime();
+      series.forEach(s -> s.render(domain, range));
+      time += System.nanoTime() - start;
+    }
+    return time / 1e6 / frames;
+  }
+
+  public double canvasFrameTime(int frames) {
+    var series = createSeries();
+    var canvas = new ContinuousFunctionCanvas();
+    canvas.setWidth(WIDTH);
+    canvas.setHeight(HEIGHT);
+
+    long time = 0;
+    for (int frame = 0; frame < frames; frame++) {
+      update(series, frame);
+
+      long start = System.nanoTime();
+      series.forEach(s -> s.renderEnvelope(domain, range));
+      canvas.draw(series, domain, 0, range, HEIGHT);
+      time += System.nanoTime() - start;
+    }
+    return time / 1e6 / frames;
+  }
+
+  public static void main(String... args) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+    int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+    var benchmark = new ContinuousFunctionCanvasBenchmark(depth);
+
+    for (int round = 0; round < 3; round++) {
+      System.out
+          .printf(
+              "%d series of %d samples: series %.2f ms/frame, canvas %.2f ms/frame%n",
+              SERIES,
+              benchmark.depth,
+              benchmark.seriesFrameTime(frames),
+              benchmark.canvasFrameTime(frames));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.msapex.chart.
+ *
+ * uk.co.saiman.msapex.chart is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.msapex.chart is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.msapex.chart;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import javax.measure.Unit;
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.data.function.ArraySampledContinuousFunction;
+import uk.co.saiman.data.function.RegularSampledDomain;
+
+public class ContinuousFunctionCanvasTest {
+  @SuppressWarnings("unchecked")
+  private final Unit<Time> time = mock(Unit.class);
+  @SuppressWarnings("unchecked")
+  private final Unit<Dimensionless> count = mock(Unit.class);
+
+  private ArraySampledContinuousFunction<Time, Dimensionless> sawtooth(int depth, int period) {
+    double[] intensities = new double[depth];
+    for (int i = 0; i < depth; i++) {
+      intensities[i] = i % period;
+    }
+    return new ArraySampledContinuousFunction<>(
+        new RegularSampledDomain<>(time, depth, 1, 0),
+        count,
+        intensities);
+  }
+
+  private <T extends javax.measure.Quantity<T>> Range<T> range(
+      Unit<T> unit,
+      double lower,
+      double upper,
+      double pixels) {
+    return new Range<>(lower, upper, pixels, unit, 0, 0, null);
+  }
+
+  @Test
+  public void envelopeKeepsExtremesTest() {
+    var series = new ContinuousFunctionSeries<Time, Dimensionless>();
+    series.setContinuousFunction(sawtooth(100 * 1024, 100));
+    series.prepare();
+
+    assertTrue(
+        series.renderEnvelope(range(time, 0, 100 * 1024, 100), range(count, 0, 100, -100)));
+
+    int length = series.getEnvelopeLength();
+    assertTrue(length <= 4 * 100);
+
+    double minimum = Double.MAX_VALUE;
+    double maximum = -Double.MAX_VALUE;
+    for (int i = 0; i < length; i++) {
+      minimum = Math.min(minimum, series.getEnvelopeRangeValues()[i]);
+      maximum = Math.max(maximum, series.getEnvelopeRangeValues()[i]);
+    }
+    assertEquals(0, minimum);
+    assertEquals(99, maximum);
+  }
+
+  @Test
+  public void unchangedEnvelopeIsNotRenderedAgainTest() {
+    var series = new ContinuousFunctionSeries<Time, Dimensionless>();
+    series.setContinuousFunction(sawtooth(1024, 10));
+    series.prepare();
+
+    assertTrue(series.renderEnvelope(range(time, 0, 1024, 100), range(count, 0, 10, -100)));
+    double[] domainValues = series.getEnvelopeDomainValues();
+
+    assertTrue(!series.renderEnvelope(range(time, 0, 1024, 100), range(count, 0, 10, -100)));
+    assertTrue(series.renderEnvelope(range(time, 0, 512, 100), range(count, 0, 10, -100)));
+    assertSame(domainValues, series.getEnvelopeDomainValues());
+  }
+
+  @Test
+  public void drawHeadlessTest() {
+    var series = new ContinuousFunctionSeries<Time, Dimensionless>();
+    series.setContinuousFunction(sawtooth(1024, 10));
+    series.prepare();
+
+    var domain = range(time, 0, 1024, 800);
+    var range = range(count, 0, 10, -600);
+    series.renderEnvelope(domain, range);
+
+    var canvas = new ContinuousFunctionCanvas();
+    canvas.setWidth(800);
+    canvas.setHeight(600);
+    canvas.draw(List.of(series, series), domain, 0, range, 600);
+  }
+}
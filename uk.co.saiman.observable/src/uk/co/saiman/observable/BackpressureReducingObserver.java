@@ -29,14 +29,34 @@ package uk.co.saiman.observable;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+/**
+ * Introduce backpressure by reducing messages until a request is made
+ * downstream, then forwarding the reduction.
+ * <p>
+ * Messages are reduced on the upstream thread and forwarded on whichever
+ * thread finds both a reduction and a request outstanding, without locking.
+ * Forwarding is serialized by a count of work in progress, so the downstream
+ * observer never receives concurrent events.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <T> the type of messages from upstream
+ * @param <M> the type of the reduction
+ */
 public abstract class BackpressureReducingObserver<T, M> extends PassthroughObserver<T, M> {
-  private M current;
-  private boolean complete;
+  private final AtomicReference<M> current = new AtomicReference<>();
   private final RequestCount outstandingRequests = new RequestCount();
+  private final AtomicInteger forwardsInProgress = new AtomicInteger();
+
+  private volatile boolean complete;
+  private volatile Throwable failure;
+  private boolean done;
 
   public BackpressureReducingObserver(Observer<? super M> downstreamObserver) {
     super(downstreamObserver);
@@ -91,12 +111,8 @@ public abstract class BackpressureReducingObserver<T, M> extends PassthroughObse
     return new Observation() {
       @Override
       public void request(long count) {
-        M nextMessage;
-        synchronized (outstandingRequests) {
-          outstandingRequests.request(count);
-          nextMessage = getNextMessage();
-        }
-        sendNextMessage(nextMessage);
+        outstandingRequests.request(count);
+        forward();
       }
 
       @Override
@@ -115,59 +131,67 @@ public abstract class BackpressureReducingObserver<T, M> extends PassthroughObse
 
   public abstract M accumulate(M current, T message);
 
-  private M getNextMessage() {
-    synchronized (outstandingRequests) {
-      if (current != null && !outstandingRequests.isFulfilled()) {
-        outstandingRequests.fulfil();
-        M message = current;
-        current = null;
-        return message;
-      } else {
-        return null;
-      }
+  /*
+   * Forward the current reduction if there is an outstanding request, and
+   * forward any terminal event once the reduction has been drained. Whichever
+   * thread moves the count of work in progress away from zero does the
+   * forwarding for every thread which arrives while it is busy.
+   */
+  private void forward() {
+    if (forwardsInProgress.getAndIncrement() != 0) {
+      return;
     }
-  }
 
-  private void sendNextMessage(M nextMessage) {
-    if (nextMessage != null) {
-      getDownstreamObserver().onNext(nextMessage);
-      synchronized (outstandingRequests) {
-        if (complete && current == null) {
-          getDownstreamObserver().onComplete();
+    int missed = 1;
+    do {
+      if (!done) {
+        Throwable failure = this.failure;
+        if (failure != null) {
+          done = true;
+          current.set(null);
+          getDownstreamObserver().onFail(failure);
+        } else {
+          M message;
+          while (!outstandingRequests.isFulfilled() && (message = current.getAndSet(null)) != null) {
+            outstandingRequests.fulfil();
+            getDownstreamObserver().onNext(message);
+          }
+          if (complete && current.get() == null) {
+            done = true;
+            getDownstreamObserver().onComplete();
+          }
         }
       }
-    }
+    } while ((missed = forwardsInProgress.addAndGet(-missed)) != 0);
   }
 
+  /*
+   * Take the reduction while accumulating, so that it is never forwarded part
+   * way through, and so that accumulation is never repeated. This is safe
+   * because upstream messages are never concurrent.
+   */
   @Override
   public void onNext(T message) {
-    M nextMessage;
-    synchronized (outstandingRequests) {
-      if (current == null)
-        current = initialize(message);
-      else
-        current = accumulate(current, message);
-      nextMessage = getNextMessage();
-    }
-    sendNextMessage(nextMessage);
+    M reduction = current.getAndSet(null);
+    if (reduction == null)
+      reduction = initialize(message);
+    else
+      reduction = accumulate(reduction, message);
+    current.set(reduction);
+
+    forward();
   }
 
   @Override
   public void onComplete() {
-    synchronized (outstandingRequests) {
-      complete = true;
-      if (current == null) {
-        getDownstreamObserver().onComplete();
-      }
-    }
+    complete = true;
+    forward();
   }
 
   @Override
   public void onFail(Throwable t) {
-    synchronized (outstandingRequests) {
-      complete = true;
-      current = null;
-      getDownstreamObserver().onFail(t);
-    }
+    failure = t;
+    complete = true;
+    forward();
   }
 }
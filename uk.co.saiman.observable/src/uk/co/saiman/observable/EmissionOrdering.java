@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.observable.
+ *
+ * uk.co.saiman.observable is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.observable is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.observable;
+
+/**
+ * The ordering guarantee a {@link HotObservable} makes to its observers when
+ * events are fired from more than one thread at a time.
+ * 
+ * @author Elias N Vasylenko
+ */
+public enum EmissionOrdering {
+  /**
+   * Events are delivered to each observer one at a time, and every observer
+   * sees them in the same order. A producer firing an event while another is
+   * being delivered waits for it to complete. An event fired by an observer
+   * during delivery is queued, and delivered after the current event, before
+   * the outermost call returns, so observers never receive concurrent or
+   * reentrant calls.
+   */
+  SERIALIZED,
+
+  /**
+   * Events are delivered on the thread which fires them, without coordinating
+   * with other producers. Observers may receive concurrent calls, and events
+   * fired concurrently may be seen in a different order by different
+   * observers. This is suitable for a single producer or for observers which
+   * are thread safe and indifferent to order.
+   */
+  CONCURRENT
+}
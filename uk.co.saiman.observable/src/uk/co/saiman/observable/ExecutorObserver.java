@@ -27,36 +27,211 @@
  */
 package uk.co.saiman.observable;
 
+import static java.lang.Thread.currentThread;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Deliver events to the downstream observer on the given executor.
+ * <p>
+ * Events are placed in a bounded multiple-producer single-consumer ring, and a
+ * single drain task is submitted to the executor whenever the ring goes from
+ * empty to non-empty. The drain task delivers events in order in batches of up
+ * to the capacity of the ring, resubmitting itself between batches so as not to
+ * monopolize the executor, so the downstream observer never receives concurrent
+ * events.
+ * <p>
+ * Producers never wait for the executor. Events which arrive while the ring is
+ * full spill into an unbounded overflow queue, and until that queue has been
+ * drained further events follow them there, so the events of each producer are
+ * still delivered in the order they were fired. The ring only bounds the
+ * number of events which can be queued without allocation. Events fired from
+ * within the drain task itself, for example when a downstream request is
+ * fulfilled synchronously, are queued privately to the drain task, and
+ * delivered immediately after the event which caused them, as they would be if
+ * delivered inline.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <T> the type of messages
+ */
 public class ExecutorObserver<T> extends SafeObserver<T> {
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private static final Object COMPLETE = new Object();
+
+  private static class Observe {
+    private final Observation observation;
+
+    Observe(Observation observation) {
+      this.observation = observation;
+    }
+  }
+
+  private static class Failure {
+    private final Throwable cause;
+
+    Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+
   private final Executor executor;
 
+  private final AtomicReferenceArray<Object> ring;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final Queue<Object> overflow = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger eventsInProgress = new AtomicInteger();
+  private final Runnable drain = this::drain;
+  private volatile Thread drainThread;
+  private final Queue<Object> reentrantEvents = new ArrayDeque<>();
+
   public ExecutorObserver(Observer<? super T> downstreamObserver, Executor executor) {
+    this(downstreamObserver, executor, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param downstreamObserver the observer to deliver events to
+   * @param executor           the executor to deliver events on
+   * @param capacity           the number of events which may be pending delivery
+   *                           before further events overflow into an unbounded
+   *                           queue, rounded up to a power of two
+   */
+  public ExecutorObserver(Observer<? super T> downstreamObserver, Executor executor, int capacity) {
     super(downstreamObserver);
 
     this.executor = requireNonNull(executor);
+
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
   }
 
   @Override
   public void onNext(T message) {
-    executor.execute(() -> super.onNext(message));
+    offer(message);
   }
 
   @Override
   public void onObserve(Observation observation) {
-    executor.execute(() -> super.onObserve(observation));
+    offer(new Observe(observation));
   }
 
   @Override
   public void onComplete() {
-    executor.execute(() -> super.onComplete());
+    offer(COMPLETE);
   }
 
   @Override
   public void onFail(Throwable t) {
-    executor.execute(() -> super.onFail(t));
+    offer(new Failure(t));
+  }
+
+  private void offer(Object event) {
+    if (drainThread == currentThread()) {
+      reentrantEvents.add(event);
+      return;
+    }
+
+    if (!overflow.isEmpty() || !tryOffer(event)) {
+      overflow.add(event);
+    }
+
+    if (eventsInProgress.getAndIncrement() == 0) {
+      executor.execute(drain);
+    }
+  }
+
+  private boolean tryOffer(Object event) {
+    long position;
+    do {
+      position = tail.get();
+      if (position - head.get() > mask) {
+        return false;
+      }
+    } while (!tail.compareAndSet(position, position + 1));
+
+    ring.lazySet((int) position & mask, event);
+    return true;
+  }
+
+  private void drain() {
+    drainThread = currentThread();
+    boolean resubmitted = false;
+    try {
+      int missed = 1;
+      int remaining = ring.length();
+      do {
+        /*
+         * A slot which has been claimed but not yet filled stops the batch. The
+         * producer which claimed it has yet to count its event, so we will find
+         * it on the next pass. An overflowing event may follow events of the same
+         * producer which are still in the ring, so the overflow is only taken
+         * from once every claimed slot has been taken.
+         */
+        Object event;
+        while ((event = take()) != null) {
+          do {
+            deliver(event);
+          } while ((event = reentrantEvents.poll()) != null);
+
+          if (--remaining == 0) {
+            /*
+             * The resubmitted task may start on another thread before we return,
+             * so we must let go of the drain before it does.
+             */
+            drainThread = null;
+            resubmitted = true;
+            executor.execute(drain);
+            return;
+          }
+        }
+      } while ((missed = eventsInProgress.addAndGet(-missed)) != 0);
+    } finally {
+      if (!resubmitted) {
+        drainThread = null;
+      }
+    }
+  }
+
+  private Object take() {
+    long position = head.get();
+    Object event = ring.get((int) position & mask);
+    if (event != null) {
+      ring.lazySet((int) position & mask, null);
+      head.lazySet(position + 1);
+    } else if (position == tail.get()) {
+      event = overflow.poll();
+    }
+    return event;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void deliver(Object event) {
+    if (event == COMPLETE) {
+      super.onComplete();
+    } else if (event instanceof Failure) {
+      super.onFail(((Failure) event).cause);
+    } else if (event instanceof Observe) {
+      super.onObserve(((Observe) event).observation);
+    } else {
+      super.onNext((T) event);
+    }
   }
 }
@@ -27,16 +27,23 @@
  */
 package uk.co.saiman.observable;
 
+import static java.lang.Thread.currentThread;
 import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
+import static uk.co.saiman.observable.EmissionOrdering.CONCURRENT;
+import static uk.co.saiman.observable.EmissionOrdering.SERIALIZED;
 
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
+import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 /**
@@ -44,9 +51,19 @@ import java.util.function.Consumer;
  * listeners to receive events fired with {@link #next(Object)}.
  * <p>
  * Addition and removal of observers, as well as the firing of events, can all
- * be safely performed asynchronously. By default, these actions do however
- * block until they have been completed. If effectively non-blocking behavior is
- * required, it is necessary to introduce backpressure via e.g. a buffer.
+ * be safely performed asynchronously. Observers are kept in a copy-on-write
+ * array which changes only when an observer is added or removed, so firing an
+ * event takes no monitor and makes no allocation. How events fired
+ * concurrently from different threads are delivered is determined by the
+ * {@link EmissionOrdering ordering policy}, which by default is
+ * {@link EmissionOrdering#SERIALIZED serialized}. Either way an event has been
+ * delivered to every observer by the time the call which fired it returns.
+ * <p>
+ * If an executor is given then each event is delivered to every observer on
+ * the executor, and firing the event blocks until all deliveries have
+ * completed. Events are always serialized in this mode. If effectively
+ * non-blocking behavior is required, it is necessary to introduce backpressure
+ * via e.g. a buffer.
  * <p>
  * This implementation does not support backpressure, so listeners which need to
  * control demand must compose the observable with e.g. a buffering or dropping
@@ -56,16 +73,70 @@ import java.util.function.Consumer;
  * @param <M> The type of event message to produce
  */
 public class HotObservable<M> implements Observable<M> {
-  private boolean live = true;
-  private Set<ObservationImpl<M>> observations;
+  private static final ObservationImpl<?>[] NO_OBSERVATIONS = new ObservationImpl<?>[0];
+  private static final Object COMPLETE = new Object();
+
+  private static class Failure {
+    private final Throwable cause;
+
+    Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+
+  private volatile boolean live = true;
+  private volatile Object terminalSignal;
+  private volatile ObservationImpl<M>[] observations = noObservations();
+
   private final Executor executor;
+  private final EmissionOrdering ordering;
+
+  /*
+   * Serialized emission. Events fired by an observer during delivery are only
+   * touched by the thread holding the lock.
+   */
+  private final ReentrantLock emissionLock = new ReentrantLock();
+  private final Queue<Object> reentrantEmissions = new ArrayDeque<>();
+
+  /*
+   * Concurrent emission. A terminal event waits for any messages which are
+   * still being delivered, and is delivered by whichever thread finishes last,
+   * so no observer receives a message after it has terminated.
+   */
+  private final AtomicInteger concurrentEmissions = new AtomicInteger();
+  private final AtomicReference<Object> pendingTerminal = new AtomicReference<>();
+
+  /*
+   * Executor dispatch. Emissions are serialized in executor mode, so these are
+   * only ever used by one emitting thread at a time.
+   */
+  private final AtomicInteger dispatchesInProgress;
+  private Object dispatchSignal;
+  private volatile Thread dispatchThread;
 
   public HotObservable() {
+    this(SERIALIZED);
+  }
+
+  public HotObservable(EmissionOrdering ordering) {
     this.executor = null;
+    this.ordering = requireNonNull(ordering);
+    this.dispatchesInProgress = null;
   }
 
   public HotObservable(Executor executor) {
     this.executor = requireNonNull(executor);
+    this.ordering = SERIALIZED;
+    this.dispatchesInProgress = new AtomicInteger();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <M> ObservationImpl<M>[] noObservations() {
+    return (ObservationImpl<M>[]) NO_OBSERVATIONS;
+  }
+
+  public EmissionOrdering getOrdering() {
+    return ordering;
   }
 
   @Override
@@ -74,45 +145,61 @@ public class HotObservable<M> implements Observable<M> {
   }
 
   protected ObservationImpl<M> observeImpl(Observer<? super M> observer) {
-    ObservationImpl<M> observation = new ObservationImpl<M>(observer) {
-      @Override
-      public void cancelImpl() {
-        cancelObservation(this);
-      }
-
-      @Override
-      public void request(long count) {}
-
-      @Override
-      public long getPendingRequestCount() {
-        return Long.MAX_VALUE;
+    HotObservation observation = new HotObservation(observer);
+
+    boolean observed = false;
+    while (true) {
+      /*
+       * Observe before the observation is published, so that no event can
+       * overtake it, and outside the monitor, so that an observer may cancel or
+       * fire events from onObserve without contending for the monitor with a
+       * thread which is emitting.
+       */
+      if (!observed && isLive()) {
+        forObservers(singletonList(observation), ObservationImpl::onObserve);
+        observed = true;
+        if (observation.isDisposed()) {
+          return observation;
+        }
       }
-    };
 
-    synchronized (this) {
-      boolean opened = observations == null;
+      Object terminal;
+      synchronized (this) {
+        if (observed == isLive()) {
+          boolean opened = observations.length == 0;
 
-      if (opened) {
-        observations = new LinkedHashSet<>();
-      }
-      observations.add(observation);
+          ObservationImpl<M>[] observations = Arrays.copyOf(this.observations, this.observations.length + 1);
+          observations[observations.length - 1] = observation;
+          this.observations = observations;
 
-      if (isLive()) {
-        forObservers(singletonList(observation), ObservationImpl::onObserve);
-
-        if (opened && !observation.isDisposed()) {
-          try {
-            open();
-          } catch (Throwable e) {
-            this.observations = null;
-            observation.onFail(e);
-            return observation;
+          if (observed && opened) {
+            try {
+              open();
+            } catch (Throwable e) {
+              this.observations = noObservations();
+              observation.onFail(e);
+            }
           }
+          return observation;
+        }
+
+        /*
+         * The observable was started while we were deciding not to observe, so
+         * try again.
+         */
+        if (!observed) {
+          continue;
         }
+
+        /*
+         * The observable was terminated while we were observing, and the
+         * terminal event has not been and will not be delivered to us.
+         */
+        terminal = terminalSignal;
       }
+      deliver(observation, terminal);
+      return observation;
     }
-
-    return observation;
   }
 
   protected void open() throws Exception {}
@@ -120,51 +207,67 @@ public class HotObservable<M> implements Observable<M> {
   protected void close() throws Exception {}
 
   public boolean hasObservers() {
-    return observations != null;
+    return observations.length > 0;
   }
 
   synchronized void cancelObservation(Observation observer) {
-    if (observations != null && observations.remove(observer) && observations.isEmpty()) {
-      observations = null;
+    ObservationImpl<M>[] observations = this.observations;
+
+    int index = 0;
+    while (index < observations.length && observations[index] != observer) {
+      index++;
+    }
+    if (index == observations.length) {
+      return;
+    }
+
+    if (observations.length == 1) {
+      this.observations = noObservations();
       try {
         close();
       } catch (Exception e) {
         ((ObservationImpl<?>) observer).onFail(e);
       }
+    } else {
+      ObservationImpl<M>[] remaining = Arrays.copyOf(observations, observations.length - 1);
+      System.arraycopy(observations, index + 1, remaining, index, remaining.length - index);
+      this.observations = remaining;
     }
   }
 
+  /*
+   * For events which are not on the emission path, so are not worth making
+   * allocation free.
+   */
   private void forObservers(
       List<ObservationImpl<M>> observations,
       Consumer<ObservationImpl<M>> action) {
-    if (observations != null) {
-      if (executor == null) {
-        for (ObservationImpl<M> observation : observations) {
-          action.accept(observation);
-        }
-      } else {
-        CountDownLatch latch = new CountDownLatch(observations.size());
+    if (executor == null) {
+      for (ObservationImpl<M> observation : observations) {
+        action.accept(observation);
+      }
+    } else {
+      CountDownLatch latch = new CountDownLatch(observations.size());
 
-        for (ObservationImpl<M> observation : observations) {
-          executor.execute(() -> {
-            try {
-              action.accept(observation);
-            } finally {
-              latch.countDown();
-            }
-          });
-        }
+      for (ObservationImpl<M> observation : observations) {
+        executor.execute(() -> {
+          try {
+            action.accept(observation);
+          } finally {
+            latch.countDown();
+          }
+        });
+      }
 
-        try {
-          latch.await();
-        } catch (InterruptedException e) {
-          throw new RuntimeException(e);
-        }
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
       }
     }
   }
 
-  public synchronized boolean isLive() {
+  public boolean isLive() {
     return live;
   }
 
@@ -175,9 +278,10 @@ public class HotObservable<M> implements Observable<M> {
 
   public synchronized HotObservable<M> start() {
     if (!live) {
-      live = true;
+      forObservers(Arrays.asList(observations), o -> o.onObserve());
 
-      forObservers(copyObservations(), o -> o.onObserve());
+      terminalSignal = null;
+      live = true;
     }
 
     return this;
@@ -189,41 +293,223 @@ public class HotObservable<M> implements Observable<M> {
    * @param item the message event to send
    * @return the receiver for method chaining
    */
-  public synchronized HotObservable<M> next(M item) {
+  public HotObservable<M> next(M item) {
     Objects.requireNonNull(item);
 
     assertLive();
 
-    forObservers(copyObservations(), o -> o.onNext(item));
+    emit(item);
 
     return this;
   }
 
-  public synchronized HotObservable<M> complete() {
-    assertLive();
-    live = false;
+  public HotObservable<M> complete() {
+    synchronized (this) {
+      assertLive();
+      live = false;
+      terminalSignal = COMPLETE;
+    }
 
-    List<ObservationImpl<M>> observations = copyObservations();
-    this.observations = null;
-    forObservers(observations, o -> o.onComplete());
+    emit(COMPLETE);
 
     return this;
   }
 
-  public synchronized HotObservable<M> fail(Throwable t) {
+  public HotObservable<M> fail(Throwable t) {
     Objects.requireNonNull(t);
 
-    assertLive();
-    live = false;
+    Failure failure = new Failure(t);
+    synchronized (this) {
+      assertLive();
+      live = false;
+      terminalSignal = failure;
+    }
 
-    List<ObservationImpl<M>> observations = copyObservations();
-    this.observations = null;
-    forObservers(observations, o -> o.onFail(t));
+    emit(failure);
 
     return this;
   }
 
-  private List<ObservationImpl<M>> copyObservations() {
-    return this.observations != null ? new ArrayList<>(this.observations) : null;
+  private void emit(Object signal) {
+    if (ordering == CONCURRENT) {
+      emitConcurrently(signal);
+      return;
+    }
+
+    if (emissionLock.isHeldByCurrentThread()) {
+      reentrantEmissions.add(signal);
+      return;
+    }
+
+    emissionLock.lock();
+    try {
+      /*
+       * We may have been waiting on a producer which completed the observable.
+       */
+      if (!isTerminal(signal)) {
+        assertLive();
+      }
+      do {
+        dispatch(signal);
+      } while ((signal = reentrantEmissions.poll()) != null);
+    } finally {
+      reentrantEmissions.clear();
+      emissionLock.unlock();
+    }
+  }
+
+  /*
+   * A message is only dispatched if the observable is still live once it has
+   * been counted, and the observable is terminated before the terminal event is
+   * made pending, so a terminal event is never delivered while a message is
+   * still being dispatched.
+   */
+  private void emitConcurrently(Object signal) {
+    if (isTerminal(signal)) {
+      pendingTerminal.set(signal);
+      if (concurrentEmissions.get() == 0) {
+        dispatchPendingTerminal();
+      }
+      return;
+    }
+
+    concurrentEmissions.incrementAndGet();
+    try {
+      assertLive();
+      dispatch(signal);
+    } finally {
+      if (concurrentEmissions.decrementAndGet() == 0) {
+        dispatchPendingTerminal();
+      }
+    }
+  }
+
+  private void dispatchPendingTerminal() {
+    Object terminal = pendingTerminal.getAndSet(null);
+    if (terminal != null) {
+      dispatch(terminal);
+    }
+  }
+
+  private void dispatch(Object signal) {
+    ObservationImpl<M>[] observations = isTerminal(signal) ? detachObservations() : this.observations;
+
+    if (executor == null) {
+      for (ObservationImpl<M> observation : observations) {
+        deliver(observation, signal);
+      }
+    } else {
+      dispatchOnExecutor(observations, signal);
+    }
+  }
+
+  private void dispatchOnExecutor(ObservationImpl<M>[] observations, Object signal) {
+    dispatchSignal = signal;
+    dispatchThread = currentThread();
+    dispatchesInProgress.set(observations.length);
+
+    int dispatched = 0;
+    try {
+      for (ObservationImpl<M> observation : observations) {
+        executor.execute((HotObservation) observation);
+        dispatched++;
+      }
+    } finally {
+      if (dispatched < observations.length) {
+        dispatchesInProgress.addAndGet(dispatched - observations.length);
+      }
+
+      boolean interrupted = false;
+      while (dispatchesInProgress.get() != 0) {
+        LockSupport.park(this);
+        interrupted |= Thread.interrupted();
+      }
+      if (interrupted) {
+        currentThread().interrupt();
+      }
+
+      dispatchSignal = null;
+      dispatchThread = null;
+    }
+  }
+
+  private static boolean isTerminal(Object signal) {
+    return signal == COMPLETE || signal instanceof Failure;
+  }
+
+  /*
+   * Remove every observation which has been observed, to receive a terminal
+   * event. Observations made while the observable is not live are kept until it
+   * is started again.
+   */
+  private synchronized ObservationImpl<M>[] detachObservations() {
+    ObservationImpl<M>[] observations = this.observations;
+
+    int observed = 0;
+    for (ObservationImpl<M> observation : observations) {
+      if (!observation.isDisposed()) {
+        observed++;
+      }
+    }
+
+    ObservationImpl<M>[] detached = Arrays.copyOf(observations, observed);
+    ObservationImpl<M>[] remaining = Arrays.copyOf(observations, observations.length - observed);
+    int detachedIndex = 0;
+    int remainingIndex = 0;
+    for (ObservationImpl<M> observation : observations) {
+      if (!observation.isDisposed()) {
+        detached[detachedIndex++] = observation;
+      } else {
+        remaining[remainingIndex++] = observation;
+      }
+    }
+    this.observations = remaining.length == 0 ? noObservations() : remaining;
+
+    return detached;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void deliver(ObservationImpl<M> observation, Object signal) {
+    if (signal == COMPLETE) {
+      observation.onComplete();
+    } else if (signal instanceof Failure) {
+      observation.onFail(((Failure) signal).cause);
+    } else {
+      observation.onNext((M) signal);
+    }
+  }
+
+  private class HotObservation extends ObservationImpl<M> implements Runnable {
+    HotObservation(Observer<? super M> observer) {
+      super(observer);
+    }
+
+    @Override
+    public void cancelImpl() {
+      cancelObservation(this);
+    }
+
+    @Override
+    public void request(long count) {}
+
+    @Override
+    public long getPendingRequestCount() {
+      return Long.MAX_VALUE;
+    }
+
+    /*
+     * Deliver the current signal on the executor. One instance is reused for
+     * every event, so dispatch makes no allocation per observer.
+     */
+    @Override
+    public void run() {
+      try {
+        deliver(this, dispatchSignal);
+      } finally {
+        if (dispatchesInProgress.decrementAndGet() == 0) {
+          LockSupport.unpark(dispatchThread);
+        }
+      }
+    }
   }
 }
@@ -27,42 +27,59 @@
  */
 package uk.co.saiman.observable;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count of outstanding requests for messages, which may be safely requested
+ * and fulfilled from different threads without locking. A count of
+ * {@link Long#MAX_VALUE} is unbounded, and is never fulfilled.
+ * 
+ * @author Elias N Vasylenko
+ */
 public class RequestCount {
-  private long requestCount;
+  private final AtomicLong requestCount = new AtomicLong();
 
   public long getCount() {
-    return requestCount < 0 ? Long.MAX_VALUE : requestCount;
+    return requestCount.get();
   }
 
-  public synchronized void request(long count) {
+  public void request(long count) {
     if (count < 0)
       throw new IllegalArgumentException("Must request a positive number of messages " + count);
 
-    else if (count == Long.MAX_VALUE)
-      requestCount = -1;
+    long current;
+    long next;
+    do {
+      current = requestCount.get();
+      if (current == Long.MAX_VALUE)
+        return;
 
-    else if (requestCount >= 0)
-      requestCount += count;
+      next = current + count;
+      if (next < 0)
+        next = Long.MAX_VALUE;
+    } while (!requestCount.compareAndSet(current, next));
   }
 
-  public synchronized boolean isFulfilled() {
-    return requestCount == 0;
+  public boolean isFulfilled() {
+    return requestCount.get() == 0;
   }
 
-  public synchronized void fulfil() {
+  public void fulfil() {
     if (!tryFulfil())
       throw new IllegalStateException("No request to fulfil");
   }
 
-  public synchronized boolean tryFulfil() {
-    if (requestCount > 0) {
-      requestCount--;
-      return true;
+  public boolean tryFulfil() {
+    long current;
+    do {
+      current = requestCount.get();
+      if (current == Long.MAX_VALUE)
+        return true;
 
-    } else if (requestCount < 0)
-      return true;
+      else if (current == 0)
+        return false;
+    } while (!requestCount.compareAndSet(current, current - 1));
 
-    else
-      return false;
+    return true;
   }
 }
@@ -28,5 +28,5 @@
 /**
  * Some kind of test
  */
-@org.osgi.annotation.versioning.Version("1.0.0")
+@org.osgi.annotation.versioning.Version("1.1.0")
 package uk.co.saiman.observable;
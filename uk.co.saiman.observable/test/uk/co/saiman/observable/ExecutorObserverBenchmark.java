@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.observable.
+ *
+ * uk.co.saiman.observable is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.observable is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.observable;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * A benchmark of message throughput across an
+ * {@link Observable#executeOn(java.util.concurrent.Executor) executor hop},
+ * and through {@link Observable#reduceBackpressure(java.util.function.BinaryOperator)
+ * backpressure reduction} with a downstream observer which requests the next
+ * reduction synchronously as it receives each one.
+ * <p>
+ * Run from the test classpath with an optional argument for the number of
+ * messages.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class ExecutorObserverBenchmark {
+  public static void main(String... args) throws InterruptedException {
+    int messages = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+    System.out
+        .printf(
+            "%d messages, %d processors%n",
+            messages,
+            Runtime.getRuntime().availableProcessors());
+    var executor = newSingleThreadExecutor();
+    try {
+      for (int round = 0; round < 5; round++) {
+        System.out
+            .printf("executeOn: %.2f M msg/s%n", executeOn(executor, messages) / 1e6);
+        System.out
+            .printf("reduceBackpressure: %.2f M msg/s%n", reduceBackpressure(messages) / 1e6);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static double executeOn(Executor executor, int messages)
+      throws InterruptedException {
+    var source = new HotObservable<Integer>();
+    var completed = new CountDownLatch(1);
+    long[] received = new long[1];
+    source.executeOn(executor).observe(new Observer<Integer>() {
+      @Override
+      public void onObserve(Observation observation) {
+        observation.requestUnbounded();
+      }
+
+      @Override
+      public void onNext(Integer message) {
+        received[0]++;
+      }
+
+      @Override
+      public void onComplete() {
+        completed.countDown();
+      }
+    });
+
+    long start = System.nanoTime();
+    for (int m = 0; m < messages; m++) {
+      source.next(m);
+    }
+    source.complete();
+    completed.await();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    if (received[0] != messages) {
+      throw new AssertionError("lost messages: " + received[0]);
+    }
+    return messages / seconds;
+  }
+
+  private static double reduceBackpressure(int messages) {
+    var source = new HotObservable<Integer>();
+    long[] sum = new long[1];
+    source.reduceBackpressure(Integer::sum).observe(new Observer<Integer>() {
+      private Observation observation;
+
+      @Override
+      public void onObserve(Observation observation) {
+        this.observation = observation;
+        observation.requestNext();
+      }
+
+      @Override
+      public void onNext(Integer message) {
+        sum[0] += message;
+        observation.requestNext();
+      }
+    });
+
+    long start = System.nanoTime();
+    for (int m = 0; m < messages; m++) {
+      source.next(1);
+    }
+    source.complete();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    if (sum[0] != messages) {
+      throw new AssertionError("lost messages: " + sum[0]);
+    }
+    return messages / seconds;
+  }
+}
@@ -27,12 +27,18 @@
  */
 package uk.co.saiman.observable;
 
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 import org.junit.jupiter.api.Test;
@@ -86,7 +92,79 @@ public class ExecutorObserverTest {
     test.onNext("message");
 
     InOrder inOrder = inOrder(executor, upstreamObservation, downstreamObserver);
-    inOrder.verify(executor, times(2)).execute(any());
+    inOrder.verify(executor, times(1)).execute(any());
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void messageEventsDrainedInOneTaskTest() {
+    List<Runnable> tasks = new ArrayList<>();
+    SafeObserver<String> test = new ExecutorObserver<>(downstreamObserver, tasks::add);
+
+    when(upstreamObservation.getPendingRequestCount()).thenReturn(Long.MAX_VALUE);
+
+    test.onObserve(upstreamObservation);
+    test.onNext("message1");
+    test.onNext("message2");
+    test.onComplete();
+
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+
+    InOrder inOrder = inOrder(downstreamObserver);
+    inOrder.verify(downstreamObserver).onObserve(any());
+    inOrder.verify(downstreamObserver).onNext("message1");
+    inOrder.verify(downstreamObserver).onNext("message2");
+    inOrder.verify(downstreamObserver).onComplete();
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void batchResubmittedAtCapacityTest() {
+    List<Runnable> tasks = new ArrayList<>();
+    SafeObserver<String> test = new ExecutorObserver<>(downstreamObserver, tasks::add, 2);
+
+    when(upstreamObservation.getPendingRequestCount()).thenReturn(Long.MAX_VALUE);
+
+    test.onObserve(upstreamObservation);
+    test.onNext("message1");
+
+    tasks.remove(0).run();
+    assertEquals(1, tasks.size());
+    tasks.remove(0).run();
+    assertEquals(0, tasks.size());
+
+    InOrder inOrder = inOrder(downstreamObserver);
+    inOrder.verify(downstreamObserver).onObserve(any());
+    inOrder.verify(downstreamObserver).onNext("message1");
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void producerOverflowsFullRingWithoutWaitingTest() {
+    List<Runnable> tasks = new ArrayList<>();
+    SafeObserver<String> test = new ExecutorObserver<>(downstreamObserver, tasks::add, 2);
+
+    when(upstreamObservation.getPendingRequestCount()).thenReturn(Long.MAX_VALUE);
+
+    assertTimeoutPreemptively(ofSeconds(5), () -> {
+      test.onObserve(upstreamObservation);
+      for (int i = 0; i < 10; i++) {
+        test.onNext("message" + i);
+      }
+      test.onComplete();
+    });
+
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+
+    InOrder inOrder = inOrder(downstreamObserver);
+    inOrder.verify(downstreamObserver).onObserve(any());
+    for (int i = 0; i < 10; i++) {
+      inOrder.verify(downstreamObserver).onNext("message" + i);
+    }
+    inOrder.verify(downstreamObserver).onComplete();
     inOrder.verifyNoMoreInteractions();
   }
 
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.observable.
+ *
+ * uk.co.saiman.observable is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.observable is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.observable;
+
+import static uk.co.saiman.observable.EmissionOrdering.CONCURRENT;
+import static uk.co.saiman.observable.EmissionOrdering.SERIALIZED;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A benchmark of event throughput through a {@link HotObservable} for each
+ * {@link EmissionOrdering ordering policy}, with different numbers of
+ * observers and of producers firing events concurrently.
+ * <p>
+ * Run from the test classpath with optional arguments for the number of
+ * events per producer, the number of producers, and the observer counts to
+ * compare.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class HotObservableBenchmark {
+  public static void main(String... args) throws InterruptedException {
+    int events = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    int producers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int[] observerCounts = args.length > 2
+        ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+        : new int[] { 1, 8, 64 };
+
+    System.out
+        .printf(
+            "%d events per producer, %d processors%n",
+            events,
+            Runtime.getRuntime().availableProcessors());
+    for (int round = 0; round < 3; round++) {
+      for (var ordering : new EmissionOrdering[] { SERIALIZED, CONCURRENT }) {
+        for (int observers : observerCounts) {
+          for (int threads : new int[] { 1, producers }) {
+            double rate = run(ordering, observers, threads, events);
+            System.out
+                .printf(
+                    "%s, %d observers, %d producers: %.2f M events/s%n",
+                    ordering,
+                    observers,
+                    threads,
+                    rate / 1e6);
+          }
+        }
+      }
+    }
+  }
+
+  private static double run(EmissionOrdering ordering, int observers, int threads, int events)
+      throws InterruptedException {
+    var observable = new HotObservable<Integer>(ordering);
+    var received = new LongAdder();
+    for (int i = 0; i < observers; i++) {
+      observable.observe(m -> received.increment());
+    }
+
+    var producers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      producers.add(new Thread(() -> {
+        for (int e = 0; e < events; e++) {
+          observable.next(e);
+        }
+      }));
+    }
+
+    long start = System.nanoTime();
+    producers.forEach(Thread::start);
+    for (var producer : producers) {
+      producer.join();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    if (received.sum() != (long) events * threads * observers) {
+      throw new AssertionError("lost events: " + received.sum());
+    }
+    return events * threads / seconds;
+  }
+}
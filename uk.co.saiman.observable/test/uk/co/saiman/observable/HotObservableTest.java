@@ -27,13 +27,26 @@
  */
 package uk.co.saiman.observable;
 
+import static java.time.Duration.ofSeconds;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.inOrder;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InOrder;
@@ -204,6 +217,162 @@ public class HotObservableTest {
     assertThrows(NullPointerException.class, () -> observable.fail(null));
   }
 
+  @Test
+  public void reentrantMessageIsQueuedTest() {
+    HotObservable<String> observable = new HotObservable<>();
+    observable.observe(m -> {
+      if (m.equals("first"))
+        observable.next("second");
+    });
+    observable.observe(downstreamObserver);
+    observable.next("first");
+
+    InOrder inOrder = inOrder(downstreamObserver);
+    inOrder.verify(downstreamObserver).onObserve(any());
+    inOrder.verify(downstreamObserver).onNext("first");
+    inOrder.verify(downstreamObserver).onNext("second");
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void serializedConcurrentMessagesTest() throws InterruptedException {
+    HotObservable<Integer> observable = new HotObservable<>(EmissionOrdering.SERIALIZED);
+    AtomicInteger delivering = new AtomicInteger();
+    List<Integer> first = new ArrayList<>();
+    List<Integer> second = new ArrayList<>();
+    for (List<Integer> received : asList(first, second)) {
+      observable.observe(m -> {
+        assertEquals(1, delivering.incrementAndGet());
+        received.add(m);
+        delivering.decrementAndGet();
+      });
+    }
+
+    Thread[] producers = new Thread[4];
+    for (int i = 0; i < producers.length; i++) {
+      producers[i] = new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          observable.next(j);
+        }
+      });
+      producers[i].start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    assertEquals(40000, first.size());
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void observeWhileAnotherThreadEmitsTest() throws InterruptedException {
+    HotObservable<String> observable = new HotObservable<>();
+    CountDownLatch delivering = new CountDownLatch(1);
+    CountDownLatch observing = new CountDownLatch(1);
+    observable.observe(new Observer<String>() {
+      private Observation observation;
+
+      @Override
+      public void onObserve(Observation observation) {
+        this.observation = observation;
+      }
+
+      @Override
+      public void onNext(String message) {
+        delivering.countDown();
+        try {
+          observing.await(5, SECONDS);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        observation.cancel();
+      }
+    });
+
+    Thread producer = new Thread(() -> observable.next("first"));
+    producer.start();
+    delivering.await();
+
+    assertTimeoutPreemptively(ofSeconds(2), () -> {
+      observable.observe(new Observer<String>() {
+        @Override
+        public void onObserve(Observation observation) {
+          observing.countDown();
+          observable.next("second");
+          observation.cancel();
+        }
+
+        @Override
+        public void onNext(String message) {}
+      });
+      producer.join();
+    });
+    assertFalse(observable.hasObservers());
+  }
+
+  @Test
+  public void concurrentMessagesDoNotFollowCompletionTest() throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      HotObservable<Integer> observable = new HotObservable<>(EmissionOrdering.CONCURRENT);
+      AtomicBoolean completed = new AtomicBoolean();
+      AtomicBoolean messageAfterCompletion = new AtomicBoolean();
+      observable.observe(new Observer<Integer>() {
+        @Override
+        public void onNext(Integer message) {
+          Thread.yield();
+          if (completed.get()) {
+            messageAfterCompletion.set(true);
+          }
+        }
+
+        @Override
+        public void onComplete() {
+          completed.set(true);
+        }
+      });
+
+      Thread[] producers = new Thread[4];
+      for (int j = 0; j < producers.length; j++) {
+        producers[j] = new Thread(() -> {
+          try {
+            while (true) {
+              observable.next(0);
+            }
+          } catch (IllegalStateException e) {}
+        });
+        producers[j].start();
+      }
+      observable.complete();
+      for (Thread producer : producers) {
+        producer.join();
+      }
+
+      assertFalse(messageAfterCompletion.get());
+    }
+  }
+
+  @Test
+  public void executorMessageTest() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      HotObservable<String> observable = new HotObservable<>(executor);
+      observable.observe(downstreamObserver);
+      observable.next("first");
+      observable.next("second");
+      observable.complete();
+
+      InOrder inOrder = inOrder(downstreamObserver);
+      inOrder.verify(downstreamObserver).onObserve(any());
+      inOrder.verify(downstreamObserver).onNext("first");
+      inOrder.verify(downstreamObserver).onNext("second");
+      inOrder.verify(downstreamObserver).onComplete();
+      inOrder.verifyNoMoreInteractions();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   @Test
   public void failWithNullMessageTest() {
     HotObservable<String> observable = new HotObservable<>();
@@ -27,6 +27,9 @@
  */
 package uk.co.saiman.simulation.instrument;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.measure.quantity.Dimensionless;
 import javax.measure.quantity.Time;
 
@@ -39,5 +42,27 @@ import uk.co.saiman.data.function.SampledContinuousFunction;
  * @author Elias N Vasylenko
  */
 public interface DetectorSimulation {
+  /**
+   * @return the next simulated signal, which may be a pooled
+   *         {@link uk.co.saiman.instrument.acquisition.AcquisitionBuffer}
+   *         whose single reference is owned by the caller
+   */
   SampledContinuousFunction<Time, Dimensionless> acquire();
+
+  /**
+   * Acquire a batch of consecutive signals. Implementations may generate the
+   * signals of a batch in parallel.
+   * 
+   * @param count
+   *          the number of signals to acquire
+   * @return the next signals, in order, each of which is owned by the caller
+   *         as described for {@link #acquire()}
+   */
+  default List<SampledContinuousFunction<Time, Dimensionless>> acquire(int count) {
+    List<SampledContinuousFunction<Time, Dimensionless>> signals = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      signals.add(acquire());
+    }
+    return signals;
+  }
 }
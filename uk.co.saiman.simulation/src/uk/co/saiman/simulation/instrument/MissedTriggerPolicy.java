@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument;
+
+/**
+ * The behavior of a {@link SimulatedTriggerSource simulated device} when a
+ * trigger comes due before the record for the previous trigger has been
+ * produced.
+ * 
+ * @author Elias N Vasylenko
+ */
+public enum MissedTriggerPolicy {
+  /**
+   * Triggers which have already passed are discarded and counted as missed, and
+   * the next record is produced for the most recent trigger. This is how a real
+   * digitizer behaves when it is still busy with the previous record.
+   */
+  SKIP,
+
+  /**
+   * Every trigger produces a record, and records are produced back to back
+   * until the schedule has caught up. No triggers are missed, but records may be
+   * produced arbitrarily late if the device cannot sustain the frequency.
+   */
+  CATCH_UP
+}
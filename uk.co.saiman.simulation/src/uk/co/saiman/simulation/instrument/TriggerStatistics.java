@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument;
+
+import javax.measure.Quantity;
+import javax.measure.quantity.Frequency;
+import javax.measure.quantity.Time;
+
+/**
+ * Statistics describing how closely a simulated device has kept to its
+ * configured trigger frequency, since it was started or since the frequency
+ * was last changed.
+ * <p>
+ * The statistics are maintained by the acquisition thread without locking, so
+ * while each value is accurate, values read together may not be from exactly
+ * the same moment.
+ * 
+ * @author Elias N Vasylenko
+ */
+public interface TriggerStatistics {
+  /**
+   * @return the configured frequency of triggers
+   */
+  Quantity<Frequency> getTriggerFrequency();
+
+  /**
+   * @return the policy for triggers which come due while the previous record
+   *         is still being produced
+   */
+  MissedTriggerPolicy getMissedTriggerPolicy();
+
+  /**
+   * @return the number of triggers for which a record was produced
+   */
+  long getTriggerCount();
+
+  /**
+   * @return the number of triggers which were skipped because the device was
+   *         still busy, under the {@link MissedTriggerPolicy#SKIP} policy
+   */
+  long getMissedTriggerCount();
+
+  /**
+   * @return the frequency at which records have actually been produced
+   */
+  Quantity<Frequency> getAchievedFrequency();
+
+  /**
+   * @return the mean delay between a trigger coming due and its record being
+   *         started
+   */
+  Quantity<Time> getMeanJitter();
+
+  /**
+   * @return the largest delay between a trigger coming due and its record
+   *         being started
+   */
+  Quantity<Time> getMaximumJitter();
+}
@@ -27,9 +27,14 @@
  */
 package uk.co.saiman.simulation.instrument.impl;
 
+import static java.util.stream.Collectors.toList;
 import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
 
-import java.util.Random;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.measure.Unit;
 import javax.measure.quantity.Dimensionless;
@@ -43,6 +48,9 @@ import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
+import uk.co.saiman.chemistry.ChemicalComposition;
+import uk.co.saiman.chemistry.isotope.MassAbundance;
+import uk.co.saiman.data.function.SampledContinuousFunction;
 import uk.co.saiman.data.function.SampledDomain;
 import uk.co.saiman.instrument.acquisition.AcquisitionBufferPool;
 import uk.co.saiman.simulation.instrument.DetectorSimulation;
@@ -52,6 +60,13 @@ import uk.co.saiman.simulation.instrument.impl.ADCSimulation.ADCSimulationConfig
 
 /**
  * A simulation of an acquisition data signal from an ADC.
+ * <p>
+ * The noise-free signal of the current sample is computed once as a
+ * {@link SignalTemplate template}, and each record is then a single pass of a
+ * {@link NoiseKernel noise kernel} over it. Every record is seeded from a
+ * per-simulation generator, so given a fixed seed the sequence of records is
+ * reproducible, including when {@link DetectorSimulation#acquire(int) batches}
+ * of records are generated in parallel.
  * 
  * @author Elias N Vasylenko
  */
@@ -63,21 +78,67 @@ public class ADCSimulation implements DetectorSimulationService {
   public @interface ADCSimulationConfiguration {
     @AttributeDefinition(name = "SNR", description = "Set the simulated signal-to-noise-ratio")
     double signalToNoiseRatio() default 0.95;
+
+    @AttributeDefinition(name = "Seed", description = "The seed for the simulated noise, or zero for a different sequence each time")
+    long seed() default 0;
+
+    @AttributeDefinition(name = "Maximum Mass", description = "The mass-to-charge ratio at the end of each record")
+    double maximumMass() default 1000;
+
+    @AttributeDefinition(name = "Peak Width", description = "The standard deviation of simulated peaks in samples")
+    double peakWidth() default 4;
   }
 
   static final String CONFIGURATION_PID = "uk.co.saiman.simulation.adc";
 
-  @Reference
-  private SimulatedSampleSource sampleSource;
+  private final SimulatedSampleSource sampleSource;
 
   // private double signalToNoise;
 
-  private final Random random = new Random();
+  private SplittableRandom seeds;
+  private double maximumMass;
+  private double peakWidth;
+  private final Map<ChemicalComposition, MassAbundance[]> isotopeDistributions;
 
   @Activate
+  public ADCSimulation(
+      @Reference SimulatedSampleSource sampleSource,
+      ADCSimulationConfiguration configuration) {
+    this(
+        sampleSource,
+        configuration.seed(),
+        configuration.maximumMass(),
+        configuration.peakWidth());
+  }
+
+  public ADCSimulation(
+      SimulatedSampleSource sampleSource,
+      long seed,
+      double maximumMass,
+      double peakWidth) {
+    this.sampleSource = sampleSource;
+    this.isotopeDistributions = new ConcurrentHashMap<>();
+    configure(seed, maximumMass, peakWidth);
+  }
+
   @Modified
   void configure(ADCSimulationConfiguration configuration) {
     // signalToNoise = configuration.signalToNoiseRatio();
+    configure(configuration.seed(), configuration.maximumMass(), configuration.peakWidth());
+  }
+
+  private synchronized void configure(long seed, double maximumMass, double peakWidth) {
+    this.seeds = seed == 0 ? new SplittableRandom() : new SplittableRandom(seed);
+    this.maximumMass = maximumMass;
+    this.peakWidth = peakWidth;
+  }
+
+  private synchronized SplittableRandom nextSeeds() {
+    return seeds.split();
+  }
+
+  private synchronized SignalTemplates createTemplates(int depth) {
+    return new SignalTemplates(depth, maximumMass, peakWidth, isotopeDistributions);
   }
 
   @Override
@@ -85,16 +146,34 @@ public class ADCSimulation implements DetectorSimulationService {
       SampledDomain<Time> domain,
       Unit<Dimensionless> intensityUnits) {
     AcquisitionBufferPool bufferPool = new AcquisitionBufferPool(domain, intensityUnits);
+    SignalTemplates templates = createTemplates(domain.getDepth());
+    SplittableRandom seeds = nextSeeds();
+    ThreadLocal<NoiseKernel> kernels = ThreadLocal.withInitial(NoiseKernel::new);
+
+    return new DetectorSimulation() {
+      @Override
+      public SampledContinuousFunction<Time, Dimensionless> acquire() {
+        SignalTemplate template = templates.forSample(sampleSource.getNextSample());
+        return fill(template, seeds.nextLong());
+      }
 
-    return () -> bufferPool.fillNextBuffer(intensities -> {
-      double scale = 0;
-      double scaleDelta = 1d / domain.getDepth();
+      @Override
+      public List<SampledContinuousFunction<Time, Dimensionless>> acquire(int count) {
+        SignalTemplate template = templates.forSample(sampleSource.getNextSample());
+        return Arrays
+            .stream(seeds.longs(count).toArray())
+            .parallel()
+            .mapToObj(seed -> fill(template, seed))
+            .collect(toList());
+      }
 
-      for (int j = 0; j < intensities.length; j++) {
-        scale += scaleDelta;
-        intensities[j] = 0.01
-            + scale * (1 - scale + random.nextDouble() * Math.max(0, (int) (scale * 20) % 4 - 1));
+      private SampledContinuousFunction<Time, Dimensionless> fill(SignalTemplate template, long seed) {
+        return bufferPool.fillNextBuffer(intensities -> {
+          NoiseKernel kernel = kernels.get();
+          kernel.seed(seed);
+          kernel.fill(template.signal(), template.noise(), intensities);
+        });
       }
-    });
+    };
   }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+/**
+ * A seeded generator of uniform noise, laid out so that the JIT can vectorise
+ * it.
+ * <p>
+ * Rather than a single generator whose every step depends on the last, the
+ * kernel steps a block of independent xorshift generators in lockstep, one
+ * lane per element of the block. Each step of the inner loop then touches only
+ * its own lane, with no branches and no carried dependency, which is the shape
+ * the superword optimisation needs. The lanes are seeded by a splitmix64 hash
+ * of the seed and the lane index, so the output is a pure function of the seed
+ * and the length.
+ * <p>
+ * Instances are cheap but not thread safe. Give each thread its own.
+ * 
+ * @author Elias N Vasylenko
+ */
+final class NoiseKernel {
+  static final int LANES = 256;
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final long ONE_BITS = Double.doubleToRawLongBits(1);
+
+  private final long[] lanes = new long[LANES];
+  private final long[] bits = new long[LANES];
+
+  /**
+   * Reset every lane of the kernel from the given seed.
+   * 
+   * @param seed
+   *          the seed
+   */
+  void seed(long seed) {
+    for (int i = 0; i < LANES; i++) {
+      long lane = mix(seed + (i + 1) * GOLDEN_GAMMA);
+      // xorshift has a fixed point at zero
+      lanes[i] = lane == 0 ? GOLDEN_GAMMA : lane;
+    }
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Fill the destination with {@code offset[i] + scale[i] * u[i]}, where each
+   * {@code u[i]} is uniformly distributed over {@code [0, 1)}.
+   * 
+   * @param offset
+   *          the noise-free signal
+   * @param scale
+   *          the amplitude of the noise at each sample
+   * @param destination
+   *          the array to fill, of the same length as the offset and scale
+   */
+  void fill(double[] offset, double[] scale, double[] destination) {
+    int length = destination.length;
+    for (int block = 0; block < length; block += LANES) {
+      int blockLength = Math.min(LANES, length - block);
+      step(blockLength);
+
+      for (int i = 0; i < blockLength; i++) {
+        int j = block + i;
+        destination[j] = offset[j] + scale[j] * (Double.longBitsToDouble(bits[i]) - 1);
+      }
+    }
+  }
+
+  /*
+   * Each of the given number of lanes is stepped once, and the top 52 bits of
+   * the result become the mantissa of a double in [1, 2), from which the caller
+   * subtracts one. This avoids the usual multiplication of the top 53 bits by
+   * 2^-53, since the long to double conversion is not vectorised and costs
+   * several times as much as the rest of the kernel put together. Staging the
+   * bits in a separate loop, rather than fusing it with the caller, also lets
+   * both loops vectorise.
+   */
+  private void step(int count) {
+    long[] lanes = this.lanes;
+    long[] bits = this.bits;
+    for (int i = 0; i < count; i++) {
+      long lane = lanes[i];
+      lane ^= lane << 13;
+      lane ^= lane >>> 7;
+      lane ^= lane << 17;
+      lanes[i] = lane;
+      bits[i] = ONE_BITS | (lane >>> 12);
+    }
+  }
+}
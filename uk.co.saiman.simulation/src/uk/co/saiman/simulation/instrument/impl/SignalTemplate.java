@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import java.util.SplittableRandom;
+
+/**
+ * The noise-free shape of a simulated detector signal for a particular sample,
+ * computed once and then shared between every record acquired from that
+ * sample.
+ * 
+ * @author Elias N Vasylenko
+ */
+final class SignalTemplate {
+  private final double[] signal;
+  private final double[] noise;
+  private volatile AliasTable aliasTable;
+
+  SignalTemplate(double[] signal, double[] noise) {
+    this.signal = signal;
+    this.noise = noise;
+  }
+
+  /**
+   * @return the noise-free signal, including the baseline and any peaks
+   */
+  double[] signal() {
+    return signal;
+  }
+
+  /**
+   * @return the amplitude of the noise at each sample
+   */
+  double[] noise() {
+    return noise;
+  }
+
+  int getDepth() {
+    return signal.length;
+  }
+
+  /**
+   * Draw a sample index with probability proportional to the noise-free signal
+   * at that index, in constant time.
+   * 
+   * @param random
+   *          the source of randomness
+   * @return the index of a sample
+   */
+  int nextIndex(SplittableRandom random) {
+    AliasTable aliasTable = this.aliasTable;
+    if (aliasTable == null) {
+      // a benign race, since the table is a pure function of the signal
+      this.aliasTable = aliasTable = new AliasTable(signal);
+    }
+    return aliasTable.nextIndex(random);
+  }
+
+  /*
+   * Vose's alias method.
+   */
+  private static class AliasTable {
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    AliasTable(double[] weights) {
+      int length = weights.length;
+      probabilities = new double[length];
+      aliases = new int[length];
+
+      double total = 0;
+      for (double weight : weights) {
+        total += weight;
+      }
+
+      int[] small = new int[length];
+      int[] large = new int[length];
+      int smallCount = 0;
+      int largeCount = 0;
+      for (int i = 0; i < length; i++) {
+        probabilities[i] = total > 0 ? weights[i] * length / total : 1;
+        if (probabilities[i] < 1) {
+          small[smallCount++] = i;
+        } else {
+          large[largeCount++] = i;
+        }
+      }
+
+      while (smallCount > 0 && largeCount > 0) {
+        int less = small[--smallCount];
+        int more = large[--largeCount];
+
+        aliases[less] = more;
+        probabilities[more] += probabilities[less] - 1;
+
+        if (probabilities[more] < 1) {
+          small[smallCount++] = more;
+        } else {
+          large[largeCount++] = more;
+        }
+      }
+
+      // anything left over is within rounding error of certain
+      while (largeCount > 0) {
+        probabilities[large[--largeCount]] = 1;
+      }
+      while (smallCount > 0) {
+        probabilities[small[--smallCount]] = 1;
+      }
+    }
+
+    int nextIndex(SplittableRandom random) {
+      int index = random.nextInt(probabilities.length);
+      return random.nextDouble() < probabilities[index] ? index : aliases[index];
+    }
+  }
+}
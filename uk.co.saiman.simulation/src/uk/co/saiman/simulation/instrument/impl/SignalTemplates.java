@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+import static java.lang.Math.sqrt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.co.saiman.chemistry.ChemicalComposition;
+import uk.co.saiman.chemistry.isotope.IsotopeDistribution;
+import uk.co.saiman.chemistry.isotope.MassAbundance;
+import uk.co.saiman.data.function.GaussianFunctionFactory;
+import uk.co.saiman.data.function.PeakShapeFunction;
+import uk.co.saiman.simulation.instrument.SimulatedSample;
+
+/**
+ * A factory for the {@link SignalTemplate signal templates} of samples over a
+ * given acquisition depth.
+ * <p>
+ * Each chemical in a sample contributes a peak for each mass in its
+ * {@link IsotopeDistribution isotope distribution}, placed by time of flight,
+ * which is proportional to the square root of the mass-to-charge ratio. Peaks
+ * are stamped from a single Gaussian shape, sampled once up front and
+ * normalised to unit height.
+ * <p>
+ * Templates are cached by the chemical intensities they were built from, as
+ * many as fit in a fixed budget of samples, and the least recently used are
+ * evicted first. A sample source which reuses the same intensities for the same
+ * sample, for example per pixel of a stage, then costs only a reference
+ * comparison per record while the sample stays put, and a lookup rather than a
+ * rebuild when it returns to a position it has visited.
+ * 
+ * @author Elias N Vasylenko
+ */
+final class SignalTemplates {
+  private static final double MINIMUM_ABUNDANCE = 0.001;
+  private static final int TEMPLATE_CACHE_SAMPLES = 1 << 22;
+
+  private final int depth;
+  private final double maximumMass;
+  private final Map<ChemicalComposition, MassAbundance[]> isotopeDistributions;
+
+  private final double[] baseline;
+  private final double[] noise;
+  private final double[] peakShape;
+
+  private final Map<Map<ChemicalComposition, Double>, SignalTemplate> templates;
+  private Map<ChemicalComposition, Double> lastIntensities;
+  private SignalTemplate lastTemplate;
+
+  /**
+   * @param depth
+   *          the number of samples in each record
+   * @param maximumMass
+   *          the mass-to-charge ratio at the end of the record
+   * @param peakWidth
+   *          the standard deviation of peaks in samples
+   * @param isotopeDistributions
+   *          a cache of isotope distributions by chemical, which may be shared
+   *          between factories
+   */
+  SignalTemplates(
+      int depth,
+      double maximumMass,
+      double peakWidth,
+      Map<ChemicalComposition, MassAbundance[]> isotopeDistributions) {
+    this.depth = depth;
+    this.maximumMass = maximumMass;
+    this.isotopeDistributions = isotopeDistributions;
+
+    int maximumTemplates = max(1, TEMPLATE_CACHE_SAMPLES / max(1, depth));
+    this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<Map<ChemicalComposition, Double>, SignalTemplate> eldest) {
+        return size() > maximumTemplates;
+      }
+    };
+
+    baseline = new double[depth];
+    noise = new double[depth];
+    for (int i = 0; i < depth; i++) {
+      double scale = (i + 1) / (double) depth;
+      baseline[i] = 0.01 + scale * (1 - scale);
+      noise[i] = scale * max(0, (int) (scale * 20) % 4 - 1);
+    }
+
+    if (peakWidth > 0) {
+      PeakShapeFunction peak = new GaussianFunctionFactory(peakWidth * peakWidth)
+          .atPeakPosition(0, 1);
+      int halfWidth = (int) ceil(peak.effectiveDomainEnd());
+      double height = peak.sample(0);
+      peakShape = new double[halfWidth * 2 + 1];
+      for (int i = 0; i < peakShape.length; i++) {
+        peakShape[i] = peak.sample(i - halfWidth) / height;
+      }
+    } else {
+      peakShape = new double[] { 1 };
+    }
+  }
+
+  /**
+   * The chemical intensities of a sample are taken not to change once they
+   * have been returned.
+   * 
+   * @param sample
+   *          the sample, or null for no sample
+   * @return the template of the signal of the given sample
+   */
+  synchronized SignalTemplate forSample(SimulatedSample sample) {
+    Map<ChemicalComposition, Double> intensities = sample == null
+        ? Map.of()
+        : sample.chemicalIntensities();
+
+    if (intensities != lastIntensities) {
+      lastTemplate = templates.computeIfAbsent(intensities, this::createTemplate);
+      lastIntensities = intensities;
+    }
+
+    return lastTemplate;
+  }
+
+  private SignalTemplate createTemplate(Map<ChemicalComposition, Double> intensities) {
+    double[] signal = baseline.clone();
+
+    intensities.forEach((chemical, intensity) -> {
+      if (chemical != null && intensity != null && intensity > 0) {
+        addPeaks(signal, chemical, intensity);
+      }
+    });
+
+    return new SignalTemplate(signal, noise);
+  }
+
+  private void addPeaks(double[] signal, ChemicalComposition chemical, double intensity) {
+    MassAbundance[] distribution = isotopeDistributions
+        .computeIfAbsent(chemical, SignalTemplates::calculateIsotopeDistribution);
+
+    double totalAbundance = 0;
+    for (MassAbundance massAbundance : distribution) {
+      totalAbundance += massAbundance.getAbundance();
+    }
+    if (totalAbundance <= 0) {
+      return;
+    }
+    int charge = max(1, Math.abs(chemical.getCharge()));
+    int halfWidth = peakShape.length / 2;
+
+    for (MassAbundance massAbundance : distribution) {
+      double massToCharge = massAbundance.getMass() / charge;
+      if (massToCharge <= 0 || massToCharge > maximumMass) {
+        continue;
+      }
+
+      int center = (int) round(depth * sqrt(massToCharge / maximumMass)) - 1;
+      double amplitude = intensity * massAbundance.getAbundance() / totalAbundance;
+
+      int from = max(0, center - halfWidth);
+      int to = min(depth, center + halfWidth + 1);
+      for (int i = from; i < to; i++) {
+        signal[i] += amplitude * peakShape[i - center + halfWidth];
+      }
+    }
+  }
+
+  private static MassAbundance[] calculateIsotopeDistribution(ChemicalComposition chemical) {
+    IsotopeDistribution distribution = new IsotopeDistribution();
+    distribution.calculateForMolecule(chemical, MINIMUM_ABUNDANCE);
+    return distribution.getData().toArray(new MassAbundance[0]);
+  }
+}
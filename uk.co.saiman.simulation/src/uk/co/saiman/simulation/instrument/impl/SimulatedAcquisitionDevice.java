@@ -29,15 +29,15 @@ package uk.co.saiman.simulation.instrument.impl;
 
 import static java.lang.Thread.MAX_PRIORITY;
 import static java.lang.Thread.currentThread;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
 import static uk.co.saiman.instrument.DeviceStatus.DISPOSED;
+import static uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy.BLOCK;
+import static uk.co.saiman.instrument.acquisition.AcquisitionPipeline.DEFAULT_CAPACITY;
 import static uk.co.saiman.log.Log.Level.ERROR;
 import static uk.co.saiman.measurement.Quantities.quantityFormat;
 import static uk.co.saiman.measurement.Units.count;
 import static uk.co.saiman.measurement.Units.second;
-import static uk.co.saiman.observable.Observer.forObservation;
-import static uk.co.saiman.observable.Observer.onObservation;
+import static uk.co.saiman.simulation.instrument.MissedTriggerPolicy.SKIP;
 
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -58,32 +58,57 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import uk.co.saiman.data.function.SampledContinuousFunction;
 import uk.co.saiman.instrument.Device;
 import uk.co.saiman.instrument.DeviceImpl;
+import uk.co.saiman.instrument.acquisition.AcquisitionBuffer;
 import uk.co.saiman.instrument.acquisition.AcquisitionController;
 import uk.co.saiman.instrument.acquisition.AcquisitionDevice;
 import uk.co.saiman.instrument.acquisition.AcquisitionException;
+import uk.co.saiman.instrument.acquisition.AcquisitionOverflowPolicy;
+import uk.co.saiman.instrument.acquisition.AcquisitionPipeline;
+import uk.co.saiman.instrument.acquisition.AcquisitionStatistics;
 import uk.co.saiman.log.Log;
 import uk.co.saiman.measurement.scalar.Scalar;
 import uk.co.saiman.observable.HotObservable;
 import uk.co.saiman.observable.Observable;
-import uk.co.saiman.observable.Observation;
 import uk.co.saiman.simulation.instrument.DetectorSimulation;
 import uk.co.saiman.simulation.instrument.DetectorSimulationService;
+import uk.co.saiman.simulation.instrument.MissedTriggerPolicy;
+import uk.co.saiman.simulation.instrument.SimulatedTriggerSource;
+import uk.co.saiman.simulation.instrument.TriggerStatistics;
 import uk.co.saiman.simulation.instrument.impl.SimulatedAcquisitionDevice.AcquisitionSimulationConfiguration;
 
 /**
  * Implementation of a simulation of an acquisition device.
+ * <p>
+ * Spectra are acquired at a configured trigger frequency, paced by a
+ * {@link TriggerSchedule deadline-based schedule}, so with a seeded detector
+ * simulation the device can serve as a steady and reproducible source of load.
+ * How closely it keeps to the frequency is reported by
+ * {@link #getTriggerStatistics()}.
  * 
  * @author Elias N Vasylenko
  */
 @Designate(ocd = AcquisitionSimulationConfiguration.class, factory = true)
 @Component(configurationPid = SimulatedAcquisitionDevice.CONFIGURATION_PID, configurationPolicy = REQUIRE, service = {
-    Device.class, AcquisitionDevice.class }, immediate = true)
-public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController> implements AcquisitionDevice {
+    Device.class, AcquisitionDevice.class, SimulatedTriggerSource.class }, immediate = true)
+public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController>
+    implements AcquisitionDevice, SimulatedTriggerSource {
   @SuppressWarnings("javadoc")
   @ObjectClassDefinition(name = "Simulated Acquisition Device Configuration", description = "The simulated acquisition device provides an implementation which defers to a detector simulation")
   public @interface AcquisitionSimulationConfiguration {
     @AttributeDefinition(name = "Acquisition Resolution", description = "The minimum resolvable units of time for samples")
     String acquisitionResolution() default DEFAULT_ACQUISITION_RESOLUTION_SECONDS + "s";
+
+    @AttributeDefinition(name = "Pipeline Capacity", description = "The number of acquired spectra which may be buffered awaiting delivery to observers")
+    int pipelineCapacity() default DEFAULT_CAPACITY;
+
+    @AttributeDefinition(name = "Overflow Policy", description = "The behavior when spectra are acquired faster than observers can consume them")
+    AcquisitionOverflowPolicy overflowPolicy() default BLOCK;
+
+    @AttributeDefinition(name = "Trigger Frequency", description = "The frequency at which spectra are acquired")
+    String triggerFrequency() default DEFAULT_TRIGGER_FREQUENCY_HERTZ + "Hz";
+
+    @AttributeDefinition(name = "Missed Trigger Policy", description = "The behavior when a trigger comes due before the previous spectrum has been acquired")
+    MissedTriggerPolicy missedTriggerPolicy() default SKIP;
   }
 
   static final String CONFIGURATION_PID = "uk.co.saiman.simulation.instrument.acquisition";
@@ -105,32 +130,14 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
     }
   }
 
-  private class Acquisition {
-    private final int remaining;
-    private final SampledContinuousFunction<Time, Dimensionless> data;
-
-    public Acquisition(int remaining, SampledContinuousFunction<Time, Dimensionless> data) {
-      this.remaining = remaining;
-      this.data = data;
-    }
-
-    /**
-     * @return the number of spectra remaining after this one in the current
-     *         experiment, or -1 if the spectra does not belong to an experiment
-     */
-    public int getRemaining() {
-      return remaining;
-    }
-
-    public SampledContinuousFunction<Time, Dimensionless> getData() {
-      return data;
-    }
-  }
-
   /**
    * The default acquisition resolution when none is provided.
    */
   public static final double DEFAULT_ACQUISITION_RESOLUTION_SECONDS = 0.00_000_025;
+  /**
+   * The default trigger frequency when none is provided.
+   */
+  public static final double DEFAULT_TRIGGER_FREQUENCY_HERTZ = 1000;
   /**
    * The default acquisition time when none is provided.
    */
@@ -161,27 +168,38 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
   private final HotObservable<SampledContinuousFunction<Time, Dimensionless>> dataListeners;
   private final HotObservable<SampledContinuousFunction<Time, Dimensionless>> acquisitionListeners;
 
-  private boolean acquiring;
-  private SampledContinuousFunction<Time, Dimensionless> acquisitionData;
+  private volatile boolean acquiring;
 
   /*
    * Internal Acquisition State
    */
-  private final HotObservable<Acquisition> acquisitionBuffer;
+  private final AcquisitionPipeline acquisitionBuffer;
+  private final TriggerSchedule triggerSchedule;
   private final Object startingLock = new Object();
   private final Object acquiringLock = new Object();
-  private Optional<ExperimentConfiguration> experiment;
+  private volatile Optional<ExperimentConfiguration> experiment;
 
   @Activate
   public SimulatedAcquisitionDevice(
       AcquisitionSimulationConfiguration configuration,
       @Reference Log log,
       @Reference(name = "detectorService") DetectorSimulationService detectorService) {
-    this(quantityFormat().parse(configuration.acquisitionResolution()).asType(Time.class), log, detectorService);
+    this(
+        quantityFormat().parse(configuration.acquisitionResolution()).asType(Time.class),
+        configuration.pipelineCapacity(),
+        configuration.overflowPolicy(),
+        quantityFormat().parse(configuration.triggerFrequency()).asType(Frequency.class),
+        configuration.missedTriggerPolicy(),
+        log,
+        detectorService);
   }
 
   public SimulatedAcquisitionDevice(
       Quantity<Time> acquisitionResolution,
+      int pipelineCapacity,
+      AcquisitionOverflowPolicy overflowPolicy,
+      Quantity<Frequency> triggerFrequency,
+      MissedTriggerPolicy missedTriggerPolicy,
       Log log,
       DetectorSimulationService detectorService) {
     try {
@@ -189,7 +207,13 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
       this.log = log;
       this.detectorService = detectorService;
 
-      acquisitionBuffer = new HotObservable<>();
+      /*
+       * Spectra are delivered from the pipeline thread, tagged with the number
+       * remaining in the current experiment so that experiment spectra are
+       * never dropped or coalesced.
+       */
+      acquisitionBuffer = new AcquisitionPipeline(pipelineCapacity, overflowPolicy, this::acquired);
+      triggerSchedule = new TriggerSchedule(triggerFrequency, missedTriggerPolicy);
       dataListeners = new HotObservable<>();
       acquisitionListeners = new HotObservable<>();
       acquisitionListeners.complete();
@@ -202,17 +226,9 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
       setAcquisitionTime(new Scalar<>(second(), DEFAULT_ACQUISITION_TIME_SECONDS));
       setAcquisitionCount(DEFAULT_ACQUISITION_COUNT);
 
-      acquisitionBuffer
-          .aggregateBackpressure()
-          .concatMap(Observable::of)
-          .executeOn(newSingleThreadExecutor())
-          .then(onObservation(Observation::requestNext))
-          .then(forObservation(o -> m -> o.requestNext()))
-          .observe(this::acquired);
-
       initializeDetector();
 
-      new Thread(this::acquire).start();
+      new Thread(this::acquire, "Simulated Acquisition").start();
     } catch (Exception e) {
       log.log(ERROR, e);
       throw e;
@@ -256,20 +272,37 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
     }
   }
 
-  private void acquired(Acquisition acquisition) {
-    synchronized (acquiringLock) {
-      acquiring = acquisition.getRemaining() >= 0;
-      dataListeners.next(acquisition.getData());
-      if (acquiring) {
-        acquisitionListeners.next(acquisition.getData());
+  /**
+   * @param data
+   *          the acquired spectrum
+   * @param remaining
+   *          the number of spectra remaining after this one in the current
+   *          experiment, or -1 if the spectrum does not belong to an experiment
+   */
+  private void acquired(SampledContinuousFunction<Time, Dimensionless> data, int remaining) {
+    /*
+     * The lock is only taken when the state of the experiment changes, which
+     * is all that threads waiting on it are interested in.
+     */
+    boolean experimental = remaining >= 0;
+    if (experimental != acquiring) {
+      synchronized (acquiringLock) {
+        acquiring = experimental;
+        acquiringLock.notifyAll();
       }
+    }
 
-      if (acquisition.getRemaining() == 0) {
+    dataListeners.next(data);
+    if (experimental) {
+      acquisitionListeners.next(data);
+    }
+
+    if (remaining == 0) {
+      synchronized (acquiringLock) {
         acquiring = false;
         acquisitionListeners.complete();
+        acquiringLock.notifyAll();
       }
-
-      acquiringLock.notifyAll();
     }
   }
 
@@ -277,25 +310,31 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
     currentThread().setPriority(MAX_PRIORITY);
 
     while (status().testValue(status -> status != DISPOSED)) {
-      DetectorSimulation detector;
-      int counter;
-
       try {
-        detector = experiment.map(e -> e.detector).orElse(getDetector());
-        counter = experiment.map(e -> --e.counter).orElse(-1);
+        triggerSchedule.awaitTrigger();
+
+        ExperimentConfiguration experiment = this.experiment.orElse(null);
+        DetectorSimulation detector;
+        int counter;
+        if (experiment != null) {
+          detector = experiment.detector;
+          counter = --experiment.counter;
+        } else {
+          detector = getDetector();
+          counter = -1;
+        }
 
-        acquisitionData = detector.acquire();
-        acquisitionBuffer.next(new Acquisition(counter, acquisitionData));
+        var acquisitionData = detector.acquire();
+        acquisitionBuffer.offer(acquisitionData, counter);
+        AcquisitionBuffer.release(acquisitionData);
 
-        synchronized (acquiringLock) {
-          if (counter == 0) {
+        if (counter == 0) {
+          synchronized (acquiringLock) {
             this.experiment = Optional.empty();
             acquiringLock.notifyAll();
           }
         }
 
-        Thread.sleep(1);
-
         if (!dataListeners.isLive())
           dataListeners.start();
       } catch (AcquisitionException e) {
@@ -306,6 +345,7 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
     }
 
     stopAcquisition();
+    acquisitionBuffer.close();
   }
 
   private void exception(AcquisitionException exception) {
@@ -349,6 +389,33 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
     return acquisitionListeners;
   }
 
+  @Override
+  public AcquisitionOverflowPolicy getOverflowPolicy() {
+    return acquisitionBuffer.getOverflowPolicy();
+  }
+
+  void setOverflowPolicy(AcquisitionOverflowPolicy policy) {
+    acquisitionBuffer.setOverflowPolicy(policy);
+  }
+
+  @Override
+  public AcquisitionStatistics getPipelineStatistics() {
+    return acquisitionBuffer;
+  }
+
+  @Override
+  public TriggerStatistics getTriggerStatistics() {
+    return triggerSchedule;
+  }
+
+  void setTriggerFrequency(Quantity<Frequency> frequency) {
+    triggerSchedule.setTriggerFrequency(frequency);
+  }
+
+  void setMissedTriggerPolicy(MissedTriggerPolicy policy) {
+    triggerSchedule.setMissedTriggerPolicy(policy);
+  }
+
   @Override
   public Quantity<Time> getSampleResolution() {
     return acquisitionResolution;
@@ -436,6 +503,13 @@ public class SimulatedAcquisitionDevice extends DeviceImpl<AcquisitionController
         }
       }
 
+      @Override
+      public void setOverflowPolicy(AcquisitionOverflowPolicy policy) {
+        try (var lock = context.acquireLock()) {
+          SimulatedAcquisitionDevice.this.setOverflowPolicy(policy);
+        }
+      }
+
       @Override
       public void close() {
         context.close();
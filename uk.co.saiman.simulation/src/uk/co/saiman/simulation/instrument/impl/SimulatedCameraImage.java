@@ -30,6 +30,7 @@ package uk.co.saiman.simulation.instrument.impl;
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 
+import java.util.Arrays;
 import java.util.function.BiFunction;
 
 import uk.co.saiman.camera.CameraImage;
@@ -37,7 +38,11 @@ import uk.co.saiman.camera.CameraResolution;
 import uk.co.saiman.simulation.instrument.SimulatedSampleImage;
 
 final class SimulatedCameraImage implements CameraImage {
+  private static final int CIRCLE_RADIUS = 25;
+  private static final double OUTSIDE_COLOR = 0.5;
+
   private final SimulatedSampleImage image;
+  private final int[] imageArgb;
   private final CameraResolution resolution;
   private final int imageX;
   private final int imageY;
@@ -47,12 +52,14 @@ final class SimulatedCameraImage implements CameraImage {
 
   public SimulatedCameraImage(
       SimulatedSampleImage image,
+      int[] imageArgb,
       CameraResolution resolution,
       int imageX,
       int imageY,
       double zoomX,
       double zoomY) {
     this.image = image;
+    this.imageArgb = imageArgb;
     this.resolution = resolution;
     this.imageX = imageX;
     this.imageY = imageY;
@@ -82,7 +89,7 @@ final class SimulatedCameraImage implements CameraImage {
         && sampleImageY >= 0)
       return color.apply(sampleImageX, sampleImageY);
     else
-      return 0.5;
+      return OUTSIDE_COLOR;
   }
 
   @Override
@@ -95,13 +102,85 @@ final class SimulatedCameraImage implements CameraImage {
 
   private boolean isInCircle(int x, int y) {
     return sqrt(
-        pow(x - (resolution.getWidth() / 2), 2) + pow(y - (resolution.getHeight() / 2), 2)) < 25;
+        pow(x - (resolution.getWidth() / 2), 2) + pow(y - (resolution.getHeight() / 2), 2)) < CIRCLE_RADIUS;
   }
 
   private boolean isEvenSecond() {
     return (System.currentTimeMillis() / 1000) % 2 == 0;
   }
 
+  /**
+   * Render a sample image into packed ARGB pixels, so that frames can be
+   * rendered by copying pixels rather than querying the image per component.
+   *
+   * @param image the sample image
+   * @return the packed ARGB pixels of the image in row-major order
+   */
+  static int[] toArgb(SimulatedSampleImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] argb = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        argb[y * width + x] = CameraImage
+            .argb(image.getRed(x, y), image.getGreen(x, y), image.getBlue(x, y));
+      }
+    }
+    return argb;
+  }
+
+  @Override
+  public void getArgb(int[] buffer, int offset, int scanlineStride) {
+    int width = resolution.getWidth();
+    int height = resolution.getHeight();
+    int imageWidth = image.getWidth();
+    int imageHeight = image.getHeight();
+    int outside = CameraImage.argb(OUTSIDE_COLOR, OUTSIDE_COLOR, OUTSIDE_COLOR);
+
+    /*
+     * The mapping from view to sample coordinates is separable, so work out the
+     * sample column for each view column once up front, with -1 marking those
+     * which fall outside the sample image.
+     */
+    int[] imageColumns = new int[width];
+    for (int x = 0; x < width; x++) {
+      int imageColumn = imageX + (int) Math.floor((x - width / 2) * zoomX);
+      imageColumns[x] = (imageColumn >= 0 && imageColumn < imageWidth) ? imageColumn : -1;
+    }
+
+    for (int y = 0; y < height; y++) {
+      int row = offset + y * scanlineStride;
+      int imageRow = imageY + (int) Math.floor((y - height / 2) * zoomY);
+
+      if (imageRow < 0 || imageRow >= imageHeight) {
+        Arrays.fill(buffer, row, row + width, outside);
+      } else {
+        int imageRowStart = imageRow * imageWidth;
+        for (int x = 0; x < width; x++) {
+          int imageColumn = imageColumns[x];
+          buffer[row + x] = imageColumn < 0 ? outside : imageArgb[imageRowStart + imageColumn];
+        }
+      }
+    }
+
+    if (tickTock) {
+      int centerX = width / 2;
+      int centerY = height / 2;
+      int radiusSquared = CIRCLE_RADIUS * CIRCLE_RADIUS;
+      for (int y = Math.max(0, centerY - CIRCLE_RADIUS); y < Math
+          .min(height, centerY + CIRCLE_RADIUS + 1); y++) {
+        int row = offset + y * scanlineStride;
+        int dy = y - centerY;
+        for (int x = Math.max(0, centerX - CIRCLE_RADIUS); x < Math
+            .min(width, centerX + CIRCLE_RADIUS + 1); x++) {
+          int dx = x - centerX;
+          if (dx * dx + dy * dy < radiusSquared)
+            buffer[row + x] |= 0x00FF0000;
+        }
+      }
+    }
+  }
+
   @Override
   public double getGreen(int x, int y) {
     return getColor(x, y, image::getGreen);
@@ -28,8 +28,12 @@
 package uk.co.saiman.simulation.instrument.impl;
 
 import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
+import static org.osgi.service.component.annotations.ReferenceCardinality.OPTIONAL;
+import static org.osgi.service.component.annotations.ReferencePolicy.DYNAMIC;
 
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.measure.Unit;
 import javax.measure.quantity.Dimensionless;
@@ -38,18 +42,27 @@ import javax.measure.quantity.Time;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
+import uk.co.saiman.chemistry.ChemicalComposition;
+import uk.co.saiman.chemistry.isotope.MassAbundance;
 import uk.co.saiman.data.function.SampledDomain;
 import uk.co.saiman.data.function.SparseSampledContinuousFunction;
 import uk.co.saiman.simulation.instrument.DetectorSimulation;
 import uk.co.saiman.simulation.instrument.DetectorSimulationService;
+import uk.co.saiman.simulation.instrument.SimulatedSampleSource;
 import uk.co.saiman.simulation.instrument.impl.TDCSimulation.TDCSimulationConfiguration;
 
 /**
  * A simulation of an acquisition data signal from a TDC.
+ * <p>
+ * Hits are distributed according to the {@link SignalTemplate template} of the
+ * current sample if a sample source is available, and are drawn in constant
+ * time each from a per-simulation generator, so given a fixed seed the
+ * sequence of records is reproducible.
  * 
  * @author Elias N Vasylenko
  */
@@ -65,20 +78,55 @@ public class TDCSimulation implements DetectorSimulationService {
         name = "Maximum Hits Per Spectrum",
         description = "Set the maximum number of hit events per detector event")
     int maximumHitsPerSpectrum() default 10;
+
+    @AttributeDefinition(
+        name = "Seed",
+        description = "The seed for the simulated hits, or zero for a different sequence each time")
+    long seed() default 0;
+
+    @AttributeDefinition(
+        name = "Maximum Mass",
+        description = "The mass-to-charge ratio at the end of each record")
+    double maximumMass() default 1000;
+
+    @AttributeDefinition(
+        name = "Peak Width",
+        description = "The standard deviation of simulated peaks in samples")
+    double peakWidth() default 4;
   }
 
   static final String CONFIGURATION_PID = "uk.co.saiman.simulation.tdc";
 
   private int maximumHits = 10;
-  private int[] hitIndices;
-  private double[] hitIntensities;
+  private int[] hitIndices = new int[0];
+  private double[] hitIntensities = new double[0];
+
+  @Reference(cardinality = OPTIONAL, policy = DYNAMIC)
+  private volatile SimulatedSampleSource sampleSource;
 
-  private final Random random = new Random();
+  private SplittableRandom seeds = new SplittableRandom();
+  private double maximumMass = 1000;
+  private double peakWidth = 4;
+  private final Map<ChemicalComposition, MassAbundance[]> isotopeDistributions =
+      new ConcurrentHashMap<>();
 
   @Activate
   @Modified
-  void configure(TDCSimulationConfiguration configuration) {
+  synchronized void configure(TDCSimulationConfiguration configuration) {
     maximumHits = configuration.maximumHitsPerSpectrum();
+    seeds = configuration.seed() == 0
+        ? new SplittableRandom()
+        : new SplittableRandom(configuration.seed());
+    maximumMass = configuration.maximumMass();
+    peakWidth = configuration.peakWidth();
+  }
+
+  private synchronized SplittableRandom nextRandom() {
+    return seeds.split();
+  }
+
+  private synchronized SignalTemplates createTemplates(int depth) {
+    return new SignalTemplates(depth, maximumMass, peakWidth, isotopeDistributions);
   }
 
   private int updateMaximumHitsPerSpectrum() {
@@ -98,12 +146,25 @@ public class TDCSimulation implements DetectorSimulationService {
   public DetectorSimulation getDetectorSimulation(
       SampledDomain<Time> domain,
       Unit<Dimensionless> intensityUnits) {
+    SignalTemplates templates = createTemplates(domain.getDepth());
+    SplittableRandom random = nextRandom();
+
     return () -> {
-      int hits = random.nextInt(updateMaximumHitsPerSpectrum());
+      int maximumHits = updateMaximumHitsPerSpectrum();
+      int hits = maximumHits > 0 ? random.nextInt(maximumHits) : 0;
+
+      SimulatedSampleSource sampleSource = this.sampleSource;
+      SignalTemplate template = templates
+          .forSample(sampleSource == null ? null : sampleSource.getNextSample());
 
       /*
-       * TODO distribute "hits" number of hits
+       * Hits needn't be in order or distinct, the sparse function sorts them and
+       * sums any which land in the same bin.
        */
+      for (int i = 0; i < hits; i++) {
+        hitIndices[i] = template.nextIndex(random);
+        hitIntensities[i] = 1;
+      }
 
       return new SparseSampledContinuousFunction<>(
           domain,
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import static uk.co.saiman.measurement.Units.hertz;
+import static uk.co.saiman.measurement.Units.second;
+import static uk.co.saiman.simulation.instrument.MissedTriggerPolicy.SKIP;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.measure.Quantity;
+import javax.measure.quantity.Frequency;
+import javax.measure.quantity.Time;
+
+import uk.co.saiman.measurement.scalar.Scalar;
+import uk.co.saiman.simulation.instrument.MissedTriggerPolicy;
+import uk.co.saiman.simulation.instrument.TriggerStatistics;
+
+/**
+ * A deadline-based schedule of triggers at a fixed frequency, for pacing a
+ * simulated device.
+ * <p>
+ * Each trigger comes due at a fixed offset from the start of the schedule, so
+ * unlike sleeping for a fixed interval between records, errors in the timing of
+ * one trigger do not accumulate into the next. The waiting thread parks until
+ * shortly before the deadline and then spins, since a park may overshoot by
+ * much more than the period of a high-frequency trigger.
+ * <p>
+ * The schedule should be awaited by a single thread, but may be reconfigured
+ * and its statistics read from any thread.
+ * 
+ * @author Elias N Vasylenko
+ */
+final class TriggerSchedule implements TriggerStatistics {
+  /**
+   * A source of time for a schedule.
+   */
+  interface Clock {
+    long nanoTime();
+
+    /**
+     * Pause the calling thread for no longer than the given duration.
+     * 
+     * @param nanos
+     *          the time remaining until the next deadline
+     */
+    void pause(long nanos);
+  }
+
+  /*
+   * A park may overrun by tens of microseconds, mostly due to timer slack, so
+   * we spin for the last stretch before each deadline.
+   */
+  private static final long SPIN_NANOS = 100_000;
+
+  static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+
+    @Override
+    public void pause(long nanos) {
+      if (nanos > SPIN_NANOS) {
+        LockSupport.parkNanos(nanos - SPIN_NANOS);
+      } else {
+        Thread.onSpinWait();
+      }
+    }
+  };
+
+  private final Clock clock;
+
+  private volatile long period;
+  private volatile MissedTriggerPolicy policy;
+  private volatile boolean reset;
+
+  private long nextTrigger;
+
+  /*
+   * Only ever written by the waiting thread.
+   */
+  private volatile long startTime;
+  private volatile long lastTriggerTime;
+  private volatile long triggerCount;
+  private volatile long missedTriggerCount;
+  private volatile long totalJitter;
+  private volatile long maximumJitter;
+
+  TriggerSchedule(Quantity<Frequency> frequency, MissedTriggerPolicy policy) {
+    this(SYSTEM_CLOCK, frequency, policy);
+  }
+
+  TriggerSchedule(Clock clock, Quantity<Frequency> frequency, MissedTriggerPolicy policy) {
+    this.clock = clock;
+    setTriggerFrequency(frequency);
+    setMissedTriggerPolicy(policy);
+  }
+
+  /**
+   * Change the frequency of triggers. The schedule and its statistics are
+   * restarted from the next trigger.
+   * 
+   * @param frequency
+   *          the frequency of triggers
+   */
+  void setTriggerFrequency(Quantity<Frequency> frequency) {
+    double hertz = frequency.to(hertz().getUnit()).getValue().doubleValue();
+    long period = Math.round(1_000_000_000 / hertz);
+    if (!(hertz > 0) || period <= 0) {
+      throw new IllegalArgumentException("Invalid trigger frequency: " + frequency);
+    }
+    this.period = period;
+    this.reset = true;
+  }
+
+  /**
+   * Change the policy for missed triggers. The schedule and its statistics are
+   * restarted from the next trigger.
+   * 
+   * @param policy
+   *          the policy for missed triggers
+   */
+  void setMissedTriggerPolicy(MissedTriggerPolicy policy) {
+    this.policy = policy;
+    this.reset = true;
+  }
+
+  /**
+   * Wait until the next trigger is due. If the schedule has been restarted, the
+   * first trigger is due immediately.
+   */
+  void awaitTrigger() {
+    if (reset) {
+      reset = false;
+      long now = clock.nanoTime();
+      nextTrigger = now;
+      startTime = now;
+      lastTriggerTime = now;
+      triggerCount = 0;
+      missedTriggerCount = 0;
+      totalJitter = 0;
+      maximumJitter = 0;
+    }
+
+    long trigger = nextTrigger;
+    long remaining;
+    while ((remaining = trigger - clock.nanoTime()) > 0) {
+      clock.pause(remaining);
+    }
+
+    long now = clock.nanoTime();
+    long period = this.period;
+    long jitter = now - trigger;
+
+    if (jitter >= period && policy == SKIP) {
+      long missed = jitter / period;
+      trigger += missed * period;
+      jitter -= missed * period;
+      missedTriggerCount += missed;
+    }
+
+    nextTrigger = trigger + period;
+    lastTriggerTime = now;
+    triggerCount++;
+    totalJitter += jitter;
+    if (jitter > maximumJitter) {
+      maximumJitter = jitter;
+    }
+  }
+
+  private static Quantity<Time> nanoseconds(double nanos) {
+    return new Scalar<>(second(), nanos / 1_000_000_000);
+  }
+
+  @Override
+  public Quantity<Frequency> getTriggerFrequency() {
+    return new Scalar<>(hertz(), 1_000_000_000d / period);
+  }
+
+  @Override
+  public MissedTriggerPolicy getMissedTriggerPolicy() {
+    return policy;
+  }
+
+  @Override
+  public long getTriggerCount() {
+    return triggerCount;
+  }
+
+  @Override
+  public long getMissedTriggerCount() {
+    return missedTriggerCount;
+  }
+
+  @Override
+  public Quantity<Frequency> getAchievedFrequency() {
+    long triggers = triggerCount;
+    long elapsed = lastTriggerTime - startTime;
+    double frequency = triggers > 1 && elapsed > 0 ? (triggers - 1) * 1_000_000_000d / elapsed : 0;
+    return new Scalar<>(hertz(), frequency);
+  }
+
+  @Override
+  public Quantity<Time> getMeanJitter() {
+    long triggers = triggerCount;
+    return nanoseconds(triggers > 0 ? totalJitter / (double) triggers : 0);
+  }
+
+  @Override
+  public Quantity<Time> getMaximumJitter() {
+    return nanoseconds(maximumJitter);
+  }
+}
@@ -31,6 +31,7 @@ import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.function.Function.identity;
 import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
 import static uk.co.saiman.measurement.Quantities.quantityFormat;
+import static java.util.Collections.unmodifiableMap;
 import static uk.co.saiman.measurement.Units.count;
 
 import java.util.HashMap;
@@ -53,6 +54,8 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 import uk.co.saiman.camera.CameraConnection;
 import uk.co.saiman.camera.CameraDevice;
+import uk.co.saiman.camera.CameraFrame;
+import uk.co.saiman.camera.CameraFramePool;
 import uk.co.saiman.camera.CameraImage;
 import uk.co.saiman.camera.CameraResolution;
 import uk.co.saiman.chemistry.ChemicalComposition;
@@ -152,10 +155,76 @@ public class XYStageSimulatedSampleSource
     }
   };
 
+  private static final SimulatedSample EMPTY_SAMPLE = new PixelSample(Map.of());
+
+  /*
+   * A sample at a single pixel of the sample image.
+   */
+  private static final class PixelSample implements SimulatedSample {
+    private final Map<ChemicalComposition, Double> chemicalIntensities;
+
+    PixelSample(Map<ChemicalComposition, Double> chemicalIntensities) {
+      this.chemicalIntensities = chemicalIntensities;
+    }
+
+    @Override
+    public Map<ChemicalComposition, Double> chemicalIntensities() {
+      return chemicalIntensities;
+    }
+  }
+
+  /*
+   * The sample at each pixel of the sample image is created when the stage
+   * first visits it and is then reused, so while the stage stays over a pixel,
+   * or returns to one, each record costs no allocation and consumers see the
+   * same sample instance. The whole table is replaced when the image or any of
+   * the chemicals change, and published without a lock, so it can be read per
+   * record. Samples are immutable, so two threads filling the same pixel at
+   * once is harmless.
+   */
+  private static final class PixelSamples {
+    private final SimulatedSampleImage image;
+    private final ChemicalComposition redChemical;
+    private final ChemicalComposition greenChemical;
+    private final ChemicalComposition blueChemical;
+    private final SimulatedSample[] samples;
+
+    PixelSamples(
+        SimulatedSampleImage image,
+        ChemicalComposition redChemical,
+        ChemicalComposition greenChemical,
+        ChemicalComposition blueChemical) {
+      this.image = image;
+      this.redChemical = redChemical;
+      this.greenChemical = greenChemical;
+      this.blueChemical = blueChemical;
+      this.samples = new SimulatedSample[image.getWidth() * image.getHeight()];
+    }
+
+    SimulatedSample getSample(int x, int y) {
+      if (x < 0 || x >= image.getWidth() || y < 0 || y >= image.getHeight()) {
+        return EMPTY_SAMPLE;
+      }
+
+      int index = y * image.getWidth() + x;
+      SimulatedSample sample = samples[index];
+      if (sample == null) {
+        Map<ChemicalComposition, Double> sampleChemicals = new HashMap<>();
+        sampleChemicals.put(redChemical, image.getRed(x, y));
+        sampleChemicals.put(greenChemical, image.getGreen(x, y));
+        sampleChemicals.put(blueChemical, image.getBlue(x, y));
+        sample = new PixelSample(unmodifiableMap(sampleChemicals));
+        samples[index] = sample;
+      }
+      return sample;
+    }
+  }
+
   private final XYStage stageDevice;
 
   private final Set<CameraConnection> cameraConnections;
   private final HotObservable<CameraImage> imageStream;
+  private final CameraFramePool framePool;
 
   private CameraResolution cameraResolution;
   private double cameraImageZoomX;
@@ -165,6 +234,8 @@ public class XYStageSimulatedSampleSource
   private ChemicalComposition greenChemical;
   private ChemicalComposition blueChemical;
   private SimulatedSampleImage sampleImage;
+  private int[] sampleImageArgb;
+  private volatile PixelSamples pixelSamples;
 
   @Activate
   public XYStageSimulatedSampleSource(
@@ -174,6 +245,7 @@ public class XYStageSimulatedSampleSource
     this.cameraConnections = new HashSet<>();
 
     this.imageStream = new HotObservable<>();
+    this.framePool = new CameraFramePool();
     this.imageStream
         .executeOn(newSingleThreadExecutor())
         .filter(m -> !cameraConnections.isEmpty())
@@ -183,7 +255,7 @@ public class XYStageSimulatedSampleSource
           } catch (InterruptedException e) {
             throw new RuntimeException(e);
           }
-          imageStream.next(getImage());
+          nextImage();
         });
 
     resetSampleImage();
@@ -256,25 +328,34 @@ public class XYStageSimulatedSampleSource
   @Override
   public synchronized void setRedChemical(ChemicalComposition redChemical) {
     this.redChemical = redChemical;
+    resetPixelSamples();
   }
 
   @Override
   public synchronized void setGreenChemical(ChemicalComposition greenChemical) {
     this.greenChemical = greenChemical;
+    resetPixelSamples();
   }
 
   @Override
   public synchronized void setBlueChemical(ChemicalComposition blueChemical) {
     this.blueChemical = blueChemical;
+    resetPixelSamples();
   }
 
   @Override
   public synchronized void setSampleImage(SimulatedSampleImage sampleImage) {
     this.sampleImage = sampleImage;
+    this.sampleImageArgb = SimulatedCameraImage.toArgb(sampleImage);
+    resetPixelSamples();
+  }
+
+  private void resetPixelSamples() {
+    pixelSamples = new PixelSamples(sampleImage, redChemical, greenChemical, blueChemical);
   }
 
   public synchronized void resetSampleImage() {
-    this.sampleImage = DEFAULT_SAMPLE_IMAGE;
+    setSampleImage(DEFAULT_SAMPLE_IMAGE);
   }
 
   private double getSampleAreaPosition(
@@ -300,39 +381,45 @@ public class XYStageSimulatedSampleSource
         .doubleValue();
   }
 
-  int getImageX() {
+  int getImageX(SimulatedSampleImage sampleImage) {
     return (int) (sampleImage.getWidth() * getSampleAreaPosition(XYCoordinate::getX));
   }
 
-  int getImageY() {
+  int getImageY(SimulatedSampleImage sampleImage) {
     return (int) (sampleImage.getHeight() * getSampleAreaPosition(XYCoordinate::getY));
   }
 
   @Override
-  public synchronized SimulatedSample getNextSample() {
-    int imageX = getImageX();
-    int imageY = getImageY();
-
-    Map<ChemicalComposition, Double> sampleChemicals = new HashMap<>();
-
-    if (imageX >= 0 && imageX < sampleImage.getWidth() && imageY >= 0
-        && imageY < sampleImage.getHeight()) {
-      sampleChemicals.put(redChemical, sampleImage.getRed(imageX, imageY));
-      sampleChemicals.put(greenChemical, sampleImage.getGreen(imageX, imageY));
-      sampleChemicals.put(blueChemical, sampleImage.getBlue(imageX, imageY));
-    }
+  public SimulatedSample getNextSample() {
+    PixelSamples pixelSamples = this.pixelSamples;
+    return pixelSamples
+        .getSample(getImageX(pixelSamples.image), getImageY(pixelSamples.image));
+  }
 
-    return () -> sampleChemicals;
+  synchronized CameraFrame getImage() {
+    return framePool
+        .acquire(
+            new SimulatedCameraImage(
+                sampleImage,
+                sampleImageArgb,
+                cameraResolution,
+                getImageX(sampleImage),
+                getImageY(sampleImage),
+                cameraImageZoomX,
+                cameraImageZoomY));
   }
 
-  private CameraImage getImage() {
-    return new SimulatedCameraImage(
-        sampleImage,
-        cameraResolution,
-        getImageX(),
-        getImageY(),
-        cameraImageZoomX,
-        cameraImageZoomY);
+  /*
+   * Observers which hold on to the frame beyond delivery retain it themselves,
+   * so our reference can be released as soon as it has been published.
+   */
+  private void nextImage() {
+    CameraFrame frame = getImage();
+    try {
+      imageStream.next(frame);
+    } finally {
+      frame.release();
+    }
   }
 
   @Override
@@ -390,7 +477,7 @@ public class XYStageSimulatedSampleSource
       boolean empty = cameraConnections.isEmpty();
       cameraConnections.add(cameraConnection);
       if (empty)
-        imageStream.next(getImage());
+        nextImage();
     }
 
     return cameraConnection;
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import static uk.co.saiman.measurement.Units.count;
+import static uk.co.saiman.measurement.Units.second;
+
+import java.util.Map;
+
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.instrument.acquisition.AcquisitionBuffer;
+import uk.co.saiman.simulation.instrument.DetectorSimulation;
+
+/**
+ * A benchmark of the sustained record rate of the {@link ADCSimulation},
+ * acquiring records one at a time and in parallel batches.
+ * <p>
+ * Run from the test classpath with optional arguments for the depth of each
+ * record and the size of each batch.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class ADCSimulationBenchmark {
+  private static final long SEED = 42;
+
+  public static void main(String... args) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int batch = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+    var domain = new RegularSampledDomain<>(second().getUnit(), depth, 4_000_000, 0);
+    var simulation = new ADCSimulation(() -> () -> Map.of(), SEED, 1000, 4);
+
+    for (int round = 0; round < 10; round++) {
+      DetectorSimulation detector = simulation
+          .getDetectorSimulation(domain, count().getUnit());
+
+      System.gc();
+      long start = System.nanoTime();
+      int singleRecords = 0;
+      for (; System.nanoTime() - start < 1_000_000_000; singleRecords++) {
+        AcquisitionBuffer.release(detector.acquire());
+      }
+      long singleTime = System.nanoTime() - start;
+
+      System.gc();
+      start = System.nanoTime();
+      int batchRecords = 0;
+      for (; System.nanoTime() - start < 1_000_000_000; batchRecords += batch) {
+        detector.acquire(batch).forEach(AcquisitionBuffer::release);
+      }
+      long batchTime = System.nanoTime() - start;
+
+      System.out
+          .printf(
+              "%d samples per record: %.0f records/s singly, %.0f records/s in batches of %d%n",
+              depth,
+              singleRecords * 1e9 / singleTime,
+              batchRecords * 1e9 / batchTime,
+              batch);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static uk.co.saiman.measurement.Units.count;
+import static uk.co.saiman.measurement.Units.second;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.measure.quantity.Dimensionless;
+import javax.measure.quantity.Time;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.data.function.RegularSampledDomain;
+import uk.co.saiman.data.function.SampledContinuousFunction;
+import uk.co.saiman.instrument.acquisition.AcquisitionBuffer;
+import uk.co.saiman.simulation.instrument.DetectorSimulation;
+
+public class ADCSimulationTest {
+  private static final long SEED = 42;
+  private static final int DEPTH = 10_000;
+  private static final int BATCH = 16;
+
+  private final RegularSampledDomain<Time> domain = new RegularSampledDomain<>(
+      second().getUnit(),
+      DEPTH,
+      4_000_000,
+      0);
+
+  private static ADCSimulation simulation() {
+    return new ADCSimulation(() -> () -> Map.of(), SEED, 1000, 4);
+  }
+
+  @Test
+  public void batchedRecordsAreReproducibleSinglyFromSeed() {
+    /*
+     * A simulation with a fixed seed splits off the same sequence of generators
+     * for its detectors each time it is configured, so use a fresh simulation
+     * for each run.
+     */
+    List<SampledContinuousFunction<Time, Dimensionless>> batched = simulation()
+        .getDetectorSimulation(domain, count().getUnit())
+        .acquire(BATCH);
+
+    DetectorSimulation single = simulation().getDetectorSimulation(domain, count().getUnit());
+
+    for (var expected : batched) {
+      var actual = single.acquire();
+      assertArrayEquals(expected.range().toArray(), actual.range().toArray());
+      AcquisitionBuffer.release(expected);
+      AcquisitionBuffer.release(actual);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import java.util.Arrays;
+
+import uk.co.saiman.camera.CameraDevice;
+import uk.co.saiman.camera.CameraFrame;
+import uk.co.saiman.camera.CameraFramePool;
+import uk.co.saiman.camera.CameraImage;
+import uk.co.saiman.camera.CameraResolution;
+import uk.co.saiman.simulation.instrument.SimulatedSampleImage;
+
+/**
+ * A headless benchmark of the sustained frame rate of the simulated camera,
+ * comparing frames rendered and delivered in bulk through a
+ * {@link CameraFramePool} against the same images read one pixel component at
+ * a time. Delivery is modelled as a copy into a packed ARGB buffer, which is
+ * the form consumed by a bulk {@code PixelWriter.setPixels} call.
+ * <p>
+ * Run from the test classpath with optional arguments for the width and height
+ * of the frames.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class SimulatedCameraImageBenchmark {
+  private static final SimulatedSampleImage SAMPLE_IMAGE = new SimulatedSampleImage() {
+    private static final int SIZE = 100;
+
+    @Override
+    public int getWidth() {
+      return SIZE;
+    }
+
+    @Override
+    public int getHeight() {
+      return SIZE;
+    }
+
+    @Override
+    public double getRed(int x, int y) {
+      return (x + y) % 2;
+    }
+
+    @Override
+    public double getGreen(int x, int y) {
+      return x / (double) SIZE;
+    }
+
+    @Override
+    public double getBlue(int x, int y) {
+      return y / (double) SIZE;
+    }
+  };
+
+  public static void main(String... args) {
+    int width = args.length > 0 ? Integer.parseInt(args[0]) : 1280;
+    int height = args.length > 1 ? Integer.parseInt(args[1]) : 960;
+
+    CameraResolution resolution = new CameraResolution() {
+      @Override
+      public int getWidth() {
+        return width;
+      }
+
+      @Override
+      public int getHeight() {
+        return height;
+      }
+
+      @Override
+      public void selectResolution() {}
+
+      @Override
+      public CameraDevice getCameraDevice() {
+        return null;
+      }
+    };
+    int[] sampleArgb = SimulatedCameraImage.toArgb(SAMPLE_IMAGE);
+    CameraFramePool pool = new CameraFramePool();
+    int[] display = new int[width * height];
+    int[] expected = new int[width * height];
+
+    for (int round = 0; round < 10; round++) {
+      SimulatedCameraImage image = new SimulatedCameraImage(
+          SAMPLE_IMAGE,
+          sampleArgb,
+          resolution,
+          30 + round,
+          70 - round,
+          0.05,
+          0.05);
+
+      perPixel(image).getArgb(expected, 0, width);
+      CameraFrame check = pool.acquire(image);
+      check.getArgb(display, 0, width);
+      check.release();
+      if (!Arrays.equals(expected, display))
+        throw new AssertionError("Bulk rendering differs from per-pixel rendering");
+
+      System.gc();
+      long start = System.nanoTime();
+      int perPixelFrames = 0;
+      for (; System.nanoTime() - start < 500_000_000; perPixelFrames++) {
+        perPixel(image).getArgb(display, 0, width);
+      }
+      long perPixelTime = System.nanoTime() - start;
+
+      System.gc();
+      start = System.nanoTime();
+      int bulkFrames = 0;
+      for (; System.nanoTime() - start < 500_000_000; bulkFrames++) {
+        CameraFrame frame = pool.acquire(image);
+        frame.getArgb(display, 0, width);
+        frame.release();
+      }
+      long bulkTime = System.nanoTime() - start;
+
+      System.out
+          .printf(
+              "%dx%d per-pixel: %.1f fps; pooled bulk frames: %.1f fps%n",
+              width,
+              height,
+              perPixelFrames * 1e9 / perPixelTime,
+              bulkFrames * 1e9 / bulkTime);
+    }
+  }
+
+  /*
+   * Hide the bulk path, leaving only the per-pixel accessors and the default
+   * fallback built on them.
+   */
+  private static CameraImage perPixel(CameraImage image) {
+    return new CameraImage() {
+      @Override
+      public int getWidth() {
+        return image.getWidth();
+      }
+
+      @Override
+      public int getHeight() {
+        return image.getHeight();
+      }
+
+      @Override
+      public double getRed(int x, int y) {
+        return image.getRed(x, y);
+      }
+
+      @Override
+      public double getGreen(int x, int y) {
+        return image.getGreen(x, y);
+      }
+
+      @Override
+      public double getBlue(int x, int y) {
+        return image.getBlue(x, y);
+      }
+    };
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import static uk.co.saiman.measurement.Units.hertz;
+import static uk.co.saiman.simulation.instrument.MissedTriggerPolicy.SKIP;
+
+import uk.co.saiman.measurement.scalar.Scalar;
+
+/**
+ * A benchmark of how closely a {@link TriggerSchedule} on the system clock
+ * keeps to a range of trigger frequencies, against the previous approach of
+ * sleeping for a millisecond between records.
+ * <p>
+ * Run from the test classpath with an optional argument for the number of
+ * seconds to run at each frequency.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class TriggerScheduleBenchmark {
+  public static void main(String... args) throws InterruptedException {
+    double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+    long duration = (long) (seconds * 1_000_000_000);
+
+    long start = System.nanoTime();
+    long sleeps = 0;
+    while (System.nanoTime() - start < duration) {
+      Thread.sleep(1);
+      sleeps++;
+    }
+    System.out
+        .printf("sleep(1) pacing: %.1f Hz%n", sleeps * 1e9 / (System.nanoTime() - start));
+
+    for (double frequency : new double[] { 100, 1_000, 10_000, 50_000, 200_000 }) {
+      TriggerSchedule schedule = new TriggerSchedule(new Scalar<>(hertz(), frequency), SKIP);
+
+      start = System.nanoTime();
+      while (System.nanoTime() - start < duration) {
+        schedule.awaitTrigger();
+      }
+
+      System.out
+          .printf(
+              "%.0f Hz: achieved %.1f Hz, %d missed, jitter mean %.2f us, max %.1f us%n",
+              frequency,
+              schedule.getAchievedFrequency().getValue().doubleValue(),
+              schedule.getMissedTriggerCount(),
+              schedule.getMeanJitter().getValue().doubleValue() * 1e6,
+              schedule.getMaximumJitter().getValue().doubleValue() * 1e6);
+    }
+  }
+}
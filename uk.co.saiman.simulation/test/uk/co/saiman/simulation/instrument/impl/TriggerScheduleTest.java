@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.simulation.
+ *
+ * uk.co.saiman.simulation is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.simulation is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.simulation.instrument.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static uk.co.saiman.measurement.Units.hertz;
+import static uk.co.saiman.simulation.instrument.MissedTriggerPolicy.CATCH_UP;
+import static uk.co.saiman.simulation.instrument.MissedTriggerPolicy.SKIP;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.saiman.measurement.scalar.Scalar;
+import uk.co.saiman.simulation.instrument.MissedTriggerPolicy;
+
+public class TriggerScheduleTest {
+  private static final long PERIOD = 1_000_000;
+
+  static class FakeClock implements TriggerSchedule.Clock {
+    private long now = 123_456_789;
+
+    @Override
+    public long nanoTime() {
+      return now;
+    }
+
+    @Override
+    public void pause(long nanos) {
+      now += nanos;
+    }
+
+    void advance(long nanos) {
+      now += nanos;
+    }
+  }
+
+  private static TriggerSchedule schedule(FakeClock clock, MissedTriggerPolicy policy) {
+    return new TriggerSchedule(clock, new Scalar<>(hertz(), 1000), policy);
+  }
+
+  @Test
+  public void triggersAreDueAtFixedDeadlines() {
+    FakeClock clock = new FakeClock();
+    TriggerSchedule schedule = schedule(clock, SKIP);
+
+    long start = clock.nanoTime();
+    for (int i = 0; i < 10; i++) {
+      schedule.awaitTrigger();
+      assertEquals(start + i * PERIOD, clock.nanoTime());
+      clock.advance(PERIOD / 3);
+    }
+
+    assertEquals(10, schedule.getTriggerCount());
+    assertEquals(0, schedule.getMissedTriggerCount());
+    assertEquals(0, schedule.getMaximumJitter().getValue().doubleValue());
+    assertEquals(1000, schedule.getAchievedFrequency().getValue().doubleValue(), 1e-9);
+  }
+
+  @Test
+  public void lateTriggersAreSkipped() {
+    FakeClock clock = new FakeClock();
+    TriggerSchedule schedule = schedule(clock, SKIP);
+
+    long start = clock.nanoTime();
+    schedule.awaitTrigger();
+    clock.advance(PERIOD * 3 + PERIOD / 2);
+    schedule.awaitTrigger();
+
+    assertEquals(start + PERIOD * 3 + PERIOD / 2, clock.nanoTime());
+    assertEquals(2, schedule.getTriggerCount());
+    assertEquals(2, schedule.getMissedTriggerCount());
+    assertEquals(PERIOD / 2 * 1e-9, schedule.getMaximumJitter().getValue().doubleValue(), 1e-12);
+
+    schedule.awaitTrigger();
+    assertEquals(start + PERIOD * 4, clock.nanoTime());
+  }
+
+  @Test
+  public void lateTriggersAreCaughtUp() {
+    FakeClock clock = new FakeClock();
+    TriggerSchedule schedule = schedule(clock, CATCH_UP);
+
+    long start = clock.nanoTime();
+    schedule.awaitTrigger();
+    clock.advance(PERIOD * 3 + PERIOD / 2);
+    for (int i = 0; i < 3; i++) {
+      schedule.awaitTrigger();
+      assertEquals(start + PERIOD * 3 + PERIOD / 2, clock.nanoTime());
+    }
+    schedule.awaitTrigger();
+    assertEquals(start + PERIOD * 4, clock.nanoTime());
+
+    assertEquals(5, schedule.getTriggerCount());
+    assertEquals(0, schedule.getMissedTriggerCount());
+    assertEquals(
+        (PERIOD * 2 + PERIOD / 2) * 1e-9,
+        schedule.getMaximumJitter().getValue().doubleValue(),
+        1e-12);
+  }
+
+  @Test
+  public void changingFrequencyRestartsSchedule() {
+    FakeClock clock = new FakeClock();
+    TriggerSchedule schedule = schedule(clock, SKIP);
+
+    schedule.awaitTrigger();
+    schedule.awaitTrigger();
+    clock.advance(PERIOD * 10);
+
+    schedule.setTriggerFrequency(new Scalar<>(hertz(), 2000));
+    long restart = clock.nanoTime();
+    schedule.awaitTrigger();
+    schedule.awaitTrigger();
+
+    assertEquals(restart + PERIOD / 2, clock.nanoTime());
+    assertEquals(2, schedule.getTriggerCount());
+    assertEquals(0, schedule.getMissedTriggerCount());
+    assertEquals(2000, schedule.getAchievedFrequency().getValue().doubleValue(), 1e-9);
+  }
+}
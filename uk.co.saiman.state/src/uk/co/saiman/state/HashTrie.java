@@ -0,0 +1,536 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.state.
+ *
+ * uk.co.saiman.state is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.state is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.state;
+
+import static java.util.Spliterator.DISTINCT;
+import static java.util.Spliterator.IMMUTABLE;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterators.spliterator;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.StringJoiner;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A persistent hash array mapped trie. Updates copy only the path from the root
+ * to the affected entry, so derived maps share all untouched structure with
+ * their source.
+ * <p>
+ * The shape of the trie is canonical for a given set of keys, and every node
+ * caches the size and the {@link java.util.Map#hashCode() map hash} of its
+ * subtree, so equality can skip shared subtrees by identity and reject
+ * differing subtrees by hash before comparing any entries.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class HashTrie<K, V> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final int MAX_SHIFT = Integer.SIZE;
+  private static final int MAX_DEPTH = MAX_SHIFT / BITS + 2;
+
+  private static final HashTrie<?, ?> EMPTY = new HashTrie<>(new Branch(0, new Node[0], 0, 0));
+
+  private final Branch root;
+
+  private HashTrie(Branch root) {
+    this.root = root;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K, V> HashTrie<K, V> empty() {
+    return (HashTrie<K, V>) EMPTY;
+  }
+
+  int size() {
+    return root.size;
+  }
+
+  boolean isEmpty() {
+    return root.size == 0;
+  }
+
+  boolean containsKey(K key) {
+    return root.find(key, key.hashCode(), 0) != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  V get(K key) {
+    Entry entry = root.find(key, key.hashCode(), 0);
+    return entry == null ? null : (V) entry.value;
+  }
+
+  HashTrie<K, V> put(K key, V value) {
+    Branch root = (Branch) this.root.put(new Entry(key, value), 0);
+    return root == this.root ? this : new HashTrie<>(root);
+  }
+
+  HashTrie<K, V> putAll(HashTrie<K, V> trie) {
+    if (isEmpty()) {
+      return trie;
+    }
+    Branch root = this.root;
+    for (Iterator<Entry> entries = trie.entries(); entries.hasNext();) {
+      root = (Branch) root.put(entries.next(), 0);
+    }
+    return root == this.root ? this : new HashTrie<>(root);
+  }
+
+  HashTrie<K, V> remove(K key) {
+    Node root = this.root.remove(key, key.hashCode(), 0);
+    if (root == this.root) {
+      return this;
+    } else if (root == null) {
+      return empty();
+    } else {
+      return new HashTrie<>((Branch) root);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  Stream<K> keys() {
+    Iterator<Entry> entries = entries();
+    Iterator<K> keys = new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      }
+
+      @Override
+      public K next() {
+        return (K) entries.next().key;
+      }
+    };
+    return StreamSupport
+        .stream(spliterator(keys, root.size, DISTINCT | NONNULL | IMMUTABLE), false);
+  }
+
+  private Iterator<Entry> entries() {
+    return new EntryIterator(root);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof HashTrie<?, ?>))
+      return false;
+
+    HashTrie<?, ?> that = (HashTrie<?, ?>) obj;
+
+    return root.equalTo(that.root);
+  }
+
+  @Override
+  public int hashCode() {
+    return root.hash;
+  }
+
+  @Override
+  public String toString() {
+    StringJoiner joiner = new StringJoiner(", ", "{", "}");
+    for (Iterator<Entry> entries = entries(); entries.hasNext();) {
+      Entry entry = entries.next();
+      joiner.add(entry.key + "=" + entry.value);
+    }
+    return joiner.toString();
+  }
+
+  private static int index(int keyHash, int shift) {
+    return (keyHash >>> shift) & MASK;
+  }
+
+  private static abstract class Node {
+    abstract int size();
+
+    abstract int hash();
+
+    abstract Entry find(Object key, int keyHash, int shift);
+
+    abstract Node put(Entry entry, int shift);
+
+    /*
+     * Returns null if the subtree becomes empty. Subtrees other than the root
+     * which are reduced to a single entry collapse into that entry, so that the
+     * shape of the trie stays canonical.
+     */
+    abstract Node remove(Object key, int keyHash, int shift);
+
+    abstract boolean equalTo(Node node);
+  }
+
+  private static final class Entry extends Node {
+    private final Object key;
+    private final Object value;
+    private final int keyHash;
+    private final int hash;
+
+    Entry(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+      this.keyHash = key.hashCode();
+      this.hash = keyHash ^ value.hashCode();
+    }
+
+    @Override
+    int size() {
+      return 1;
+    }
+
+    @Override
+    int hash() {
+      return hash;
+    }
+
+    @Override
+    Entry find(Object key, int keyHash, int shift) {
+      return this.keyHash == keyHash && this.key.equals(key) ? this : null;
+    }
+
+    @Override
+    Node put(Entry entry, int shift) {
+      if (keyHash == entry.keyHash && key.equals(entry.key)) {
+        return value.equals(entry.value) ? this : entry;
+      } else {
+        return merge(this, entry, shift);
+      }
+    }
+
+    @Override
+    Node remove(Object key, int keyHash, int shift) {
+      return find(key, keyHash, shift) == null ? this : null;
+    }
+
+    @Override
+    boolean equalTo(Node node) {
+      if (this == node)
+        return true;
+      if (!(node instanceof Entry))
+        return false;
+
+      Entry that = (Entry) node;
+
+      return this.hash == that.hash && this.key.equals(that.key) && this.value.equals(that.value);
+    }
+
+    private static Node merge(Entry first, Entry second, int shift) {
+      if (shift >= MAX_SHIFT) {
+        return new Collision(new Node[] { first, second });
+      }
+
+      int firstIndex = index(first.keyHash, shift);
+      int secondIndex = index(second.keyHash, shift);
+
+      Node[] children;
+      int bitmap = (1 << firstIndex) | (1 << secondIndex);
+      if (firstIndex == secondIndex) {
+        children = new Node[] { merge(first, second, shift + BITS) };
+      } else if (firstIndex < secondIndex) {
+        children = new Node[] { first, second };
+      } else {
+        children = new Node[] { second, first };
+      }
+
+      return new Branch(bitmap, children, 2, first.hash + second.hash);
+    }
+  }
+
+  private static final class Branch extends Node {
+    private final int bitmap;
+    private final Node[] children;
+    private final int size;
+    private final int hash;
+
+    Branch(int bitmap, Node[] children, int size, int hash) {
+      this.bitmap = bitmap;
+      this.children = children;
+      this.size = size;
+      this.hash = hash;
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    int hash() {
+      return hash;
+    }
+
+    private int position(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    Entry find(Object key, int keyHash, int shift) {
+      int bit = 1 << index(keyHash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      return children[position(bit)].find(key, keyHash, shift + BITS);
+    }
+
+    @Override
+    Node put(Entry entry, int shift) {
+      int bit = 1 << index(entry.keyHash, shift);
+      int position = position(bit);
+
+      if ((bitmap & bit) == 0) {
+        Node[] children = new Node[this.children.length + 1];
+        System.arraycopy(this.children, 0, children, 0, position);
+        children[position] = entry;
+        System
+            .arraycopy(
+                this.children,
+                position,
+                children,
+                position + 1,
+                this.children.length - position);
+        return new Branch(bitmap | bit, children, size + 1, hash + entry.hash);
+      }
+
+      Node child = this.children[position];
+      Node updated = child.put(entry, shift + BITS);
+      if (updated == child) {
+        return this;
+      }
+
+      Node[] children = this.children.clone();
+      children[position] = updated;
+      return new Branch(
+          bitmap,
+          children,
+          size - child.size() + updated.size(),
+          hash - child.hash() + updated.hash());
+    }
+
+    @Override
+    Node remove(Object key, int keyHash, int shift) {
+      int bit = 1 << index(keyHash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+
+      int position = position(bit);
+      Node child = this.children[position];
+      Node updated = child.remove(key, keyHash, shift + BITS);
+      if (updated == child) {
+        return this;
+      }
+
+      if (updated == null) {
+        if (this.children.length == 1) {
+          return null;
+        }
+        if (shift > 0 && this.children.length == 2 && this.children[1 - position] instanceof Entry) {
+          return this.children[1 - position];
+        }
+
+        Node[] children = new Node[this.children.length - 1];
+        System.arraycopy(this.children, 0, children, 0, position);
+        System
+            .arraycopy(this.children, position + 1, children, position, children.length - position);
+        return new Branch(bitmap ^ bit, children, size - 1, hash - child.hash());
+      }
+
+      if (shift > 0 && this.children.length == 1 && updated instanceof Entry) {
+        return updated;
+      }
+
+      Node[] children = this.children.clone();
+      children[position] = updated;
+      return new Branch(bitmap, children, size - 1, hash - child.hash() + updated.hash());
+    }
+
+    @Override
+    boolean equalTo(Node node) {
+      if (this == node)
+        return true;
+      if (!(node instanceof Branch))
+        return false;
+
+      Branch that = (Branch) node;
+
+      if (this.size != that.size || this.hash != that.hash || this.bitmap != that.bitmap)
+        return false;
+
+      for (int i = 0; i < children.length; i++) {
+        if (!this.children[i].equalTo(that.children[i]))
+          return false;
+      }
+      return true;
+    }
+  }
+
+  private static final class Collision extends Node {
+    private final Node[] entries;
+    private final int hash;
+
+    Collision(Node[] entries) {
+      this.entries = entries;
+      int hash = 0;
+      for (Node entry : entries) {
+        hash += entry.hash();
+      }
+      this.hash = hash;
+    }
+
+    @Override
+    int size() {
+      return entries.length;
+    }
+
+    @Override
+    int hash() {
+      return hash;
+    }
+
+    private int position(Object key) {
+      for (int i = 0; i < entries.length; i++) {
+        if (((Entry) entries[i]).key.equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Entry find(Object key, int keyHash, int shift) {
+      int position = position(key);
+      return position < 0 ? null : (Entry) entries[position];
+    }
+
+    @Override
+    Node put(Entry entry, int shift) {
+      int position = position(entry.key);
+      Node[] entries;
+      if (position < 0) {
+        entries = new Node[this.entries.length + 1];
+        System.arraycopy(this.entries, 0, entries, 0, this.entries.length);
+        entries[this.entries.length] = entry;
+      } else if (((Entry) this.entries[position]).value.equals(entry.value)) {
+        return this;
+      } else {
+        entries = this.entries.clone();
+        entries[position] = entry;
+      }
+      return new Collision(entries);
+    }
+
+    @Override
+    Node remove(Object key, int keyHash, int shift) {
+      int position = position(key);
+      if (position < 0) {
+        return this;
+      }
+      if (this.entries.length == 2) {
+        return this.entries[1 - position];
+      }
+
+      Node[] entries = new Node[this.entries.length - 1];
+      System.arraycopy(this.entries, 0, entries, 0, position);
+      System.arraycopy(this.entries, position + 1, entries, position, entries.length - position);
+      return new Collision(entries);
+    }
+
+    @Override
+    boolean equalTo(Node node) {
+      if (this == node)
+        return true;
+      if (!(node instanceof Collision))
+        return false;
+
+      Collision that = (Collision) node;
+
+      if (this.entries.length != that.entries.length || this.hash != that.hash)
+        return false;
+
+      for (Node entry : entries) {
+        Entry thatEntry = that.find(((Entry) entry).key, 0, 0);
+        if (thatEntry == null || !entry.equalTo(thatEntry))
+          return false;
+      }
+      return true;
+    }
+  }
+
+  private static final class EntryIterator implements Iterator<Entry> {
+    private final Node[][] nodes = new Node[MAX_DEPTH][];
+    private final int[] positions = new int[MAX_DEPTH];
+    private int depth;
+    private Entry next;
+
+    EntryIterator(Branch root) {
+      nodes[0] = root.children;
+      advance();
+    }
+
+    private void advance() {
+      while (depth >= 0) {
+        if (positions[depth] == nodes[depth].length) {
+          depth--;
+          continue;
+        }
+
+        Node node = nodes[depth][positions[depth]++];
+        if (node instanceof Entry) {
+          next = (Entry) node;
+          return;
+        }
+
+        depth++;
+        nodes[depth] = node instanceof Branch
+            ? ((Branch) node).children
+            : ((Collision) node).entries;
+        positions[depth] = 0;
+      }
+      next = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Entry next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Entry next = this.next;
+      advance();
+      return next;
+    }
+  }
+}
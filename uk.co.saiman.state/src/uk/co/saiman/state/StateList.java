@@ -27,14 +27,11 @@
  */
 package uk.co.saiman.state;
 
-import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toList;
 import static uk.co.saiman.state.StateKind.LIST;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
@@ -42,11 +39,11 @@ import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 public class StateList implements State, Iterable<State> {
-  private static final StateList EMPTY = new StateList(emptyList());
+  private static final StateList EMPTY = new StateList(VectorTrie.empty());
 
-  private final List<State> elements;
+  private final VectorTrie<State> elements;
 
-  private StateList(List<State> elements) {
+  private StateList(VectorTrie<State> elements) {
     this.elements = elements;
   }
 
@@ -70,36 +67,29 @@ public class StateList implements State, Iterable<State> {
   }
 
   public StateList withAdded(State element) {
-    List<State> elements = new ArrayList<>(this.elements);
-    elements.add(element);
-    return new StateList(elements);
+    return new StateList(elements.withAdded(element));
   }
 
   public StateList withAdded(int index, State element) {
-    List<State> elements = new ArrayList<>(this.elements);
-    elements.add(index, element);
-    return new StateList(elements);
+    return new StateList(elements.withAdded(index, element));
   }
 
   public StateList withSet(int index, State element) {
-    List<State> elements = this.elements;
-    elements.set(index, element);
-    return new StateList(elements);
+    return new StateList(elements.withSet(index, element));
   }
 
   public StateList remove(State element) {
-    List<State> elements = new ArrayList<>(this.elements);
-    if (elements.remove(element)) {
-      return new StateList(elements);
+    int index = elements.indexOf(element);
+    if (index >= 0) {
+      return remove(index);
     } else {
       return this;
     }
   }
 
   public StateList remove(int index) {
-    List<State> elements = new ArrayList<>(this.elements);
-    elements.remove(index);
-    return new StateList(elements);
+    VectorTrie<State> elements = this.elements.remove(index);
+    return elements.isEmpty() ? EMPTY : new StateList(elements);
   }
 
   @SuppressWarnings("unchecked")
@@ -157,7 +147,7 @@ public class StateList implements State, Iterable<State> {
   }
 
   public static Collector<State, ?, StateList> toStateList() {
-    return collectingAndThen(toList(), StateList::new);
+    return collectingAndThen(toList(), elements -> new StateList(VectorTrie.of(elements)));
   }
 
   @Override
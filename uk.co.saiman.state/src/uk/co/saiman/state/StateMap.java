@@ -27,12 +27,9 @@
  */
 package uk.co.saiman.state;
 
-import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
 import static uk.co.saiman.state.StateKind.MAP;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
@@ -40,11 +37,11 @@ import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class StateMap implements State {
-  private static final StateMap EMPTY = new StateMap(emptyMap());
+  private static final StateMap EMPTY = new StateMap(HashTrie.empty());
 
-  private final Map<String, State> entries;
+  private final HashTrie<String, State> entries;
 
-  private StateMap(Map<String, State> entries) {
+  private StateMap(HashTrie<String, State> entries) {
     this.entries = entries;
   }
 
@@ -53,7 +50,7 @@ public class StateMap implements State {
   }
 
   public Stream<String> getKeys() {
-    return entries.keySet().stream();
+    return entries.keys();
   }
 
   public State get(String id) {
@@ -69,9 +66,7 @@ public class StateMap implements State {
   }
 
   public StateMap with(String id, State value) {
-    Map<String, State> entries = new HashMap<>(this.entries);
-    entries.put(id, requireNonNull(value));
-    return new StateMap(entries);
+    return withEntries(entries.put(requireNonNull(id), requireNonNull(value)));
   }
 
   public <T> StateMap with(String id, Function<State, State> value) {
@@ -87,9 +82,7 @@ public class StateMap implements State {
   }
 
   public StateMap withAll(StateMap map) {
-    Map<String, State> entries = new HashMap<>(this.entries);
-    entries.putAll(map.entries);
-    return new StateMap(entries);
+    return withEntries(entries.putAll(map.entries));
   }
 
   public StateMap withAllDefaults(StateMap map) {
@@ -97,11 +90,15 @@ public class StateMap implements State {
   }
 
   public StateMap remove(String id) {
-    if (!entries.containsKey(id)) {
+    return withEntries(entries.remove(id));
+  }
+
+  private StateMap withEntries(HashTrie<String, State> entries) {
+    if (entries == this.entries) {
       return this;
+    } else if (entries.isEmpty()) {
+      return EMPTY;
     } else {
-      Map<String, State> entries = new HashMap<>(this.entries);
-      entries.remove(id);
       return new StateMap(entries);
     }
   }
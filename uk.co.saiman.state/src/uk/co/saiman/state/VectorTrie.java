@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.state.
+ *
+ * uk.co.saiman.state is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.state is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.state;
+
+import static java.util.Spliterator.IMMUTABLE;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliterator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A persistent bit-partitioned vector trie. Elements are held in leaves of
+ * thirty-two, with the last leaf kept outside of the trie so that appending
+ * usually copies only that leaf. Replacing an element copies only the path from
+ * the root to its leaf.
+ * <p>
+ * The trie is always packed to the left, so two vectors of the same size have
+ * the same shape, and equality can skip shared leaves by identity. Inserting or
+ * removing an element keeps the structure before the affected index and
+ * rebuilds only what follows it.
+ * 
+ * @author Elias N Vasylenko
+ *
+ * @param <E> the element type
+ */
+final class VectorTrie<E> {
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  private static final Object[] EMPTY_NODE = new Object[0];
+  private static final VectorTrie<?> EMPTY = new VectorTrie<>(0, BITS, EMPTY_NODE, EMPTY_NODE);
+
+  private final int size;
+  private final int shift;
+  private final Object[] root;
+  private final Object[] tail;
+
+  private int hash;
+
+  private VectorTrie(int size, int shift, Object[] root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <E> VectorTrie<E> empty() {
+    return (VectorTrie<E>) EMPTY;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <E> VectorTrie<E> of(List<? extends E> elements) {
+    return ((VectorTrie<E>) EMPTY).withAdded(elements.toArray(), 0);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  private int tailOffset() {
+    return size - tail.length;
+  }
+
+  private Object[] leafFor(int index) {
+    if (index >= tailOffset()) {
+      return tail;
+    }
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return node;
+  }
+
+  @SuppressWarnings("unchecked")
+  E get(int index) {
+    Objects.checkIndex(index, size);
+    return (E) leafFor(index)[index & MASK];
+  }
+
+  int indexOf(Object element) {
+    for (int i = 0; i < size; i += WIDTH) {
+      Object[] leaf = leafFor(i);
+      for (int j = 0; j < leaf.length; j++) {
+        if (Objects.equals(leaf[j], element)) {
+          return i + j;
+        }
+      }
+    }
+    return -1;
+  }
+
+  VectorTrie<E> withAdded(E element) {
+    return withAdded(new Object[] { element }, 0);
+  }
+
+  VectorTrie<E> withAdded(int index, E element) {
+    Objects.checkIndex(index, size + 1);
+    if (index == size) {
+      return withAdded(element);
+    }
+
+    Object[] rest = new Object[size - index + 1];
+    rest[0] = element;
+    copyTo(index, rest, 1);
+    return truncate(index).withAdded(rest, 0);
+  }
+
+  VectorTrie<E> withSet(int index, E element) {
+    Objects.checkIndex(index, size);
+    if (index >= tailOffset()) {
+      Object[] tail = this.tail.clone();
+      tail[index & MASK] = element;
+      return new VectorTrie<>(size, shift, root, tail);
+    } else {
+      return new VectorTrie<>(size, shift, withSet(shift, root, index, element), tail);
+    }
+  }
+
+  private static Object[] withSet(int level, Object[] node, int index, Object element) {
+    Object[] result = node.clone();
+    if (level == 0) {
+      result[index & MASK] = element;
+    } else {
+      int child = (index >>> level) & MASK;
+      result[child] = withSet(level - BITS, (Object[]) node[child], index, element);
+    }
+    return result;
+  }
+
+  VectorTrie<E> remove(int index) {
+    Objects.checkIndex(index, size);
+
+    Object[] rest = new Object[size - index - 1];
+    copyTo(index + 1, rest, 0);
+    return truncate(index).withAdded(rest, 0);
+  }
+
+  private void copyTo(int from, Object[] destination, int offset) {
+    for (int i = from; i < size;) {
+      Object[] leaf = leafFor(i);
+      int start = i & MASK;
+      int length = leaf.length - start;
+      System.arraycopy(leaf, start, destination, offset, length);
+      offset += length;
+      i += length;
+    }
+  }
+
+  /*
+   * The first count elements of this vector, sharing every complete leaf.
+   */
+  private VectorTrie<E> truncate(int count) {
+    if (count == 0) {
+      return empty();
+    }
+    if (count == size) {
+      return this;
+    }
+
+    int tailOffset = ((count - 1) >>> BITS) << BITS;
+    if (tailOffset == tailOffset()) {
+      return new VectorTrie<>(count, shift, root, Arrays.copyOf(tail, count - tailOffset));
+    }
+
+    Object[] tail = Arrays.copyOf(leafFor(count - 1), count - tailOffset);
+    if (tailOffset == 0) {
+      return new VectorTrie<>(count, BITS, EMPTY_NODE, tail);
+    }
+
+    Object[] root = truncate(shift, this.root, tailOffset);
+    int shift = this.shift;
+    while (shift > BITS && root.length == 1) {
+      root = (Object[]) root[0];
+      shift -= BITS;
+    }
+    return new VectorTrie<>(count, shift, root, tail);
+  }
+
+  private static Object[] truncate(int level, Object[] node, int count) {
+    int last = ((count - 1) >>> level) & MASK;
+    Object[] result = Arrays.copyOf(node, last + 1);
+    if (level > BITS) {
+      result[last] = truncate(level - BITS, (Object[]) node[last], count - (last << level));
+    }
+    return result;
+  }
+
+  /*
+   * Append the given elements, filling the tail before pushing it into the trie
+   * and then pushing each subsequent complete leaf directly.
+   */
+  private VectorTrie<E> withAdded(Object[] elements, int from) {
+    if (from == elements.length) {
+      return this;
+    }
+
+    int size = this.size;
+    int shift = this.shift;
+    Object[] root = this.root;
+
+    int length = Math.min(WIDTH - tail.length, elements.length - from);
+    Object[] tail = Arrays.copyOf(this.tail, this.tail.length + length);
+    System.arraycopy(elements, from, tail, this.tail.length, length);
+    size += length;
+    from += length;
+
+    while (from < elements.length) {
+      int tailOffset = size - WIDTH;
+      if ((long) tailOffset == 1L << (shift + BITS)) {
+        root = new Object[] { root, path(shift, tail) };
+        shift += BITS;
+      } else {
+        root = push(shift, root, tail, tailOffset);
+      }
+
+      length = Math.min(WIDTH, elements.length - from);
+      tail = Arrays.copyOfRange(elements, from, from + length);
+      size += length;
+      from += length;
+    }
+
+    return new VectorTrie<>(size, shift, root, tail);
+  }
+
+  private static Object[] push(int level, Object[] node, Object[] leaf, int index) {
+    int child = (index >>> level) & MASK;
+    Object[] result = Arrays.copyOf(node, child + 1);
+    if (level == BITS) {
+      result[child] = leaf;
+    } else if (child < node.length) {
+      result[child] = push(level - BITS, (Object[]) node[child], leaf, index);
+    } else {
+      result[child] = path(level - BITS, leaf);
+    }
+    return result;
+  }
+
+  private static Object[] path(int level, Object[] leaf) {
+    return level == 0 ? leaf : new Object[] { path(level - BITS, leaf) };
+  }
+
+  Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private int index;
+      private Object[] leaf;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public E next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+        if ((index & MASK) == 0) {
+          leaf = leafFor(index);
+        }
+        return (E) leaf[index++ & MASK];
+      }
+    };
+  }
+
+  Stream<E> stream() {
+    return StreamSupport.stream(spliterator(iterator(), size, ORDERED | IMMUTABLE), false);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof VectorTrie<?>))
+      return false;
+
+    VectorTrie<?> that = (VectorTrie<?>) obj;
+
+    if (this.size != that.size || (this.hash != 0 && that.hash != 0 && this.hash != that.hash))
+      return false;
+
+    return equalNodes(shift, this.root, that.root) && equalNodes(0, this.tail, that.tail);
+  }
+
+  private static boolean equalNodes(int level, Object[] first, Object[] second) {
+    if (first == second)
+      return true;
+
+    if (level == 0)
+      return Arrays.equals(first, second);
+
+    for (int i = 0; i < first.length; i++) {
+      if (!equalNodes(level - BITS, (Object[]) first[i], (Object[]) second[i]))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = this.hash;
+    if (hash == 0 && size > 0) {
+      hash = 1;
+      for (Iterator<E> elements = iterator(); elements.hasNext();) {
+        hash = 31 * hash + Objects.hashCode(elements.next());
+      }
+      this.hash = hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    StringJoiner joiner = new StringJoiner(", ", "[", "]");
+    for (Iterator<E> elements = iterator(); elements.hasNext();) {
+      joiner.add(String.valueOf(elements.next()));
+    }
+    return joiner.toString();
+  }
+}
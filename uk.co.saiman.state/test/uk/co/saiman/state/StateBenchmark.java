@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.state.
+ *
+ * uk.co.saiman.state is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.state is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.state;
+
+import static uk.co.saiman.state.StateMapTest.property;
+
+/**
+ * A benchmark of building {@link StateMap} and {@link StateList} instances
+ * with ten thousand entries one update at a time, and of comparing them
+ * against copies which differ by a single update.
+ * <p>
+ * Run from the test classpath with an optional argument for the number of
+ * entries.
+ * 
+ * @author Elias N Vasylenko
+ */
+public class StateBenchmark {
+  public static void main(String... args) {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+    for (int round = 0; round < 10; round++) {
+      System.gc();
+      long start = System.nanoTime();
+      StateMap map = StateMap.empty();
+      for (int i = 0; i < entries; i++) {
+        map = map.with("key" + i, property(i));
+      }
+      long mapBuilt = System.nanoTime();
+
+      int differences = 0;
+      for (int i = 0; i < entries; i++) {
+        if (!map.equals(map.with("key" + i, property(-i - 1)))) {
+          differences++;
+        }
+      }
+      long mapDiffed = System.nanoTime();
+
+      StateList list = StateList.empty();
+      for (int i = 0; i < entries; i++) {
+        list = list.withAdded(property(i));
+      }
+      long listBuilt = System.nanoTime();
+
+      for (int i = 0; i < entries; i++) {
+        if (!list.equals(list.withSet(i, property(-i - 1)))) {
+          differences++;
+        }
+      }
+      long listDiffed = System.nanoTime();
+
+      System.out
+          .printf(
+              "map built in %.1f ms, diffed in %.1f ms; list built in %.1f ms, diffed in %.1f ms (%d differences)%n",
+              (mapBuilt - start) / 1e6,
+              (mapDiffed - mapBuilt) / 1e6,
+              (listBuilt - mapDiffed) / 1e6,
+              (listDiffed - listBuilt) / 1e6,
+              differences);
+    }
+  }
+}
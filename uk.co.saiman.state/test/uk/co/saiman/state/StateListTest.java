@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.state.
+ *
+ * uk.co.saiman.state is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.state is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.state;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static uk.co.saiman.state.StateMapTest.property;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class StateListTest {
+  private static List<State> elements(StateList list) {
+    return list.stream().collect(toList());
+  }
+
+  @Test
+  public void appendAcrossLevels() {
+    List<State> expected = new ArrayList<>();
+    StateList list = StateList.empty();
+    for (int i = 0; i < 40_000; i++) {
+      expected.add(property(i));
+      list = list.withAdded(property(i));
+    }
+
+    assertEquals(expected.size(), list.size());
+    assertEquals(expected, elements(list));
+    for (int i = 0; i < expected.size(); i += 97) {
+      assertEquals(expected.get(i), list.get(i));
+    }
+  }
+
+  @Test
+  public void withSetDoesNotAffectSource() {
+    StateList list = StateList.empty().withAdded(property(0)).withAdded(property(1));
+    StateList updated = list.withSet(0, property(2));
+
+    assertEquals(property(0), list.get(0));
+    assertEquals(property(2), updated.get(0));
+  }
+
+  @Test
+  public void matchesArrayListUnderRandomUpdates() {
+    Random random = new Random(0);
+    List<State> expected = new ArrayList<>();
+    StateList list = StateList.empty();
+
+    for (int i = 0; i < 5_000; i++) {
+      int operation = random.nextInt(4);
+      if (operation == 0 && !expected.isEmpty()) {
+        int index = random.nextInt(expected.size());
+        expected.remove(index);
+        list = list.remove(index);
+      } else if (operation == 1) {
+        int index = random.nextInt(expected.size() + 1);
+        expected.add(index, property(i));
+        list = list.withAdded(index, property(i));
+      } else if (operation == 2 && !expected.isEmpty()) {
+        int index = random.nextInt(expected.size());
+        expected.set(index, property(i));
+        list = list.withSet(index, property(i));
+      } else {
+        expected.add(property(i));
+        list = list.withAdded(property(i));
+      }
+
+      assertEquals(expected.size(), list.size());
+    }
+
+    StateList collected = expected.stream().collect(StateList.toStateList());
+    assertEquals(expected, elements(list));
+    assertEquals(collected, list);
+    assertEquals(collected.hashCode(), list.hashCode());
+  }
+
+  @Test
+  public void equalityComparesElements() {
+    StateList first = StateList.empty();
+    StateList second = StateList.empty();
+    for (int i = 0; i < 2_000; i++) {
+      first = first.withAdded(property(i));
+      second = second.withAdded(0, property(1_999 - i));
+    }
+
+    assertEquals(first, second);
+    assertEquals(first.hashCode(), second.hashCode());
+    assertNotEquals(first, second.withSet(1_000, property(0)));
+    assertNotEquals(first, second.remove(1_999));
+  }
+}
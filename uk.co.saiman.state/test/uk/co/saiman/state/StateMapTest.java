@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 Scientific Analysis Instruments Limited <contact@saiman.co.uk>
+ *          ______         ___      ___________
+ *       ,'========\     ,'===\    /========== \
+ *      /== \___/== \  ,'==.== \   \__/== \___\/
+ *     /==_/____\__\/,'==__|== |     /==  /
+ *     \========`. ,'========= |    /==  /
+ *   ___`-___)== ,'== \____|== |   /==  /
+ *  /== \__.-==,'==  ,'    |== '__/==  /_
+ *  \======== /==  ,'      |== ========= \
+ *   \_____\.-\__\/        \__\\________\/
+ *
+ * This file is part of uk.co.saiman.state.
+ *
+ * uk.co.saiman.state is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uk.co.saiman.state is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.saiman.state;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class StateMapTest {
+  static StateProperty property(Object value) {
+    return new StateProperty(String.valueOf(value));
+  }
+
+  @Test
+  public void updatesDoNotAffectSource() {
+    StateMap map = StateMap.empty().with("a", property(1)).with("b", property(2));
+    StateMap updated = map.with("a", property(3)).remove("b");
+
+    assertEquals(property(1), map.get("a"));
+    assertEquals(property(2), map.get("b"));
+    assertEquals(property(3), updated.get("a"));
+    assertFalse(updated.getOptional("b").isPresent());
+  }
+
+  @Test
+  public void matchesHashMapUnderRandomUpdates() {
+    Random random = new Random(0);
+    Map<String, State> expected = new HashMap<>();
+    StateMap map = StateMap.empty();
+
+    for (int i = 0; i < 20_000; i++) {
+      String key = "key" + random.nextInt(2_000);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.remove(key);
+      } else {
+        State value = property(random.nextInt(10));
+        expected.put(key, value);
+        map = map.with(key, value);
+      }
+    }
+
+    assertEquals(expected.keySet(), map.getKeys().collect(toSet()));
+    for (String key : expected.keySet()) {
+      assertEquals(expected.get(key), map.get(key));
+    }
+  }
+
+  @Test
+  public void equalityIsIndependentOfHistory() {
+    StateMap forwards = StateMap.empty();
+    StateMap backwards = StateMap.empty();
+    for (int i = 0; i < 1_000; i++) {
+      forwards = forwards.with("key" + i, property(i));
+      backwards = backwards.with("key" + (999 - i), property(999 - i));
+    }
+    for (int i = 0; i < 1_000; i += 3) {
+      forwards = forwards.remove("key" + i);
+    }
+    backwards = backwards.with("extra", property(0)).remove("extra");
+    for (int i = 999; i >= 0; i--) {
+      if (i % 3 == 0) {
+        backwards = backwards.remove("key" + i);
+      }
+    }
+
+    assertEquals(forwards, backwards);
+    assertEquals(forwards.hashCode(), backwards.hashCode());
+    assertNotEquals(forwards, backwards.with("key1", property(0)));
+  }
+
+  @Test
+  public void collidingKeysAreDistinct() {
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+
+    StateMap map = StateMap.empty().with("Aa", property(1)).with("BB", property(2));
+
+    assertEquals(property(1), map.get("Aa"));
+    assertEquals(property(2), map.get("BB"));
+    assertEquals(StateMap.empty().with("BB", property(2)), map.remove("Aa"));
+  }
+
+  @Test
+  public void unchangedUpdateReturnsSameMap() {
+    StateMap map = StateMap.empty().with("a", property(1));
+
+    assertSame(map, map.with("a", property(1)));
+    assertSame(map, map.remove("b"));
+    assertTrue(map.remove("a").isEmpty());
+  }
+}